@@ -0,0 +1,35 @@
+package com.bigdata.it4931.benchmark;
+
+import com.bigdata.it4931.utility.concurrent.AsyncCallback;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What every queued record pays for its {@link AsyncCallback}: creating it, completing it and waiting on it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AsyncCallbackBenchmark {
+    private final Object result = new Object();
+
+    @Benchmark
+    public AsyncCallback<Object> create() {
+        return new AsyncCallback<>();
+    }
+
+    @Benchmark
+    public AsyncCallback<Object> complete() {
+        AsyncCallback<Object> callback = new AsyncCallback<>();
+        callback.complete(result);
+        return callback;
+    }
+
+    @Benchmark
+    public Object completeAndGet() throws Exception {
+        AsyncCallback<Object> callback = new AsyncCallback<>();
+        callback.complete(result);
+        return callback.get();
+    }
+}
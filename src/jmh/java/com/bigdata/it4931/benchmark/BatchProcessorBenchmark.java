@@ -0,0 +1,77 @@
+package com.bigdata.it4931.benchmark;
+
+import com.bigdata.it4931.utility.concurrent.AsyncCallback;
+import com.bigdata.it4931.utility.concurrent.BatchProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Put-to-apply throughput of {@link BatchProcessor} with several producers and a trivial {@code applyFn}, which is
+ * the overhead the queue adds in front of the writers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BatchProcessorBenchmark {
+    private static final int PAYLOADS = 1 << 18;
+
+    @Param({"1", "4", "8"})
+    public int producers;
+
+    @Param({"1", "2"})
+    public int consumers;
+
+    private final AtomicLong applied = new AtomicLong();
+    private ExecutorService producerPool;
+    private BatchProcessor<Long, Object> batchProcessor;
+
+    @Setup
+    public void setup() {
+        producerPool = Executors.newFixedThreadPool(producers);
+        batchProcessor = BatchProcessor.<Long, Object>newBuilder()
+                .with(builder -> {
+                    builder.corePoolSize = consumers;
+                    builder.batchSize = 100;
+                })
+                .build(batch -> applied.addAndGet(batch.size()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchProcessor.close();
+        producerPool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAYLOADS)
+    public long putAndDrain() throws Exception {
+        long target = applied.get() + PAYLOADS;
+        int perProducer = PAYLOADS / producers;
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future[producers];
+        for (int p = 0; p < producers; p++) {
+            futures[p] = producerPool.submit(() -> {
+                start.await();
+                AsyncCallback<Object> callback = null;
+                for (long i = 0; i < perProducer; i++) {
+                    callback = batchProcessor.put(i);
+                }
+                return callback;
+            });
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        while (applied.get() < target) {
+            Thread.onSpinWait();
+        }
+        return applied.get();
+    }
+}
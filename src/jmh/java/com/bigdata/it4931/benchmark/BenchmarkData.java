@@ -0,0 +1,107 @@
+package com.bigdata.it4931.benchmark;
+
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataAvroMapper;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataCsvMapper;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataWireCodec;
+import com.bigdata.it4931.layer.application.service.serving.generator.JobDataGenerator;
+import com.bigdata.it4931.layer.infrastructure.kafka.message.WireFormat;
+import com.opencsv.CSVWriter;
+import lombok.experimental.UtilityClass;
+import org.apache.avro.generic.GenericData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed datasets for the benchmarks. Everything derives from a {@link JobDataGenerator} with a fixed seed, so every
+ * run and every fork measures the same input.
+ */
+@UtilityClass
+public class BenchmarkData {
+    public static final int RECORDS = 1024;
+    private static final long SEED = 42;
+    // every n-th company profile gets quotes inside a value, like the raw Kaggle column
+    private static final int QUOTED_PROFILE_EVERY = 8;
+
+    public List<JobDataDto> jobs() {
+        JobDataGenerator generator = JobDataGenerator.newBuilder().with(builder -> builder.seed = SEED).build();
+        List<JobDataDto> jobs = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            jobs.add(generator.next());
+        }
+        return jobs;
+    }
+
+    /**
+     * @return the jobs as a CSV file with a header, the way the ingest reads them
+     */
+    public byte[] csv(List<JobDataDto> jobs) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            csvWriter.writeNext(JobDataCsvMapper.HEADER);
+            for (JobDataDto job : jobs) {
+                csvWriter.writeNext(JobDataCsvMapper.toRecord(job));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * @return the raw {@code company_profile} column, some values with unescaped quotes
+     */
+    public String[] companyProfiles(List<JobDataDto> jobs) {
+        String[] profiles = new String[jobs.size()];
+        try {
+            for (int i = 0; i < profiles.length; i++) {
+                CompanyProfileDto companyProfile = jobs.get(i).getCompanyProfile();
+                if (i % QUOTED_PROFILE_EVERY == 0) {
+                    CompanyProfileDto quoted = new CompanyProfileDto();
+                    quoted.setSector(companyProfile.getSector());
+                    quoted.setIndustry(companyProfile.getIndustry());
+                    quoted.setCity("Port \"St.\" " + companyProfile.getCity());
+                    quoted.setState(companyProfile.getState());
+                    quoted.setZip(companyProfile.getZip());
+                    quoted.setWebsite(companyProfile.getWebsite());
+                    quoted.setTicker(companyProfile.getTicker());
+                    quoted.setCeo(companyProfile.getCeo());
+                    profiles[i] = Constants.OBJECT_MAPPER.writeValueAsString(quoted).replace("\\\"", "\"");
+                } else {
+                    profiles[i] = Constants.OBJECT_MAPPER.writeValueAsString(companyProfile);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return profiles;
+    }
+
+    public byte[][] messages(List<JobDataDto> jobs, WireFormat wireFormat) {
+        byte[][] messages = new byte[jobs.size()][];
+        try {
+            for (int i = 0; i < messages.length; i++) {
+                messages[i] = JobDataWireCodec.encode(jobs.get(i), wireFormat);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return messages;
+    }
+
+    public List<GenericData.Record> parquetRecords(List<JobDataDto> jobs) {
+        List<GenericData.Record> records = new ArrayList<>(jobs.size());
+        for (JobDataDto job : jobs) {
+            records.add(JobDataAvroMapper.toParquetRecord(job));
+        }
+        return records;
+    }
+}
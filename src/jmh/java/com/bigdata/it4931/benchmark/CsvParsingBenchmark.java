@@ -0,0 +1,90 @@
+package com.bigdata.it4931.benchmark;
+
+import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.domain.mapper.CompanyProfileParser;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataCsvMapper;
+import com.bigdata.it4931.utility.csv.CsvRecordReader;
+import com.opencsv.CSVReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning CSV bytes into {@link JobDataDto}s, and the two ways of parsing the {@code company_profile} column.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvParsingBenchmark {
+    private byte[] csv;
+    private String[] companyProfiles;
+
+    @Setup
+    public void setup() {
+        List<JobDataDto> jobs = BenchmarkData.jobs();
+        csv = BenchmarkData.csv(jobs);
+        companyProfiles = BenchmarkData.companyProfiles(jobs);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void csvRecordReader(Blackhole blackhole) throws Exception {
+        try (CsvRecordReader csvReader = new CsvRecordReader(new ByteArrayInputStream(csv), 0)) {
+            csvReader.readNext();
+            String[] record;
+            while ((record = csvReader.readNext()) != null) {
+                blackhole.consume(record);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void openCsvReader(Blackhole blackhole) throws Exception {
+        try (CSVReader csvReader = new CSVReader(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8))) {
+            csvReader.readNext();
+            String[] record;
+            while ((record = csvReader.readNext()) != null) {
+                blackhole.consume(record);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void csvToJobData(Blackhole blackhole) throws Exception {
+        try (CsvRecordReader csvReader = new CsvRecordReader(new ByteArrayInputStream(csv), 0)) {
+            csvReader.readNext();
+            String[] record;
+            while ((record = csvReader.readNext()) != null) {
+                blackhole.consume(JobDataCsvMapper.toJobData(record));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void companyProfileParser(Blackhole blackhole) throws Exception {
+        for (String companyProfile : companyProfiles) {
+            blackhole.consume(CompanyProfileParser.parse(companyProfile));
+        }
+    }
+
+    /**
+     * The legacy {@code normalizeJson} rewrite followed by Jackson.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void companyProfileNormalizeJson(Blackhole blackhole) throws Exception {
+        for (String companyProfile : companyProfiles) {
+            CompanyProfileDto companyProfileDto = CompanyProfileParser.parseWithJackson(companyProfile);
+            blackhole.consume(companyProfileDto);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.bigdata.it4931.benchmark;
+
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataWireCodec;
+import com.bigdata.it4931.layer.infrastructure.kafka.message.WireFormat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding Kafka messages: Jackson into {@link JobDataDto} against the direct paths into a Parquet record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonDecodingBenchmark {
+    private byte[][] jsonMessages;
+    private byte[][] avroMessages;
+
+    @Setup
+    public void setup() {
+        List<JobDataDto> jobs = BenchmarkData.jobs();
+        jsonMessages = BenchmarkData.messages(jobs, WireFormat.JSON);
+        avroMessages = BenchmarkData.messages(jobs, WireFormat.AVRO);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void jacksonJobData(Blackhole blackhole) throws Exception {
+        for (byte[] message : jsonMessages) {
+            blackhole.consume(Constants.OBJECT_MAPPER.readValue(message, JobDataDto.class));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void jsonToParquetRecord(Blackhole blackhole) throws Exception {
+        for (byte[] message : jsonMessages) {
+            blackhole.consume(JobDataWireCodec.decodeParquetRecord(message));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void avroToParquetRecord(Blackhole blackhole) throws Exception {
+        for (byte[] message : avroMessages) {
+            blackhole.consume(JobDataWireCodec.decodeParquetRecord(message));
+        }
+    }
+}
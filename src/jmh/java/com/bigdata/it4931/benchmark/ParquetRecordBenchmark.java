@@ -0,0 +1,45 @@
+package com.bigdata.it4931.benchmark;
+
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataAvroMapper;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataTypedMapper;
+import org.apache.avro.generic.GenericData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the stored record from a {@link JobDataDto}, in the v1 string schema and the typed v2 schema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParquetRecordBenchmark {
+    private List<JobDataDto> jobs;
+    private List<GenericData.Record> records;
+    private final JobDataTypedMapper typedMapper = new JobDataTypedMapper();
+
+    @Setup
+    public void setup() {
+        jobs = BenchmarkData.jobs();
+        records = BenchmarkData.parquetRecords(jobs);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void toParquetRecord(Blackhole blackhole) {
+        for (JobDataDto job : jobs) {
+            blackhole.consume(JobDataAvroMapper.toParquetRecord(job));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS)
+    public void toTyped(Blackhole blackhole) {
+        for (GenericData.Record record : records) {
+            blackhole.consume(typedMapper.toTyped(record));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.bigdata.it4931.benchmark;
+
+import com.bigdata.it4931.config.avro.AvroSchemas;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataTypedMapper;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding records into a Parquet file on the local file system, so the numbers do not depend on a cluster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParquetWriteBenchmark {
+    // copies of the dataset per file, so the file spans more than a handful of pages
+    private static final int COPIES = 8;
+
+    @Param({"1", "2"})
+    public int schemaVersion;
+
+    @Param({"UNCOMPRESSED", "SNAPPY", "GZIP"})
+    public CompressionCodecName codec;
+
+    private final Configuration configuration = new Configuration();
+    private Schema schema;
+    private List<GenericData.Record> records;
+    private Path path;
+    private FileSystem fileSystem;
+
+    @Setup
+    public void setup() throws IOException {
+        records = BenchmarkData.parquetRecords(BenchmarkData.jobs());
+        schema = AvroSchemas.JOB_DATA;
+        if (schemaVersion == 2) {
+            JobDataTypedMapper typedMapper = new JobDataTypedMapper();
+            List<GenericData.Record> typed = new ArrayList<>(records.size());
+            for (GenericData.Record record : records) {
+                typed.add(typedMapper.toTyped(record));
+            }
+            records = typed;
+            schema = AvroSchemas.JOB_DATA_V2;
+        }
+        path = new Path("file://" + System.getProperty("java.io.tmpdir"), "parquet-bench-" + UUID.randomUUID() + ".parquet");
+        fileSystem = path.getFileSystem(configuration);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileSystem.delete(path, false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.RECORDS * COPIES)
+    public long write() throws IOException {
+        ParquetWriter<GenericData.Record> writer = AvroParquetWriter
+                .<GenericData.Record>builder(HadoopOutputFile.fromPath(path, configuration))
+                .withSchema(schema)
+                .withConf(configuration)
+                .withCompressionCodec(codec)
+                .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                .build();
+        try {
+            for (int i = 0; i < COPIES; i++) {
+                for (GenericData.Record record : records) {
+                    writer.write(record);
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return fileSystem.getFileStatus(path).getLen();
+    }
+}
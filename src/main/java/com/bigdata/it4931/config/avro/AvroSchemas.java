@@ -0,0 +1,38 @@
+package com.bigdata.it4931.config.avro;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+@Slf4j
+public class AvroSchemas {
+    public static final String JOB_DATA_LOCATION = "config/avroToParquet.avsc";
+    public static final String JOB_DATA_V2_LOCATION = "config/avroToParquetV2.avsc";
+    /**
+     * Every field as text, the schema of the Kafka messages and of the first Parquet files.
+     */
+    public static final Schema JOB_DATA;
+    /**
+     * Numbers, ranges and the posting date parsed, see {@code JobDataTypedMapper}.
+     */
+    public static final Schema JOB_DATA_V2;
+
+    static {
+        JOB_DATA = load(JOB_DATA_LOCATION);
+        JOB_DATA_V2 = load(JOB_DATA_V2_LOCATION);
+    }
+
+    private AvroSchemas() {
+    }
+
+    private static Schema load(String location) {
+        try (InputStream inputStream = new FileInputStream(location)) {
+            return new Schema.Parser().parse(inputStream);
+        } catch (Exception e) {
+            log.error("Failed to load schema from " + location, e);
+            throw new RuntimeException(e);
+        }
+    }
+}
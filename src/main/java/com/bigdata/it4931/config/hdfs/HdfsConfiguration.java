@@ -4,6 +4,7 @@ import com.bigdata.it4931.config.hdfs.properties.HdfsProperties;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,6 +20,102 @@ public class HdfsConfiguration {
     @Value("${hadoop.hdfs.file.max-size.MB}")
     private int hdfsFileMaxSize;
 
+    @Value("${hadoop.hdfs.commit.recovery-hours:48}")
+    private int commitRecoveryHours;
+
+    @Value("${hadoop.hdfs.commit.instance-id:}")
+    private String commitInstanceId;
+
+    @Value("${kafka.consumer.batch-group-id:batch-layer}")
+    private String batchGroupId;
+
+    @Value("${hadoop.hdfs.schema.version:1}")
+    private int schemaVersion;
+
+    @Value("${hadoop.hdfs.partition.by-country:false}")
+    private boolean partitionByCountry;
+
+    @Value("${hadoop.hdfs.writer.max-open:32}")
+    private int writerMaxOpen;
+
+    @Value("${hadoop.hdfs.writer.buffer-MB:512}")
+    private int writerBufferMb;
+
+    @Value("${hadoop.hdfs.writer.idle-close-ms:300000}")
+    private long writerIdleCloseMs;
+
+    @Value("${hadoop.hdfs.writer.queue.max-records:20000}")
+    private int writerQueueMaxRecords;
+
+    @Value("${hadoop.hdfs.writer.queue.max-MB:64}")
+    private int writerQueueMaxMb;
+
+    @Value("${hadoop.hdfs.writer.queue.low-water-percent:50}")
+    private int writerQueueLowWaterPercent;
+
+    @Value("${hadoop.hdfs.writer.batch.size:100}")
+    private int writerBatchSize;
+
+    @Value("${hadoop.hdfs.writer.batch.max-size:2000}")
+    private int writerBatchMaxSize;
+
+    @Value("${hadoop.hdfs.writer.batch.linger-ms:20}")
+    private long writerBatchLingerMs;
+
+    @Value("${hadoop.hdfs.writer.batch.target-latency-ms:50}")
+    private long writerBatchTargetLatencyMs;
+
+    @Value("${hadoop.hdfs.roll.align-to-block:true}")
+    private boolean rollAlignToBlock;
+
+    @Value("${hadoop.hdfs.roll.max-records:0}")
+    private long rollMaxRecords;
+
+    @Value("${hadoop.hdfs.roll.max-age-ms:3600000}")
+    private long rollMaxAgeMs;
+
+    @Value("${hadoop.hdfs.roll.close-threads:2}")
+    private int rollCloseThreads;
+
+    @Value("${hadoop.hdfs.roll.close-queue:8}")
+    private int rollCloseQueue;
+
+    @Value("${hadoop.hdfs.layout.sort-columns:}")
+    private String layoutSortColumns;
+
+    @Value("${hadoop.hdfs.layout.sort-buffer-row-groups:1}")
+    private int layoutSortBufferRowGroups;
+
+    @Value("${hadoop.hdfs.layout.row-group-size-MB:0}")
+    private int layoutRowGroupSizeMb;
+
+    @Value("${hadoop.hdfs.layout.page-size-KB:0}")
+    private int layoutPageSizeKb;
+
+    @Value("${hadoop.hdfs.layout.bloom-filter-columns:}")
+    private String layoutBloomFilterColumns;
+
+    @Value("${hadoop.hdfs.layout.bloom-filter-ndv:0}")
+    private long layoutBloomFilterNdv;
+
+    @Value("${hadoop.hdfs.layout.dictionary-disabled-columns:}")
+    private String layoutDictionaryDisabledColumns;
+
+    @Value("${hadoop.hdfs.compaction.enabled:false}")
+    private boolean compactionEnabled;
+
+    @Value("${hadoop.hdfs.compaction.small-file-percent:50}")
+    private int compactionSmallFilePercent;
+
+    @Value("${hadoop.hdfs.compaction.min-files:4}")
+    private int compactionMinFiles;
+
+    @Value("${hadoop.hdfs.compaction.min-age-ms:3600000}")
+    private long compactionMinAgeMs;
+
+    @Value("${hadoop.hdfs.compaction.threads:2}")
+    private int compactionThreads;
+
     @Bean(name = "hdfsProperties")
     @ConfigurationProperties(prefix = "hadoop.hdfs")
     public HdfsProperties getHdfsProperties() {
@@ -26,11 +123,13 @@ public class HdfsConfiguration {
     }
 
     @Bean("hdfsSiteInputStream")
+    @ConditionalOnProperty(name = "hadoop.hdfs.backend", havingValue = "hdfs", matchIfMissing = true)
     public InputStream getHdfsSiteInputStream(@Qualifier("hdfsProperties") HdfsProperties hdfsProperties) throws FileNotFoundException {
         return new FileInputStream(hdfsProperties.getHdfsSiteConf());
     }
 
     @Bean("coreSiteInputStream")
+    @ConditionalOnProperty(name = "hadoop.hdfs.backend", havingValue = "hdfs", matchIfMissing = true)
     public InputStream getCoreSiteInputStream(@Qualifier("hdfsProperties") HdfsProperties hdfsProperties) throws FileNotFoundException {
         return new FileInputStream(hdfsProperties.getCoreSiteConf());
     }
@@ -2,10 +2,12 @@ package com.bigdata.it4931.config.kafka;
 
 import com.bigdata.it4931.config.kafka.properties.KafkaConsumerProperties;
 import com.bigdata.it4931.config.kafka.properties.KafkaProducerProperties;
+import com.bigdata.it4931.config.kafka.properties.KafkaTopicProperties;
 import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.config.SaslConfigs;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -26,7 +28,10 @@ public class KafkaConfiguration {
     @Bean("kafkaBrokerBatchReaderProperties")
     public Properties kafkaBrokerBatchReaderProperties(@Qualifier("kafkaConsumerProperties") KafkaConsumerProperties kafkaConsumerProperties,
                                                   @Value("${kafka.consumer.batch-group-id}") String groupId) {
-        return getProperties(kafkaConsumerProperties, groupId);
+        Properties properties = getProperties(kafkaConsumerProperties, groupId);
+        // BatchConsumer decodes JSON and Avro values itself
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        return properties;
     }
 
     @Bean("kafkaBrokerSpeedReaderProperties")
@@ -46,6 +51,12 @@ public class KafkaConfiguration {
         return getProperties(kafkaProducerProperties);
     }
 
+    @Bean("kafkaTopicProperties")
+    @ConfigurationProperties(prefix = "kafka.topic")
+    public KafkaTopicProperties kafkaTopicProperties() {
+        return new KafkaTopicProperties();
+    }
+
     private Properties getProperties(KafkaConsumerProperties kafkaConsumerProperties,
                                      String groupId) {
         final Properties properties = new Properties();
@@ -55,6 +66,8 @@ public class KafkaConfiguration {
         properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, kafkaConsumerProperties.getMaxPollRecords());
         properties.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, kafkaConsumerProperties.getMaxPollIntervalMs());
         properties.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        // skip records of aborted ingest transactions
+        properties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
         properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, kafkaConsumerProperties.getKeyDeserializer());
         properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, kafkaConsumerProperties.getValueDeserializer());
 
@@ -0,0 +1,20 @@
+package com.bigdata.it4931.config.kafka.properties;
+
+import com.bigdata.it4931.layer.infrastructure.kafka.message.WireFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KafkaTopicProperties {
+    private Map<String, WireFormat> format = new HashMap<>();
+
+    public WireFormat formatOf(String topic) {
+        return format.getOrDefault(topic, WireFormat.JSON);
+    }
+}
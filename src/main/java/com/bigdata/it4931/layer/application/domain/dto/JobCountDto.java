@@ -0,0 +1,27 @@
+package com.bigdata.it4931.layer.application.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+public class JobCountDto {
+    private String groupBy;
+    private long total;
+    /**
+     * Largest groups first, null without a group-by field.
+     */
+    private List<Group> groups;
+    private int files;
+    private long tookMs;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Group {
+        private Object value;
+        private long count;
+    }
+}
@@ -0,0 +1,25 @@
+package com.bigdata.it4931.layer.application.domain.dto;
+
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Filters of a query over the Parquet files. Values of one filter are alternatives, filters all have to match. The
+ * posting date range includes both ends.
+ */
+@Data
+public class JobQueryDto {
+    private List<String> country;
+    private List<String> workType;
+    private List<String> role;
+    private List<String> company;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate from;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate to;
+}
@@ -0,0 +1,396 @@
+package com.bigdata.it4931.layer.application.domain.mapper;
+
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.experimental.UtilityClass;
+
+import java.text.ParseException;
+
+/**
+ * Single-pass parser for the {@code company_profile} column.
+ * <p>
+ * The column is JSON-like text whose values may contain unescaped quotes. The legacy path first rewrote every quote
+ * that is not next to one of {@code { , : }} as {@code \"} and then ran Jackson on the copy. This parser reads the
+ * raw text once, applies the same quote rule on the fly and follows the same Jackson rules (scalars coerced to text,
+ * unknown properties rejected, trailing content ignored), so both paths produce equal {@link CompanyProfileDto}s.
+ * <p>
+ * {@code CsvParsingBenchmark} in the {@code jmh} profile measures both paths on the same profiles.
+ */
+@UtilityClass
+public class CompanyProfileParser {
+    private static final String[] FIELDS = {"Sector", "Industry", "City", "State", "Zip", "Website", "Ticker", "CEO"};
+
+    /**
+     * @return the parsed profile, or {@code null} when the text is the JSON literal {@code null}
+     */
+    public CompanyProfileDto parse(String text) throws ParseException {
+        Cursor cursor = new Cursor(text);
+        cursor.skipWhitespace();
+        int c = cursor.peek();
+        if (c == 'n') {
+            cursor.expectLiteral("null");
+            return null;
+        }
+        if (c != '{') {
+            throw cursor.error("Expected '{'");
+        }
+        cursor.advance();
+
+        CompanyProfileDto companyProfileDto = new CompanyProfileDto();
+        cursor.skipWhitespace();
+        if (cursor.peek() == '}') {
+            return companyProfileDto;
+        }
+        while (true) {
+            cursor.skipWhitespace();
+            if (cursor.peek() != '"') {
+                throw cursor.error("Expected a field name");
+            }
+            cursor.advance();
+            int field = cursor.readFieldName();
+            cursor.skipWhitespace();
+            if (cursor.peek() != ':') {
+                throw cursor.error("Expected ':'");
+            }
+            cursor.advance();
+            cursor.skipWhitespace();
+            set(companyProfileDto, field, cursor.readValue());
+            cursor.skipWhitespace();
+            c = cursor.peek();
+            cursor.advance();
+            if (c == '}') {
+                return companyProfileDto;
+            }
+            if (c != ',') {
+                throw cursor.error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * The original normalize-then-Jackson implementation, kept as the reference for equivalence checks and benchmarks.
+     */
+    public CompanyProfileDto parseWithJackson(String text) throws JsonProcessingException {
+        return Constants.OBJECT_MAPPER.readValue(normalizeJson(text), CompanyProfileDto.class);
+    }
+
+    private String normalizeJson(String jsonString) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < jsonString.length(); i++) {
+            if (jsonString.charAt(i) == '\"') {
+                if (((i > 0) && (jsonString.charAt(i - 1) == '{' || jsonString.charAt(i - 1) == ',' || jsonString.charAt(i - 1) == ':')) || ((i < jsonString.length() - 1) && (jsonString.charAt(i + 1) == '}' || jsonString.charAt(i + 1) == ',' || jsonString.charAt(i + 1) == ':'))) {
+                    sb.append("\"");
+                } else {
+                    sb.append("\\\"");
+                }
+            } else {
+                sb.append(jsonString.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    private void set(CompanyProfileDto companyProfileDto, int field, String value) {
+        switch (field) {
+            case 0:
+                companyProfileDto.setSector(value);
+                break;
+            case 1:
+                companyProfileDto.setIndustry(value);
+                break;
+            case 2:
+                companyProfileDto.setCity(value);
+                break;
+            case 3:
+                companyProfileDto.setState(value);
+                break;
+            case 4:
+                companyProfileDto.setZip(value);
+                break;
+            case 5:
+                companyProfileDto.setWebsite(value);
+                break;
+            case 6:
+                companyProfileDto.setTicker(value);
+                break;
+            default:
+                companyProfileDto.setCeo(value);
+                break;
+        }
+    }
+
+    /**
+     * Walks the text as if every non-structural quote had been written as {@code \"}.
+     */
+    private static class Cursor {
+        private static final int EOF = -1;
+
+        private final String text;
+        private final int length;
+        private int position;
+        // the '\' of a virtual \" was returned, the quote itself is next
+        private boolean pendingQuote;
+
+        private Cursor(String text) {
+            this.text = text;
+            this.length = text.length();
+        }
+
+        private int peek() {
+            if (pendingQuote) {
+                return '"';
+            }
+            if (position >= length) {
+                return EOF;
+            }
+            char c = text.charAt(position);
+            return (c == '"' && !isStructuralQuote(position)) ? '\\' : c;
+        }
+
+        private void advance() {
+            if (pendingQuote) {
+                pendingQuote = false;
+                position++;
+            } else if (text.charAt(position) == '"' && !isStructuralQuote(position)) {
+                pendingQuote = true;
+            } else {
+                position++;
+            }
+        }
+
+        private boolean isStructuralQuote(int i) {
+            if (i > 0) {
+                char previous = text.charAt(i - 1);
+                if (previous == '{' || previous == ',' || previous == ':') {
+                    return true;
+                }
+            }
+            if (i < length - 1) {
+                char next = text.charAt(i + 1);
+                return next == '}' || next == ',' || next == ':';
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            int c;
+            while ((c = peek()) == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                advance();
+            }
+        }
+
+        private int readFieldName() throws ParseException {
+            int start = position;
+            if (scanPlainString()) {
+                int field = matchField(start, position);
+                advance();
+                if (field < 0) {
+                    throw error("Unrecognized field");
+                }
+                return field;
+            }
+            String name = readEscapedString(start);
+            for (int i = 0; i < FIELDS.length; i++) {
+                if (FIELDS[i].equals(name)) {
+                    return i;
+                }
+            }
+            throw error("Unrecognized field \"" + name + "\"");
+        }
+
+        private int matchField(int start, int end) {
+            for (int i = 0; i < FIELDS.length; i++) {
+                String field = FIELDS[i];
+                if (field.length() == end - start && text.regionMatches(start, field, 0, field.length())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String readValue() throws ParseException {
+            int c = peek();
+            if (c == '"') {
+                advance();
+                int start = position;
+                if (scanPlainString()) {
+                    String value = text.substring(start, position);
+                    advance();
+                    return value;
+                }
+                return readEscapedString(start);
+            }
+            if (c == 't') {
+                return expectLiteral("true");
+            }
+            if (c == 'f') {
+                return expectLiteral("false");
+            }
+            if (c == 'n') {
+                expectLiteral("null");
+                return null;
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return readNumber();
+            }
+            throw error("Expected a scalar value");
+        }
+
+        /**
+         * Advances over string content without escapes.
+         *
+         * @return true when the closing quote was reached, false when an escape needs the slow path
+         */
+        private boolean scanPlainString() throws ParseException {
+            while (true) {
+                int c = peek();
+                if (c == '"') {
+                    return true;
+                }
+                if (c == '\\') {
+                    return false;
+                }
+                if (c == EOF) {
+                    throw error("Unexpected end of text in a string");
+                }
+                if (c < 0x20) {
+                    throw error("Illegal unquoted control character");
+                }
+                position++;
+            }
+        }
+
+        private String readEscapedString(int start) throws ParseException {
+            StringBuilder sb = new StringBuilder(position - start + 16);
+            sb.append(text, start, position);
+            while (true) {
+                int c = peek();
+                if (c == EOF) {
+                    throw error("Unexpected end of text in a string");
+                }
+                advance();
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c < 0x20) {
+                    throw error("Illegal unquoted control character");
+                }
+                if (c != '\\') {
+                    sb.append((char) c);
+                    continue;
+                }
+                int escaped = peek();
+                if (escaped == EOF) {
+                    throw error("Unexpected end of text in an escape");
+                }
+                advance();
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append((char) escaped);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        sb.append(readUnicodeEscape());
+                        break;
+                    default:
+                        throw error("Unrecognized escape character");
+                }
+            }
+        }
+
+        private char readUnicodeEscape() throws ParseException {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(peek(), 16);
+                if (peek() == EOF || digit < 0) {
+                    throw error("Expected a hex digit");
+                }
+                advance();
+                value = (value << 4) | digit;
+            }
+            return (char) value;
+        }
+
+        private String readNumber() throws ParseException {
+            int start = position;
+            if (peek() == '-') {
+                advance();
+            }
+            int c = peek();
+            if (c == '0') {
+                advance();
+                if (isDigit(peek())) {
+                    throw error("Leading zeroes are not allowed");
+                }
+            } else if (!skipDigits()) {
+                throw error("Expected a digit");
+            }
+            if (peek() == '.') {
+                advance();
+                if (!skipDigits()) {
+                    throw error("Expected a digit after the decimal point");
+                }
+            }
+            c = peek();
+            if (c == 'e' || c == 'E') {
+                advance();
+                c = peek();
+                if (c == '+' || c == '-') {
+                    advance();
+                }
+                if (!skipDigits()) {
+                    throw error("Expected a digit in the exponent");
+                }
+            }
+            return text.substring(start, position);
+        }
+
+        private boolean skipDigits() {
+            boolean any = false;
+            while (isDigit(peek())) {
+                advance();
+                any = true;
+            }
+            return any;
+        }
+
+        private static boolean isDigit(int c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private String expectLiteral(String literal) throws ParseException {
+            for (int i = 0; i < literal.length(); i++) {
+                if (peek() != literal.charAt(i)) {
+                    throw error("Unrecognized token");
+                }
+                advance();
+            }
+            int next = peek();
+            if (next != EOF && Character.isJavaIdentifierPart((char) next)) {
+                throw error("Unrecognized token");
+            }
+            return literal;
+        }
+
+        private ParseException error(String message) {
+            return new ParseException(message + " at position " + position, position);
+        }
+    }
+}
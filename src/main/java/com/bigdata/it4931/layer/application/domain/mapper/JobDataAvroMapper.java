@@ -0,0 +1,121 @@
+package com.bigdata.it4931.layer.application.domain.mapper;
+
+import com.bigdata.it4931.config.avro.AvroSchemas;
+import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.utility.StringUtils;
+import lombok.experimental.UtilityClass;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+@UtilityClass
+public class JobDataAvroMapper {
+    private static final Schema COMPANY_PROFILE_SCHEMA = AvroSchemas.JOB_DATA.getField("companyProfile").schema();
+
+    /**
+     * Copies every value as is, for the wire format.
+     */
+    public GenericData.Record toRecord(JobDataDto jobData) {
+        return toRecord(jobData, false);
+    }
+
+    /**
+     * Leaves empty values unset, which is how rows are stored in Parquet.
+     */
+    public GenericData.Record toParquetRecord(JobDataDto jobData) {
+        return toRecord(jobData, true);
+    }
+
+    public JobDataDto toJobData(GenericRecord jobDataRecord) {
+        JobDataDto jobData = new JobDataDto();
+        jobData.setJobId(string(jobDataRecord.get("jobId")));
+        jobData.setExperience(string(jobDataRecord.get("experience")));
+        jobData.setQualifications(string(jobDataRecord.get("qualifications")));
+        jobData.setSalaryRange(string(jobDataRecord.get("salaryRange")));
+        jobData.setLocation(string(jobDataRecord.get("location")));
+        jobData.setCountry(string(jobDataRecord.get("country")));
+        jobData.setLatitude(string(jobDataRecord.get("latitude")));
+        jobData.setLongitude(string(jobDataRecord.get("longitude")));
+        jobData.setWorkType(string(jobDataRecord.get("workType")));
+        jobData.setCompanySize(string(jobDataRecord.get("companySize")));
+        jobData.setJobPostingDate(string(jobDataRecord.get("jobPostingDate")));
+        jobData.setPreference(string(jobDataRecord.get("preference")));
+        jobData.setContactPerson(string(jobDataRecord.get("contactPerson")));
+        jobData.setContact(string(jobDataRecord.get("contact")));
+        jobData.setJobTitle(string(jobDataRecord.get("jobTitle")));
+        jobData.setRole(string(jobDataRecord.get("role")));
+        jobData.setJobPortal(string(jobDataRecord.get("jobPortal")));
+        jobData.setJobDescription(string(jobDataRecord.get("jobDescription")));
+        jobData.setBenefits(string(jobDataRecord.get("benefits")));
+        jobData.setSkills(string(jobDataRecord.get("skills")));
+        jobData.setResponsibilities(string(jobDataRecord.get("responsibilities")));
+        jobData.setCompanyName(string(jobDataRecord.get("companyName")));
+
+        GenericRecord companyProfileRecord = (GenericRecord) jobDataRecord.get("companyProfile");
+        CompanyProfileDto companyProfile = new CompanyProfileDto();
+        if (companyProfileRecord != null) {
+            companyProfile.setSector(string(companyProfileRecord.get("sector")));
+            companyProfile.setIndustry(string(companyProfileRecord.get("industry")));
+            companyProfile.setCity(string(companyProfileRecord.get("city")));
+            companyProfile.setState(string(companyProfileRecord.get("state")));
+            companyProfile.setZip(string(companyProfileRecord.get("zip")));
+            companyProfile.setWebsite(string(companyProfileRecord.get("website")));
+            companyProfile.setTicker(string(companyProfileRecord.get("ticker")));
+            companyProfile.setCeo(string(companyProfileRecord.get("ceo")));
+        }
+        jobData.setCompanyProfile(companyProfile);
+        return jobData;
+    }
+
+    private GenericData.Record toRecord(JobDataDto jobData, boolean skipEmpty) {
+        GenericData.Record jobDataRecord = new GenericData.Record(AvroSchemas.JOB_DATA);
+        put(jobDataRecord, "jobId", jobData.getJobId(), skipEmpty);
+        put(jobDataRecord, "experience", jobData.getExperience(), skipEmpty);
+        put(jobDataRecord, "qualifications", jobData.getQualifications(), skipEmpty);
+        put(jobDataRecord, "salaryRange", jobData.getSalaryRange(), skipEmpty);
+        put(jobDataRecord, "location", jobData.getLocation(), skipEmpty);
+        put(jobDataRecord, "country", jobData.getCountry(), skipEmpty);
+        put(jobDataRecord, "latitude", jobData.getLatitude(), skipEmpty);
+        put(jobDataRecord, "longitude", jobData.getLongitude(), skipEmpty);
+        put(jobDataRecord, "workType", jobData.getWorkType(), skipEmpty);
+        put(jobDataRecord, "companySize", jobData.getCompanySize(), skipEmpty);
+        put(jobDataRecord, "jobPostingDate", jobData.getJobPostingDate(), skipEmpty);
+        put(jobDataRecord, "preference", jobData.getPreference(), skipEmpty);
+        put(jobDataRecord, "contactPerson", jobData.getContactPerson(), skipEmpty);
+        put(jobDataRecord, "contact", jobData.getContact(), skipEmpty);
+        put(jobDataRecord, "jobTitle", jobData.getJobTitle(), skipEmpty);
+        put(jobDataRecord, "role", jobData.getRole(), skipEmpty);
+        put(jobDataRecord, "jobPortal", jobData.getJobPortal(), skipEmpty);
+        put(jobDataRecord, "jobDescription", jobData.getJobDescription(), skipEmpty);
+        put(jobDataRecord, "benefits", jobData.getBenefits(), skipEmpty);
+        put(jobDataRecord, "skills", jobData.getSkills(), skipEmpty);
+        put(jobDataRecord, "responsibilities", jobData.getResponsibilities(), skipEmpty);
+        put(jobDataRecord, "companyName", jobData.getCompanyName(), skipEmpty);
+
+        GenericData.Record companyProfileRecord = new GenericData.Record(COMPANY_PROFILE_SCHEMA);
+        CompanyProfileDto companyProfile = jobData.getCompanyProfile();
+        if (companyProfile != null) {
+            put(companyProfileRecord, "sector", companyProfile.getSector(), skipEmpty);
+            put(companyProfileRecord, "industry", companyProfile.getIndustry(), skipEmpty);
+            put(companyProfileRecord, "city", companyProfile.getCity(), skipEmpty);
+            put(companyProfileRecord, "state", companyProfile.getState(), skipEmpty);
+            put(companyProfileRecord, "zip", companyProfile.getZip(), skipEmpty);
+            put(companyProfileRecord, "website", companyProfile.getWebsite(), skipEmpty);
+            put(companyProfileRecord, "ticker", companyProfile.getTicker(), skipEmpty);
+            put(companyProfileRecord, "ceo", companyProfile.getCeo(), skipEmpty);
+        }
+        jobDataRecord.put("companyProfile", companyProfileRecord);
+        return jobDataRecord;
+    }
+
+    private void put(GenericData.Record record, String field, String value, boolean skipEmpty) {
+        if (skipEmpty ? !StringUtils.isNullOrEmpty(value) : value != null) {
+            record.put(field, value);
+        }
+    }
+
+    private String string(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.bigdata.it4931.layer.application.domain.mapper;
+
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.utility.StringUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+import java.text.ParseException;
+
+@Slf4j
+@UtilityClass
+public class JobDataCsvMapper {
+    public static final int COLUMN_COUNT = 23;
+    public static final String[] HEADER = {
+            "Job Id", "Experience", "Qualifications", "Salary Range", "location", "Country", "latitude", "longitude",
+            "Work Type", "Company Size", "Job Posting Date", "Preference", "Contact Person", "Contact", "Job Title",
+            "Role", "Job Portal", "Job Description", "Benefits", "skills", "Responsibilities", "Company",
+            "Company Profile"
+    };
+
+    public JobDataDto toJobData(String[] record) {
+        if (record.length < COLUMN_COUNT) {
+            log.warn("Skipping CSV record with {} column(s), expected {}", record.length, COLUMN_COUNT);
+            return null;
+        }
+
+        JobDataDto jobDataDto = new JobDataDto();
+        jobDataDto.setJobId(record[0]);
+        jobDataDto.setExperience(record[1]);
+        jobDataDto.setQualifications(record[2]);
+        jobDataDto.setSalaryRange(record[3]);
+        jobDataDto.setLocation(record[4]);
+        jobDataDto.setCountry(record[5]);
+        jobDataDto.setLatitude(record[6]);
+        jobDataDto.setLongitude(record[7]);
+        jobDataDto.setWorkType(record[8]);
+        jobDataDto.setCompanySize(record[9]);
+        jobDataDto.setJobPostingDate(record[10]);
+        jobDataDto.setPreference(record[11]);
+        jobDataDto.setContactPerson(record[12]);
+        jobDataDto.setContact(record[13]);
+        jobDataDto.setJobTitle(record[14]);
+        jobDataDto.setRole(record[15]);
+        jobDataDto.setJobPortal(record[16]);
+        jobDataDto.setJobDescription(record[17]);
+        jobDataDto.setBenefits(record[18]);
+        jobDataDto.setSkills(record[19]);
+        jobDataDto.setResponsibilities(record[20]);
+        jobDataDto.setCompanyName(record[21]);
+        jobDataDto.setCompanyProfile(toCompanyProfile(record[22]));
+        return jobDataDto;
+    }
+
+    public String[] toRecord(JobDataDto jobDataDto) throws JsonProcessingException {
+        return new String[]{
+                jobDataDto.getJobId(),
+                jobDataDto.getExperience(),
+                jobDataDto.getQualifications(),
+                jobDataDto.getSalaryRange(),
+                jobDataDto.getLocation(),
+                jobDataDto.getCountry(),
+                jobDataDto.getLatitude(),
+                jobDataDto.getLongitude(),
+                jobDataDto.getWorkType(),
+                jobDataDto.getCompanySize(),
+                jobDataDto.getJobPostingDate(),
+                jobDataDto.getPreference(),
+                jobDataDto.getContactPerson(),
+                jobDataDto.getContact(),
+                jobDataDto.getJobTitle(),
+                jobDataDto.getRole(),
+                jobDataDto.getJobPortal(),
+                jobDataDto.getJobDescription(),
+                jobDataDto.getBenefits(),
+                jobDataDto.getSkills(),
+                jobDataDto.getResponsibilities(),
+                jobDataDto.getCompanyName(),
+                jobDataDto.getCompanyProfile() == null ? "" : Constants.OBJECT_MAPPER.writeValueAsString(jobDataDto.getCompanyProfile())
+        };
+    }
+
+    private CompanyProfileDto toCompanyProfile(String companyProfile) {
+        if (StringUtils.isNullOrEmpty(companyProfile)) {
+            return new CompanyProfileDto();
+        }
+        try {
+            return CompanyProfileParser.parse(companyProfile);
+        } catch (ParseException e) {
+            log.info("Company profile: {}", companyProfile);
+            log.error("Failed to parse company profile", e);
+            return new CompanyProfileDto();
+        }
+    }
+}
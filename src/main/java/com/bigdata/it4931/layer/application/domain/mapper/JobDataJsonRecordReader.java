@@ -0,0 +1,111 @@
+package com.bigdata.it4931.layer.application.domain.mapper;
+
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.config.avro.AvroSchemas;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.experimental.UtilityClass;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streams the JSON of a {@link com.bigdata.it4931.layer.application.domain.dto.JobDataDto} straight into the Parquet
+ * record {@link JobDataAvroMapper#toParquetRecord} would build from it, without the DTO. It follows the same Jackson
+ * rules as {@code readValue}: scalars are taken as text, unknown properties are rejected and trailing content is
+ * ignored.
+ */
+@UtilityClass
+public class JobDataJsonRecordReader {
+    private static final JsonFactory JSON_FACTORY = Constants.OBJECT_MAPPER.getFactory();
+    private static final Schema COMPANY_PROFILE_SCHEMA = AvroSchemas.JOB_DATA.getField("companyProfile").schema();
+    private static final int COMPANY_PROFILE_POSITION = AvroSchemas.JOB_DATA.getField("companyProfile").pos();
+    private static final Map<String, Integer> JOB_DATA_FIELDS = new HashMap<>();
+    private static final Map<String, Integer> COMPANY_PROFILE_FIELDS = new HashMap<>();
+
+    static {
+        for (Schema.Field field : AvroSchemas.JOB_DATA.getFields()) {
+            if (field.pos() != COMPANY_PROFILE_POSITION) {
+                JOB_DATA_FIELDS.put(field.name(), field.pos());
+            }
+        }
+        // CompanyProfileDto renames its properties with @JsonProperty
+        String[] jsonNames = {"Sector", "Industry", "City", "State", "Zip", "Website", "Ticker", "CEO"};
+        String[] fieldNames = {"sector", "industry", "city", "state", "zip", "website", "ticker", "ceo"};
+        for (int i = 0; i < jsonNames.length; i++) {
+            COMPANY_PROFILE_FIELDS.put(jsonNames[i], COMPANY_PROFILE_SCHEMA.getField(fieldNames[i]).pos());
+        }
+    }
+
+    /**
+     * @return the record, or {@code null} when the message is the JSON literal {@code null}
+     */
+    public GenericData.Record read(byte[] message) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(message)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            expectObject(parser, token);
+            GenericData.Record jobDataRecord = new GenericData.Record(AvroSchemas.JOB_DATA);
+            GenericData.Record companyProfileRecord = new GenericData.Record(COMPANY_PROFILE_SCHEMA);
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                token = parser.nextToken();
+                if (name.equals("companyProfile")) {
+                    companyProfileRecord = new GenericData.Record(COMPANY_PROFILE_SCHEMA);
+                    if (token != JsonToken.VALUE_NULL) {
+                        expectObject(parser, token);
+                        readFields(parser, companyProfileRecord, COMPANY_PROFILE_FIELDS);
+                    }
+                    continue;
+                }
+                put(parser, token, jobDataRecord, field(parser, JOB_DATA_FIELDS, name));
+            }
+            if (token != JsonToken.END_OBJECT) {
+                throw new JsonParseException(parser, "Expected a field name or '}'");
+            }
+            jobDataRecord.put(COMPANY_PROFILE_POSITION, companyProfileRecord);
+            return jobDataRecord;
+        }
+    }
+
+    private void readFields(JsonParser parser, GenericData.Record record, Map<String, Integer> fields) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            int position = field(parser, fields, parser.getCurrentName());
+            put(parser, parser.nextToken(), record, position);
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new JsonParseException(parser, "Expected a field name or '}'");
+        }
+    }
+
+    private void put(JsonParser parser, JsonToken token, GenericData.Record record, int position) throws IOException {
+        if (token == null || !token.isScalarValue()) {
+            throw new JsonParseException(parser, "Expected a scalar value for " + record.getSchema().getFields().get(position).name());
+        }
+        // empty values are left unset like JobDataAvroMapper#toParquetRecord does, a later duplicate key still wins
+        String value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+        record.put(position, value == null || value.isEmpty() ? null : value);
+    }
+
+    private int field(JsonParser parser, Map<String, Integer> fields, String name) throws JsonParseException {
+        Integer position = fields.get(name);
+        if (position == null) {
+            throw new JsonParseException(parser, "Unrecognized field \"" + name + "\"");
+        }
+        return position;
+    }
+
+    private void expectObject(JsonParser parser, JsonToken token) throws JsonParseException {
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected '{'");
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.bigdata.it4931.layer.application.domain.mapper;
+
+import com.bigdata.it4931.config.avro.AvroSchemas;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns records of the all-text {@link AvroSchemas#JOB_DATA} into records of the typed {@link AvroSchemas#JOB_DATA_V2},
+ * parsing every value once: {@code "$59K-$99K"} becomes {@code salaryMin = 59000, salaryMax = 99000},
+ * {@code "5 to 15 Years"} becomes {@code experienceMinYears = 5, experienceMaxYears = 15}, coordinates become doubles,
+ * the company size an int and the posting date a {@code date}. A value that cannot be parsed leaves the typed fields
+ * null and is kept as text in the v2 field named like its v1 field, which is null otherwise, and counted against it.
+ * <p>
+ * The typed fields have names of their own, so v1 and v2 files can be read together: Spark merges both schemas with
+ * {@code mergeSchema}, and {@link #upgrade(GenericRecord)} brings a v1 record read from a file to v2.
+ */
+public class JobDataTypedMapper {
+    private static final Schema SCHEMA = AvroSchemas.JOB_DATA_V2;
+    private static final int EXPERIENCE_MIN_YEARS = SCHEMA.getField("experienceMinYears").pos();
+    private static final int EXPERIENCE_MAX_YEARS = SCHEMA.getField("experienceMaxYears").pos();
+    private static final int SALARY_MIN = SCHEMA.getField("salaryMin").pos();
+    private static final int SALARY_MAX = SCHEMA.getField("salaryMax").pos();
+    private static final int LATITUDE_DEGREES = SCHEMA.getField("latitudeDegrees").pos();
+    private static final int LONGITUDE_DEGREES = SCHEMA.getField("longitudeDegrees").pos();
+    private static final int EMPLOYEE_COUNT = SCHEMA.getField("employeeCount").pos();
+    private static final int POSTING_DATE = SCHEMA.getField("postingDate").pos();
+    // v1 fields parsed into typed ones, v2 keeps their text under the same name when it could not be parsed
+    private static final Set<String> PARSED_FIELDS = new HashSet<>(Arrays.asList(
+            "experience", "salaryRange", "latitude", "longitude", "companySize", "jobPostingDate"));
+    // other fields both schemas have, as pairs of v1 and v2 positions
+    private static final int[][] COPIED_FIELDS = copiedFields();
+
+    private final Map<String, LongAdder> parseFailures = new ConcurrentHashMap<>();
+
+    public static boolean isTyped(Schema schema) {
+        return schema.getField("postingDate") != null;
+    }
+
+    /**
+     * @return the record itself when it is already typed, its typed copy otherwise
+     */
+    public GenericData.Record upgrade(GenericRecord jobDataRecord) {
+        if (isTyped(jobDataRecord.getSchema())) {
+            return (GenericData.Record) jobDataRecord;
+        }
+        return toTyped(jobDataRecord);
+    }
+
+    public GenericData.Record toTyped(GenericRecord jobDataRecord) {
+        GenericData.Record typedRecord = new GenericData.Record(SCHEMA);
+        for (int[] field : COPIED_FIELDS) {
+            typedRecord.put(field[1], jobDataRecord.get(field[0]));
+        }
+        putExperience(typedRecord, text(jobDataRecord.get("experience")));
+        putSalaryRange(typedRecord, text(jobDataRecord.get("salaryRange")));
+        typedRecord.put(LATITUDE_DEGREES, parseCoordinate(typedRecord, "latitude", text(jobDataRecord.get("latitude")), 90));
+        typedRecord.put(LONGITUDE_DEGREES, parseCoordinate(typedRecord, "longitude", text(jobDataRecord.get("longitude")), 180));
+        typedRecord.put(EMPLOYEE_COUNT, parseCount(typedRecord, text(jobDataRecord.get("companySize"))));
+        typedRecord.put(POSTING_DATE, parseDate(typedRecord, text(jobDataRecord.get("jobPostingDate"))));
+        return typedRecord;
+    }
+
+    /**
+     * @return the number of values that could not be parsed so far, by v1 field
+     */
+    public Map<String, Long> getParseFailures() {
+        Map<String, Long> failures = new TreeMap<>();
+        parseFailures.forEach((field, count) -> failures.put(field, count.sum()));
+        return failures;
+    }
+
+    private void putExperience(GenericData.Record typedRecord, String value) {
+        if (value == null) {
+            return;
+        }
+        // "5 to 15 Years", a single number is a range of its own
+        List<Integer> numbers = new ArrayList<>(2);
+        int i = 0;
+        while (i < value.length() && numbers.size() <= 2) {
+            if (Character.isDigit(value.charAt(i))) {
+                int start = i;
+                while (i < value.length() && Character.isDigit(value.charAt(i))) {
+                    i++;
+                }
+                numbers.add(i - start > 9 ? -1 : Integer.parseInt(value.substring(start, i)));
+            } else {
+                i++;
+            }
+        }
+        if (numbers.isEmpty() || numbers.size() > 2 || numbers.contains(-1) || numbers.get(0) > numbers.get(numbers.size() - 1)) {
+            fail(typedRecord, "experience", value);
+            return;
+        }
+        typedRecord.put(EXPERIENCE_MIN_YEARS, numbers.get(0));
+        typedRecord.put(EXPERIENCE_MAX_YEARS, numbers.get(numbers.size() - 1));
+    }
+
+    private void putSalaryRange(GenericData.Record typedRecord, String value) {
+        if (value == null) {
+            return;
+        }
+        // "$59K-$99K", a single amount is a range of its own
+        int dash = value.indexOf('-');
+        Integer min = parseAmount(dash < 0 ? value : value.substring(0, dash));
+        Integer max = dash < 0 ? min : parseAmount(value.substring(dash + 1));
+        if (min == null || max == null || min > max) {
+            fail(typedRecord, "salaryRange", value);
+            return;
+        }
+        typedRecord.put(SALARY_MIN, min);
+        typedRecord.put(SALARY_MAX, max);
+    }
+
+    private static Integer parseAmount(String value) {
+        String amount = value.trim();
+        if (amount.startsWith("$")) {
+            amount = amount.substring(1).trim();
+        }
+        long multiplier = 1;
+        if (amount.endsWith("K") || amount.endsWith("k")) {
+            multiplier = 1000;
+            amount = amount.substring(0, amount.length() - 1).trim();
+        }
+        Integer parsed = parseInt(amount.replace(",", ""));
+        if (parsed == null || parsed < 0 || parsed * multiplier > Integer.MAX_VALUE) {
+            return null;
+        }
+        return (int) (parsed * multiplier);
+    }
+
+    private Double parseCoordinate(GenericData.Record typedRecord, String field, String value, double limit) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            double degrees = Double.parseDouble(value.trim());
+            if (Math.abs(degrees) <= limit) {
+                return degrees;
+            }
+        } catch (NumberFormatException e) {
+            // counted below
+        }
+        fail(typedRecord, field, value);
+        return null;
+    }
+
+    private Integer parseCount(GenericData.Record typedRecord, String value) {
+        if (value == null) {
+            return null;
+        }
+        Integer count = parseInt(value.trim().replace(",", ""));
+        if (count == null || count < 0) {
+            fail(typedRecord, "companySize", value);
+            return null;
+        }
+        return count;
+    }
+
+    private Integer parseDate(GenericData.Record typedRecord, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            // like the partitioner, a time after the date is ignored
+            return (int) LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value).toEpochDay();
+        } catch (DateTimeParseException e) {
+            fail(typedRecord, "jobPostingDate", value);
+            return null;
+        }
+    }
+
+    private static Integer parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void fail(GenericData.Record typedRecord, String field, String value) {
+        typedRecord.put(field, value);
+        parseFailures.computeIfAbsent(field, key -> new LongAdder()).increment();
+    }
+
+    private static String text(Object value) {
+        return value == null || value.toString().isEmpty() ? null : value.toString();
+    }
+
+    private static int[][] copiedFields() {
+        List<int[]> fields = new ArrayList<>();
+        for (Schema.Field field : AvroSchemas.JOB_DATA.getFields()) {
+            Schema.Field typedField = SCHEMA.getField(field.name());
+            if (typedField != null && !PARSED_FIELDS.contains(field.name())) {
+                fields.add(new int[]{field.pos(), typedField.pos()});
+            }
+        }
+        return fields.toArray(new int[0][]);
+    }
+}
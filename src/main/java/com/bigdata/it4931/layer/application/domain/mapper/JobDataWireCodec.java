@@ -0,0 +1,90 @@
+package com.bigdata.it4931.layer.application.domain.mapper;
+
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.config.avro.AvroSchemas;
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.infrastructure.kafka.message.WireFormat;
+import lombok.experimental.UtilityClass;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.message.BinaryMessageDecoder;
+import org.apache.avro.message.BinaryMessageEncoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes {@link JobDataDto}s as Kafka message values. Avro messages start with a header carrying the fingerprint of
+ * the writer schema, so {@link #decode(byte[])} tells both formats apart without any configuration.
+ */
+@UtilityClass
+public class JobDataWireCodec {
+    /**
+     * {@code C3 01} followed by the 8-byte CRC-64-AVRO fingerprint of the schema.
+     */
+    public static final int AVRO_HEADER_LENGTH = 10;
+
+    // both keep their buffers in thread locals and are safe to share
+    private static final BinaryMessageEncoder<GenericRecord> ENCODER = new BinaryMessageEncoder<>(GenericData.get(), AvroSchemas.JOB_DATA, false);
+    private static final BinaryMessageDecoder<GenericRecord> DECODER = new BinaryMessageDecoder<>(GenericData.get(), AvroSchemas.JOB_DATA);
+
+    public byte[] encode(JobDataDto jobData, WireFormat wireFormat) throws IOException {
+        if (wireFormat == WireFormat.JSON) {
+            return Constants.OBJECT_MAPPER.writeValueAsBytes(jobData);
+        }
+        GenericData.Record jobDataRecord = JobDataAvroMapper.toRecord(jobData);
+        // jobId and jobPostingDate are not nullable, an empty value is dropped again when the row is stored
+        for (Schema.Field field : AvroSchemas.JOB_DATA.getFields()) {
+            if (field.schema().getType() == Schema.Type.STRING && jobDataRecord.get(field.pos()) == null) {
+                jobDataRecord.put(field.pos(), "");
+            }
+        }
+        ByteBuffer buffer = ENCODER.encode(jobDataRecord);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @throws org.apache.avro.AvroRuntimeException when an Avro message was written with an unknown schema
+     */
+    public JobDataDto decode(byte[] message) throws IOException {
+        if (isAvro(message)) {
+            return JobDataAvroMapper.toJobData(DECODER.decode(message));
+        }
+        return Constants.OBJECT_MAPPER.readValue(message, JobDataDto.class);
+    }
+
+    /**
+     * Decodes a message straight into the record {@link JobDataAvroMapper#toParquetRecord} would build from
+     * {@link #decode(byte[])}, without the DTO.
+     *
+     * @return the record, or {@code null} for a JSON {@code null} message
+     * @throws org.apache.avro.AvroRuntimeException when an Avro message was written with an unknown schema
+     */
+    public GenericData.Record decodeParquetRecord(byte[] message) throws IOException {
+        if (!isAvro(message)) {
+            return JobDataJsonRecordReader.read(message);
+        }
+        GenericData.Record jobDataRecord = (GenericData.Record) DECODER.decode(message);
+        clearEmptyStrings(jobDataRecord);
+        return jobDataRecord;
+    }
+
+    public boolean isAvro(byte[] message) {
+        // 0xC3 0x01 is not valid UTF-8, so JSON text never starts with it
+        return message.length >= AVRO_HEADER_LENGTH && message[0] == (byte) 0xC3 && message[1] == 0x01;
+    }
+
+    private void clearEmptyStrings(GenericData.Record record) {
+        for (Schema.Field field : record.getSchema().getFields()) {
+            Object value = record.get(field.pos());
+            if (value instanceof CharSequence && ((CharSequence) value).length() == 0) {
+                record.put(field.pos(), null);
+            } else if (value instanceof GenericData.Record) {
+                clearEmptyStrings((GenericData.Record) value);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+/**
+ * Rolls a file when its size is expected to reach the target once closed. {@code getDataSize()} counts the row group
+ * still in memory before it is compressed, so the estimate is corrected by how the files rolled so far turned out.
+ */
+public class AdaptiveSizeRollPolicy implements RollPolicy {
+    private static final double SMOOTHING = 0.3;
+
+    private final long limitBytes;
+    private volatile double correction = 1.0;
+
+    public AdaptiveSizeRollPolicy(long targetBytes) {
+        // aims a little short so that a file over the estimate still fits in the blocks it was meant for
+        this.limitBytes = targetBytes - targetBytes / 32;
+    }
+
+    @Override
+    public RollReason shouldRoll(OpenFileStats file, long now) {
+        return file.dataSize() * correction >= limitBytes ? RollReason.SIZE : null;
+    }
+
+    /**
+     * @param estimatedBytes the data size of a file when this policy rolled it
+     * @param actualBytes    its length once closed
+     */
+    public synchronized void observe(long estimatedBytes, long actualBytes) {
+        if (estimatedBytes <= 0 || actualBytes <= 0) {
+            return;
+        }
+        double ratio = Math.min(Math.max((double) actualBytes / estimatedBytes, 0.25), 4.0);
+        correction = (1 - SMOOTHING) * correction + SMOOTHING * ratio;
+    }
+}
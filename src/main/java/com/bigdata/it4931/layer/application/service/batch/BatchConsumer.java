@@ -1,45 +1,105 @@
 package com.bigdata.it4931.layer.application.service.batch;
 
-import com.bigdata.it4931.config.Constants;
-import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataWireCodec;
 import com.bigdata.it4931.layer.application.service.serving.ConsumeRunner;
 import com.bigdata.it4931.layer.infrastructure.kafka.message.KafkaMessage;
 import com.bigdata.it4931.layer.infrastructure.kafka.read.KafkaBrokerReader;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.generic.GenericData;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @Slf4j
-public class BatchConsumer extends KafkaBrokerReader implements ConsumeRunner {
+public class BatchConsumer extends KafkaBrokerReader<byte[]> implements ConsumeRunner {
+    private static final int DECODE_CHUNK_SIZE = 128;
+
     private final HdfsParquetService hdfsParquetService;
+    private final ExecutorService decodeExecutor;
 
     public BatchConsumer(@Qualifier("kafkaBrokerBatchReaderProperties") Properties props,
                          @Value("${kafka.consumer.topic}") String topic,
+                         @Value("${kafka.consumer.batch-decode-threads:0}") int decodeThreads,
                          HdfsParquetService hdfsParquetService) {
-        super(props, Collections.singletonList(topic), 1, 10, 5);
+        // offsets are committed when the parquet file holding the records is published, not per batch
+        super(props, Collections.singletonList(topic), 1, 500, 5);
         this.hdfsParquetService = hdfsParquetService;
+        this.decodeExecutor = Executors.newFixedThreadPool(decodeThreads > 0 ? decodeThreads : Math.max(Runtime.getRuntime().availableProcessors() - 1, 1),
+                new ThreadFactoryBuilder().setNameFormat("batch-decode-%d").build());
     }
 
+    /**
+     * Decodes the batch in chunks on the decode pool, parsing the records into the schema of the files there, and queues
+     * them in offset order for the single parquet writer.
+     */
     @Override
-    public void processing(List<KafkaMessage<String>> messages) {
-        List<JobDataDto> jobDataList = new ArrayList<>();
-        for (KafkaMessage<String> message : messages) {
+    public void processing(List<KafkaMessage<byte[]>> messages) {
+        List<CompletableFuture<GenericData.Record[]>> chunks = new ArrayList<>();
+        for (int from = 0; from < messages.size(); from += DECODE_CHUNK_SIZE) {
+            List<KafkaMessage<byte[]>> chunk = messages.subList(from, Math.min(from + DECODE_CHUNK_SIZE, messages.size()));
+            chunks.add(chunks.isEmpty() && chunk.size() == messages.size()
+                    ? CompletableFuture.completedFuture(decode(chunk))
+                    : CompletableFuture.supplyAsync(() -> decode(chunk), decodeExecutor));
+        }
+        int index = 0;
+        for (CompletableFuture<GenericData.Record[]> chunk : chunks) {
+            for (GenericData.Record jobDataRecord : chunk.join()) {
+                KafkaMessage<byte[]> message = messages.get(index++);
+                hdfsParquetService.save(new TopicPartition(message.topic(), message.partition()), message.offset(), message.timestamp(), jobDataRecord);
+            }
+        }
+    }
+
+    private GenericData.Record[] decode(List<KafkaMessage<byte[]>> messages) {
+        GenericData.Record[] records = new GenericData.Record[messages.size()];
+        for (int i = 0; i < records.length; i++) {
             try {
-                JobDataDto jobData = Constants.OBJECT_MAPPER.readValue(message.value(), JobDataDto.class);
-                jobDataList.add(jobData);
-            } catch (JsonProcessingException e) {
+                records[i] = hdfsParquetService.toStored(JobDataWireCodec.decodeParquetRecord(messages.get(i).value()));
+            } catch (IOException | AvroRuntimeException e) {
                 log.error("Error when parse job data {}", e.getMessage(), e);
             }
         }
-        hdfsParquetService.save(jobDataList);
+        return records;
+    }
+
+    @Override
+    protected long committableOffset(TopicPartition partition, long processedOffset) {
+        return hdfsParquetService.committedOffset(partition);
+    }
+
+    @Override
+    protected void flush(Collection<TopicPartition> partitions) {
+        hdfsParquetService.flush();
+    }
+
+    @Override
+    protected Map<TopicPartition, Long> recoverPositions(Map<TopicPartition, Long> committed) {
+        return hdfsParquetService.recoverOffsets(committed);
+    }
+
+    @Override
+    protected boolean isSaturated() {
+        return hdfsParquetService.isSaturated();
+    }
+
+    @Override
+    protected boolean canResume() {
+        return hdfsParquetService.isDrained();
     }
 
     @Override
@@ -47,4 +107,10 @@ public class BatchConsumer extends KafkaBrokerReader implements ConsumeRunner {
         log.info("Starting batch-layer consumer");
         super.start();
     }
+
+    @Override
+    public void stop() {
+        super.stop();
+        decodeExecutor.shutdown();
+    }
 }
@@ -0,0 +1,100 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import com.bigdata.it4931.config.Constants;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The files a merge replaces and the file replacing them, kept in {@code <root>/_compaction/<instance>/<id>} from
+ * before the merged file is published until the files it replaces are deleted. Readers listing the partitions use it
+ * to leave out the replaced files once the merged one is in place, so they never see the rows of a merge twice.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompactionJournal {
+    public static final String COMPACTION = "_compaction";
+    private static final String JOURNAL = "journal.json";
+
+    private String target;
+    private List<String> inputs;
+
+    public static CompactionJournal read(FileSystem fileSystem, Path work) throws IOException {
+        try (FSDataInputStream inputStream = fileSystem.open(new Path(work, JOURNAL))) {
+            return Constants.OBJECT_MAPPER.readValue((InputStream) inputStream, CompactionJournal.class);
+        }
+    }
+
+    public static boolean exists(FileSystem fileSystem, Path work) throws IOException {
+        return fileSystem.exists(new Path(work, JOURNAL));
+    }
+
+    /**
+     * Writes the journal next to a temporary name and renames it into place, so it is either complete or absent.
+     */
+    public void write(FileSystem fileSystem, Path work) throws IOException {
+        Path temporary = new Path(work, JOURNAL + ".tmp");
+        try (FSDataOutputStream outputStream = fileSystem.create(temporary, true)) {
+            outputStream.write(Constants.OBJECT_MAPPER.writeValueAsBytes(this));
+            outputStream.hsync();
+        }
+        if (!fileSystem.rename(temporary, new Path(work, JOURNAL))) {
+            throw new IOException("Failed to write the journal of " + target);
+        }
+    }
+
+    /**
+     * Reads the journals of every instance, after listing the files. A journal outlives the inputs it names, so an
+     * input listed together with its published target is either left out here or already deleted when it is read.
+     *
+     * @return the files below {@code root} whose rows are in a published merged file
+     */
+    public static Set<Path> replacedFiles(FileSystem fileSystem, Path root) throws IOException {
+        Set<Path> replaced = new HashSet<>();
+        for (FileStatus instance : listDirectories(fileSystem, new Path(root, COMPACTION))) {
+            for (FileStatus work : listDirectories(fileSystem, instance.getPath())) {
+                CompactionJournal journal;
+                try {
+                    journal = read(fileSystem, work.getPath());
+                } catch (FileNotFoundException e) {
+                    // not journaled yet, or finished meanwhile
+                    continue;
+                }
+                if (fileSystem.exists(new Path(journal.getTarget()))) {
+                    for (String input : journal.getInputs()) {
+                        replaced.add(new Path(input));
+                    }
+                }
+            }
+        }
+        return replaced;
+    }
+
+    private static List<FileStatus> listDirectories(FileSystem fileSystem, Path directory) throws IOException {
+        List<FileStatus> directories = new ArrayList<>();
+        try {
+            for (FileStatus status : fileSystem.listStatus(directory)) {
+                if (status.isDirectory()) {
+                    directories.add(status);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // nothing was compacted yet
+        }
+        return directories;
+    }
+}
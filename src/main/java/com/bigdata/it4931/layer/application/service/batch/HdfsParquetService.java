@@ -1,19 +1,21 @@
 package com.bigdata.it4931.layer.application.service.batch;
 
+import com.bigdata.it4931.config.avro.AvroSchemas;
 import com.bigdata.it4931.config.hdfs.HdfsConfiguration;
-import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
 import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataAvroMapper;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataTypedMapper;
 import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
-import com.bigdata.it4931.utility.StringUtils;
+import com.bigdata.it4931.layer.infrastructure.hdfs.impl.write.AvroFooterParquetWriter;
 import com.bigdata.it4931.utility.concurrent.AsyncCallback;
 import com.bigdata.it4931.utility.concurrent.BatchProcessor;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
-import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.parquet.hadoop.ParquetFileWriter;
 import org.apache.parquet.hadoop.ParquetWriter;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
@@ -22,335 +24,555 @@ import org.apache.parquet.io.OutputFile;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.sql.Date;
-import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes job data to Parquet files in Hive-style partitions of the posting date, keeping one open file per partition
+ * up to {@code hadoop.hdfs.writer.max-open}, least recently used first out. When a file is closed is up to a
+ * {@link RollPolicy} built from the {@code hadoop.hdfs.roll} settings, closing happens on a bounded pool. Files are
+ * published through a {@link ParquetCommitProtocol}, so the Kafka offsets of the records saved with
+ * {@link #save(TopicPartition, long, long, GenericData.Record)} become committable when the files holding them are renamed
+ * into place.
+ * <p>
+ * With {@code hadoop.hdfs.schema.version=2} records are stored in the typed {@link AvroSchemas#JOB_DATA_V2}. The
+ * {@link BatchConsumer} parses them on its decode pool with {@link #toStored(GenericData.Record)}, records saved
+ * in the v1 schema are parsed by the thread saving them.
+ */
 @Service
 @Slf4j
 public class HdfsParquetService {
-    private static final Schema SCHEMA;
-    private static final String SCHEMA_LOCATION = "config/avroToParquet.avsc";
-    private final BatchProcessor<JobDataDto, Object> queue;
+    private static final long FLUSH_TIMEOUT_MS = 60_000;
+    private static final long DEFAULT_BLOCK_SIZE = 128L * 1024 * 1024;
+    private static final long RECORD_OVERHEAD_BYTES = 64;
+
+    private final BatchProcessor<SourcedRecord, Object> queue;
     private final ExecutorService taskExecutor;
-    private final SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+    private final ExecutorService closeExecutor;
     private final HdfsConfiguration hdfsConfiguration;
 
-    static {
-        try (InputStream inputStream = new FileInputStream(SCHEMA_LOCATION)) {
-            SCHEMA = new Schema.Parser().parse(inputStream);
-        } catch (Exception e) {
-            log.error("Failed to load schema from " + SCHEMA_LOCATION, e);
-            throw new RuntimeException(e);
-        }
-    }
-
     private final IHdfsAdapter hdfsAdapter;
-    private volatile ParquetWriter<GenericData.Record> writer;
-    private final long fileSizeThreshold;
-    private Path path;
+    private final ParquetCommitProtocol commitProtocol;
+    private final JobDataPartitioner partitioner;
+    // open files by partition in access order, guarded by this
+    private final LinkedHashMap<String, OpenFile> writers = new LinkedHashMap<>(16, 0.75f, true);
+    // last offset written per Kafka partition, records at or below it are redeliveries
+    private final Map<TopicPartition, Long> lastOffsets = new HashMap<>();
+    private final AtomicInteger fileCounter = new AtomicInteger();
+    private final RollPolicy rollPolicy;
+    private final AdaptiveSizeRollPolicy sizePolicy;
+    private final ParquetFileStatistics statistics;
+    private final ParquetWriterMetrics metrics;
+    private final ParquetLayout layout;
+    private final Schema schema;
+    private final JobDataTypedMapper typedMapper;
+    private final long targetFileSize;
+    private final int maxOpenWriters;
+    private final String instanceId;
     private volatile AtomicBoolean stopped = new AtomicBoolean(false);
 
     public HdfsParquetService(IHdfsAdapter hdfsAdapter,
-                              HdfsConfiguration hdfsConfiguration) {
+                              HdfsConfiguration hdfsConfiguration,
+                              MeterRegistry meterRegistry) {
         this.hdfsAdapter = hdfsAdapter;
-        this.fileSizeThreshold = hdfsConfiguration.getHdfsFileMaxSize() * 1024 * 1024L - 502400;
+        this.hdfsConfiguration = hdfsConfiguration;
+        this.maxOpenWriters = Math.max(hdfsConfiguration.getWriterMaxOpen(), 1);
+        this.instanceId = instanceId(hdfsConfiguration);
+        this.partitioner = new JobDataPartitioner(hdfsConfiguration.isPartitionByCountry());
+        this.targetFileSize = targetFileSize(hdfsConfiguration, hdfsAdapter.getConfiguration().getLongBytes("dfs.blocksize", DEFAULT_BLOCK_SIZE));
+        this.sizePolicy = new AdaptiveSizeRollPolicy(targetFileSize);
+        this.rollPolicy = rollPolicy(hdfsConfiguration, sizePolicy);
+        this.statistics = new ParquetFileStatistics(targetFileSize);
+        this.metrics = new ParquetWriterMetrics(meterRegistry);
+        this.layout = new ParquetLayout(hdfsConfiguration, targetFileSize);
+        this.schema = hdfsConfiguration.getSchemaVersion() >= 2 ? AvroSchemas.JOB_DATA_V2 : AvroSchemas.JOB_DATA;
+        this.typedMapper = schema == AvroSchemas.JOB_DATA_V2 ? new JobDataTypedMapper() : null;
 
         this.taskExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("cache-thread-pool-%d").build());
-        this.hdfsConfiguration = hdfsConfiguration;
+        // a full queue makes the writer close files itself, which slows it down instead of piling up open files
+        int closeThreads = Math.max(hdfsConfiguration.getRollCloseThreads(), 1);
+        this.closeExecutor = new ThreadPoolExecutor(closeThreads, closeThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(hdfsConfiguration.getRollCloseQueue(), 1)),
+                new ThreadFactoryBuilder().setNameFormat("parquet-close-%d").build(), new ThreadPoolExecutor.AbortPolicy());
+        log.info("Rolling parquet files at {} bytes", targetFileSize);
+        this.commitProtocol = new ParquetCommitProtocol(hdfsAdapter.getFileSystem(), new Path(getRoot()), instanceId,
+                TimeUnit.HOURS.toMillis(hdfsConfiguration.getCommitRecoveryHours()));
+        try {
+            commitProtocol.cleanTemporary();
+        } catch (IOException e) {
+            log.error("Failed to clean unpublished files", e);
+        }
 
-        queue = BatchProcessor.<JobDataDto, Object>newBuilder()
+        queue = BatchProcessor.<SourcedRecord, Object>newBuilder()
                 .with(builder -> {
                     builder.executorService = taskExecutor;
-                    builder.batchSize = 100;
+                    builder.batchSize = hdfsConfiguration.getWriterBatchSize();
+                    builder.maxBatchSize = hdfsConfiguration.getWriterBatchMaxSize();
+                    builder.maxLingerMs = hdfsConfiguration.getWriterBatchLingerMs();
+                    builder.targetFlushLatencyMs = hdfsConfiguration.getWriterBatchTargetLatencyMs();
                     builder.corePoolSize = 1;
+                    // records count until they are written, so the queue bounds what is on the heap before the writers
+                    builder.maxQueuedRecords = hdfsConfiguration.getWriterQueueMaxRecords();
+                    builder.maxQueuedBytes = hdfsConfiguration.getWriterQueueMaxMb() * 1024L * 1024;
+                    builder.weigher = record -> record.jobDataRecord == null ? RECORD_OVERHEAD_BYTES
+                            : RECORD_OVERHEAD_BYTES + ParquetLayout.estimateSize(record.jobDataRecord);
+                    builder.lowWaterMark = hdfsConfiguration.getWriterQueueLowWaterPercent() / 100.0;
+                    builder.flushListener = metrics::batch;
                 })
                 .build(entries -> {
-                    if (!stopped.get()){
-                        try {
-                            checkFileSize();
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    }
-
-                    List<JobDataDto> jobDataList = new ArrayList<>();
-                    for (Map.Entry<JobDataDto, AsyncCallback<Object>> entry : entries) {
-                        jobDataList.add(entry.getKey());
+                    List<SourcedRecord> records = new ArrayList<>();
+                    for (Map.Entry<SourcedRecord, AsyncCallback<Object>> entry : entries) {
+                        records.add(entry.getKey());
                     }
-                    List<GenericData.Record> data = convertToParquetRecord(jobDataList);
-                    try {
-                        writeToParquet(data);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+                    synchronized (this) {
+                        writeToParquet(records);
                     }
                 });
-
+        metrics.bindQueue(queue);
+        metrics.bindOpenFiles(this, HdfsParquetService::openFiles);
 
         Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
     }
 
     private void stop() {
+        this.stopped.set(true);
+        queue.close();
+        synchronized (this) {
+            closeAll(RollPolicy.RollReason.SHUTDOWN);
+        }
+        taskExecutor.shutdown();
+        closeExecutor.shutdown();
+        log.info("Parquet files written: {}", statistics);
+        if (typedMapper != null) {
+            log.info("Values that could not be parsed, by field: {}", typedMapper.getParseFailures());
+        }
         try {
-            this.stopped.set(true);
-            queue.close();
-            if (this.writer != null){
-                this.writer.close();
-            }
-            taskExecutor.shutdown();
-        } catch (IOException e) {
-            log.error("Failed to close parquet writer", e);
+            commitProtocol.awaitPending(FLUSH_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private void checkFileSize() throws IOException {
-        synchronized (this) {
-            if (writer == null) {
-                initWriter();
-                return;
-            }
-            long dataSize = this.writer.getDataSize();
-            if (dataSize > fileSizeThreshold) {
-                try {
-                    writeToNextFile();
-                } catch (Exception e) {
-                    log.error(e.getMessage(), e);
-                }
-            }
+    private void close(OpenFile file, RollPolicy.RollReason reason) {
+        long startTime = System.nanoTime();
+        try {
+            file.flushSorted();
+            file.writer.close();
+        } catch (Exception e) {
+            log.error("Failed to close parquet writer of {}", file.pendingFile.getTarget(), e);
+            file.discardSorted();
+            commitProtocol.abort(file.pendingFile);
+            return;
         }
-    }
-
-    private void close(ParquetWriter<GenericData.Record> writerClose, Path path) {
-        boolean isSave = true;
+        long closedAt = System.nanoTime();
+        metrics.hdfsCall(ParquetWriterMetrics.HdfsCall.CLOSE, closedAt - startTime);
         try {
-            if (writerClose != null) {
-                isSave = writerClose.getDataSize() > 1024 || (writerClose.getDataSize() > 0);
-                writerClose.close();
+            commitProtocol.commit(file.pendingFile);
+            long committedAt = System.nanoTime();
+            metrics.hdfsCall(ParquetWriterMetrics.HdfsCall.PUBLISH, committedAt - closedAt);
+            if (file.records() > 0) {
+                long length = hdfsAdapter.getFileSystem().getFileStatus(file.pendingFile.getTarget()).getLen();
+                metrics.hdfsCall(ParquetWriterMetrics.HdfsCall.STATUS, System.nanoTime() - committedAt);
+                if (reason == RollPolicy.RollReason.SIZE) {
+                    sizePolicy.observe(file.sizeAtRoll, length);
+                }
+                statistics.record(file.pendingFile.getTarget().toString(), reason, file.records(), length, System.currentTimeMillis() - file.openedAt);
+                metrics.published(file.records(), length);
             }
+            metrics.rolled(reason, System.nanoTime() - startTime);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
-            isSave = false;
-        } finally {
-            try {
-                FileSystem fileSystem = FileSystem.get(hdfsAdapter.getConfiguration());
-                if (!isSave && fileSystem.exists(path)) {
-                    log.info("onDestroy: delete file empty : " + path);
-                    fileSystem.delete(path, true);
-                }
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
-            }
         }
     }
 
-    @Scheduled(cron = "0 0 1 * * *", zone = "Asia/Ho_Chi_Minh")
-    public void eventFinalTempFile() {
+    private void closeAsync(OpenFile file, RollPolicy.RollReason reason) {
+        file.sizeAtRoll = file.dataSize();
         try {
-            if (this.writer.getDataSize() > 0) {
-                writeToNextFile();
-            }
-        } catch (IOException e) {
-            log.error(e.getMessage(), e);
+            closeExecutor.execute(() -> close(file, reason));
+        } catch (RejectedExecutionException e) {
+            // the queue is full, or the pool stopped and the file would never be published
+            close(file, reason);
         }
     }
 
-    private List<GenericData.Record> convertToParquetRecord(List<JobDataDto> jobDataList) {
-        List<GenericData.Record> records = new ArrayList<>();
-        jobDataList.forEach(jobData -> {
-            GenericData.Record jobDataRecord = new GenericData.Record(SCHEMA);
-
-            if (!StringUtils.isNullOrEmpty(jobData.getJobId())) {
-                jobDataRecord.put("jobId", jobData.getJobId());
-            }
-
-            if (!StringUtils.isNullOrEmpty(jobData.getExperience())) {
-                jobDataRecord.put("experience", jobData.getExperience());
-            }
-
-            if (!StringUtils.isNullOrEmpty(jobData.getQualifications())) {
-                jobDataRecord.put("qualifications", jobData.getQualifications());
-            }
-
-            if (!StringUtils.isNullOrEmpty(jobData.getSalaryRange())) {
-                jobDataRecord.put("salaryRange", jobData.getSalaryRange());
+    /**
+     * Rolls the files whose age or idle time is up, the other triggers are checked as records are written.
+     */
+    @Scheduled(fixedDelayString = "${hadoop.hdfs.writer.idle-check-ms:60000}")
+    public void rollDueWriters() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<OpenFile> iterator = writers.values().iterator();
+            while (iterator.hasNext()) {
+                OpenFile file = iterator.next();
+                RollPolicy.RollReason reason = rollPolicy.shouldRoll(file, now);
+                if (reason != null) {
+                    iterator.remove();
+                    closeAsync(file, reason);
+                }
             }
+        }
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getLocation())) {
-                jobDataRecord.put("location", jobData.getLocation());
+    private void writeToParquet(List<SourcedRecord> records) {
+        // the records of a partition are written together, so a batch opens at most one file per partition even when
+        // it spreads over more partitions than there are open writers
+        Map<String, List<SourcedRecord>> recordsByPartition = new LinkedHashMap<>();
+        for (SourcedRecord record : records) {
+            if (record.partition != null) {
+                Long lastOffset = lastOffsets.get(record.partition);
+                if (lastOffset != null && record.offset <= lastOffset) {
+                    continue;
+                }
+                lastOffsets.put(record.partition, record.offset);
             }
-
-            if (!StringUtils.isNullOrEmpty(jobData.getCountry())) {
-                jobDataRecord.put("country", jobData.getCountry());
+            if (record.jobDataRecord == null) {
+                if (record.partition != null) {
+                    commitProtocol.skip(record.partition, record.offset);
+                }
+                continue;
             }
-
-            if (!StringUtils.isNullOrEmpty(jobData.getLatitude())) {
-                jobDataRecord.put("latitude", jobData.getLatitude());
+            try {
+                recordsByPartition.computeIfAbsent(partitioner.partitionOf(record.jobDataRecord), key -> new ArrayList<>()).add(record);
+            } catch (RuntimeException e) {
+                lose(record, e);
             }
-
-            if (!StringUtils.isNullOrEmpty(jobData.getLongitude())) {
-                jobDataRecord.put("longitude", jobData.getLongitude());
+        }
+        for (Map.Entry<String, List<SourcedRecord>> entry : recordsByPartition.entrySet()) {
+            for (SourcedRecord record : entry.getValue()) {
+                try {
+                    long now = System.currentTimeMillis();
+                    OpenFile file = writerFor(entry.getKey(), now);
+                    file.write(record.jobDataRecord);
+                    file.pendingFile.add(record.partition, record.offset);
+                    file.lastWriteAt = now;
+                    if (layout.isSortBudgetExceeded()) {
+                        flushLargestSortBuffer();
+                    }
+                    metrics.written(record.partition, record.timestamp, now);
+                } catch (IOException | RuntimeException e) {
+                    lose(record, e);
+                }
             }
+        }
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getWorkType())) {
-                jobDataRecord.put("workType", jobData.getWorkType());
+    private void flushLargestSortBuffer() throws IOException {
+        OpenFile largest = null;
+        for (OpenFile file : writers.values()) {
+            if (largest == null || file.sortBufferBytes > largest.sortBufferBytes) {
+                largest = file;
             }
+        }
+        if (largest != null) {
+            largest.flushSorted();
+        }
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getCompanySize())) {
-                jobDataRecord.put("companySize", jobData.getCompanySize());
-            }
+    private void lose(SourcedRecord record, Exception e) {
+        log.error("Failed to write record to parquet", e);
+        if (record.partition != null) {
+            commitProtocol.lose(record.partition, record.offset);
+        }
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getJobPostingDate())) {
-                jobDataRecord.put("jobPostingDate", jobData.getJobPostingDate());
-            }
+    /**
+     * @return the open file of the partition, after rolling it when the policy says so
+     */
+    private OpenFile writerFor(String partition, long now) throws IOException {
+        OpenFile file = writers.get(partition);
+        RollPolicy.RollReason reason = file == null || stopped.get() ? null : rollPolicy.shouldRoll(file, now);
+        if (reason != null) {
+            writers.remove(partition);
+            closeAsync(file, reason);
+            file = null;
+        }
+        if (file == null) {
+            if (writers.size() >= maxOpenWriters) {
+                Iterator<OpenFile> eldest = writers.values().iterator();
+                OpenFile evicted = eldest.next();
+                eldest.remove();
+                closeAsync(evicted, RollPolicy.RollReason.EVICTED);
+            }
+            file = initWriter(partition);
+            writers.put(partition, file);
+        }
+        return file;
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getPreference())) {
-                jobDataRecord.put("preference", jobData.getPreference());
-            }
+    public synchronized void save(List<JobDataDto> jobDataList) {
+        jobDataList.forEach(jobData -> queue.put(new SourcedRecord(toStored(JobDataAvroMapper.toParquetRecord(jobData)), null, -1, 0)));
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getContactPerson())) {
-                jobDataRecord.put("contactPerson", jobData.getContactPerson());
-            }
+    /**
+     * Queues a record consumed from Kafka, already in its Parquet form. {@code jobDataRecord} is null for a record
+     * that could not be decoded, its offset is still accounted for. {@code timestamp} is the Kafka timestamp of the
+     * record, the end-to-end latency is measured from it.
+     */
+    public void save(TopicPartition partition, long offset, long timestamp, GenericData.Record jobDataRecord) {
+        queue.put(new SourcedRecord(jobDataRecord == null ? null : toStored(jobDataRecord), partition, offset, timestamp));
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getContact())) {
-                jobDataRecord.put("contact", jobData.getContact());
-            }
+    /**
+     * @return the record in the schema of the files, the record itself when it already is
+     */
+    public GenericData.Record toStored(GenericData.Record jobDataRecord) {
+        return typedMapper == null || jobDataRecord.getSchema() == schema ? jobDataRecord : typedMapper.toTyped(jobDataRecord);
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getJobTitle())) {
-                jobDataRecord.put("jobTitle", jobData.getJobTitle());
-            }
+    /**
+     * @return the number of values that could not be parsed into the typed schema so far, by field, empty with v1
+     */
+    public Map<String, Long> getParseFailures() {
+        return typedMapper == null ? Collections.emptyMap() : typedMapper.getParseFailures();
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getRole())) {
-                jobDataRecord.put("role", jobData.getRole());
-            }
+    /**
+     * @return whether the write queue is full, saving blocks until it has room again
+     */
+    public boolean isSaturated() {
+        return queue.isFull();
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getJobPortal())) {
-                jobDataRecord.put("jobPortal", jobData.getJobPortal());
-            }
+    /**
+     * @return whether the write queue is below its low-water mark
+     */
+    public boolean isDrained() {
+        return queue.isBelowLowWaterMark();
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getJobDescription())) {
-                jobDataRecord.put("jobDescription", jobData.getJobDescription());
-            }
+    /**
+     * @return the offset up to which the records of the partition are in published files, -1 when none are
+     */
+    public long committedOffset(TopicPartition partition) {
+        return commitProtocol.committedOffset(partition);
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getBenefits())) {
-                jobDataRecord.put("benefits", jobData.getBenefits());
-            }
+    /**
+     * Writes and publishes every record queued so far, so that all their offsets become committable.
+     */
+    public void flush() {
+        if (stopped.get()) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            queue.put(new SourcedRecord(null, null, -1, 0)).join();
+            synchronized (this) {
+                closeAll(RollPolicy.RollReason.FLUSH);
+            }
+            commitProtocol.awaitPending(FLUSH_TIMEOUT_MS);
+            metrics.flushed(System.nanoTime() - startTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Failed to flush parquet files", e);
+        }
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getSkills())) {
-                jobDataRecord.put("skills", jobData.getSkills());
-            }
+    /**
+     * @see ParquetCommitProtocol#recover(Map)
+     */
+    public Map<TopicPartition, Long> recoverOffsets(Map<TopicPartition, Long> committed) {
+        try {
+            return commitProtocol.recover(committed);
+        } catch (IOException e) {
+            log.error("Failed to recover offsets from parquet footers, starting from the committed offsets", e);
+            return Collections.emptyMap();
+        }
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getResponsibilities())) {
-                jobDataRecord.put("responsibilities", jobData.getResponsibilities());
-            }
+    private int openFiles() {
+        // read without the lock, a gauge can live with a stale size
+        return writers.size();
+    }
 
-            if (!StringUtils.isNullOrEmpty(jobData.getCompanyName())) {
-                jobDataRecord.put("companyName", jobData.getCompanyName());
-            }
+    public long getTargetFileSize() {
+        return targetFileSize;
+    }
 
-            GenericData.Record companyProfileRecord = new GenericData.Record(SCHEMA.getField("companyProfile").schema());
-            CompanyProfileDto companyProfileDto = jobData.getCompanyProfile();
-            if (!StringUtils.isNullOrEmpty(companyProfileDto.getSector())) {
-                companyProfileRecord.put("sector", companyProfileDto.getSector());
-            }
-            if (!StringUtils.isNullOrEmpty(companyProfileDto.getIndustry())) {
-                companyProfileRecord.put("industry", companyProfileDto.getIndustry());
-            }
-            if (!StringUtils.isNullOrEmpty(companyProfileDto.getCity())) {
-                companyProfileRecord.put("city", companyProfileDto.getCity());
-            }
-            if (!StringUtils.isNullOrEmpty(companyProfileDto.getState())) {
-                companyProfileRecord.put("state", companyProfileDto.getState());
-            }
-            if (!StringUtils.isNullOrEmpty(companyProfileDto.getZip())) {
-                companyProfileRecord.put("zip", companyProfileDto.getZip());
-            }
-            if (!StringUtils.isNullOrEmpty(companyProfileDto.getWebsite())) {
-                companyProfileRecord.put("website", companyProfileDto.getWebsite());
-            }
-            if (!StringUtils.isNullOrEmpty(companyProfileDto.getTicker())) {
-                companyProfileRecord.put("ticker", companyProfileDto.getTicker());
-            }
-            if (!StringUtils.isNullOrEmpty(companyProfileDto.getCeo())) {
-                companyProfileRecord.put("ceo", companyProfileDto.getCeo());
-            }
+    /**
+     * @return the name of this writer among those sharing the folder, the same across restarts
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
 
-            jobDataRecord.put("companyProfile", companyProfileRecord);
+    /**
+     * @return whether a file of the partition, a directory relative to the root, is open
+     */
+    public synchronized boolean isWriting(String partition) {
+        return writers.containsKey(partition);
+    }
 
-            records.add(jobDataRecord);
-        });
+    private OpenFile initWriter(String partition) throws IOException {
+        Path target = new Path(getRoot() + "/" + partition, System.currentTimeMillis() + "-" + fileCounter.incrementAndGet() + ".parquet");
+        ParquetCommitProtocol.PendingFile pendingFile = commitProtocol.begin(target);
+        OutputFile outputFile = HadoopOutputFile.fromPath(pendingFile.getTemporary(), hdfsAdapter.getConfiguration());
+        long startTime = System.nanoTime();
+        ParquetWriter<GenericData.Record> writer = layout.configure(AvroFooterParquetWriter
+                        .<GenericData.Record>builder(outputFile)
+                        .withSchema(schema)
+                        .withFooterMetadata(pendingFile.getOffsets()::toMetadata)
+                        .withConf(hdfsAdapter.getConfiguration())
+                        .withCompressionCodec(CompressionCodecName.SNAPPY)
+                        .withWriteMode(ParquetFileWriter.Mode.CREATE))
+                .build();
+        metrics.hdfsCall(ParquetWriterMetrics.HdfsCall.CREATE, System.nanoTime() - startTime);
+        return new OpenFile(writer, pendingFile, layout);
+    }
 
-        return records;
+    /**
+     * @return the configured file size, rounded to whole blocks when aligning to the block size
+     */
+    private static long targetFileSize(HdfsConfiguration hdfsConfiguration, long blockSize) {
+        long target = hdfsConfiguration.getHdfsFileMaxSize() * 1024 * 1024L;
+        if (hdfsConfiguration.isRollAlignToBlock() && blockSize > 0) {
+            target = Math.max(Math.round((double) target / blockSize), 1) * blockSize;
+        }
+        return target;
     }
 
-    private void writeToParquet(List<GenericData.Record> records) throws IOException {
-        for (GenericData.Record jobDataRecord : records) {
+    private static String instanceId(HdfsConfiguration hdfsConfiguration) {
+        String instanceId = hdfsConfiguration.getCommitInstanceId();
+        if (instanceId == null || instanceId.isBlank()) {
+            String host;
             try {
-                this.writer.write(jobDataRecord);
-            } catch (IOException e) {
-                log.error("Failed to write record to parquet", e);
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                log.warn("Failed to resolve the host name, name hadoop.hdfs.commit.instance-id when writers share a folder", e);
+                host = "local";
             }
+            instanceId = hdfsConfiguration.getBatchGroupId() + "-" + host;
         }
+        return instanceId.replaceAll("[^A-Za-z0-9._-]", "_");
     }
 
-    public synchronized void save(List<JobDataDto> jobDataList) {
-        jobDataList.forEach(queue::put);
+    private static RollPolicy rollPolicy(HdfsConfiguration hdfsConfiguration, AdaptiveSizeRollPolicy sizePolicy) {
+        List<RollPolicy> policies = new ArrayList<>();
+        policies.add(sizePolicy);
+        if (hdfsConfiguration.getRollMaxRecords() > 0) {
+            policies.add(RollPolicy.records(hdfsConfiguration.getRollMaxRecords()));
+        }
+        if (hdfsConfiguration.getRollMaxAgeMs() > 0) {
+            policies.add(RollPolicy.maxAge(hdfsConfiguration.getRollMaxAgeMs()));
+        }
+        if (hdfsConfiguration.getWriterIdleCloseMs() > 0) {
+            policies.add(RollPolicy.idle(hdfsConfiguration.getWriterIdleCloseMs()));
+        }
+        return RollPolicy.anyOf(policies);
     }
 
-    private void initWriter() throws IOException {
-        Optional<Path> optionalPath = this.getPath();
-        if (optionalPath.isEmpty()){
-            return;
+    private String getRoot() {
+        return hdfsAdapter.getNameNode() + "/" + hdfsConfiguration.getHdfsFolder();
+    }
+
+    /**
+     * Closes and publishes every open file on the calling thread, the next records open new ones.
+     */
+    private void closeAll(RollPolicy.RollReason reason) {
+        for (OpenFile file : writers.values()) {
+            close(file, reason);
         }
+        writers.clear();
+    }
 
-        this.path = optionalPath.get();
-        OutputFile outputFile = HadoopOutputFile.fromPath(path, hdfsAdapter.getConfiguration());
-        this.writer = AvroParquetWriter
-                .<GenericData.Record>builder(outputFile)
-                .withSchema(SCHEMA)
-                .withConf(hdfsAdapter.getConfiguration())
-                .withCompressionCodec(CompressionCodecName.SNAPPY)
-                .withWriteMode(ParquetFileWriter.Mode.CREATE)
-                .build();
+    private static class OpenFile implements RollPolicy.OpenFileStats {
+        private final ParquetWriter<GenericData.Record> writer;
+        private final ParquetCommitProtocol.PendingFile pendingFile;
+        private final ParquetLayout layout;
+        private final long openedAt = System.currentTimeMillis();
+        private volatile long lastWriteAt = openedAt;
+        private long sizeAtRoll;
+        // rows waiting to be sorted, only used when the layout sorts
+        private final List<GenericData.Record> sortBuffer = new ArrayList<>();
+        private volatile long sortBufferBytes;
+
+        private OpenFile(ParquetWriter<GenericData.Record> writer, ParquetCommitProtocol.PendingFile pendingFile, ParquetLayout layout) {
+            this.writer = writer;
+            this.pendingFile = pendingFile;
+            this.layout = layout;
+        }
 
-    }
+        private void write(GenericData.Record record) throws IOException {
+            if (!layout.isSorted()) {
+                writer.write(record);
+                return;
+            }
+            long size = ParquetLayout.estimateSize(record);
+            sortBuffer.add(record);
+            sortBufferBytes += size;
+            layout.sortBuffered(size);
+            if (sortBufferBytes >= layout.sortBufferLimit()) {
+                flushSorted();
+            }
+        }
 
-    private Optional<Path> getPath(){
-        String folderUrl = getFolder(formatter.format(new Date(System.currentTimeMillis())));
-        try {
-            Path folderPath = new Path(folderUrl);
-            FileSystem fs = hdfsAdapter.getFileSystem();
-            if (!fs.exists(folderPath)) {
-                fs.mkdirs(folderPath);
+        private void flushSorted() throws IOException {
+            if (sortBuffer.isEmpty()) {
+                return;
             }
-            return Optional.of(getNewFile(folderPath));
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
+            // List.sort is stable, rows with equal keys keep their arrival order
+            sortBuffer.sort(layout.comparator());
+            long dataSize = writer.getDataSize();
+            for (GenericData.Record record : sortBuffer) {
+                writer.write(record);
+            }
+            layout.observe(sortBufferBytes, writer.getDataSize() - dataSize);
+            discardSorted();
         }
-        return Optional.empty();
-    }
 
-    private Path getNewFile(Path folderPath){
-        String fileName = folderPath.toString() + '/' + new Timestamp(System.currentTimeMillis()).getTime() + ".parquet";
-        return new Path(fileName);
-    }
+        /**
+         * Empties the sort buffer, also once the file failed and its rows are not written.
+         */
+        private void discardSorted() {
+            layout.sortBuffered(-sortBufferBytes);
+            sortBuffer.clear();
+            sortBufferBytes = 0;
+        }
 
-    private String getFolder(String day){
-        return hdfsAdapter.getNameNode() + "/" + hdfsConfiguration.getHdfsFolder() + "/" + day;
+        @Override
+        public long records() {
+            return pendingFile.getRecords();
+        }
+
+        @Override
+        public long dataSize() {
+            return writer.getDataSize() + layout.encodedSize(sortBufferBytes);
+        }
+
+        @Override
+        public long openedAt() {
+            return openedAt;
+        }
+
+        @Override
+        public long lastWriteAt() {
+            return lastWriteAt;
+        }
     }
 
-    private void writeToNextFile() throws IOException {
-        log.info("Writing to next file");
-        ParquetWriter<GenericData.Record> oldWriter = this.writer;
-        Path oldPath = new Path(this.path.toString());
-        initWriter();
-        taskExecutor.submit(() -> close(oldWriter, oldPath));
+    private static class SourcedRecord {
+        private final GenericData.Record jobDataRecord;
+        private final TopicPartition partition;
+        private final long offset;
+        private final long timestamp;
+
+        private SourcedRecord(GenericData.Record jobDataRecord, TopicPartition partition, long offset, long timestamp) {
+            this.jobDataRecord = jobDataRecord;
+            this.partition = partition;
+            this.offset = offset;
+            this.timestamp = timestamp;
+        }
     }
 }
-
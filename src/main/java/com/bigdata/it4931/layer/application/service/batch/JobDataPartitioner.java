@@ -0,0 +1,81 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import org.apache.avro.generic.GenericRecord;
+
+import java.time.LocalDate;
+
+/**
+ * Maps a job record to its Hive-style partition directory, {@code posting_date=YYYY-MM-DD} and optionally
+ * {@code /posting_country=<country>}. The country directory is not named {@code country} because Spark rejects
+ * partition columns that repeat a column of the files.
+ */
+public class JobDataPartitioner {
+    public static final String DEFAULT_PARTITION = "__HIVE_DEFAULT_PARTITION__";
+    public static final String DATE_PREFIX = "posting_date=";
+    public static final String COUNTRY_PREFIX = "posting_country=";
+
+    private final boolean byCountry;
+
+    public JobDataPartitioner(boolean byCountry) {
+        this.byCountry = byCountry;
+    }
+
+    public String partitionOf(GenericRecord jobDataRecord) {
+        StringBuilder sb = new StringBuilder(DATE_PREFIX);
+        Object postingDate = jobDataRecord.hasField("postingDate") ? jobDataRecord.get("postingDate") : jobDataRecord.get("jobPostingDate");
+        if (postingDate instanceof Integer) {
+            sb.append(LocalDate.ofEpochDay((Integer) postingDate));
+        } else if (postingDate != null && isDate(postingDate.toString())) {
+            sb.append(postingDate.toString(), 0, 10);
+        } else {
+            sb.append(DEFAULT_PARTITION);
+        }
+        if (byCountry) {
+            sb.append('/').append(COUNTRY_PREFIX);
+            Object country = jobDataRecord.get("country");
+            escape(sb, country == null || country.toString().isEmpty() ? DEFAULT_PARTITION : country.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return whether the value starts with a {@code yyyy-MM-dd} date
+     */
+    private static boolean isDate(String value) {
+        if (value.length() < 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            if (i != 4 && i != 7 && (value.charAt(i) < '0' || value.charAt(i) > '9')) {
+                return false;
+            }
+        }
+        int month = (value.charAt(5) - '0') * 10 + value.charAt(6) - '0';
+        int day = (value.charAt(8) - '0') * 10 + value.charAt(9) - '0';
+        return month >= 1 && month <= 12 && day >= 1 && day <= 31;
+    }
+
+    /**
+     * @return the value as it appears in a directory name
+     */
+    public static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        escape(sb, value);
+        return sb.toString();
+    }
+
+    /**
+     * Escapes the characters Hive escapes in partition values, which Spark unescapes when it discovers partitions.
+     */
+    private static void escape(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == 0x7F || "\"#%'*/:=?\\{[]^".indexOf(c) >= 0) {
+                sb.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4 & 0xF, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
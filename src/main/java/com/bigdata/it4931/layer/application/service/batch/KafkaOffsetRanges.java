@@ -0,0 +1,107 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import com.bigdata.it4931.config.Constants;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.kafka.common.TopicPartition;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Kafka records a file holds, as the {@code [from, to)} offset range and the number of records per partition. A
+ * range has holes when records of the partition went to other files, which shows as a count below its length. Kept
+ * in the Parquet footer under {@link #METADATA_KEY}.
+ */
+public class KafkaOffsetRanges {
+    public static final String METADATA_KEY = "kafka.offsets";
+
+    private final Map<TopicPartition, Range> ranges = new LinkedHashMap<>();
+
+    public synchronized void add(TopicPartition partition, long offset) {
+        Range range = ranges.get(partition);
+        if (range == null) {
+            ranges.put(partition, new Range(partition.topic(), partition.partition(), offset, offset + 1, 1));
+        } else {
+            range.setFrom(Math.min(range.getFrom(), offset));
+            range.setTo(Math.max(range.getTo(), offset + 1));
+            range.setCount(range.getCount() + 1);
+        }
+    }
+
+    /**
+     * @return the lowest offset of the partition in the file, -1 when there is none
+     */
+    public synchronized long from(TopicPartition partition) {
+        Range range = ranges.get(partition);
+        return range == null ? -1 : range.getFrom();
+    }
+
+    public synchronized List<Range> ranges() {
+        List<Range> copy = new ArrayList<>();
+        for (Range range : ranges.values()) {
+            copy.add(new Range(range.getTopic(), range.getPartition(), range.getFrom(), range.getTo(), range.getCount()));
+        }
+        return copy;
+    }
+
+    public synchronized boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    public Map<String, String> toMetadata() {
+        return toMetadata(ranges());
+    }
+
+    /**
+     * @return the footer metadata of a file holding the ranges, a partition may have several
+     */
+    public static Map<String, String> toMetadata(List<Range> ranges) {
+        try {
+            return Collections.singletonMap(METADATA_KEY, Constants.OBJECT_MAPPER.writeValueAsString(ranges));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the ranges kept in a footer, empty when the file has none
+     */
+    public static List<Range> fromMetadata(Map<String, String> metadata) throws JsonProcessingException {
+        String value = metadata.get(METADATA_KEY);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        return Constants.OBJECT_MAPPER.readValue(value, new TypeReference<List<Range>>() {
+        });
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Range {
+        private String topic;
+        private int partition;
+        private long from;
+        private long to;
+        private long count;
+
+        public TopicPartition topicPartition() {
+            return new TopicPartition(topic, partition);
+        }
+
+        /**
+         * @return whether the file holds every offset of the range
+         */
+        public boolean hasAllOffsets() {
+            return count == to - from;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes Parquet files so that Kafka offsets are only committed for records that are in a visible file.
+ * <p>
+ * A file is written under {@code <root>/_temporary/<instance>} with the offset ranges it holds in its footer and renamed into
+ * place once closed. Several files may be open at once, so the committed offset of a partition is the lowest offset
+ * still in an unpublished file, or the next offset to write when there is none. A file that fails to publish stops
+ * the offsets for good: its records are consumed again after a restart, at the cost of duplicating the records of
+ * the files published after it.
+ * <p>
+ * After a crash between a rename and the Kafka commit, {@link #recover(Map)} rebuilds the positions from the footers
+ * of the recently published files.
+ */
+@Slf4j
+public class ParquetCommitProtocol {
+    public static final String TEMPORARY = "_temporary";
+
+    private final FileSystem fileSystem;
+    private final Path root;
+    private final Path temporary;
+    private final long recoveryLookbackMillis;
+    private final AtomicLong sequence = new AtomicLong();
+    // files begun but not yet published, by sequence, and the offset after the last record handed out per partition
+    private final TreeMap<Long, PendingFile> pending = new TreeMap<>();
+    private final Map<TopicPartition, Long> nextOffsets = new HashMap<>();
+    // lowest offset per partition of a record that could not be written
+    private final Map<TopicPartition, Long> lostOffsets = new HashMap<>();
+    private final Map<TopicPartition, Long> recoveredOffsets = new ConcurrentHashMap<>();
+
+    /**
+     * @param instance names the temporary directory of this writer, stable across restarts so that it cleans up after
+     *                 itself, and distinct from the other writers of the same root
+     */
+    public ParquetCommitProtocol(FileSystem fileSystem, Path root, String instance, long recoveryLookbackMillis) {
+        this.fileSystem = fileSystem;
+        this.root = root;
+        this.temporary = new Path(new Path(root, TEMPORARY), instance);
+        this.recoveryLookbackMillis = recoveryLookbackMillis;
+    }
+
+    public PendingFile begin(Path target) {
+        long number = sequence.incrementAndGet();
+        PendingFile file = new PendingFile(this, number, new Path(temporary, number + "-" + target.getName()), target);
+        synchronized (this) {
+            pending.put(number, file);
+        }
+        return file;
+    }
+
+    /**
+     * Renames a closed file into place, or deletes it when it has no rows, and then releases its offsets.
+     */
+    public void commit(PendingFile file) throws IOException {
+        try {
+            if (file.getRecords() == 0) {
+                fileSystem.delete(file.getTemporary(), false);
+            } else {
+                fileSystem.mkdirs(file.getTarget().getParent());
+                if (!fileSystem.rename(file.getTemporary(), file.getTarget())) {
+                    throw new IOException("Failed to rename " + file.getTemporary() + " to " + file.getTarget());
+                }
+                log.debug("Published {} with {} record(s)", file.getTarget(), file.getRecords());
+            }
+        } catch (IOException e) {
+            abort(file);
+            throw e;
+        }
+        complete(file, true);
+    }
+
+    public void abort(PendingFile file) {
+        try {
+            fileSystem.delete(file.getTemporary(), false);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}", file.getTemporary(), e);
+        }
+        log.error("File {} was not published, offsets of {} stay uncommitted until a restart", file.getTarget(), file.getOffsets().ranges());
+        complete(file, false);
+    }
+
+    /**
+     * Accounts for a record that needs no file, such as one that could not be decoded.
+     */
+    public synchronized void skip(TopicPartition partition, long offset) {
+        nextOffsets.merge(partition, offset + 1, Math::max);
+    }
+
+    /**
+     * Accounts for a record that could not be written. Like a file that fails to publish, it stops the offsets of its
+     * partition until a restart.
+     */
+    public synchronized void lose(TopicPartition partition, long offset) {
+        nextOffsets.merge(partition, offset + 1, Math::max);
+        if (lostOffsets.putIfAbsent(partition, offset) == null) {
+            log.error("Record {} of {} was not written, offsets of the partition stay uncommitted until a restart", offset, partition);
+        }
+    }
+
+    /**
+     * @return the offset up to which every record of the partition is in a published file or skipped, -1 when unknown
+     */
+    public synchronized long committedOffset(TopicPartition partition) {
+        long offset = Math.min(nextOffsets.getOrDefault(partition, -1L), lostOffsets.getOrDefault(partition, Long.MAX_VALUE));
+        for (PendingFile file : pending.values()) {
+            long from = file.getOffsets().from(partition);
+            if (from >= 0) {
+                offset = Math.min(offset, from);
+            }
+        }
+        return Math.max(offset, recoveredOffsets.getOrDefault(partition, -1L));
+    }
+
+    /**
+     * Waits until every file begun so far is published or failed.
+     */
+    public synchronized void awaitPending(long timeoutMillis) throws InterruptedException {
+        long last = sequence.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (hasUnresolved(last)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                log.warn("Timed out waiting for {} file(s) to be published", pending.size());
+                return;
+            }
+            wait(remaining);
+        }
+    }
+
+    /**
+     * Moves the committed offsets past the records found in the footers of the files published within the lookback,
+     * as far as every offset is accounted for: ranges held in full extend the position when they touch it, and a run
+     * of sparse ranges does when their counts add up to the length they span.
+     *
+     * @param committed the offsets committed in Kafka, partitions without one start at 0
+     * @return the positions that are ahead of the committed offsets
+     */
+    public Map<TopicPartition, Long> recover(Map<TopicPartition, Long> committed) throws IOException {
+        Map<TopicPartition, List<KafkaOffsetRanges.Range>> rangesByPartition = new HashMap<>();
+        long startTime = System.currentTimeMillis();
+        long cutoff = startTime - recoveryLookbackMillis;
+        int files = 0;
+        if (fileSystem.exists(root)) {
+            RemoteIterator<LocatedFileStatus> iterator = fileSystem.listFiles(root, true);
+            List<LocatedFileStatus> statuses = new ArrayList<>();
+            while (iterator.hasNext()) {
+                statuses.add(iterator.next());
+            }
+            // counted twice, the records of a merge would seem to fill gaps they do not
+            Set<Path> replaced = CompactionJournal.replacedFiles(fileSystem, root);
+            for (LocatedFileStatus status : statuses) {
+                if (status.getModificationTime() < cutoff || !isPublished(status.getPath()) || replaced.contains(status.getPath())) {
+                    continue;
+                }
+                files++;
+                for (KafkaOffsetRanges.Range range : readRanges(status)) {
+                    if (committed.containsKey(range.topicPartition())) {
+                        rangesByPartition.computeIfAbsent(range.topicPartition(), key -> new ArrayList<>()).add(range);
+                    }
+                }
+            }
+        }
+
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        for (Map.Entry<TopicPartition, List<KafkaOffsetRanges.Range>> entry : rangesByPartition.entrySet()) {
+            long start = committed.get(entry.getKey()) != null ? committed.get(entry.getKey()) : 0;
+            long position = recoverPosition(entry.getValue(), start);
+            if (position > start) {
+                positions.put(entry.getKey(), position);
+                recoveredOffsets.merge(entry.getKey(), position, Math::max);
+            }
+        }
+        log.info("Read the footers of {} file(s) in {} ms, recovered positions {}", files, System.currentTimeMillis() - startTime, positions);
+        return positions;
+    }
+
+    /**
+     * Deletes files left under the temporary directory of this instance by a previous run. Their records were never
+     * committed. The directories of other instances are left alone, they may be writing.
+     */
+    public void cleanTemporary() throws IOException {
+        if (fileSystem.exists(temporary)) {
+            log.info("Deleting unpublished files in {}", temporary);
+            fileSystem.delete(temporary, true);
+        }
+    }
+
+    private static long recoverPosition(List<KafkaOffsetRanges.Range> ranges, long start) {
+        long position = start;
+        while (true) {
+            ranges.sort(Comparator.comparingLong(KafkaOffsetRanges.Range::getFrom));
+            for (KafkaOffsetRanges.Range range : ranges) {
+                if (range.hasAllOffsets() && range.getFrom() <= position && range.getTo() > position) {
+                    position = range.getTo();
+                }
+            }
+            // records are written at most once, so counts adding up to the span mean nothing is missing in it
+            ranges.sort(Comparator.comparingLong(KafkaOffsetRanges.Range::getTo));
+            long counted = 0;
+            long end = position;
+            for (KafkaOffsetRanges.Range range : ranges) {
+                if (range.getFrom() >= position) {
+                    counted += range.getCount();
+                    if (counted == range.getTo() - position) {
+                        end = range.getTo();
+                    }
+                }
+            }
+            if (end == position) {
+                return position;
+            }
+            position = end;
+        }
+    }
+
+    private boolean hasUnresolved(long last) {
+        for (PendingFile file : pending.headMap(last, true).values()) {
+            if (!file.isFailed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void complete(PendingFile file, boolean published) {
+        if (published) {
+            pending.remove(file.getSequence());
+        } else {
+            // kept so that the offsets of the partitions it holds stay below its records
+            file.failed = true;
+        }
+        notifyAll();
+    }
+
+    private List<KafkaOffsetRanges.Range> readRanges(LocatedFileStatus status) {
+        try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(status, fileSystem.getConf()))) {
+            return KafkaOffsetRanges.fromMetadata(reader.getFooter().getFileMetaData().getKeyValueMetaData());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read the offsets of {}", status.getPath(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * @return whether the path is a Parquet file outside of the directories of unpublished files
+     */
+    public static boolean isPublished(Path path) {
+        for (Path current = path; current != null && !current.isRoot(); current = current.getParent()) {
+            String name = current.getName();
+            if (name.startsWith("_") || name.startsWith(".")) {
+                return false;
+            }
+        }
+        return path.getName().endsWith(".parquet");
+    }
+
+    @Getter
+    public static class PendingFile {
+        @Getter(AccessLevel.NONE)
+        private final ParquetCommitProtocol protocol;
+        private final long sequence;
+        private final Path temporary;
+        private final Path target;
+        private final KafkaOffsetRanges offsets = new KafkaOffsetRanges();
+        private long records;
+        private volatile boolean failed;
+
+        private PendingFile(ParquetCommitProtocol protocol, long sequence, Path temporary, Path target) {
+            this.protocol = protocol;
+            this.sequence = sequence;
+            this.temporary = temporary;
+            this.target = target;
+        }
+
+        /**
+         * Accounts for a record written to the file. {@code partition} is null for records that did not come from
+         * Kafka.
+         */
+        public void add(TopicPartition partition, long offset) {
+            records++;
+            if (partition != null && offset >= 0) {
+                synchronized (protocol) {
+                    offsets.add(partition, offset);
+                    protocol.nextOffsets.merge(partition, offset + 1, Math::max);
+                }
+            }
+        }
+    }
+}
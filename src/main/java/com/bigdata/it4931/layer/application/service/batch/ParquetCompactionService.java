@@ -0,0 +1,231 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import com.bigdata.it4931.config.hdfs.HdfsConfiguration;
+import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.parquet.schema.MessageType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merges the small Parquet files of a partition into files of the target size with {@link ParquetFileMerger}.
+ * Partitions with an open writer and files younger than {@code hadoop.hdfs.compaction.min-age-ms} are left alone.
+ * <p>
+ * A merged file is written under {@code <root>/_compaction/<instance>/<id>}, then a {@link CompactionJournal} listing
+ * it and the files it replaces is written next to it. From then on the merge is rolled forward, again after a crash:
+ * the merged file is renamed into the partition and only then are the inputs deleted. HDFS cannot swap several files
+ * at once, so in between both are in place, and readers leave out the inputs the journal names.
+ */
+@Service
+@Slf4j
+public class ParquetCompactionService {
+    private final HdfsConfiguration hdfsConfiguration;
+    private final HdfsParquetService hdfsParquetService;
+    private final FileSystem fileSystem;
+    private final Path root;
+    // merges of this instance, other instances may be writing theirs next to it
+    private final Path workRoot;
+    private final ParquetFileMerger merger;
+    private final ExecutorService executorService;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    public ParquetCompactionService(IHdfsAdapter hdfsAdapter,
+                                    HdfsConfiguration hdfsConfiguration,
+                                    HdfsParquetService hdfsParquetService) {
+        this.hdfsConfiguration = hdfsConfiguration;
+        this.hdfsParquetService = hdfsParquetService;
+        this.fileSystem = hdfsAdapter.getFileSystem();
+        this.root = new Path(hdfsAdapter.getNameNode() + "/" + hdfsConfiguration.getHdfsFolder());
+        this.workRoot = new Path(new Path(root, CompactionJournal.COMPACTION), hdfsParquetService.getInstanceId());
+        this.merger = new ParquetFileMerger(hdfsAdapter.getConfiguration());
+        this.executorService = Executors.newFixedThreadPool(Math.max(hdfsConfiguration.getCompactionThreads(), 1),
+                new ThreadFactoryBuilder().setNameFormat("parquet-compaction-%d").setDaemon(true).build());
+        try {
+            recover();
+        } catch (IOException e) {
+            log.error("Failed to finish the compactions of a previous run", e);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${hadoop.hdfs.compaction.interval-ms:900000}", fixedDelayString = "${hadoop.hdfs.compaction.interval-ms:900000}")
+    public void compact() {
+        if (!hdfsConfiguration.isCompactionEnabled()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        AtomicLong merged = new AtomicLong();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try {
+            for (Map.Entry<Path, List<FileStatus>> partition : findSmallFiles(startTime).entrySet()) {
+                for (List<FileStatus> group : plan(partition.getValue())) {
+                    futures.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            compact(partition.getKey(), group);
+                            merged.addAndGet(group.size());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, executorService).exceptionally(e -> {
+                        log.error("Failed to compact {} file(s) of {}", group.size(), partition.getKey(), e);
+                        return null;
+                    }));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to list the files to compact", e);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        if (!futures.isEmpty()) {
+            log.info("Compacted {} file(s) in {} merge(s) in {} ms", merged.get(), futures.size(), System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * @return the published files below the small file size and older than the minimum age, by partition directory,
+     * for the partitions that have enough of them and no open writer
+     */
+    private Map<Path, List<FileStatus>> findSmallFiles(long now) throws IOException {
+        long smallFileBytes = hdfsParquetService.getTargetFileSize() * hdfsConfiguration.getCompactionSmallFilePercent() / 100;
+        Map<Path, List<FileStatus>> files = new LinkedHashMap<>();
+        if (!fileSystem.exists(root)) {
+            return files;
+        }
+        RemoteIterator<LocatedFileStatus> iterator = fileSystem.listFiles(root, true);
+        while (iterator.hasNext()) {
+            LocatedFileStatus status = iterator.next();
+            if (status.getLen() < smallFileBytes
+                    && status.getModificationTime() < now - hdfsConfiguration.getCompactionMinAgeMs()
+                    && ParquetCommitProtocol.isPublished(status.getPath())) {
+                files.computeIfAbsent(status.getPath().getParent(), key -> new ArrayList<>()).add(status);
+            }
+        }
+        // inputs of merges being rolled forward, by any instance
+        Set<Path> replaced = CompactionJournal.replacedFiles(fileSystem, root);
+        files.values().forEach(statuses -> statuses.removeIf(status -> replaced.contains(status.getPath())));
+        String rootPath = root.toUri().getPath() + "/";
+        files.entrySet().removeIf(entry -> entry.getValue().size() < hdfsConfiguration.getCompactionMinFiles()
+                || hdfsParquetService.isWriting(entry.getKey().toUri().getPath().substring(rootPath.length())));
+        return files;
+    }
+
+    /**
+     * Packs the files of a partition, oldest first, into groups that stay within the target size.
+     */
+    private List<List<FileStatus>> plan(List<FileStatus> files) throws IOException {
+        Map<MessageType, List<FileStatus>> bySchema = new LinkedHashMap<>();
+        files.sort(Comparator.comparingLong(FileStatus::getModificationTime));
+        for (FileStatus status : files) {
+            bySchema.computeIfAbsent(merger.schemaOf(status), key -> new ArrayList<>()).add(status);
+        }
+        List<List<FileStatus>> groups = new ArrayList<>();
+        for (List<FileStatus> sameSchema : bySchema.values()) {
+            List<FileStatus> group = new ArrayList<>();
+            long groupBytes = 0;
+            for (FileStatus status : sameSchema) {
+                if (groupBytes + status.getLen() > hdfsParquetService.getTargetFileSize()) {
+                    addGroup(groups, group);
+                    group = new ArrayList<>();
+                    groupBytes = 0;
+                }
+                group.add(status);
+                groupBytes += status.getLen();
+            }
+            addGroup(groups, group);
+        }
+        return groups;
+    }
+
+    private static void addGroup(List<List<FileStatus>> groups, List<FileStatus> group) {
+        if (group.size() > 1) {
+            groups.add(group);
+        }
+    }
+
+    private void compact(Path partition, List<FileStatus> group) throws IOException {
+        String id = System.currentTimeMillis() + "-" + counter.incrementAndGet();
+        Path work = new Path(workRoot, id);
+        Path merged = new Path(work, id + "-compacted.parquet");
+        CompactionJournal journal = new CompactionJournal(new Path(partition, merged.getName()).toString(), new ArrayList<>());
+        long inputBytes = 0;
+        for (FileStatus status : group) {
+            journal.getInputs().add(status.getPath().toString());
+            inputBytes += status.getLen();
+        }
+        try {
+            merger.merge(group, merged);
+            journal.write(fileSystem, work);
+        } catch (IOException e) {
+            fileSystem.delete(work, true);
+            throw e;
+        }
+        rollForward(work, journal);
+        log.info("Merged {} file(s) of {} bytes into {} ({} bytes)", group.size(), inputBytes, journal.getTarget(),
+                fileSystem.getFileStatus(new Path(journal.getTarget())).getLen());
+    }
+
+    /**
+     * Replaces the inputs of a journaled merge with its output, whichever of the steps are left.
+     *
+     * @throws IOException when the merged file is neither in the work directory nor published, the inputs are kept
+     */
+    private void rollForward(Path work, CompactionJournal journal) throws IOException {
+        Path target = new Path(journal.getTarget());
+        Path merged = new Path(work, target.getName());
+        if (fileSystem.exists(merged)) {
+            fileSystem.mkdirs(target.getParent());
+            if (!fileSystem.rename(merged, target)) {
+                throw new IOException("Failed to rename " + merged + " to " + target);
+            }
+        } else if (!fileSystem.exists(target)) {
+            throw new IOException("Merged file " + target + " of " + work + " is missing, keeping its inputs");
+        }
+        for (String input : journal.getInputs()) {
+            fileSystem.delete(new Path(input), false);
+        }
+        // last, readers rely on the journal while inputs remain
+        fileSystem.delete(work, true);
+    }
+
+    /**
+     * Finishes the merges of this instance that were journaled before a crash and drops the others, whose inputs are
+     * still in place.
+     */
+    private void recover() throws IOException {
+        if (!fileSystem.exists(workRoot)) {
+            return;
+        }
+        for (FileStatus status : fileSystem.listStatus(workRoot)) {
+            if (CompactionJournal.exists(fileSystem, status.getPath())) {
+                CompactionJournal journal = CompactionJournal.read(fileSystem, status.getPath());
+                log.info("Finishing the compaction into {}", journal.getTarget());
+                try {
+                    rollForward(status.getPath(), journal);
+                } catch (IOException e) {
+                    log.error("Failed to finish the compaction into {}", journal.getTarget(), e);
+                }
+            } else {
+                fileSystem.delete(status.getPath(), true);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.BloomFilterReader;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Concatenates Parquet files of the same schema by copying their column chunks as they are, with their bloom filters
+ * and page indexes, so nothing is decoded or compressed again. Row groups are kept, the output has as many as its
+ * inputs together.
+ * <p>
+ * The {@link KafkaOffsetRanges} of the inputs are all kept in the footer of the output, which holds the same records.
+ */
+public class ParquetFileMerger {
+    private final Configuration configuration;
+
+    public ParquetFileMerger(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return the schema of the file, files can only be merged with files of an equal one
+     */
+    public MessageType schemaOf(FileStatus status) throws IOException {
+        try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(status, configuration))) {
+            return reader.getFooter().getFileMetaData().getSchema();
+        }
+    }
+
+    /**
+     * Writes the rows of {@code inputs}, in order, to a new file at {@code output}.
+     */
+    public void merge(List<FileStatus> inputs, Path output) throws IOException {
+        MessageType schema = null;
+        Map<String, String> metadata = new HashMap<>();
+        List<KafkaOffsetRanges.Range> ranges = new ArrayList<>();
+        TrackedOutputFile outputFile = new TrackedOutputFile(HadoopOutputFile.fromPath(output, configuration));
+        ParquetFileWriter writer = null;
+        boolean ended = false;
+        try {
+            for (FileStatus status : inputs) {
+                InputFile inputFile = HadoopInputFile.fromStatus(status, configuration);
+                try (ParquetFileReader reader = ParquetFileReader.open(inputFile);
+                     SeekableInputStream inputStream = inputFile.newStream()) {
+                    FileMetaData fileMetaData = reader.getFooter().getFileMetaData();
+                    if (writer == null) {
+                        schema = fileMetaData.getSchema();
+                        metadata.putAll(fileMetaData.getKeyValueMetaData());
+                        writer = new ParquetFileWriter(outputFile, schema, ParquetFileWriter.Mode.CREATE, 0, 0,
+                                ParquetProperties.DEFAULT_COLUMN_INDEX_TRUNCATE_LENGTH,
+                                ParquetProperties.DEFAULT_STATISTICS_TRUNCATE_LENGTH,
+                                ParquetProperties.DEFAULT_PAGE_WRITE_CHECKSUM_ENABLED);
+                        writer.start();
+                    } else if (!schema.equals(fileMetaData.getSchema())) {
+                        throw new IOException("Schema of " + status.getPath() + " differs from the other files");
+                    }
+                    ranges.addAll(KafkaOffsetRanges.fromMetadata(fileMetaData.getKeyValueMetaData()));
+
+                    for (BlockMetaData block : reader.getFooter().getBlocks()) {
+                        BloomFilterReader bloomFilterReader = reader.getBloomFilterDataReader(block);
+                        writer.startBlock(block.getRowCount());
+                        for (ColumnChunkMetaData chunk : block.getColumns()) {
+                            ColumnDescriptor descriptor = schema.getColumnDescription(chunk.getPath().toArray());
+                            writer.appendColumnChunk(descriptor, inputStream, chunk, bloomFilterReader.readBloomFilter(chunk),
+                                    reader.readColumnIndex(chunk), reader.readOffsetIndex(chunk));
+                        }
+                        writer.endBlock();
+                    }
+                }
+            }
+            if (writer == null) {
+                throw new IOException("Nothing to merge into " + output);
+            }
+            metadata.putAll(KafkaOffsetRanges.toMetadata(ranges));
+            writer.end(metadata);
+            ended = true;
+        } finally {
+            // the writer has no close of its own, end closes its stream
+            if (!ended && outputFile.stream != null) {
+                outputFile.stream.close();
+            }
+        }
+    }
+
+    /**
+     * Keeps the stream the writer creates, to close it when the merge fails.
+     */
+    private static class TrackedOutputFile implements OutputFile {
+        private final OutputFile file;
+        private PositionOutputStream stream;
+
+        TrackedOutputFile(OutputFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) throws IOException {
+            return stream = file.create(blockSizeHint);
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+            return stream = file.createOrOverwrite(blockSizeHint);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return file.supportsBlockSize();
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return file.defaultBlockSize();
+        }
+    }
+}
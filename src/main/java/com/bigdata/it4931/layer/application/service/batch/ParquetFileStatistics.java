@@ -0,0 +1,42 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Running totals of the Parquet files published, with a log line per file so that rolling can be tuned against the
+ * target size.
+ */
+@Slf4j
+public class ParquetFileStatistics {
+    private final long targetBytes;
+    private final Map<RollPolicy.RollReason, Long> filesByReason = new EnumMap<>(RollPolicy.RollReason.class);
+    private long files;
+    private long records;
+    private long bytes;
+    private long minBytes = Long.MAX_VALUE;
+    private long maxBytes;
+
+    public ParquetFileStatistics(long targetBytes) {
+        this.targetBytes = targetBytes;
+    }
+
+    public synchronized void record(String path, RollPolicy.RollReason reason, long fileRecords, long fileBytes, long openMillis) {
+        files++;
+        records += fileRecords;
+        bytes += fileBytes;
+        minBytes = Math.min(minBytes, fileBytes);
+        maxBytes = Math.max(maxBytes, fileBytes);
+        filesByReason.merge(reason, 1L, Long::sum);
+        log.info("Published {}: {} record(s), {} bytes ({}% of target), open {} ms, rolled on {}",
+                path, fileRecords, fileBytes, fileBytes * 100 / Math.max(targetBytes, 1), openMillis, reason);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d file(s), %d record(s), %d bytes, size min/avg/max %d/%d/%d, target %d, by reason %s",
+                files, records, bytes, files == 0 ? 0 : minBytes, files == 0 ? 0 : bytes / files, maxBytes, targetBytes, filesByReason);
+    }
+}
@@ -0,0 +1,196 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import com.bigdata.it4931.config.hdfs.HdfsConfiguration;
+import com.bigdata.it4931.layer.infrastructure.hdfs.impl.write.AvroFooterParquetWriter;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How rows and columns are laid out in the Parquet files: the clustering key rows are sorted by before they are
+ * written, and the row group, page, dictionary and bloom filter settings of the writer.
+ * <p>
+ * Rows are buffered up to {@code sort-buffer-row-groups} row groups and sorted before they are handed to the writer.
+ * With one, the pages of a row group cover narrow ranges of the key and the column indexes let readers skip them; with
+ * more, whole row groups do and their min/max statistics skip them too.
+ * <p>
+ * Sorting takes half of the {@code writer.buffer-MB} heap budget, the row groups the other half. The rows buffered by
+ * all open files together stay within it: past it the largest buffer is written out early.
+ */
+public class ParquetLayout {
+    private static final int FIELD_OVERHEAD_BYTES = 8;
+    private static final double SMOOTHING = 0.3;
+    private static final long MIN_ROW_GROUP_BYTES = 1024 * 1024;
+
+    private final List<String[]> sortColumns = new ArrayList<>();
+    private final int rowGroupSize;
+    private final int pageSize;
+    private final long sortBufferBytes;
+    private final long sortBudgetBytes;
+    // estimated bytes of the rows buffered for sorting by all open files
+    private final AtomicLong sortBuffered = new AtomicLong();
+    private final List<String> bloomFilterColumns;
+    private final long bloomFilterNdv;
+    private final List<String> dictionaryDisabledColumns;
+    // bytes the writer grows by per estimated byte of rows, mostly compression
+    private volatile double encodedRatio = 1.0;
+
+    public ParquetLayout(HdfsConfiguration hdfsConfiguration, long targetFileSize) {
+        for (String column : split(hdfsConfiguration.getLayoutSortColumns())) {
+            sortColumns.add(column.split("\\."));
+        }
+        long bufferBytes = hdfsConfiguration.getWriterBufferMb() * 1024L * 1024;
+        this.sortBudgetBytes = sortColumns.isEmpty() ? 0 : bufferBytes / 2;
+        long rowGroupBytes = hdfsConfiguration.getLayoutRowGroupSizeMb() > 0
+                ? hdfsConfiguration.getLayoutRowGroupSizeMb() * 1024L * 1024
+                // small row groups keep the buffered part of getDataSize(), which is only an estimate, small, and every
+                // open file buffering a whole one fits the heap budget of the writers
+                : Math.max(Math.min(targetFileSize / 4, (bufferBytes - sortBudgetBytes) / Math.max(hdfsConfiguration.getWriterMaxOpen(), 1)), MIN_ROW_GROUP_BYTES);
+        this.rowGroupSize = (int) Math.min(rowGroupBytes, Integer.MAX_VALUE);
+        this.pageSize = hdfsConfiguration.getLayoutPageSizeKb() * 1024;
+        this.sortBufferBytes = sortColumns.isEmpty() ? 0 : rowGroupSize * (long) Math.max(hdfsConfiguration.getLayoutSortBufferRowGroups(), 1);
+        this.bloomFilterColumns = split(hdfsConfiguration.getLayoutBloomFilterColumns());
+        this.bloomFilterNdv = hdfsConfiguration.getLayoutBloomFilterNdv();
+        this.dictionaryDisabledColumns = split(hdfsConfiguration.getLayoutDictionaryDisabledColumns());
+    }
+
+    public <T> AvroFooterParquetWriter.Builder<T> configure(AvroFooterParquetWriter.Builder<T> builder) {
+        builder.withRowGroupSize(rowGroupSize);
+        if (pageSize > 0) {
+            builder.withPageSize(pageSize);
+        }
+        for (String column : bloomFilterColumns) {
+            // without an expected number of distinct values every filter takes the maximum size, 1 MB per row group
+            if (bloomFilterNdv > 0) {
+                builder.withBloomFilterNDV(column, bloomFilterNdv);
+            } else {
+                builder.withBloomFilterEnabled(column, true);
+            }
+        }
+        for (String column : dictionaryDisabledColumns) {
+            builder.withDictionaryEncoding(column, false);
+        }
+        return builder;
+    }
+
+    public boolean isSorted() {
+        return sortBufferBytes > 0;
+    }
+
+    /**
+     * @return how many bytes of rows, as counted by {@link #estimateSize(GenericRecord)}, are sorted together
+     */
+    public long sortBufferLimit() {
+        // rows that compress well would otherwise fill many times the row groups on the heap
+        return Math.min((long) (sortBufferBytes / encodedRatio), sortBudgetBytes);
+    }
+
+    /**
+     * Accounts for rows added to, or with a negative size written out of, the sort buffer of a file.
+     */
+    public void sortBuffered(long estimatedBytes) {
+        sortBuffered.addAndGet(estimatedBytes);
+    }
+
+    /**
+     * @return whether the sort buffers of all open files together hold more than the heap budget allows
+     */
+    public boolean isSortBudgetExceeded() {
+        return sortBuffered.get() > sortBudgetBytes;
+    }
+
+    /**
+     * @return the estimated size of buffered rows in the bytes the writer counts
+     */
+    public long encodedSize(long estimatedBytes) {
+        return (long) (estimatedBytes * encodedRatio);
+    }
+
+    /**
+     * @param estimatedBytes the estimated size of a buffer of sorted rows
+     * @param writtenBytes   how much the data size of the writer grew when they were written
+     */
+    public synchronized void observe(long estimatedBytes, long writtenBytes) {
+        if (estimatedBytes <= 0 || writtenBytes <= 0) {
+            return;
+        }
+        double ratio = Math.min(Math.max((double) writtenBytes / estimatedBytes, 0.05), 4.0);
+        encodedRatio = (1 - SMOOTHING) * encodedRatio + SMOOTHING * ratio;
+    }
+
+    /**
+     * Orders rows by the sort columns, nulls last, using Avro's ordering of each column type.
+     */
+    public Comparator<GenericRecord> comparator() {
+        return (left, right) -> {
+            for (String[] column : sortColumns) {
+                int result = compare(left, right, column);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        };
+    }
+
+    public static long estimateSize(GenericRecord record) {
+        long size = 0;
+        for (Schema.Field field : record.getSchema().getFields()) {
+            Object value = record.get(field.pos());
+            size += FIELD_OVERHEAD_BYTES;
+            if (value instanceof CharSequence) {
+                size += ((CharSequence) value).length();
+            } else if (value instanceof GenericRecord) {
+                size += estimateSize((GenericRecord) value);
+            }
+        }
+        return size;
+    }
+
+    private static int compare(GenericRecord left, GenericRecord right, String[] column) {
+        Schema.Field field = null;
+        Object leftValue = left;
+        Object rightValue = right;
+        for (String name : column) {
+            field = ((GenericRecord) leftValue).getSchema().getField(name);
+            leftValue = ((GenericRecord) leftValue).get(name);
+            rightValue = ((GenericRecord) rightValue).get(name);
+            if (leftValue == null || rightValue == null) {
+                break;
+            }
+        }
+        if (leftValue == null || rightValue == null) {
+            return leftValue == rightValue ? 0 : leftValue == null ? 1 : -1;
+        }
+        return GenericData.get().compare(leftValue, rightValue, nonNull(field.schema()));
+    }
+
+    private static Schema nonNull(Schema schema) {
+        if (schema.getType() != Schema.Type.UNION) {
+            return schema;
+        }
+        for (Schema type : schema.getTypes()) {
+            if (type.getType() != Schema.Type.NULL) {
+                return type;
+            }
+        }
+        return schema;
+    }
+
+    private static List<String> split(String columns) {
+        List<String> result = new ArrayList<>();
+        if (columns != null) {
+            for (String column : columns.split(",")) {
+                if (!column.trim().isEmpty()) {
+                    result.add(column.trim());
+                }
+            }
+        }
+        return result;
+    }
+}
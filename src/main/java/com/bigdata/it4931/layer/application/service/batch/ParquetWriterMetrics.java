@@ -0,0 +1,163 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import com.bigdata.it4931.utility.concurrent.BatchProcessor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meters of the Parquet writer. Every meter is created once, per partition or roll reason, so recording allocates
+ * nothing.
+ */
+public class ParquetWriterMetrics {
+    private final MeterRegistry meterRegistry;
+    private final Map<TopicPartition, Counter> writtenByPartition = new ConcurrentHashMap<>();
+    private final Function<TopicPartition, Counter> newWrittenCounter = this::newWrittenCounter;
+    private final Counter writtenUnsourced;
+    private final DistributionSummary batchSizes;
+    private final Timer batchLatency;
+    private final Timer flushLatency;
+    private final Timer recordLatency;
+    private final Map<RollPolicy.RollReason, Timer> rollLatency = new EnumMap<>(RollPolicy.RollReason.class);
+    private final DistributionSummary fileBytes;
+    private final DistributionSummary fileRecords;
+    private final Map<HdfsCall, Timer> hdfsLatency = new EnumMap<>(HdfsCall.class);
+
+    public ParquetWriterMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.writtenUnsourced = Counter.builder("parquet.records.written")
+                .description("Records written to Parquet files")
+                .tag("topic", "none")
+                .tag("partition", "none")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("parquet.writer.batch.size")
+                .description("Records per batch handed to the writer")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchLatency = Timer.builder("parquet.writer.batch")
+                .description("Time to write one batch of records")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("parquet.flush")
+                .description("Time to write, close and publish everything queued, before offsets are committed")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.recordLatency = Timer.builder("parquet.record.latency")
+                .description("Time from the Kafka timestamp of a record until it is written to a Parquet file")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        for (RollPolicy.RollReason reason : RollPolicy.RollReason.values()) {
+            rollLatency.put(reason, Timer.builder("parquet.file.roll")
+                    .description("Time to close and publish a file")
+                    .tag("reason", reason.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        this.fileBytes = DistributionSummary.builder("parquet.file.size")
+                .description("Size of the published files")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.fileRecords = DistributionSummary.builder("parquet.file.records")
+                .description("Records in the published files")
+                .register(meterRegistry);
+        for (HdfsCall call : HdfsCall.values()) {
+            hdfsLatency.put(call, Timer.builder("hdfs.calls")
+                    .description("Latency of the file system calls made by the Parquet writer")
+                    .tag("op", call.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Exposes the depth and current batch size of the queue in front of the writer.
+     */
+    public void bindQueue(BatchProcessor<?, ?> queue) {
+        Gauge.builder("parquet.writer.queue.records", queue, BatchProcessor::getQueuedRecords)
+                .description("Records queued or being written")
+                .register(meterRegistry);
+        Gauge.builder("parquet.writer.queue.bytes", queue, BatchProcessor::getQueuedBytes)
+                .description("Estimated size of the records queued or being written")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("parquet.writer.batch.target", queue, BatchProcessor::getBatchSize)
+                .description("Batch size the writer queue currently aims for")
+                .register(meterRegistry);
+    }
+
+    public <T> void bindOpenFiles(T owner, ToDoubleFunction<T> openFiles) {
+        Gauge.builder("parquet.files.open", owner, openFiles)
+                .description("Files being written")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param timestamp Kafka timestamp of the record in epoch milliseconds, 0 or less when it has none
+     */
+    public void written(TopicPartition partition, long timestamp, long now) {
+        (partition == null ? writtenUnsourced : writtenByPartition.computeIfAbsent(partition, newWrittenCounter)).increment();
+        if (timestamp > 0) {
+            recordLatency.record(Math.max(now - timestamp, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void batch(int size, long nanos) {
+        batchSizes.record(size);
+        batchLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void flushed(long nanos) {
+        flushLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rolled(RollPolicy.RollReason reason, long nanos) {
+        rollLatency.get(reason).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void published(long records, long bytes) {
+        fileRecords.record(records);
+        fileBytes.record(bytes);
+    }
+
+    public void hdfsCall(HdfsCall call, long nanos) {
+        hdfsLatency.get(call).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Counter newWrittenCounter(TopicPartition partition) {
+        return Counter.builder("parquet.records.written")
+                .description("Records written to Parquet files")
+                .tag("topic", partition.topic())
+                .tag("partition", String.valueOf(partition.partition()))
+                .register(meterRegistry);
+    }
+
+    public enum HdfsCall {
+        /**
+         * Creating the temporary file.
+         */
+        CREATE,
+        /**
+         * Closing the writer, which writes the last row group and the footer.
+         */
+        CLOSE,
+        /**
+         * Renaming the file into place.
+         */
+        PUBLISH,
+        /**
+         * Reading the length of the published file.
+         */
+        STATUS
+    }
+}
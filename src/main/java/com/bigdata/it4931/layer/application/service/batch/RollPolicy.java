@@ -0,0 +1,59 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides when an open Parquet file is closed and published. Policies are combined with {@link #anyOf(List)}, the
+ * first one that fires gives the reason.
+ */
+public interface RollPolicy {
+    /**
+     * @return why the file should be rolled now, or {@code null} to keep it open
+     */
+    RollReason shouldRoll(OpenFileStats file, long now);
+
+    static RollPolicy records(long records) {
+        return (file, now) -> file.records() >= records ? RollReason.RECORDS : null;
+    }
+
+    static RollPolicy maxAge(long millis) {
+        return (file, now) -> now - file.openedAt() >= millis ? RollReason.AGE : null;
+    }
+
+    static RollPolicy idle(long millis) {
+        return (file, now) -> now - file.lastWriteAt() >= millis ? RollReason.IDLE : null;
+    }
+
+    static RollPolicy anyOf(List<RollPolicy> policies) {
+        List<RollPolicy> copy = new ArrayList<>(policies);
+        return (file, now) -> {
+            for (RollPolicy policy : copy) {
+                RollReason reason = policy.shouldRoll(file, now);
+                if (reason != null) {
+                    return reason;
+                }
+            }
+            return null;
+        };
+    }
+
+    enum RollReason {
+        SIZE, RECORDS, AGE, IDLE,
+        // closed by the writer rather than a policy
+        EVICTED, FLUSH, SHUTDOWN
+    }
+
+    interface OpenFileStats {
+        long records();
+
+        /**
+         * @return bytes written plus bytes buffered for the current row group
+         */
+        long dataSize();
+
+        long openedAt();
+
+        long lastWriteAt();
+    }
+}
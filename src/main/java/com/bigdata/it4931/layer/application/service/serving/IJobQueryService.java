@@ -0,0 +1,26 @@
+package com.bigdata.it4931.layer.application.service.serving;
+
+import com.bigdata.it4931.layer.application.domain.dto.JobCountDto;
+import com.bigdata.it4931.layer.application.domain.dto.JobQueryDto;
+import com.bigdata.it4931.layer.application.service.serving.query.JobRowStream;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface IJobQueryService {
+    /**
+     * Lists the files to scan, the scan starts once the rows are written.
+     *
+     * @param fields typed fields of the rows, null or empty for the default ones
+     * @param limit  0 or less for the configured maximum
+     * @throws IllegalArgumentException for an unknown field or an empty date range
+     */
+    JobRowStream query(JobQueryDto query, List<String> fields, int limit) throws IOException;
+
+    /**
+     * @param groupBy typed field to count by, null for the total only
+     * @param top     number of largest groups returned, 0 or less for all
+     * @throws IllegalArgumentException for an unknown field or an empty date range
+     */
+    JobCountDto count(JobQueryDto query, String groupBy, int top) throws IOException;
+}
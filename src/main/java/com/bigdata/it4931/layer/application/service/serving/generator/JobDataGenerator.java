@@ -0,0 +1,263 @@
+package com.bigdata.it4931.layer.application.service.serving.generator;
+
+import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.utility.random.ZipfSampler;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Generates job postings shaped like the Kaggle dataset. Countries, roles, companies, skills and description words
+ * are drawn from Zipf distributions over vocabularies of configurable size, so a few values dominate like in real
+ * data. The same company always gets the same profile. Not thread-safe, use {@link #fork()} for another thread.
+ */
+public class JobDataGenerator {
+    private static final String[] COUNTRIES = {
+            "United States", "India", "United Kingdom", "Germany", "Canada", "Australia", "France", "Vietnam",
+            "Japan", "Brazil", "Singapore", "Netherlands", "Spain", "Italy", "Mexico", "South Korea", "Sweden",
+            "Poland", "Ireland", "Switzerland", "China", "Indonesia", "Turkey", "Argentina", "Norway", "Denmark",
+            "Finland", "Belgium", "Austria", "Portugal"
+    };
+    private static final String[] CITIES = {
+            "Springfield", "Riverside", "Franklin", "Greenville", "Bristol", "Clinton", "Fairview", "Salem",
+            "Madison", "Georgetown", "Arlington", "Ashland", "Burlington", "Manchester", "Milton", "Newport"
+    };
+    private static final String[] ROLES = {
+            "Software Engineer", "Data Analyst", "Data Engineer", "Product Manager", "Network Administrator",
+            "UX Designer", "Marketing Specialist", "Sales Representative", "Financial Analyst", "HR Coordinator",
+            "DevOps Engineer", "QA Tester", "Business Analyst", "Project Coordinator", "Customer Support Specialist",
+            "Database Administrator", "Systems Analyst", "Content Writer", "Graphic Designer", "Accountant",
+            "Mechanical Engineer", "Civil Engineer", "Nurse Practitioner", "Teacher", "Legal Counsel"
+    };
+    private static final String[] SKILLS = {
+            "Java", "Python", "SQL", "Spark", "Kafka", "Hadoop", "Docker", "Kubernetes", "AWS", "Azure", "Linux",
+            "Git", "Excel", "Tableau", "Power BI", "Communication", "Leadership", "Project management", "Scala",
+            "JavaScript", "React", "Machine learning", "Statistics", "Networking", "Security", "Negotiation",
+            "Copywriting", "Figma", "Accounting", "Customer service"
+    };
+    private static final String[] WORDS = {
+            "the", "and", "to", "of", "a", "in", "for", "with", "on", "team", "data", "work", "customers", "build",
+            "support", "develop", "manage", "systems", "ensure", "quality", "design", "projects", "business",
+            "requirements", "solutions", "processes", "stakeholders", "improve", "analysis", "reports", "tools",
+            "performance", "responsible", "experience", "collaborate", "deliver", "product", "services", "clients",
+            "strategy", "operations", "technical", "maintain", "implement", "drive", "growth", "across", "teams",
+            "platform", "scalable", "reliable", "insights", "documentation", "training", "compliance", "budget",
+            "planning", "research", "communication", "innovative", "efficient", "standards", "review", "testing"
+    };
+    private static final String[] QUALIFICATIONS = {"B.Tech", "MBA", "M.Tech", "BCA", "PhD", "BBA", "MCA", "B.Com", "M.Com", "BA"};
+    private static final String[] WORK_TYPES = {"Full-Time", "Part-Time", "Intern", "Temporary", "Contract"};
+    private static final String[] PREFERENCES = {"Both", "Male", "Female"};
+    private static final String[] PORTALS = {"LinkedIn", "Indeed", "Glassdoor", "Monster", "FlexJobs", "SimplyHired", "Jobs2Careers", "ZipRecruiter"};
+    private static final String[] BENEFITS = {
+            "Health Insurance", "Retirement Plans", "Paid Time Off (PTO)", "Flexible Work Arrangements",
+            "Employee Assistance Programs (EAP)", "Tuition Reimbursement", "Life and Disability Insurance",
+            "Stock Options or Equity Grants", "Childcare Assistance", "Transportation Benefits"
+    };
+    private static final String[] SECTORS = {"Technology", "Finance", "Healthcare", "Retail", "Energy", "Industrials", "Telecommunications", "Consumer Goods"};
+    private static final String[] STATES = {"CA", "NY", "TX", "WA", "IL", "MA", "FL", "GA", "CO", "NC"};
+    private static final String[] FIRST_NAMES = {"James", "Mary", "Linh", "Anh", "Robert", "Patricia", "Minh", "Jennifer", "David", "Huong", "Michael", "Thu"};
+    private static final String[] LAST_NAMES = {"Smith", "Nguyen", "Johnson", "Tran", "Williams", "Le", "Brown", "Pham", "Jones", "Hoang", "Garcia", "Vu"};
+    private static final String[] COMPANY_WORDS = {"Apex", "Blue", "Nova", "Summit", "Vertex", "Pioneer", "Silver", "Quantum", "Atlas", "Bright"};
+    private static final String[] COMPANY_NOUNS = {"Systems", "Labs", "Holdings", "Networks", "Dynamics", "Solutions", "Partners", "Industries"};
+    private static final LocalDate FIRST_POSTING_DATE = LocalDate.of(2021, 9, 15);
+    private static final int POSTING_DAYS = 730;
+
+    private final SplittableRandom random;
+    private final Vocabulary vocabulary;
+
+    private JobDataGenerator(SplittableRandom random, Vocabulary vocabulary) {
+        this.random = random;
+        this.vocabulary = vocabulary;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a generator with an independent random stream that shares this one's vocabularies
+     */
+    public JobDataGenerator fork() {
+        return new JobDataGenerator(random.split(), vocabulary);
+    }
+
+    public JobDataDto next() {
+        int country = vocabulary.countrySampler.sample(random);
+        int role = vocabulary.roleSampler.sample(random);
+        int company = vocabulary.companySampler.sample(random);
+        int minExperience = random.nextInt(6);
+
+        JobDataDto jobData = new JobDataDto();
+        jobData.setJobId(Long.toString(1_000_000_000_000_000L + (random.nextLong() & Long.MAX_VALUE) % 1_000_000_000_000_000L));
+        jobData.setExperience(minExperience + " to " + (minExperience + 5 + random.nextInt(10)) + " Years");
+        jobData.setQualifications(pick(QUALIFICATIONS));
+        int minSalary = 55 + random.nextInt(10);
+        jobData.setSalaryRange("$" + minSalary + "K-$" + (minSalary + 40 + random.nextInt(90)) + "K");
+        jobData.setLocation(CITIES[(country * 7 + random.nextInt(3)) % CITIES.length]);
+        jobData.setCountry(vocabulary.countries[country]);
+        jobData.setLatitude(String.format(Locale.ROOT, "%.4f", random.nextDouble(-60, 70)));
+        jobData.setLongitude(String.format(Locale.ROOT, "%.4f", random.nextDouble(-180, 180)));
+        jobData.setWorkType(pick(WORK_TYPES));
+        jobData.setCompanySize(Integer.toString(10_000 + random.nextInt(140_000)));
+        jobData.setJobPostingDate(FIRST_POSTING_DATE.plusDays(random.nextInt(POSTING_DAYS)).toString());
+        jobData.setPreference(pick(PREFERENCES));
+        jobData.setContactPerson(pick(FIRST_NAMES) + " " + pick(LAST_NAMES));
+        jobData.setContact("(" + (200 + random.nextInt(800)) + ")" + (200 + random.nextInt(800)) + "-" + (1000 + random.nextInt(9000)));
+        jobData.setJobTitle(vocabulary.roles[role]);
+        jobData.setRole(vocabulary.roles[role] + (random.nextInt(3) == 0 ? " Lead" : ""));
+        jobData.setJobPortal(pick(PORTALS));
+        jobData.setJobDescription(text(vocabulary.descriptionWords));
+        jobData.setBenefits(benefits());
+        jobData.setSkills(skills());
+        jobData.setResponsibilities(text(Math.max(vocabulary.descriptionWords / 3, 8)));
+        jobData.setCompanyName(vocabulary.companies[company]);
+        jobData.setCompanyProfile(vocabulary.profile(company));
+        return jobData;
+    }
+
+    private String text(int words) {
+        int length = words / 2 + random.nextInt(words + 1);
+        StringBuilder sb = new StringBuilder(length * 8);
+        boolean sentenceStart = true;
+        for (int i = 0; i < length; i++) {
+            String word = WORDS[vocabulary.wordSampler.sample(random)];
+            if (sentenceStart) {
+                sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                sentenceStart = false;
+            } else {
+                sb.append(word);
+            }
+            if (i == length - 1 || random.nextInt(12) == 0) {
+                sb.append('.');
+                sentenceStart = true;
+            }
+            if (i < length - 1) {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    private String skills() {
+        Set<String> skills = new LinkedHashSet<>();
+        int count = 2 + random.nextInt(vocabulary.skillsPerJob);
+        for (int i = 0; i < count; i++) {
+            skills.add(vocabulary.skills[vocabulary.skillSampler.sample(random)]);
+        }
+        return String.join(", ", skills);
+    }
+
+    private String benefits() {
+        Set<String> benefits = new LinkedHashSet<>();
+        int count = 1 + random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            benefits.add("'" + pick(BENEFITS) + "'");
+        }
+        return "{" + String.join(", ", benefits) + "}";
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String[] names(String[] base, int size) {
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = i < base.length ? base[i] : base[i % base.length] + " " + (i / base.length + 1);
+        }
+        return names;
+    }
+
+    private static String[] companyNames(int size) {
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            int word = i % COMPANY_WORDS.length;
+            int noun = (i / COMPANY_WORDS.length) % COMPANY_NOUNS.length;
+            int round = i / (COMPANY_WORDS.length * COMPANY_NOUNS.length);
+            names[i] = COMPANY_WORDS[word] + " " + COMPANY_NOUNS[noun] + (round > 0 ? " " + (round + 1) : "");
+        }
+        return names;
+    }
+
+    private static class Vocabulary {
+        private final String[] countries;
+        private final String[] roles;
+        private final String[] companies;
+        private final String[] skills;
+        private final ZipfSampler countrySampler;
+        private final ZipfSampler roleSampler;
+        private final ZipfSampler companySampler;
+        private final ZipfSampler skillSampler;
+        private final ZipfSampler wordSampler;
+        private final CompanyProfileDto[] profiles;
+        private final int descriptionWords;
+        private final int skillsPerJob;
+
+        private Vocabulary(Builder builder) {
+            this.countries = names(COUNTRIES, builder.countries);
+            this.roles = names(ROLES, builder.roles);
+            this.companies = companyNames(builder.companies);
+            this.skills = names(SKILLS, builder.skills);
+            this.countrySampler = new ZipfSampler(countries.length, builder.exponent);
+            this.roleSampler = new ZipfSampler(roles.length, builder.exponent);
+            this.companySampler = new ZipfSampler(companies.length, builder.exponent);
+            this.skillSampler = new ZipfSampler(skills.length, builder.exponent);
+            this.wordSampler = new ZipfSampler(WORDS.length, builder.exponent);
+            this.profiles = new CompanyProfileDto[companies.length];
+            this.descriptionWords = Math.max(builder.descriptionWords, 1);
+            this.skillsPerJob = Math.max(builder.skillsPerJob, 1);
+        }
+
+        private synchronized CompanyProfileDto profile(int company) {
+            if (profiles[company] == null) {
+                // seeded by the company so the profile does not depend on generation order
+                SplittableRandom random = new SplittableRandom(company);
+                String name = companies[company];
+                CompanyProfileDto profile = new CompanyProfileDto();
+                profile.setSector(SECTORS[random.nextInt(SECTORS.length)]);
+                profile.setIndustry(profile.getSector() + " Services");
+                profile.setCity(CITIES[random.nextInt(CITIES.length)]);
+                profile.setState(STATES[random.nextInt(STATES.length)]);
+                profile.setZip(Integer.toString(10_000 + random.nextInt(89_999)));
+                profile.setWebsite("www." + name.toLowerCase().replace(' ', '-') + ".com");
+                profile.setTicker(ticker(name, company));
+                profile.setCeo(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+                profiles[company] = profile;
+            }
+            return profiles[company];
+        }
+
+        private static String ticker(String name, int company) {
+            StringBuilder sb = new StringBuilder();
+            for (String part : name.split(" ")) {
+                sb.append(Character.toUpperCase(part.charAt(0)));
+            }
+            return sb.append(company % 100).toString();
+        }
+    }
+
+    public static class Builder {
+        public long seed = 42;
+        public int countries = 200;
+        public int roles = 400;
+        public int companies = 5000;
+        public int skills = 2000;
+        public double exponent = 1.1;
+        public int descriptionWords = 120;
+        public int skillsPerJob = 5;
+
+        public Builder with(Consumer<Builder> consumer) {
+            consumer.accept(this);
+            return this;
+        }
+
+        public JobDataGenerator build() {
+            return new JobDataGenerator(new SplittableRandom(seed), new Vocabulary(this));
+        }
+    }
+}
@@ -1,147 +1,287 @@
 package com.bigdata.it4931.layer.application.service.serving.impl;
 
-import com.bigdata.it4931.config.Constants;
-import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
+import com.bigdata.it4931.config.kafka.properties.KafkaTopicProperties;
 import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataCsvMapper;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataWireCodec;
 import com.bigdata.it4931.layer.application.service.serving.ICsvProcessingService;
+import com.bigdata.it4931.layer.application.service.serving.ingest.CheckpointedCsvIngester;
+import com.bigdata.it4931.layer.application.service.serving.ingest.CsvLandingWatcher;
+import com.bigdata.it4931.layer.application.service.serving.ingest.IngestCheckpointStore;
 import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
+import com.bigdata.it4931.layer.infrastructure.kafka.message.WireFormat;
 import com.bigdata.it4931.layer.infrastructure.kafka.write.KafkaBrokerWriter;
-import com.bigdata.it4931.utility.StringUtils;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVWriter;
-import com.opencsv.exceptions.CsvException;
+import com.bigdata.it4931.layer.infrastructure.kafka.write.PublishResult;
+import com.bigdata.it4931.utility.csv.CsvRecordReader;
+import com.bigdata.it4931.utility.csv.CsvSplit;
+import com.bigdata.it4931.utility.csv.CsvSplitter;
+import com.bigdata.it4931.utility.csv.ExternalCsvSorter;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hadoop.fs.FSDataInputStream;
-import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @Slf4j
 public class CsvProcessingService implements ICsvProcessingService {
     private final KafkaBrokerWriter kafkaBrokerWriter;
+    private final Properties producerProperties;
+    private final String topic;
     private final IHdfsAdapter hdfsAdapter;
+    private final WireFormat wireFormat;
+    private final ExecutorService ingestExecutor;
+    private final int parallelism;
     private final String datasetPath = "/bigdata/job_descriptions.csv";
+    private CsvLandingWatcher landingWatcher;
+
+    @Value("${csv.ingest.checkpoint.enabled:true}")
+    private boolean checkpointEnabled;
+
+    @Value("${csv.ingest.checkpoint.dir:/bigdata/_checkpoints}")
+    private String checkpointDirectory;
+
+    @Value("${csv.ingest.transaction.max-rows:5000}")
+    private int transactionMaxRows;
+
+    @Value("${csv.ingest.transaction.max-ms:5000}")
+    private long transactionMaxMillis;
+
+    @Value("${csv.watch.enabled:false}")
+    private boolean watchEnabled;
+
+    @Value("${csv.watch.dir:/bigdata/landing}")
+    private String watchDirectory;
+
+    @Value("${csv.watch.pattern:*.csv}")
+    private String watchPattern;
+
+    @Value("${csv.watch.workers:2}")
+    private int watchWorkers;
+
+    @Value("${csv.sort.key-column:10}")
+    private int sortKeyColumn;
+
+    @Value("${csv.sort.key-pattern:yyyy-MM-dd}")
+    private String sortKeyPattern;
+
+    @Value("${csv.sort.run-size-MB:64}")
+    private int sortRunSizeMB;
+
+    @Value("${csv.sort.threads:2}")
+    private int sortThreads;
+
+    @Value("${csv.sort.spill-dir:file:///tmp}")
+    private String sortSpillDirectory;
 
     public CsvProcessingService(@Qualifier("kafkaBrokerWriterProperties") Properties properties,
                                 @Value("${kafka.producer.topic}") String topic,
+                                @Value("${kafka.producer.max-in-flight-records:0}") int maxInFlightRecords,
+                                @Value("${kafka.producer.max-in-flight-bytes:0}") int maxInFlightBytes,
+                                @Value("${csv.ingest.parallelism:1}") int parallelism,
+                                @Qualifier("kafkaTopicProperties") KafkaTopicProperties kafkaTopicProperties,
                                 IHdfsAdapter hdfsAdapter) {
-        this.kafkaBrokerWriter = new KafkaBrokerWriter(properties, Collections.singletonList(topic));
+        this.kafkaBrokerWriter = new KafkaBrokerWriter(properties, Collections.singletonList(topic), maxInFlightRecords, maxInFlightBytes);
+        this.producerProperties = properties;
+        this.topic = topic;
+        this.wireFormat = kafkaTopicProperties.formatOf(topic);
         this.hdfsAdapter = hdfsAdapter;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.ingestExecutor = Executors.newFixedThreadPool(this.parallelism, new ThreadFactoryBuilder().setNameFormat("csv-ingest-%d").build());
     }
 
     @Scheduled(initialDelay = 5000, fixedDelay = Long.MAX_VALUE)
     public void process() {
+        Path path = new Path(hdfsAdapter.getNameNode() + datasetPath);
+        if (checkpointEnabled) {
+            processCheckpointed(path, "job_descriptions");
+            return;
+        }
+        if (parallelism > 1) {
+            processParallel(path);
+            return;
+        }
+
+        try (CsvRecordReader csvReader = new CsvRecordReader(hdfsAdapter.getFileSystem().open(path), 0)) {
+            LongAdder shortRows = new LongAdder();
+            logResult(path.toString(), publish(csvReader, true, shortRows));
+            if (shortRows.sum() > 0) {
+                log.warn("Skipped {} row(s) of {} with fewer than {} columns", shortRows.sum(), path, JobDataCsvMapper.COLUMN_COUNT);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Failed to process CSV file", e);
+        }
+    }
+
+    /**
+     * Publishes the file exactly once: a restart resumes from the checkpoint called {@code name} instead of
+     * republishing the rows that were already committed.
+     */
+    public void processCheckpointed(Path path, String name) {
         try {
-            Path path = new Path(hdfsAdapter.getNameNode() + datasetPath);
-            FSDataInputStream inputStream = hdfsAdapter.getFileSystem().open(path);
+            logResult(path.toString(), checkpointedIngester().ingest(path, name));
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to process CSV file", e);
+        }
+    }
 
-            CSVReader csvReader = new CSVReader(new InputStreamReader(inputStream));
-            String[] header = csvReader.readNext();
-            if (header == null) {
-                log.info("CSV file is empty or header is missing");
+    @Scheduled(initialDelayString = "${csv.watch.poll-ms:30000}", fixedDelayString = "${csv.watch.poll-ms:30000}")
+    public synchronized void pollLandingDirectory() {
+        if (!watchEnabled) {
+            return;
+        }
+        try {
+            if (landingWatcher == null) {
+                landingWatcher = new CsvLandingWatcher(hdfsAdapter.getFileSystem(),
+                        new Path(hdfsAdapter.getNameNode() + watchDirectory),
+                        watchPattern,
+                        checkpointStore(),
+                        checkpointedIngester(),
+                        watchWorkers);
             }
+            landingWatcher.poll();
+        } catch (IOException e) {
+            log.error("Failed to poll landing directory {}", watchDirectory, e);
+        }
+    }
 
-            String[] record;
-            while ((record = csvReader.readNext()) != null) {
-                JobDataDto jobDataDto = new JobDataDto();
-                jobDataDto.setJobId(record[0]);
-                jobDataDto.setExperience(record[1]);
-                jobDataDto.setQualifications(record[2]);
-                jobDataDto.setSalaryRange(record[3]);
-                jobDataDto.setLocation(record[4]);
-                jobDataDto.setCountry(record[5]);
-                jobDataDto.setLatitude(record[6]);
-                jobDataDto.setLongitude(record[7]);
-                jobDataDto.setWorkType(record[8]);
-                jobDataDto.setCompanySize(record[9]);
-                jobDataDto.setJobPostingDate(record[10]);
-                jobDataDto.setPreference(record[11]);
-                jobDataDto.setContactPerson(record[12]);
-                jobDataDto.setContact(record[13]);
-                jobDataDto.setJobTitle(record[14]);
-                jobDataDto.setRole(record[15]);
-                jobDataDto.setJobPortal(record[16]);
-                jobDataDto.setJobDescription(record[17]);
-                jobDataDto.setBenefits(record[18]);
-                jobDataDto.setSkills(record[19]);
-                jobDataDto.setResponsibilities(record[20]);
-                jobDataDto.setCompanyName(record[21]);
+    @PreDestroy
+    protected synchronized void stopService() {
+        if (landingWatcher != null) {
+            landingWatcher.close();
+            landingWatcher = null;
+        }
+        ingestExecutor.shutdown();
+    }
 
-                try {
-                    if (StringUtils.isNullOrEmpty(record[22])) {
-                        jobDataDto.setCompanyProfile(new CompanyProfileDto());
-                    } else {
-                        String companyProfile = normalizeJson(record[22]);
-                        CompanyProfileDto companyProfileDto = Constants.OBJECT_MAPPER.readValue(companyProfile, CompanyProfileDto.class);
-                        jobDataDto.setCompanyProfile(companyProfileDto);
-                    }
-                } catch (JsonProcessingException e) {
-                    log.info("Company profile: {}", record[22]);
-                    log.error("Failed to parse company profile", e);
-                    jobDataDto.setCompanyProfile(new CompanyProfileDto());
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
+    private IngestCheckpointStore checkpointStore() {
+        return new IngestCheckpointStore(hdfsAdapter.getConfiguration(), new Path(hdfsAdapter.getNameNode() + checkpointDirectory));
+    }
 
-                kafkaBrokerWriter.write(Constants.OBJECT_MAPPER.writeValueAsString(jobDataDto));
-            }
+    private CheckpointedCsvIngester checkpointedIngester() {
+        return CheckpointedCsvIngester.newBuilder()
+                .with(builder -> {
+                    builder.fileSystem = hdfsAdapter.getFileSystem();
+                    builder.checkpointStore = checkpointStore();
+                    builder.producerProperties = producerProperties;
+                    builder.topic = topic;
+                    builder.wireFormat = wireFormat;
+                    builder.executorService = ingestExecutor;
+                    builder.parallelism = parallelism;
+                    builder.transactionMaxRows = transactionMaxRows;
+                    builder.transactionMaxMillis = transactionMaxMillis;
+                })
+                .build();
+    }
 
-            inputStream.close();
-        } catch (IOException | CsvException e) {
+    public void processParallel(Path path) {
+        long startTime = System.currentTimeMillis();
+        try {
+            List<CsvSplit> splits = new CsvSplitter(hdfsAdapter.getFileSystem(), ingestExecutor).split(path, parallelism);
+            List<CompletableFuture<PublishResult>> futures = new ArrayList<>();
+            for (CsvSplit split : splits) {
+                futures.add(CompletableFuture.supplyAsync(() -> processSplit(split), ingestExecutor));
+            }
+            PublishResult result = PublishResult.empty();
+            for (CompletableFuture<PublishResult> future : futures) {
+                result = result.merge(future.join());
+            }
+            logResult(path + " (" + splits.size() + " splits, " + (System.currentTimeMillis() - startTime) + " ms)", result);
+        } catch (IOException | CompletionException e) {
             log.error("Failed to process CSV file", e);
         }
-
     }
 
-    private String normalizeJson(String jsonString) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < jsonString.length(); i++) {
-            if (jsonString.charAt(i) == '\"') {
-                if (((i > 0) && (jsonString.charAt(i - 1) == '{' || jsonString.charAt(i - 1) == ',' || jsonString.charAt(i - 1) == ':')) || ((i < jsonString.length() - 1) && (jsonString.charAt(i + 1) == '}' || jsonString.charAt(i + 1) == ',' || jsonString.charAt(i + 1) == ':'))) {
-                    sb.append("\"");
+    private PublishResult processSplit(CsvSplit split) {
+        try (FSDataInputStream inputStream = hdfsAdapter.getFileSystem().open(split.getPath())) {
+            inputStream.seek(split.getStart());
+            InputStream rangeStream = ByteStreams.limit(inputStream, split.length());
+            try (CsvRecordReader csvReader = new CsvRecordReader(rangeStream, split.getStart())) {
+                LongAdder shortRows = new LongAdder();
+                PublishResult result = publish(csvReader, split.getStart() == 0, shortRows);
+                if (shortRows.sum() > 0) {
+                    log.warn("Split {} [{}, {}) published {} row(s), skipped {} row(s) with fewer than {} columns", split.getIndex(),
+                            split.getStart(), split.getEnd(), result.getSucceeded(), shortRows.sum(), JobDataCsvMapper.COLUMN_COUNT);
                 } else {
-                    sb.append("\\\"");
+                    log.info("Split {} [{}, {}) published {} row(s)", split.getIndex(), split.getStart(), split.getEnd(), result.getSucceeded());
                 }
-            } else {
-                sb.append(jsonString.charAt(i));
+                return result;
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void logResult(String source, PublishResult result) {
+        if (result.hasFailures()) {
+            log.error("Published {}/{} row(s) from {}, {} failed", result.getSucceeded(), result.getSent(), source,
+                    result.getFailed(), result.getFirstError());
+        } else {
+            log.info("Published {} row(s) from {}", result.getSucceeded(), source);
         }
-        return sb.toString();
     }
 
-    public void sort() throws IOException, CsvException {
-        String inputPath = hdfsAdapter.getNameNode() + datasetPath;
-        String outputPath = hdfsAdapter.getNameNode() + "/bigdata/job_descriptions_sorted.csv";
-
-        FSDataInputStream inputStream = hdfsAdapter.getFileSystem().open(new Path(inputPath));
-        CSVReader csvReader = new CSVReader(new InputStreamReader(inputStream));
-        List<String[]> allRows = csvReader.readAll();
-        csvReader.close();
-        inputStream.close();
-        String[] header = allRows.remove(0);
-        log.info("Sorting CSV file");
-        log.info("Started sorting CSV file");
-        allRows.sort(Comparator.comparing(row -> row[10]));
-        allRows.add(0, header);
-        log.info("Finished sorting CSV file");
-
-        FSDataOutputStream outputStream = hdfsAdapter.getFileSystem().create(new Path(outputPath));
-        CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(outputStream));
-        csvWriter.writeAll(allRows);
-        csvWriter.close();
-        outputStream.close();
+    private PublishResult publish(CsvRecordReader csvReader, boolean hasHeader, LongAdder shortRows) throws IOException {
+        if (hasHeader && csvReader.readNext() == null) {
+            log.info("CSV file is empty or header is missing");
+            return PublishResult.empty();
+        }
+
+        Iterator<byte[]> messages = new AbstractIterator<>() {
+            @Override
+            protected byte[] computeNext() {
+                try {
+                    String[] record;
+                    while ((record = csvReader.readNext()) != null) {
+                        JobDataDto jobDataDto = JobDataCsvMapper.toJobData(record);
+                        if (jobDataDto != null) {
+                            return JobDataWireCodec.encode(jobDataDto, wireFormat);
+                        }
+                        shortRows.increment();
+                    }
+                    return endOfData();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return kafkaBrokerWriter.writeAllBytes(messages);
+    }
+
+    public void sort() throws IOException {
+        Path input = new Path(hdfsAdapter.getNameNode() + datasetPath);
+        Path output = new Path(hdfsAdapter.getNameNode() + "/bigdata/job_descriptions_sorted.csv");
+
+        ExternalCsvSorter.newBuilder()
+                .with(builder -> {
+                    builder.configuration = hdfsAdapter.getConfiguration();
+                    builder.keyColumn = sortKeyColumn;
+                    builder.keyPattern = sortKeyPattern;
+                    builder.runBytes = sortRunSizeMB * 1024L * 1024L;
+                    builder.threads = sortThreads;
+                    builder.spillDirectory = sortSpillDirectory;
+                })
+                .build()
+                .sort(input, output);
     }
 }
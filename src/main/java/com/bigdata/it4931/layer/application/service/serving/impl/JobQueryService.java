@@ -0,0 +1,405 @@
+package com.bigdata.it4931.layer.application.service.serving.impl;
+
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.config.avro.AvroSchemas;
+import com.bigdata.it4931.config.hdfs.HdfsConfiguration;
+import com.bigdata.it4931.layer.application.domain.dto.JobCountDto;
+import com.bigdata.it4931.layer.application.domain.dto.JobQueryDto;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataTypedMapper;
+import com.bigdata.it4931.layer.application.service.batch.CompactionJournal;
+import com.bigdata.it4931.layer.application.service.batch.ParquetCommitProtocol;
+import com.bigdata.it4931.layer.application.service.serving.IJobQueryService;
+import com.bigdata.it4931.layer.application.service.serving.query.JobQueryFilter;
+import com.bigdata.it4931.layer.application.service.serving.query.JobRowStream;
+import com.bigdata.it4931.layer.application.service.serving.query.ParquetScanTask;
+import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.avro.AvroReadSupport;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers queries from the Parquet files of the batch layer without starting Spark. Partition directories outside the
+ * date range or the countries are not listed, the filters are pushed down to the Parquet readers, which skip row groups
+ * and pages by their statistics, dictionaries and bloom filters, and only the columns needed are read. Files are
+ * scanned in parallel on a fork-join pool of {@code query.parallelism} threads, a streamed query on at most
+ * {@code query.stream-parallelism} of them, since its threads wait whenever its client reads slower.
+ * <p>
+ * Rows of v1 files are brought to the typed schema, so every row has the same fields. A file compacted while a query
+ * runs may be missed by it.
+ */
+@Service
+@Slf4j
+public class JobQueryService implements IJobQueryService, Closeable {
+    public static final List<String> DEFAULT_FIELDS = List.of("jobId", "jobTitle", "role", "workType", "country",
+            "location", "companyName", "postingDate", "salaryMin", "salaryMax", "experienceMinYears", "experienceMaxYears");
+    private static final Schema SCHEMA = AvroSchemas.JOB_DATA_V2;
+
+    private final FileSystem fileSystem;
+    private final Configuration configuration;
+    private final Path root;
+    private final ForkJoinPool pool;
+    private final int streamParallelism;
+    private final int maxRows;
+    private final int queueRows;
+    // published files never change, a path is only reused after compaction replaced its file
+    private final Cache<String, Footer> footers;
+    private final JobDataTypedMapper typedMapper = new JobDataTypedMapper();
+
+    public JobQueryService(IHdfsAdapter hdfsAdapter,
+                           HdfsConfiguration hdfsConfiguration,
+                           @Value("${query.parallelism:0}") int parallelism,
+                           @Value("${query.max-rows:100000}") int maxRows,
+                           @Value("${query.queue-rows:4096}") int queueRows,
+                           @Value("${query.stream-parallelism:2}") int streamParallelism,
+                           @Value("${query.footer-cache-files:100000}") int footerCacheFiles) {
+        this.fileSystem = hdfsAdapter.getFileSystem();
+        this.configuration = hdfsAdapter.getConfiguration();
+        this.root = new Path(hdfsAdapter.getNameNode() + "/" + hdfsConfiguration.getHdfsFolder());
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("query-scan-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.streamParallelism = Math.max(streamParallelism, 1);
+        this.maxRows = Math.max(maxRows, 1);
+        this.queueRows = queueRows;
+        this.footers = CacheBuilder.newBuilder().maximumSize(Math.max(footerCacheFiles, 1)).build();
+    }
+
+    @Override
+    public JobRowStream query(JobQueryDto query, List<String> fields, int limit) throws IOException {
+        List<String> selected = fields == null || fields.isEmpty() ? DEFAULT_FIELDS : fields;
+        for (String field : selected) {
+            field(field);
+        }
+        Scan scan = new Scan(new JobQueryFilter(query), selected, null);
+        List<FileStatus> files = listFiles(scan.filter);
+        return new JobRowStream(queueRows, limit > 0 ? Math.min(limit, maxRows) : maxRows, rows -> {
+            if (files.isEmpty()) {
+                rows.finish(null);
+                return;
+            }
+            long startTime = System.currentTimeMillis();
+            pool.execute(() -> {
+                Throwable failure = null;
+                try {
+                    // the scanners take the next file when done with one
+                    AtomicInteger next = new AtomicInteger();
+                    List<ForkJoinTask<Long>> scanners = new ArrayList<>();
+                    for (int i = Math.min(files.size(), streamParallelism); i > 0; i--) {
+                        scanners.add(ForkJoinTask.adapt(() -> scanRows(files, next, scan, rows)));
+                    }
+                    long read = 0;
+                    for (ForkJoinTask<Long> scanner : ForkJoinTask.invokeAll(scanners)) {
+                        read += scanner.join();
+                    }
+                    log.debug("Read {} matching row(s) from {} file(s) in {} ms", read, files.size(), System.currentTimeMillis() - startTime);
+                } catch (Throwable e) {
+                    log.error("Failed to scan {} file(s) below {}", files.size(), root, e);
+                    failure = e;
+                } finally {
+                    rows.finish(failure);
+                }
+            });
+        });
+    }
+
+    @Override
+    public JobCountDto count(JobQueryDto query, String groupBy, int top) throws IOException {
+        long startTime = System.currentTimeMillis();
+        if (groupBy != null && field(groupBy).schema().getType() == Schema.Type.RECORD) {
+            throw new IllegalArgumentException("Cannot group by " + groupBy);
+        }
+        Scan scan = new Scan(new JobQueryFilter(query), groupBy == null ? Collections.emptyList() : List.of(groupBy), groupBy);
+        List<FileStatus> files = listFiles(scan.filter);
+        Map<Object, Long> counts;
+        try {
+            counts = files.isEmpty() ? new HashMap<>()
+                    : pool.invoke(new ParquetScanTask<>(files, status -> count(status, scan), JobQueryService::merge));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        JobCountDto result = new JobCountDto();
+        result.setGroupBy(groupBy);
+        result.setTotal(counts.values().stream().mapToLong(Long::longValue).sum());
+        if (groupBy != null) {
+            List<JobCountDto.Group> groups = new ArrayList<>();
+            counts.forEach((value, count) -> groups.add(new JobCountDto.Group(value, count)));
+            groups.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+            result.setGroups(top > 0 && groups.size() > top ? new ArrayList<>(groups.subList(0, top)) : groups);
+        }
+        result.setFiles(files.size());
+        result.setTookMs(System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    private long scanRows(List<FileStatus> files, AtomicInteger next, Scan scan, JobRowStream rows) throws IOException {
+        long read = 0;
+        for (int i; !rows.isCancelled() && (i = next.getAndIncrement()) < files.size(); ) {
+            read += scanRows(files.get(i), scan, rows);
+        }
+        return read;
+    }
+
+    private long scanRows(FileStatus status, Scan scan, JobRowStream rows) throws IOException {
+        if (rows.isCancelled()) {
+            return 0;
+        }
+        Footer footer = footer(status);
+        if (footer == null) {
+            return 0;
+        }
+        long read = 0;
+        try (ParquetReader<GenericRecord> reader = open(status, footer.typed ? scan.typed : scan.untyped)) {
+            GenericRecord record;
+            while ((record = reader.read()) != null) {
+                read++;
+                if (!rows.emit(toJson(typed(record, footer.typed), scan.fields))) {
+                    break;
+                }
+            }
+        } catch (FileNotFoundException e) {
+            log.debug("{} was compacted while scanned", status.getPath());
+        }
+        return read;
+    }
+
+    private Map<Object, Long> count(FileStatus status, Scan scan) throws IOException {
+        Map<Object, Long> counts = new HashMap<>();
+        Footer footer = footer(status);
+        if (footer == null) {
+            return counts;
+        }
+        if (scan.groupBy == null && scan.filter.isEmpty()) {
+            counts.put(null, footer.rows);
+            return counts;
+        }
+        Schema groupSchema = scan.groupBy == null ? null : SCHEMA.getField(scan.groupBy).schema();
+        try (ParquetReader<GenericRecord> reader = open(status, footer.typed ? scan.typed : scan.untyped)) {
+            GenericRecord record;
+            while ((record = reader.read()) != null) {
+                Object key = groupSchema == null ? null : groupKey(typed(record, footer.typed).get(scan.groupBy), groupSchema);
+                counts.merge(key, 1L, Long::sum);
+            }
+        } catch (FileNotFoundException e) {
+            log.debug("{} was compacted while scanned", status.getPath());
+            counts.clear();
+        }
+        return counts;
+    }
+
+    private ParquetReader<GenericRecord> open(FileStatus status, Read read) throws IOException {
+        return AvroParquetReader.<GenericRecord>builder(HadoopInputFile.fromStatus(status, read.configuration))
+                .withConf(read.configuration)
+                .withFilter(read.filter)
+                .build();
+    }
+
+    /**
+     * @return null when the file is gone
+     */
+    private Footer footer(FileStatus status) throws IOException {
+        String key = status.getPath() + "@" + status.getModificationTime();
+        Footer footer = footers.getIfPresent(key);
+        if (footer == null) {
+            try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(status, configuration))) {
+                footer = new Footer(reader.getFileMetaData().getSchema().containsField("postingDate"), reader.getRecordCount());
+            } catch (FileNotFoundException e) {
+                log.debug("{} was compacted before scanned", status.getPath());
+                return null;
+            }
+            footers.put(key, footer);
+        }
+        return footer;
+    }
+
+    private List<FileStatus> listFiles(JobQueryFilter filter) throws IOException {
+        List<FileStatus> files = new ArrayList<>();
+        if (fileSystem.exists(root)) {
+            listFiles(root, filter, files);
+            // a merged file published next to the files it replaces holds their rows already
+            Set<Path> replaced = CompactionJournal.replacedFiles(fileSystem, root);
+            files.removeIf(status -> replaced.contains(status.getPath()));
+        }
+        return files;
+    }
+
+    private void listFiles(Path directory, JobQueryFilter filter, List<FileStatus> files) throws IOException {
+        for (FileStatus status : fileSystem.listStatus(directory)) {
+            String name = status.getPath().getName();
+            if (name.startsWith("_") || name.startsWith(".")) {
+                continue;
+            }
+            if (status.isDirectory()) {
+                if (filter.acceptsDirectory(name)) {
+                    listFiles(status.getPath(), filter, files);
+                }
+            } else if (ParquetCommitProtocol.isPublished(status.getPath())) {
+                files.add(status);
+            }
+        }
+    }
+
+    /**
+     * @return the record in the typed schema, the projected v1 fields parsed into their typed fields
+     */
+    private GenericRecord typed(GenericRecord record, boolean typed) {
+        if (typed) {
+            return record;
+        }
+        GenericData.Record jobDataRecord = new GenericData.Record(AvroSchemas.JOB_DATA);
+        for (Schema.Field field : record.getSchema().getFields()) {
+            jobDataRecord.put(field.name(), record.get(field.pos()));
+        }
+        return typedMapper.toTyped(jobDataRecord);
+    }
+
+    private static Schema.Field field(String name) {
+        Schema.Field field = SCHEMA.getField(name);
+        if (field == null) {
+            throw new IllegalArgumentException("Unknown field " + name);
+        }
+        return field;
+    }
+
+    private static byte[] toJson(GenericRecord record, List<String> fields) throws IOException {
+        ByteArrayBuilder buffer = new ByteArrayBuilder(512);
+        try (JsonGenerator generator = Constants.OBJECT_MAPPER.getFactory().createGenerator(buffer)) {
+            generator.writeStartObject();
+            for (String field : fields) {
+                generator.writeFieldName(field);
+                writeValue(generator, record.get(field), SCHEMA.getField(field).schema());
+            }
+            generator.writeEndObject();
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value, Schema schema) throws IOException {
+        if (value instanceof GenericRecord) {
+            GenericRecord nested = (GenericRecord) value;
+            generator.writeStartObject();
+            for (Schema.Field field : nested.getSchema().getFields()) {
+                generator.writeFieldName(field.name());
+                writeValue(generator, nested.get(field.pos()), field.schema());
+            }
+            generator.writeEndObject();
+        } else {
+            generator.writeObject(groupKey(value, schema));
+        }
+    }
+
+    /**
+     * @return the value as strings and numbers, dates as ISO strings
+     */
+    private static Object groupKey(Object value, Schema schema) {
+        if (value instanceof CharSequence) {
+            return value.toString();
+        }
+        if (value instanceof Integer && isDate(schema)) {
+            return LocalDate.ofEpochDay((Integer) value).toString();
+        }
+        return value;
+    }
+
+    private static boolean isDate(Schema schema) {
+        if (schema.getType() == Schema.Type.UNION) {
+            for (Schema type : schema.getTypes()) {
+                if (type.getLogicalType() instanceof LogicalTypes.Date) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return schema.getLogicalType() instanceof LogicalTypes.Date;
+    }
+
+    private static Map<Object, Long> merge(Map<Object, Long> left, Map<Object, Long> right) {
+        Map<Object, Long> larger = left.size() >= right.size() ? left : right;
+        Map<Object, Long> smaller = larger == left ? right : left;
+        smaller.forEach((key, count) -> larger.merge(key, count, Long::sum));
+        return larger;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private static final class Footer {
+        private final boolean typed;
+        private final long rows;
+
+        private Footer(boolean typed, long rows) {
+            this.typed = typed;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * How the files of both schemas are read for one query.
+     */
+    private final class Scan {
+        private final JobQueryFilter filter;
+        private final List<String> fields;
+        private final String groupBy;
+        private final Read typed;
+        private final Read untyped;
+
+        private Scan(JobQueryFilter filter, List<String> fields, String groupBy) {
+            this.filter = filter;
+            this.fields = fields;
+            this.groupBy = groupBy;
+            this.typed = new Read(filter, fields, true);
+            this.untyped = new Read(filter, fields, false);
+        }
+    }
+
+    private final class Read {
+        private final Configuration configuration;
+        private final FilterCompat.Filter filter;
+
+        private Read(JobQueryFilter queryFilter, List<String> fields, boolean typed) {
+            Schema projection = queryFilter.projection(typed, fields);
+            this.configuration = new Configuration(JobQueryService.this.configuration);
+            AvroReadSupport.setRequestedProjection(configuration, projection);
+            AvroReadSupport.setAvroReadSchema(configuration, projection);
+            this.filter = queryFilter.filter(typed);
+        }
+    }
+}
@@ -1,25 +1,162 @@
 package com.bigdata.it4931.layer.application.service.serving.impl;
 
+import com.bigdata.it4931.config.kafka.properties.KafkaTopicProperties;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataCsvMapper;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataWireCodec;
+import com.bigdata.it4931.layer.application.service.serving.generator.JobDataGenerator;
+import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
+import com.bigdata.it4931.layer.infrastructure.kafka.message.WireFormat;
 import com.bigdata.it4931.layer.infrastructure.kafka.write.KafkaBrokerWriter;
+import com.bigdata.it4931.layer.infrastructure.kafka.write.PublishResult;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.RateLimiter;
+import com.opencsv.CSVWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.Path;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Properties;
 
+/**
+ * Load generator: writes synthetic job postings to a CSV file or publishes them to Kafka at a fixed rate.
+ */
 @Service
+@Slf4j
 public class TestProducer {
     private final KafkaBrokerWriter kafkaBrokerWriter;
+    private final IHdfsAdapter hdfsAdapter;
+    private final WireFormat wireFormat;
+    private final JobDataGenerator generator;
+
+    @Value("${generator.mode:none}")
+    private String mode;
+
+    @Value("${generator.csv.path:file:///tmp/job_descriptions_synthetic.csv}")
+    private String csvPath;
+
+    @Value("${generator.csv.size-MB:1024}")
+    private long csvSizeMB;
+
+    @Value("${generator.kafka.records:1000000}")
+    private long kafkaRecords;
+
+    @Value("${generator.kafka.rate-per-second:1000}")
+    private double kafkaRatePerSecond;
 
     public TestProducer(@Qualifier("kafkaBrokerWriterProperties") Properties properties,
-                        @Value("${kafka.producer.topic}") String topic) {
+                        @Value("${kafka.producer.topic}") String topic,
+                        @Qualifier("kafkaTopicProperties") KafkaTopicProperties kafkaTopicProperties,
+                        @Value("${generator.seed:42}") long seed,
+                        @Value("${generator.countries:200}") int countries,
+                        @Value("${generator.roles:400}") int roles,
+                        @Value("${generator.companies:5000}") int companies,
+                        @Value("${generator.skills:2000}") int skills,
+                        @Value("${generator.zipf-exponent:1.1}") double exponent,
+                        @Value("${generator.description-words:120}") int descriptionWords,
+                        IHdfsAdapter hdfsAdapter) {
         this.kafkaBrokerWriter = new KafkaBrokerWriter(properties, Collections.singletonList(topic));
+        this.hdfsAdapter = hdfsAdapter;
+        this.wireFormat = kafkaTopicProperties.formatOf(topic);
+        this.generator = JobDataGenerator.newBuilder()
+                .with(builder -> {
+                    builder.seed = seed;
+                    builder.countries = countries;
+                    builder.roles = roles;
+                    builder.companies = companies;
+                    builder.skills = skills;
+                    builder.exponent = exponent;
+                    builder.descriptionWords = descriptionWords;
+                })
+                .build();
+    }
+
+    @Scheduled(initialDelay = 5000, fixedDelay = Long.MAX_VALUE)
+    public void run() {
+        try {
+            if ("csv".equalsIgnoreCase(mode)) {
+                writeCsv(csvPath, csvSizeMB * 1024 * 1024);
+            } else if ("kafka".equalsIgnoreCase(mode)) {
+                PublishResult result = publish(kafkaRecords, kafkaRatePerSecond);
+                log.info("Published {}/{} synthetic row(s) in {} ms", result.getSucceeded(), result.getSent(), result.getElapsedMillis());
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Failed to generate synthetic data", e);
+        }
     }
 
 //    @Scheduled(fixedRate = 2000)
     public void send() {
-        kafkaBrokerWriter.write(System.currentTimeMillis() + "");
+        try {
+            kafkaBrokerWriter.write(JobDataWireCodec.encode(generator.fork().next(), wireFormat));
+        } catch (IOException e) {
+            log.error("Failed to encode synthetic job data", e);
+        }
+    }
+
+    /**
+     * Writes rows with the dataset's header until the file reaches {@code targetBytes}. A path without a scheme is
+     * resolved against the name node, use {@code file://} for the local disk.
+     */
+    public void writeCsv(String target, long targetBytes) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Path path = new Path(target);
+        if (path.toUri().getScheme() == null) {
+            path = new Path(hdfsAdapter.getNameNode() + target);
+        }
+        JobDataGenerator csvGenerator = generator.fork();
+        long rows = 0;
+        CountingOutputStream outputStream = new CountingOutputStream(
+                new BufferedOutputStream(path.getFileSystem(hdfsAdapter.getConfiguration()).create(path, true), 1024 * 1024));
+        try (CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            csvWriter.writeNext(JobDataCsvMapper.HEADER);
+            while (outputStream.getCount() < targetBytes) {
+                for (int i = 0; i < 1000; i++) {
+                    csvWriter.writeNext(JobDataCsvMapper.toRecord(csvGenerator.next()));
+                }
+                rows += 1000;
+                csvWriter.flush();
+            }
+        }
+        long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+        log.info("Wrote {} synthetic row(s), {} MB to {} in {} ms ({} MB/s)", rows, outputStream.getCount() >> 20, path,
+                elapsed, (outputStream.getCount() >> 20) * 1000 / elapsed);
+    }
+
+    /**
+     * Publishes {@code records} rows at no more than {@code ratePerSecond}, 0 for no limit.
+     */
+    public PublishResult publish(long records, double ratePerSecond) {
+        JobDataGenerator kafkaGenerator = generator.fork();
+        RateLimiter rateLimiter = ratePerSecond > 0 ? RateLimiter.create(ratePerSecond) : null;
+        Iterator<byte[]> messages = new AbstractIterator<>() {
+            private long remaining = records;
+
+            @Override
+            protected byte[] computeNext() {
+                if (remaining-- <= 0) {
+                    return endOfData();
+                }
+                if (rateLimiter != null) {
+                    rateLimiter.acquire();
+                }
+                try {
+                    return JobDataWireCodec.encode(kafkaGenerator.next(), wireFormat);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return kafkaBrokerWriter.writeAllBytes(messages);
     }
 }
@@ -0,0 +1,355 @@
+package com.bigdata.it4931.layer.application.service.serving.ingest;
+
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataCsvMapper;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataWireCodec;
+import com.bigdata.it4931.layer.infrastructure.kafka.message.WireFormat;
+import com.bigdata.it4931.layer.infrastructure.kafka.read.KafkaTopicTail;
+import com.bigdata.it4931.layer.infrastructure.kafka.write.KafkaTransactionalWriter;
+import com.bigdata.it4931.layer.infrastructure.kafka.write.PublishResult;
+import com.bigdata.it4931.utility.csv.CsvRecordReader;
+import com.bigdata.it4931.utility.csv.CsvSplit;
+import com.bigdata.it4931.utility.csv.CsvSplitter;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Longs;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Publishes a CSV file exactly once across restarts.
+ * <p>
+ * Every range of the file not published yet gets its own transactional producer and is published in transactions
+ * of bounded size. Each record carries the id of its range and the byte offset right after it as headers. Before a
+ * transaction is committed the checkpoint records it as pending, after the commit it records the new position. When a
+ * restart finds a pending transaction, the producer has already fenced and aborted anything left open, and the
+ * committed tail of the topic tells whether the transaction made it.
+ */
+@Slf4j
+public class CheckpointedCsvIngester {
+    public static final String ID_HEADER = "ingest.id";
+    public static final String POSITION_HEADER = "ingest.position";
+
+    private final FileSystem fileSystem;
+    private final IngestCheckpointStore checkpointStore;
+    private final Properties producerProperties;
+    private final String topic;
+    private final WireFormat wireFormat;
+    private final ExecutorService executorService;
+    private final int parallelism;
+    private final int transactionMaxRows;
+    private final long transactionMaxMillis;
+    private final Function<String, KafkaTransactionalWriter> writerFactory;
+    private final Supplier<KafkaTopicTail> topicTailFactory;
+
+    private CheckpointedCsvIngester(Builder builder) {
+        this.fileSystem = builder.fileSystem;
+        this.checkpointStore = builder.checkpointStore;
+        this.producerProperties = builder.producerProperties;
+        this.topic = builder.topic;
+        this.wireFormat = builder.wireFormat;
+        this.executorService = builder.executorService;
+        this.parallelism = Math.max(builder.parallelism, 1);
+        this.transactionMaxRows = Math.max(builder.transactionMaxRows, 1);
+        this.transactionMaxMillis = builder.transactionMaxMillis;
+        this.writerFactory = builder.writerFactory != null
+                ? builder.writerFactory
+                : transactionalId -> new KafkaTransactionalWriter(producerProperties, topic, transactionalId);
+        this.topicTailFactory = builder.topicTailFactory != null
+                ? builder.topicTailFactory
+                : () -> new KafkaTopicTail(producerProperties, topic);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Publishes the rows of {@code path} that the checkpoint called {@code name} has not recorded yet.
+     */
+    public PublishResult ingest(Path path, String name) throws IOException {
+        return ingest(path, name, 0, fileSystem.getFileStatus(path).getLen());
+    }
+
+    /**
+     * Publishes the rows of {@code [from, to)} that the checkpoint called {@code name} has not recorded yet. Both ends
+     * must be record boundaries, a header row is only expected when {@code from} is 0.
+     */
+    public PublishResult ingest(Path path, String name, long from, long to) throws IOException {
+        long startTime = System.currentTimeMillis();
+        IngestCheckpoint checkpoint = checkpointStore.load(name)
+                .filter(existing -> matches(existing, path, from, to))
+                .orElse(null);
+        if (checkpoint != null && checkpoint.isCompleted()) {
+            log.info("{} [{}, {}) was already published, see checkpoint {}", path, from, to, name);
+            return PublishResult.empty();
+        }
+        if (checkpoint == null) {
+            checkpoint = newCheckpoint(path, from, to);
+            checkpointStore.save(name, checkpoint);
+        } else {
+            log.info("Resuming {} from checkpoint {}", path, name);
+        }
+
+        try (KafkaTopicTail topicTail = topicTailFactory.get()) {
+            List<CompletableFuture<PublishResult>> futures = new ArrayList<>();
+            for (IngestCheckpoint.Range range : checkpoint.getRanges()) {
+                if (range.getPosition() >= range.getEnd() && range.getPending() == null) {
+                    continue;
+                }
+                IngestCheckpoint target = checkpoint;
+                futures.add(CompletableFuture.supplyAsync(() -> resumeRange(name, path, target, range, topicTail), executorService));
+            }
+            PublishResult result = PublishResult.empty();
+            for (CompletableFuture<PublishResult> future : futures) {
+                result = result.merge(join(future));
+            }
+
+            synchronized (checkpoint) {
+                if (checkpoint.allRangesPublished()) {
+                    checkpoint.setCompleted(true);
+                    checkpointStore.save(name, checkpoint);
+                }
+            }
+            return new PublishResult(result.getSent(), result.getSucceeded(), result.getFailed(),
+                    System.currentTimeMillis() - startTime, result.getFirstError());
+        }
+    }
+
+    private boolean matches(IngestCheckpoint checkpoint, Path path, long from, long to) {
+        if (checkpoint.getPath().equals(path.toString()) && checkpoint.getStart() == from && checkpoint.getEnd() == to) {
+            return true;
+        }
+        log.warn("Checkpoint for {} [{}, {}) does not match {} [{}, {}), starting over",
+                checkpoint.getPath(), checkpoint.getStart(), checkpoint.getEnd(), path, from, to);
+        return false;
+    }
+
+    private IngestCheckpoint newCheckpoint(Path path, long from, long to) throws IOException {
+        IngestCheckpoint checkpoint = new IngestCheckpoint();
+        checkpoint.setPath(path.toString());
+        checkpoint.setStart(from);
+        checkpoint.setEnd(to);
+        List<CsvSplit> splits = parallelism > 1
+                ? new CsvSplitter(fileSystem, executorService).split(path, from, to, fileSystem.getFileStatus(path).getBlockSize(), parallelism)
+                : List.of(new CsvSplit(path, 0, from, to));
+        for (CsvSplit split : splits) {
+            checkpoint.getRanges().add(new IngestCheckpoint.Range(split.getIndex(), split.getStart(), split.getEnd()));
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Must run once the writer of the range fenced its older producers, so the transaction is either committed or
+     * aborted by then.
+     */
+    private void resolvePending(String name, IngestCheckpoint checkpoint, IngestCheckpoint.Range range, KafkaTopicTail topicTail) throws IOException {
+        IngestCheckpoint.Pending pending = range.getPending();
+        if (pending == null) {
+            return;
+        }
+        byte[] id = transactionalId(name, range).getBytes(StandardCharsets.UTF_8);
+        AtomicLong committedPosition = new AtomicLong(-1);
+        synchronized (topicTail) {
+            topicTail.scan(pending.getScanFrom(), record -> {
+                Header idHeader = record.headers().lastHeader(ID_HEADER);
+                if (idHeader != null && Arrays.equals(idHeader.value(), id)) {
+                    committedPosition.accumulateAndGet(position(record), Math::max);
+                }
+            });
+        }
+        // checkpoints written before the last record was tracked only have the position of the range
+        long lastRecordPosition = pending.getLastRecordPosition() > 0 ? pending.getLastRecordPosition() : pending.getPosition();
+        synchronized (checkpoint) {
+            if (committedPosition.get() >= lastRecordPosition) {
+                log.info("Transaction of range {} up to byte {} was committed", range.getIndex(), pending.getPosition());
+                range.setPosition(pending.getPosition());
+                range.setRows(pending.getRows());
+            } else {
+                log.info("Transaction of range {} up to byte {} was not committed, republishing it", range.getIndex(), pending.getPosition());
+            }
+            range.setPending(null);
+            checkpointStore.save(name, checkpoint);
+        }
+    }
+
+    private PublishResult resumeRange(String name,
+                                      Path path,
+                                      IngestCheckpoint checkpoint,
+                                      IngestCheckpoint.Range range,
+                                      KafkaTopicTail topicTail) {
+        try (KafkaTransactionalWriter writer = writerFactory.apply(transactionalId(name, range))) {
+            resolvePending(name, checkpoint, range, topicTail);
+            if (range.getPosition() >= range.getEnd()) {
+                return PublishResult.empty();
+            }
+            return publishRange(name, path, checkpoint, range, writer, topicTail);
+        } catch (IOException | KafkaException e) {
+            log.error("Failed to resume range {} of {}", range.getIndex(), path, e);
+            return new PublishResult(0, 0, 0, 0, e);
+        }
+    }
+
+    private PublishResult publishRange(String name,
+                                       Path path,
+                                       IngestCheckpoint checkpoint,
+                                       IngestCheckpoint.Range range,
+                                       KafkaTransactionalWriter writer,
+                                       KafkaTopicTail topicTail) {
+        long startTime = System.currentTimeMillis();
+        byte[] id = transactionalId(name, range).getBytes(StandardCharsets.UTF_8);
+        long sent = 0;
+        long succeeded = 0;
+        long shortRows = 0;
+        try (FSDataInputStream inputStream = fileSystem.open(path)) {
+            inputStream.seek(range.getPosition());
+            try (CsvRecordReader csvReader = new CsvRecordReader(ByteStreams.limit(inputStream, range.getEnd() - range.getPosition()), range.getPosition())) {
+                if (range.getPosition() == 0 && csvReader.readNext() == null) {
+                    log.info("CSV file is empty or header is missing");
+                    return PublishResult.empty();
+                }
+                boolean more = true;
+                while (more) {
+                    Map<Integer, Long> scanFrom = endOffsets(topicTail);
+                    long transactionStart = System.currentTimeMillis();
+                    int rows = 0;
+                    long lastRecordPosition = -1;
+                    String[] record;
+                    while (true) {
+                        record = csvReader.readNext();
+                        if (record == null) {
+                            more = false;
+                            break;
+                        }
+                        JobDataDto jobDataDto = JobDataCsvMapper.toJobData(record);
+                        if (jobDataDto == null) {
+                            shortRows++;
+                            continue;
+                        }
+                        lastRecordPosition = csvReader.position();
+                        writer.send(JobDataWireCodec.encode(jobDataDto, wireFormat), headers(id, lastRecordPosition));
+                        rows++;
+                        if (rows >= transactionMaxRows || System.currentTimeMillis() - transactionStart >= transactionMaxMillis) {
+                            break;
+                        }
+                    }
+                    sent += rows;
+                    long position = more ? csvReader.position() : range.getEnd();
+                    commit(name, checkpoint, range, writer, new IngestCheckpoint.Pending(position, lastRecordPosition, range.getRows() + rows, scanFrom));
+                    succeeded += rows;
+                }
+            }
+            if (shortRows > 0) {
+                log.warn("Range {} [{}, {}) of {} published {} row(s), skipped {} row(s) with fewer than {} columns", range.getIndex(),
+                        range.getStart(), range.getEnd(), path, succeeded, shortRows, JobDataCsvMapper.COLUMN_COUNT);
+            } else {
+                log.info("Range {} [{}, {}) of {} published {} row(s)", range.getIndex(), range.getStart(), range.getEnd(), path, succeeded);
+            }
+            return new PublishResult(sent, succeeded, sent - succeeded, System.currentTimeMillis() - startTime, null);
+        } catch (IOException | KafkaException e) {
+            log.error("Failed to publish range {} of {}, it resumes from byte {} on the next run", range.getIndex(), path, range.getPosition(), e);
+            writer.abort();
+            return new PublishResult(sent, succeeded, sent - succeeded, System.currentTimeMillis() - startTime, e);
+        }
+    }
+
+    private void commit(String name,
+                        IngestCheckpoint checkpoint,
+                        IngestCheckpoint.Range range,
+                        KafkaTransactionalWriter writer,
+                        IngestCheckpoint.Pending pending) throws IOException {
+        if (writer.inTransaction()) {
+            synchronized (checkpoint) {
+                range.setPending(pending);
+                checkpointStore.save(name, checkpoint);
+            }
+            writer.commit();
+        }
+        synchronized (checkpoint) {
+            range.setPosition(pending.getPosition());
+            range.setRows(pending.getRows());
+            range.setPending(null);
+            checkpointStore.save(name, checkpoint);
+        }
+    }
+
+    private static Map<Integer, Long> endOffsets(KafkaTopicTail topicTail) {
+        synchronized (topicTail) {
+            return topicTail.endOffsets();
+        }
+    }
+
+    private static List<Header> headers(byte[] id, long position) {
+        List<Header> headers = new ArrayList<>(2);
+        headers.add(new RecordHeader(ID_HEADER, id));
+        headers.add(new RecordHeader(POSITION_HEADER, Longs.toByteArray(position)));
+        return headers;
+    }
+
+    private static long position(ConsumerRecord<byte[], byte[]> record) {
+        Header header = record.headers().lastHeader(POSITION_HEADER);
+        return header == null ? -1 : Longs.fromByteArray(header.value());
+    }
+
+    private static String transactionalId(String name, IngestCheckpoint.Range range) {
+        return "csv-ingest-" + name + "-" + range.getIndex();
+    }
+
+    private static PublishResult join(CompletableFuture<PublishResult> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    public static class Builder {
+        public FileSystem fileSystem;
+        public IngestCheckpointStore checkpointStore;
+        public Properties producerProperties;
+        public String topic;
+        public WireFormat wireFormat = WireFormat.JSON;
+        public ExecutorService executorService;
+        public int parallelism = 1;
+        public int transactionMaxRows = 5000;
+        public long transactionMaxMillis = 5000;
+        /**
+         * Creates the writer of a transactional id, a producer configured by {@link #producerProperties} by default.
+         */
+        public Function<String, KafkaTransactionalWriter> writerFactory;
+        public Supplier<KafkaTopicTail> topicTailFactory;
+
+        public Builder with(Consumer<Builder> consumer) {
+            consumer.accept(this);
+            return this;
+        }
+
+        public CheckpointedCsvIngester build() {
+            return new CheckpointedCsvIngester(this);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.bigdata.it4931.layer.application.service.serving.ingest;
+
+import com.bigdata.it4931.layer.infrastructure.kafka.write.PublishResult;
+import com.bigdata.it4931.utility.csv.CsvSplitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Publishes the CSV files dropped into a directory, including rows appended to files it has already seen.
+ * <p>
+ * Every poll lists the directory and hands each file that is longer than its offset in the manifest to a bounded
+ * worker pool. A worker publishes the new bytes up to the last complete record with {@link CheckpointedCsvIngester},
+ * so a record still being written is left for a later poll, then moves the offset in the manifest forward.
+ */
+@Slf4j
+public class CsvLandingWatcher implements Closeable {
+    private static final String MANIFEST = "landing-manifest";
+
+    private final FileSystem fileSystem;
+    private final Path directory;
+    private final String pattern;
+    private final IngestCheckpointStore checkpointStore;
+    private final CheckpointedCsvIngester ingester;
+    private final CsvSplitter splitter;
+    private final ExecutorService workers;
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    private IngestManifest manifest;
+
+    public CsvLandingWatcher(FileSystem fileSystem,
+                             Path directory,
+                             String pattern,
+                             IngestCheckpointStore checkpointStore,
+                             CheckpointedCsvIngester ingester,
+                             int workers) {
+        this.fileSystem = fileSystem;
+        this.directory = directory;
+        this.pattern = pattern;
+        this.checkpointStore = checkpointStore;
+        this.ingester = ingester;
+        this.workers = Executors.newFixedThreadPool(Math.max(workers, 1), new ThreadFactoryBuilder().setNameFormat("csv-watch-%d").build());
+        this.splitter = new CsvSplitter(fileSystem, this.workers);
+    }
+
+    public synchronized void poll() throws IOException {
+        if (manifest == null) {
+            manifest = checkpointStore.load(MANIFEST, IngestManifest.class).orElseGet(IngestManifest::new);
+        }
+        FileStatus[] statuses = fileSystem.globStatus(new Path(directory, pattern));
+        if (statuses == null) {
+            return;
+        }
+        Arrays.sort(statuses, Comparator.comparingLong(FileStatus::getModificationTime));
+        int submitted = 0;
+        for (FileStatus status : statuses) {
+            if (!status.isFile()) {
+                continue;
+            }
+            String key = status.getPath().toString();
+            long offset;
+            synchronized (manifest) {
+                IngestManifest.Entry entry = manifest.getFiles().get(key);
+                offset = entry == null ? 0 : entry.getOffset();
+            }
+            if (status.getLen() < offset) {
+                log.warn("{} shrank to {} bytes but {} were already published, skipping it", key, status.getLen(), offset);
+                continue;
+            }
+            if (status.getLen() == offset || !inProgress.add(key)) {
+                continue;
+            }
+            workers.submit(() -> {
+                try {
+                    ingest(status, offset);
+                } finally {
+                    inProgress.remove(key);
+                }
+            });
+            submitted++;
+        }
+        if (submitted > 0) {
+            log.info("Found {} new or grown file(s) in {}", submitted, directory);
+        }
+    }
+
+    private void ingest(FileStatus status, long from) {
+        Path path = status.getPath();
+        String name = checkpointName(path, from);
+        try {
+            // a segment interrupted by a restart is finished with its original end even if the file grew since
+            long to = checkpointStore.load(name)
+                    .filter(checkpoint -> checkpoint.getPath().equals(path.toString()) && checkpoint.getStart() == from)
+                    .map(IngestCheckpoint::getEnd)
+                    .orElse(-1L);
+            if (to < 0) {
+                to = splitter.lastRecordEnd(path, from, status.getLen());
+            }
+            if (to == from) {
+                return;
+            }
+            PublishResult result = ingester.ingest(path, name, from, to);
+            if (result.getFirstError() != null || result.hasFailures()) {
+                log.error("Failed to publish {} [{}, {}), retrying on the next poll", path, from, to, result.getFirstError());
+                return;
+            }
+            long rows = checkpointStore.load(name)
+                    .map(checkpoint -> checkpoint.getRanges().stream().mapToLong(IngestCheckpoint.Range::getRows).sum())
+                    .orElse(result.getSucceeded());
+            synchronized (manifest) {
+                IngestManifest.Entry entry = manifest.getFiles().computeIfAbsent(path.toString(), key -> new IngestManifest.Entry());
+                entry.setOffset(to);
+                entry.setRows(entry.getRows() + rows);
+                entry.setModificationTime(status.getModificationTime());
+                entry.setUpdatedAt(System.currentTimeMillis());
+                checkpointStore.write(MANIFEST, manifest);
+            }
+            checkpointStore.delete(name);
+            log.info("Published {} row(s) of {} [{}, {})", rows, path, from, to);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to publish {} from byte {}, retrying on the next poll", path, from, e);
+        }
+    }
+
+    private static String checkpointName(Path path, long from) {
+        String fileName = path.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        return "landing-" + fileName + "-" + Integer.toHexString(path.toString().hashCode()) + "-" + from;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+}
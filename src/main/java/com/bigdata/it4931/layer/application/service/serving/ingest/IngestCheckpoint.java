@@ -0,0 +1,80 @@
+package com.bigdata.it4931.layer.application.service.serving.ingest;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Progress of ingesting {@code [start, end)} of one CSV file, split into byte ranges that are published
+ * independently.
+ */
+@Data
+@NoArgsConstructor
+public class IngestCheckpoint {
+    private String path;
+    private long start;
+    // named length by earlier versions
+    @JsonAlias("length")
+    private long end;
+    private boolean completed;
+    private long updatedAt;
+    private List<Range> ranges = new ArrayList<>();
+
+    public boolean allRangesPublished() {
+        return ranges.stream().allMatch(range -> range.position >= range.end);
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Range {
+        private int index;
+        private long start;
+        private long end;
+        /**
+         * Byte offset of the first record not yet published, always a record boundary.
+         */
+        private long position;
+        /**
+         * Rows published from {@link #start} to {@link #position}.
+         */
+        private long rows;
+        private Pending pending;
+
+        public Range(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.position = start;
+        }
+    }
+
+    /**
+     * A transaction that was about to be committed. Whether it was is found by looking for its last record in the
+     * topic from {@link #scanFrom}, the partition end offsets taken before it began.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Pending {
+        /**
+         * Position of the range once committed, past any rows skipped after the last record.
+         */
+        private long position;
+        /**
+         * Position header of the last record of the transaction.
+         */
+        private long lastRecordPosition;
+        private long rows;
+        private Map<Integer, Long> scanFrom;
+
+        public Pending(long position, long lastRecordPosition, long rows, Map<Integer, Long> scanFrom) {
+            this.position = position;
+            this.lastRecordPosition = lastRecordPosition;
+            this.rows = rows;
+            this.scanFrom = scanFrom;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.bigdata.it4931.layer.application.service.serving.ingest;
+
+import com.bigdata.it4931.config.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileContext;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * Keeps checkpoints as JSON files in a directory. A checkpoint is written next to its target and renamed over it, so
+ * a crash never leaves a partial file behind.
+ */
+@Slf4j
+public class IngestCheckpointStore {
+    private final Configuration configuration;
+    private final Path directory;
+
+    public IngestCheckpointStore(Configuration configuration, Path directory) {
+        this.configuration = configuration;
+        this.directory = directory;
+    }
+
+    public Optional<IngestCheckpoint> load(String name) throws IOException {
+        return load(name, IngestCheckpoint.class);
+    }
+
+    public <T> Optional<T> load(String name, Class<T> type) throws IOException {
+        Path path = path(name);
+        FileSystem fileSystem = path.getFileSystem(configuration);
+        if (!fileSystem.exists(path)) {
+            return Optional.empty();
+        }
+        try (FSDataInputStream inputStream = fileSystem.open(path)) {
+            return Optional.of(Constants.OBJECT_MAPPER.readValue((InputStream) inputStream, type));
+        }
+    }
+
+    /**
+     * Callers must hold the monitor of the checkpoint while changing it and saving it.
+     */
+    public void save(String name, IngestCheckpoint checkpoint) throws IOException {
+        checkpoint.setUpdatedAt(System.currentTimeMillis());
+        write(name, checkpoint);
+    }
+
+    public void write(String name, Object value) throws IOException {
+        Path path = path(name);
+        Path temporary = new Path(directory, "." + name + ".json.tmp");
+        FileSystem fileSystem = path.getFileSystem(configuration);
+        try (FSDataOutputStream outputStream = fileSystem.create(temporary, true)) {
+            Constants.OBJECT_MAPPER.writeValue((OutputStream) outputStream, value);
+        }
+        FileContext.getFileContext(path.toUri(), configuration).rename(temporary, path, Options.Rename.OVERWRITE);
+    }
+
+    public void delete(String name) throws IOException {
+        Path path = path(name);
+        path.getFileSystem(configuration).delete(path, false);
+    }
+
+    private Path path(String name) {
+        return new Path(directory, name + ".json");
+    }
+}
@@ -0,0 +1,28 @@
+package com.bigdata.it4931.layer.application.service.serving.ingest;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How far every file of a landing directory has been published, keyed by path.
+ */
+@Data
+@NoArgsConstructor
+public class IngestManifest {
+    private Map<String, Entry> files = new HashMap<>();
+
+    @Data
+    @NoArgsConstructor
+    public static class Entry {
+        /**
+         * Byte offset right after the last published record.
+         */
+        private long offset;
+        private long rows;
+        private long modificationTime;
+        private long updatedAt;
+    }
+}
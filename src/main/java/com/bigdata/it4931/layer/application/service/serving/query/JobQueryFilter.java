@@ -0,0 +1,197 @@
+package com.bigdata.it4931.layer.application.service.serving.query;
+
+import com.bigdata.it4931.config.avro.AvroSchemas;
+import com.bigdata.it4931.layer.application.domain.dto.JobQueryDto;
+import com.bigdata.it4931.layer.application.service.batch.JobDataPartitioner;
+import org.apache.avro.Schema;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.io.api.Binary;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The filters of a query as the Parquet readers apply them: a predicate they push down to the row group statistics,
+ * dictionaries, bloom filters, page indexes and finally the records, the columns they read, and the partition
+ * directories that can hold matching records.
+ * <p>
+ * Fields are named as in the typed schema. v1 files keep the posting date as text, an ISO date sorts like the day it
+ * spells, so the date range becomes a range of strings there. The typed fields are read from the v1 fields they are
+ * parsed from.
+ */
+public class JobQueryFilter {
+    private static final String POSTING_DATE = "postingDate";
+    private static final Map<String, String> V1_SOURCES = Map.of(
+            "experienceMinYears", "experience",
+            "experienceMaxYears", "experience",
+            "salaryMin", "salaryRange",
+            "salaryMax", "salaryRange",
+            "latitudeDegrees", "latitude",
+            "longitudeDegrees", "longitude",
+            "employeeCount", "companySize",
+            POSTING_DATE, "jobPostingDate");
+
+    private final List<String> countries;
+    private final List<String> workTypes;
+    private final List<String> roles;
+    private final List<String> companies;
+    private final LocalDate from;
+    private final LocalDate to;
+    // escaped like the directory names, null for any country
+    private final Set<String> countryDirectories;
+
+    public JobQueryFilter(JobQueryDto query) {
+        this.countries = values(query.getCountry());
+        this.workTypes = values(query.getWorkType());
+        this.roles = values(query.getRole());
+        this.companies = values(query.getCompany());
+        this.from = query.getFrom();
+        this.to = query.getTo();
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("The date range starts on " + from + ", after it ends on " + to);
+        }
+        if (countries.isEmpty()) {
+            this.countryDirectories = null;
+        } else {
+            this.countryDirectories = new HashSet<>();
+            for (String country : countries) {
+                countryDirectories.add(JobDataPartitioner.escape(country));
+            }
+        }
+    }
+
+    /**
+     * @return whether every record matches
+     */
+    public boolean isEmpty() {
+        return countries.isEmpty() && workTypes.isEmpty() && roles.isEmpty() && companies.isEmpty() && from == null && to == null;
+    }
+
+    public FilterCompat.Filter filter(boolean typed) {
+        List<FilterPredicate> predicates = new ArrayList<>();
+        anyOf(predicates, "country", countries);
+        anyOf(predicates, "workType", workTypes);
+        anyOf(predicates, "role", roles);
+        anyOf(predicates, "companyName", companies);
+        if (typed) {
+            Operators.IntColumn postingDate = FilterApi.intColumn(POSTING_DATE);
+            if (from != null) {
+                predicates.add(FilterApi.gtEq(postingDate, (int) from.toEpochDay()));
+            }
+            if (to != null) {
+                predicates.add(FilterApi.ltEq(postingDate, (int) to.toEpochDay()));
+            }
+        } else {
+            Operators.BinaryColumn postingDate = FilterApi.binaryColumn(V1_SOURCES.get(POSTING_DATE));
+            if (from != null) {
+                predicates.add(FilterApi.gtEq(postingDate, Binary.fromString(from.toString())));
+            }
+            if (to != null) {
+                // a time may follow the date
+                predicates.add(FilterApi.lt(postingDate, Binary.fromString(to.plusDays(1).toString())));
+            }
+        }
+        if (predicates.isEmpty()) {
+            return FilterCompat.NOOP;
+        }
+        FilterPredicate predicate = predicates.get(0);
+        for (int i = 1; i < predicates.size(); i++) {
+            predicate = FilterApi.and(predicate, predicates.get(i));
+        }
+        return FilterCompat.get(predicate);
+    }
+
+    /**
+     * Records are only matched on the columns that are read, so the filtered columns are read too.
+     *
+     * @param fields typed fields the caller needs
+     * @return the part of the schema of the file to read
+     */
+    public Schema projection(boolean typed, Collection<String> fields) {
+        Set<String> columns = new LinkedHashSet<>(fields);
+        if (!countries.isEmpty()) {
+            columns.add("country");
+        }
+        if (!workTypes.isEmpty()) {
+            columns.add("workType");
+        }
+        if (!roles.isEmpty()) {
+            columns.add("role");
+        }
+        if (!companies.isEmpty()) {
+            columns.add("companyName");
+        }
+        if (from != null || to != null) {
+            columns.add(POSTING_DATE);
+        }
+        Schema schema = typed ? AvroSchemas.JOB_DATA_V2 : AvroSchemas.JOB_DATA;
+        Set<String> names = new LinkedHashSet<>();
+        for (String column : columns) {
+            names.add(typed ? column : V1_SOURCES.getOrDefault(column, column));
+        }
+        List<Schema.Field> projected = new ArrayList<>();
+        for (String name : names) {
+            Schema.Field field = schema.getField(name);
+            if (field != null) {
+                projected.add(new Schema.Field(field, field.schema()));
+            }
+        }
+        return Schema.createRecord(schema.getName(), schema.getDoc(), schema.getNamespace(), false, projected);
+    }
+
+    /**
+     * @param name name of a directory below the root, a partition of {@link JobDataPartitioner} or a plain date
+     * @return whether records in the directory can match
+     */
+    public boolean acceptsDirectory(String name) {
+        if (name.startsWith(JobDataPartitioner.COUNTRY_PREFIX)) {
+            return countryDirectories == null || countryDirectories.contains(name.substring(JobDataPartitioner.COUNTRY_PREFIX.length()));
+        }
+        String date = name.startsWith(JobDataPartitioner.DATE_PREFIX) ? name.substring(JobDataPartitioner.DATE_PREFIX.length()) : name;
+        if (date.equals(JobDataPartitioner.DEFAULT_PARTITION)) {
+            return from == null && to == null;
+        }
+        LocalDate day;
+        try {
+            day = LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            return true;
+        }
+        return (from == null || !day.isBefore(from)) && (to == null || !day.isAfter(to));
+    }
+
+    private static void anyOf(List<FilterPredicate> predicates, String column, List<String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        Operators.BinaryColumn binaryColumn = FilterApi.binaryColumn(column);
+        FilterPredicate predicate = null;
+        for (String value : values) {
+            Operators.Eq<Binary> eq = FilterApi.eq(binaryColumn, Binary.fromString(value));
+            predicate = predicate == null ? eq : FilterApi.or(predicate, eq);
+        }
+        predicates.add(predicate);
+    }
+
+    private static List<String> values(List<String> values) {
+        List<String> result = new ArrayList<>();
+        if (values != null) {
+            for (String value : values) {
+                if (value != null && !value.trim().isEmpty()) {
+                    result.add(value.trim());
+                }
+            }
+        }
+        return result;
+    }
+}
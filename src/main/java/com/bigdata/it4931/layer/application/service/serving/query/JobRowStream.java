@@ -0,0 +1,140 @@
+package com.bigdata.it4931.layer.application.service.serving.query;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Rows of a query on their way to the client. The scanning threads emit rows already serialized into a bounded queue,
+ * the thread writing the response drains it, so scanning pauses while the client reads slower. Once the limit is
+ * reached or the client is gone, emitting returns false and the scan stops.
+ * <p>
+ * A scan paused on a slow client waits through {@link ForkJoinPool#managedBlock}, so the pool of the scanning threads
+ * starts others meanwhile and the queries of other clients do not wait for it.
+ */
+public class JobRowStream {
+    private static final long POLL_MS = 100;
+
+    private final BlockingQueue<byte[]> rows;
+    private final AtomicLong remaining;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final Consumer<JobRowStream> producer;
+    private volatile boolean finished;
+    private volatile Throwable failure;
+
+    /**
+     * @param producer starts emitting rows, asynchronously, and calls {@link #finish(Throwable)} when done
+     */
+    public JobRowStream(int capacity, long limit, Consumer<JobRowStream> producer) {
+        this.rows = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        this.remaining = new AtomicLong(limit);
+        this.producer = producer;
+    }
+
+    /**
+     * Starts the producer and writes the rows it emits, one per line, until it finished or the limit is reached.
+     *
+     * @throws IOException when writing failed or the producer failed, the response is incomplete then
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        producer.accept(this);
+        try {
+            while (true) {
+                byte[] row = rows.poll();
+                if (row == null) {
+                    if (finished) {
+                        // everything emitted is queued once the producer finished
+                        row = rows.poll();
+                        if (row == null) {
+                            break;
+                        }
+                    } else {
+                        outputStream.flush();
+                        row = rows.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                        if (row == null) {
+                            continue;
+                        }
+                    }
+                }
+                outputStream.write(row);
+                outputStream.write('\n');
+            }
+            if (failure != null) {
+                throw new IOException("Query failed", failure);
+            }
+            outputStream.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing query results");
+        } finally {
+            cancelled.set(true);
+        }
+    }
+
+    /**
+     * Queues a row, blocks while the queue is full.
+     *
+     * @return whether more rows are wanted
+     */
+    public boolean emit(byte[] row) {
+        if (cancelled.get()) {
+            return false;
+        }
+        long left = remaining.decrementAndGet();
+        if (left < 0) {
+            cancelled.set(true);
+            return false;
+        }
+        Offer offer = new Offer(row);
+        try {
+            ForkJoinPool.managedBlock(offer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled.set(true);
+            return false;
+        }
+        return offer.queued && left > 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * @param failure why the producer stopped early, null when it did not
+     */
+    public void finish(Throwable failure) {
+        this.failure = failure;
+        this.finished = true;
+    }
+
+    private class Offer implements ForkJoinPool.ManagedBlocker {
+        private final byte[] row;
+        private boolean queued;
+
+        private Offer(byte[] row) {
+            this.row = row;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            queued = rows.offer(row, POLL_MS, TimeUnit.MILLISECONDS);
+            return isReleasable();
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (!queued) {
+                queued = rows.offer(row);
+            }
+            return queued || cancelled.get();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.bigdata.it4931.layer.application.service.serving.query;
+
+import org.apache.hadoop.fs.FileStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Scans files on a fork-join pool: the list is split in halves until one file is left, each file is scanned on its own
+ * and the results of the halves are combined. Idle workers steal the halves not started yet, so a few large files do not
+ * hold up the rest.
+ */
+public class ParquetScanTask<T> extends RecursiveTask<T> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<FileStatus> files;
+    private final int from;
+    private final int to;
+    private final FileScanner<T> scanner;
+    private final BinaryOperator<T> combiner;
+
+    /**
+     * @param files at least one
+     */
+    public ParquetScanTask(List<FileStatus> files, FileScanner<T> scanner, BinaryOperator<T> combiner) {
+        this(files, 0, files.size(), scanner, combiner);
+    }
+
+    private ParquetScanTask(List<FileStatus> files, int from, int to, FileScanner<T> scanner, BinaryOperator<T> combiner) {
+        this.files = files;
+        this.from = from;
+        this.to = to;
+        this.scanner = scanner;
+        this.combiner = combiner;
+    }
+
+    @Override
+    protected T compute() {
+        if (to - from == 1) {
+            try {
+                return scanner.scan(files.get(from));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int middle = (from + to) >>> 1;
+        ParquetScanTask<T> left = new ParquetScanTask<>(files, from, middle, scanner, combiner);
+        left.fork();
+        T right = new ParquetScanTask<>(files, middle, to, scanner, combiner).compute();
+        return combiner.apply(left.join(), right);
+    }
+
+    @FunctionalInterface
+    public interface FileScanner<T> {
+        T scan(FileStatus status) throws IOException;
+    }
+}
@@ -1,25 +1,52 @@
 package com.bigdata.it4931.layer.application.service.speed;
 
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.config.avro.AvroSchemas;
+import com.bigdata.it4931.config.kafka.properties.KafkaTopicProperties;
+import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataWireCodec;
+import com.bigdata.it4931.layer.infrastructure.kafka.message.WireFormat;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.spark.SparkConf;
 import org.apache.spark.sql.Dataset;
 import org.apache.spark.sql.Row;
 import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.avro.SchemaConverters;
 import org.apache.spark.sql.streaming.Trigger;
+import org.apache.spark.sql.types.DataType;
 import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
 import org.apache.spark.sql.types.StructType;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.spark.sql.avro.functions.from_avro;
 import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.expr;
 import static org.apache.spark.sql.functions.from_json;
 
 @Service
 @Slf4j
 public class SpeedConsumer {
+    private static final String TOPIC = "bigdata";
+    /**
+     * Columns of the stream in both wire formats: the Spark type of {@link AvroSchemas#JOB_DATA}, every field nullable
+     * since a JSON message may lack any of them.
+     */
+    private static final StructType JOB_DATA_TYPE = nullable((StructType) SchemaConverters.toSqlType(AvroSchemas.JOB_DATA).dataType());
+
     private final SparkConf conf;
     private final SparkSession spark;
+    private final WireFormat wireFormat;
 
-    public SpeedConsumer(){
+    public SpeedConsumer(@Qualifier("kafkaTopicProperties") KafkaTopicProperties kafkaTopicProperties){
+        this.wireFormat = kafkaTopicProperties.formatOf(TOPIC);
         this.conf = new SparkConf()
                 .setAppName("SpeedConsumer")
                 .setMaster("spark://spark-singlenode:7077")
@@ -46,54 +73,24 @@ public class SpeedConsumer {
         Dataset<Row> df = spark.readStream()
                 .format("kafka")
                 .option("kafka.bootstrap.servers", "kafka-server:9092")
-                .option("subscribe", "bigdata")
+                .option("subscribe", TOPIC)
                 .option("startingOffsets", "earliest")
+                .option("kafka.isolation.level", "read_committed")
                 .load();
 
         df.printSchema();
 
-        Dataset<Row> processedDF = df.selectExpr("CAST(key AS STRING)", "CAST(value AS STRING)", "topic", "partition", "offset", "timestamp");
-
-        processedDF.printSchema();
-
-        StructType companyProfileSchema = new StructType()
-                .add("Sector", DataTypes.StringType)
-                .add("Industry", DataTypes.StringType)
-                .add("City", DataTypes.StringType)
-                .add("State", DataTypes.StringType)
-                .add("Zip", DataTypes.StringType)
-                .add("Website", DataTypes.StringType)
-                .add("Ticker", DataTypes.StringType)
-                .add("CEO", DataTypes.StringType);
-
-        StructType jsonSchema = new StructType()
-                .add("jobId", DataTypes.StringType)
-                .add("experience", DataTypes.StringType)
-                .add("qualifications", DataTypes.StringType)
-                .add("salaryRange", DataTypes.StringType)
-                .add("location", DataTypes.StringType)
-                .add("country", DataTypes.StringType)
-                .add("latitude", DataTypes.StringType)
-                .add("longitude", DataTypes.StringType)
-                .add("workType", DataTypes.StringType)
-                .add("companySize", DataTypes.StringType)
-                .add("jobPostingDate", DataTypes.StringType)
-                .add("preference", DataTypes.StringType)
-                .add("contactPerson", DataTypes.StringType)
-                .add("contact", DataTypes.StringType)
-                .add("jobTitle", DataTypes.StringType)
-                .add("role", DataTypes.StringType)
-                .add("jobPortal", DataTypes.StringType)
-                .add("jobDescription", DataTypes.StringType)
-                .add("benefits", DataTypes.StringType)
-                .add("skills", DataTypes.StringType)
-                .add("responsibilities", DataTypes.StringType)
-                .add("companyName", DataTypes.StringType)
-                .add("companyProfile", companyProfileSchema); // Schema lồng ghép
-
-        Dataset<Row> jsonDF = processedDF.selectExpr("CAST(value AS STRING) as value")
-                .select(from_json(col("value"), jsonSchema).as("data"))
-                .select("data.*");
+        Dataset<Row> jsonDF;
+        if (wireFormat == WireFormat.AVRO) {
+            // from_avro expects a bare datum, so the single-object header with the schema fingerprint is cut off
+            jsonDF = df.select(from_avro(expr("substring(value, " + (JobDataWireCodec.AVRO_HEADER_LENGTH + 1) + ")"),
+                            AvroSchemas.JOB_DATA.toString(), Collections.singletonMap("mode", "PERMISSIVE")).cast(JOB_DATA_TYPE).as("data"))
+                    .select("data.*");
+        } else {
+            // JSON messages name the company profile fields the Jackson way, the cast renames them by position
+            jsonDF = df.select(from_json(col("value").cast(DataTypes.StringType), jsonType(JOB_DATA_TYPE)).cast(JOB_DATA_TYPE).as("data"))
+                    .select("data.*");
+        }
 
         jsonDF.printSchema();
 
@@ -108,5 +105,37 @@ public class SpeedConsumer {
             log.error("Error while processing stream", e);
         }
     }
-}
 
+    private static StructType nullable(StructType type) {
+        StructField[] fields = type.fields().clone();
+        for (int i = 0; i < fields.length; i++) {
+            DataType dataType = fields[i].dataType() instanceof StructType ? nullable((StructType) fields[i].dataType()) : fields[i].dataType();
+            fields[i] = new StructField(fields[i].name(), dataType, true, fields[i].metadata());
+        }
+        return new StructType(fields);
+    }
+
+    /**
+     * @return the type with the fields of nested records named as Jackson writes the DTOs of the JSON wire format
+     */
+    private static StructType jsonType(StructType jobDataType) {
+        Map<String, String> companyProfileNames = new HashMap<>();
+        BeanDescription description = Constants.OBJECT_MAPPER.getSerializationConfig()
+                .introspect(Constants.OBJECT_MAPPER.constructType(CompanyProfileDto.class));
+        for (BeanPropertyDefinition property : description.findProperties()) {
+            companyProfileNames.put(property.getInternalName(), property.getName());
+        }
+        StructField[] fields = jobDataType.fields().clone();
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].dataType() instanceof StructType) {
+                StructField[] nested = ((StructType) fields[i].dataType()).fields().clone();
+                for (int j = 0; j < nested.length; j++) {
+                    nested[j] = new StructField(companyProfileNames.getOrDefault(nested[j].name(), nested[j].name()),
+                            nested[j].dataType(), nested[j].nullable(), nested[j].metadata());
+                }
+                fields[i] = new StructField(fields[i].name(), new StructType(nested), fields[i].nullable(), fields[i].metadata());
+            }
+        }
+        return new StructType(fields);
+    }
+}
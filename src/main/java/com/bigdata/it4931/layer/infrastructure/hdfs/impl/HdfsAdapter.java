@@ -7,12 +7,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.io.InputStream;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(name = "hadoop.hdfs.backend", havingValue = "hdfs", matchIfMissing = true)
 public class HdfsAdapter implements IHdfsAdapter {
     private final Configuration configuration;
     private final String defaultFS;
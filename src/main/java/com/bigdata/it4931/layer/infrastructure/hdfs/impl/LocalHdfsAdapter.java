@@ -0,0 +1,56 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl;
+
+import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
+import com.bigdata.it4931.layer.infrastructure.hdfs.impl.local.MappedLocalFileSystem;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * HDFS for a single machine: the name node is the directory {@code hadoop.hdfs.local.root}, served by
+ * {@link MappedLocalFileSystem}. Used with {@code hadoop.hdfs.backend=local}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hadoop.hdfs.backend", havingValue = "local")
+public class LocalHdfsAdapter implements IHdfsAdapter {
+    private final Configuration configuration;
+    private final FileSystem fileSystem;
+    private final String nameNode;
+
+    public LocalHdfsAdapter(@Value("${hadoop.hdfs.local.root:/tmp/bigdata-hdfs}") String root) throws IOException {
+        File directory = new File(root).getAbsoluteFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.configuration = new Configuration();
+        this.configuration.set(FileSystem.FS_DEFAULT_NAME_KEY, FileSystem.DEFAULT_FS);
+        this.configuration.setClass("fs.file.impl", MappedLocalFileSystem.class, FileSystem.class);
+        // the cached file:// file system may be a plain one created by someone else, Spark for one
+        this.configuration.setBoolean("fs.file.impl.disable.cache", true);
+        this.fileSystem = FileSystem.get(configuration);
+        this.nameNode = directory.toURI().toString().replaceAll("/$", "");
+        log.info("Using the local file system under {}", nameNode);
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    @Override
+    public String getNameNode() {
+        return nameNode;
+    }
+}
@@ -0,0 +1,279 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl.local;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.ByteBufferPositionedReadable;
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSExceptionMessages;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.util.CleanerUtil;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Reads a file through read-only memory mappings of up to {@value #SEGMENT_SIZE} bytes each, so bytes go from the page
+ * cache straight into the caller's array or buffer. Files below {@value #MIN_MAPPED_SIZE} bytes are read with
+ * positional reads of a {@link FileChannel} instead, mapping them costs more than the copies it saves. Positional reads
+ * keep no state and may run on any thread, the stream position is for one reader at a time like any stream.
+ * <p>
+ * The mappings are released on {@link #close()}, once the reads in progress are done, so that closing a file gives its
+ * address space back right away instead of when the buffers are garbage collected.
+ */
+@Slf4j
+class MappedFileInputStream extends FSInputStream implements ByteBufferReadable, ByteBufferPositionedReadable, StreamCapabilities {
+    static final int SEGMENT_SIZE = 1 << 30;
+    static final int MIN_MAPPED_SIZE = 1 << 20;
+
+    private final String name;
+    private final long length;
+    // reads hold the read lock, so close never unmaps a segment being copied from
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // either the channel of a small file or the mappings of a large one, both null once closed
+    private FileChannel channel;
+    private MappedByteBuffer[] segments;
+    private boolean closed;
+    private long position;
+
+    MappedFileInputStream(File file) throws IOException {
+        this.name = file.getPath();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.length = channel.size();
+            if (length < MIN_MAPPED_SIZE) {
+                this.channel = channel;
+                return;
+            }
+            int count = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, length - offset));
+            }
+        } catch (IOException e) {
+            unmap(segments);
+            channel.close();
+            throw e;
+        }
+        channel.close();
+    }
+
+    @Override
+    public synchronized void seek(long position) throws IOException {
+        checkOpen();
+        if (position < 0) {
+            throw new EOFException(FSExceptionMessages.NEGATIVE_SEEK);
+        }
+        if (position > length) {
+            throw new EOFException(FSExceptionMessages.CANNOT_SEEK_PAST_EOF);
+        }
+        this.position = position;
+    }
+
+    @Override
+    public synchronized long getPos() {
+        return position;
+    }
+
+    @Override
+    public boolean seekToNewSource(long targetPos) {
+        return false;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        byte[] value = new byte[1];
+        int read = read(position, value, 0, 1);
+        if (read <= 0) {
+            return -1;
+        }
+        position++;
+        return value[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+        int read = read(position, bytes, offset, length);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer buffer) throws IOException {
+        int read = read(position, buffer);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public int read(long position, byte[] bytes, int offset, int length) throws IOException {
+        return read(position, ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    @Override
+    public int read(long position, ByteBuffer buffer) throws IOException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            if (!buffer.hasRemaining()) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            return channel != null ? readChannel(position, buffer) : readSegments(position, buffer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int readChannel(long position, ByteBuffer buffer) throws IOException {
+        int limit = buffer.limit();
+        // the length seen on open, like the mappings
+        if (buffer.remaining() > length - position) {
+            buffer.limit(buffer.position() + (int) (length - position));
+        }
+        try {
+            int read = 0;
+            while (buffer.hasRemaining()) {
+                int count = channel.read(buffer, position);
+                if (count < 0) {
+                    break;
+                }
+                position += count;
+                read += count;
+            }
+            return read;
+        } finally {
+            buffer.limit(limit);
+        }
+    }
+
+    private int readSegments(long position, ByteBuffer buffer) {
+        int read = 0;
+        while (buffer.hasRemaining() && position < length) {
+            ByteBuffer source = segments[segment(position)].duplicate();
+            int start = offset(position);
+            int count = Math.min(buffer.remaining(), source.limit() - start);
+            source.position(start).limit(start + count);
+            buffer.put(source);
+            position += count;
+            read += count;
+        }
+        return read;
+    }
+
+    @Override
+    public void readFully(long position, ByteBuffer buffer) throws IOException {
+        if (position < 0 || position + buffer.remaining() > length) {
+            throw new EOFException(FSExceptionMessages.EOF_IN_READ_FULLY);
+        }
+        if (read(position, buffer) < 0 || buffer.hasRemaining()) {
+            throw new EOFException(FSExceptionMessages.EOF_IN_READ_FULLY);
+        }
+    }
+
+    @Override
+    public void readFully(long position, byte[] bytes, int offset, int length) throws IOException {
+        readFully(position, ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+        checkOpen();
+        return (int) Math.min(length - position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized long skip(long n) throws IOException {
+        checkOpen();
+        long skipped = Math.max(Math.min(n, length - position), 0);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean hasCapability(String capability) {
+        switch (capability.toLowerCase()) {
+            case StreamCapabilities.READBYTEBUFFER:
+            case StreamCapabilities.PREADBYTEBUFFER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        FileChannel channel;
+        MappedByteBuffer[] segments;
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            channel = this.channel;
+            segments = this.segments;
+            this.channel = null;
+            this.segments = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        unmap(segments);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IOException(FSExceptionMessages.STREAM_IS_CLOSED + ": " + name);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Unmaps the segments no reader can reach anymore, or leaves them to the garbage collector where the JVM does not
+     * allow it.
+     */
+    private void unmap(MappedByteBuffer[] segments) {
+        if (segments == null || !CleanerUtil.UNMAP_SUPPORTED) {
+            return;
+        }
+        for (MappedByteBuffer segment : segments) {
+            if (segment == null) {
+                continue;
+            }
+            try {
+                CleanerUtil.getCleaner().freeBuffer(segment);
+            } catch (IOException e) {
+                log.debug("Failed to unmap {}, it is released when collected", name, e);
+                return;
+            }
+        }
+    }
+
+    private static int segment(long position) {
+        return (int) (position / SEGMENT_SIZE);
+    }
+
+    private static int offset(long position) {
+        return (int) (position % SEGMENT_SIZE);
+    }
+}
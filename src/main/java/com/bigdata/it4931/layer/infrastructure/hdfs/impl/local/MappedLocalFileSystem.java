@@ -0,0 +1,107 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl.local;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * The local file system without checksum files, reading through memory mappings and writing atomically: a created
+ * file is written next to its target under a hidden name and renamed over it when the stream is closed, so readers
+ * see the old file or the complete new one. A target that did not exist when the file was created is published with a
+ * hard link instead, so closing fails rather than replace a file another writer published meanwhile. Appends go to the
+ * file itself.
+ */
+public class MappedLocalFileSystem extends RawLocalFileSystem {
+
+    @Override
+    public FSDataInputStream open(Path path, int bufferSize) throws IOException {
+        File file = pathToFile(path);
+        if (file.isDirectory()) {
+            throw new FileNotFoundException(path + " is a directory");
+        }
+        if (!file.exists()) {
+            throw new FileNotFoundException(path.toString());
+        }
+        return new FSDataInputStream(new MappedFileInputStream(file));
+    }
+
+    @Override
+    protected OutputStream createOutputStreamWithMode(Path path, boolean append, FsPermission permission) throws IOException {
+        if (append) {
+            return super.createOutputStreamWithMode(path, true, permission);
+        }
+        Path temporary = new Path(path.getParent(), "." + path.getName() + "." + UUID.randomUUID() + ".tmp");
+        OutputStream outputStream = super.createOutputStreamWithMode(temporary, false, permission);
+        File target = pathToFile(path);
+        return new RenameOnCloseOutputStream(outputStream, pathToFile(temporary), target, target.exists());
+    }
+
+    private static class RenameOnCloseOutputStream extends FilterOutputStream {
+        private final File temporary;
+        private final File target;
+        // whether the target existed on create, it is only replaced then
+        private final boolean replace;
+        private boolean closed;
+
+        private RenameOnCloseOutputStream(OutputStream outputStream, File temporary, File target, boolean replace) {
+            super(outputStream);
+            this.temporary = temporary;
+            this.target = target;
+            this.replace = replace;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.close();
+                if (replace) {
+                    Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    publish();
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temporary.toPath());
+                throw e;
+            }
+        }
+
+        /**
+         * Links the target to the written file, which fails when the target exists, and drops the temporary name.
+         */
+        private void publish() throws IOException {
+            try {
+                Files.createLink(target.toPath(), temporary.toPath());
+            } catch (java.nio.file.FileAlreadyExistsException e) {
+                throw new FileAlreadyExistsException(target + " was created by someone else while written");
+            } catch (UnsupportedOperationException e) {
+                // no hard links here, only a target existing already is noticed
+                if (target.exists()) {
+                    throw new FileAlreadyExistsException(target + " was created by someone else while written");
+                }
+                Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return;
+            }
+            Files.delete(temporary.toPath());
+        }
+    }
+}
@@ -1,33 +1,93 @@
 package com.bigdata.it4931.layer.infrastructure.hdfs.impl.read;
 
-import com.bigdata.it4931.layer.infrastructure.hdfs.impl.HdfsAdapter;
+import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Options;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.util.functional.FutureIO;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Reads files relative to the name node. Files are streamed or read at given positions into the caller's buffers,
+ * never copied to the heap as a whole.
+ */
 @Slf4j
 @Component
 public class HdfsReader {
     private final FileSystem fileSystem;
-    private final HdfsAdapter hdfsAdapter;
+    private final IHdfsAdapter hdfsAdapter;
+    // runs the reads of vectored reads, idle threads go away
+    private final ThreadPoolExecutor readExecutor;
 
-    public HdfsReader(HdfsAdapter hdfsAdapter) {
+    public HdfsReader(IHdfsAdapter hdfsAdapter,
+                      @Value("${hadoop.hdfs.read.threads:8}") int readThreads) {
         this.hdfsAdapter = hdfsAdapter;
         this.fileSystem = hdfsAdapter.getFileSystem();
+        int threads = Math.max(readThreads, 1);
+        this.readExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("hdfs-read-%d").setDaemon(true).build());
+        this.readExecutor.allowCoreThreadTimeOut(true);
     }
 
-    public Object readFile(String path) {
-        try {
-            Path hdfsReadPath = new Path(hdfsAdapter.getNameNode() + path);
-            FSDataInputStream inputStream = fileSystem.open(hdfsReadPath);
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            IOUtils.copyBytes(inputStream, stream, 4096);
-            return stream.toByteArray();
+    /**
+     * Opens the file to be read from start to end. The stream is the caller's to close.
+     */
+    public FSDataInputStream open(String path) throws IOException {
+        return FutureIO.awaitFuture(fileSystem.openFile(resolve(path))
+                .opt(Options.OpenFileOptions.FS_OPTION_OPENFILE_READ_POLICY, Options.OpenFileOptions.FS_OPTION_OPENFILE_READ_POLICY_SEQUENTIAL)
+                .build());
+    }
+
+    /**
+     * Opens the file as a channel, which reads straight into direct buffers when the file system can.
+     */
+    public ReadableByteChannel openChannel(String path) throws IOException {
+        FSDataInputStream inputStream = open(path);
+        return inputStream.hasCapability(StreamCapabilities.READBYTEBUFFER)
+                ? new ByteBufferChannel(inputStream)
+                : Channels.newChannel(inputStream);
+    }
+
+    /**
+     * Opens the file for positional and vectored reads. The reader is the caller's to close.
+     */
+    public PositionalReader openPositional(String path) throws IOException {
+        Path hdfsReadPath = resolve(path);
+        FileStatus status = fileSystem.getFileStatus(hdfsReadPath);
+        FSDataInputStream inputStream = FutureIO.awaitFuture(fileSystem.openFile(hdfsReadPath)
+                .withFileStatus(status)
+                .opt(Options.OpenFileOptions.FS_OPTION_OPENFILE_READ_POLICY, Options.OpenFileOptions.FS_OPTION_OPENFILE_READ_POLICY_RANDOM)
+                .build());
+        return new PositionalReader(inputStream, hdfsReadPath, status.getLen(), readExecutor);
+    }
+
+    /**
+     * @deprecated holds the whole file on the heap, use {@link #open(String)} or {@link #openPositional(String)}
+     */
+    @Deprecated
+    public byte[] readFile(String path) {
+        try (PositionalReader reader = openPositional(path)) {
+            if (reader.length() > Integer.MAX_VALUE - 8) {
+                throw new IOException(reader.getPath() + " is too large to be read into an array");
+            }
+            byte[] data = new byte[(int) reader.length()];
+            reader.readFully(0, ByteBuffer.wrap(data));
+            return data;
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
@@ -42,4 +102,36 @@ public class HdfsReader {
         }
         return false;
     }
+
+    private Path resolve(String path) {
+        return new Path(hdfsAdapter.getNameNode() + path);
+    }
+
+    private static class ByteBufferChannel implements ReadableByteChannel {
+        private final FSDataInputStream inputStream;
+        private volatile boolean open = true;
+
+        private ByteBufferChannel(FSDataInputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            return buffer.hasRemaining() ? inputStream.read(buffer) : 0;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            inputStream.close();
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl.read;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.impl.CombinedFileRange;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * Random access to one file. Positional reads leave no stream position behind, so any number of threads can read
+ * through the same reader, into buffers of their own.
+ */
+public class PositionalReader implements Closeable {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final FSDataInputStream inputStream;
+    private final Path path;
+    private final long length;
+    private final Executor executor;
+    private final boolean byteBufferReads;
+    private final boolean vectoredReads;
+
+    PositionalReader(FSDataInputStream inputStream, Path path, long length, Executor executor) {
+        this.inputStream = inputStream;
+        this.path = path;
+        this.length = length;
+        this.executor = executor;
+        this.byteBufferReads = inputStream.hasCapability(StreamCapabilities.PREADBYTEBUFFER);
+        this.vectoredReads = inputStream.hasCapability(StreamCapabilities.VECTOREDIO);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Reads up to {@code buffer.remaining()} bytes at {@code position} into the buffer, advancing its position.
+     *
+     * @return the number of bytes read, -1 at the end of the file
+     */
+    public int read(long position, ByteBuffer buffer) throws IOException {
+        if (byteBufferReads) {
+            return inputStream.read(position, buffer);
+        }
+        if (buffer.hasArray()) {
+            int read = inputStream.read(position, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read > 0) {
+                buffer.position(buffer.position() + read);
+            }
+            return read;
+        }
+        byte[] chunk = new byte[Math.min(buffer.remaining(), COPY_BUFFER_SIZE)];
+        int read = inputStream.read(position, chunk, 0, chunk.length);
+        if (read > 0) {
+            buffer.put(chunk, 0, read);
+        }
+        return read;
+    }
+
+    /**
+     * Fills the rest of the buffer with the bytes at {@code position}.
+     *
+     * @throws EOFException when the file ends first
+     */
+    public void readFully(long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = read(position, buffer);
+            if (read < 0) {
+                throw new EOFException("Reached the end of " + path + " with " + buffer.remaining() + " byte(s) left to read at " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Reads many ranges at once, e.g. the column chunks of a Parquet row group. The data of every range arrives through
+     * its {@link FileRange#getData()}, in a buffer from {@code allocate}. Ranges closer to each other than the minimum
+     * seek of the stream are fetched by a single read, and the reads run in parallel. Streams with a vectored read of
+     * their own, like the local file system's, do it themselves.
+     *
+     * @throws IllegalArgumentException when ranges overlap
+     * @throws EOFException when a range ends past the end of the file
+     */
+    public void readVectored(List<? extends FileRange> ranges, IntFunction<ByteBuffer> allocate) throws IOException {
+        if (vectoredReads) {
+            inputStream.readVectored(ranges, allocate);
+            return;
+        }
+        List<? extends FileRange> sortedRanges = VectoredReadUtils.validateAndSortRanges(ranges, Optional.of(length));
+        for (FileRange range : sortedRanges) {
+            range.setData(new CompletableFuture<>());
+        }
+        List<CombinedFileRange> reads = VectoredReadUtils.mergeSortedRanges(sortedRanges, 1,
+                inputStream.minSeekForVectorReads(), inputStream.maxReadSizeForVectorReads());
+        for (CombinedFileRange read : reads) {
+            executor.execute(() -> read(read, allocate));
+        }
+    }
+
+    private void read(CombinedFileRange read, IntFunction<ByteBuffer> allocate) {
+        try {
+            ByteBuffer buffer = allocate.apply(read.getLength());
+            readFully(read.getOffset(), buffer);
+            buffer.flip();
+            for (FileRange range : read.getUnderlying()) {
+                range.getData().complete(VectoredReadUtils.sliceTo(buffer, read.getOffset(), range));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (FileRange range : read.getUnderlying()) {
+                range.getData().completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
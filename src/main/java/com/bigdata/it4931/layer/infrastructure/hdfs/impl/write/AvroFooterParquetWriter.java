@@ -0,0 +1,61 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl.write;
+
+import lombok.experimental.UtilityClass;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroSchemaConverter;
+import org.apache.parquet.avro.AvroWriteSupport;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * {@code AvroParquetWriter} whose footer gets the metadata of a supplier read when the writer is closed.
+ */
+@UtilityClass
+public class AvroFooterParquetWriter {
+    public <T> Builder<T> builder(OutputFile file) {
+        return new Builder<>(file);
+    }
+
+    public static class Builder<T> extends ParquetWriter.Builder<T, Builder<T>> {
+        private Schema schema;
+        private GenericData model = GenericData.get();
+        private Supplier<Map<String, String>> footerMetadata = Collections::emptyMap;
+
+        private Builder(OutputFile file) {
+            super(file);
+        }
+
+        public Builder<T> withSchema(Schema schema) {
+            this.schema = schema;
+            return this;
+        }
+
+        public Builder<T> withDataModel(GenericData model) {
+            this.model = model;
+            return this;
+        }
+
+        public Builder<T> withFooterMetadata(Supplier<Map<String, String>> footerMetadata) {
+            this.footerMetadata = footerMetadata;
+            return this;
+        }
+
+        @Override
+        protected Builder<T> self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<T> getWriteSupport(Configuration conf) {
+            WriteSupport<T> writeSupport = new AvroWriteSupport<>(new AvroSchemaConverter(conf).convert(schema), schema, model);
+            return new FooterMetadataWriteSupport<>(writeSupport, footerMetadata);
+        }
+    }
+}
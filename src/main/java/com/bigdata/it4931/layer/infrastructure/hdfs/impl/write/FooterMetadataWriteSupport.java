@@ -0,0 +1,28 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl.write;
+
+import org.apache.parquet.hadoop.api.DelegatingWriteSupport;
+import org.apache.parquet.hadoop.api.WriteSupport;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Adds key-value metadata to the footer that is only known once the last record is written, unlike
+ * {@code withExtraMetaData} which is fixed when the writer is built.
+ */
+public class FooterMetadataWriteSupport<T> extends DelegatingWriteSupport<T> {
+    private final Supplier<Map<String, String>> metadata;
+
+    public FooterMetadataWriteSupport(WriteSupport<T> delegate, Supplier<Map<String, String>> metadata) {
+        super(delegate);
+        this.metadata = metadata;
+    }
+
+    @Override
+    public FinalizedWriteContext finalizeWrite() {
+        Map<String, String> extraMetaData = new HashMap<>(super.finalizeWrite().getExtraMetaData());
+        extraMetaData.putAll(metadata.get());
+        return new FinalizedWriteContext(extraMetaData);
+    }
+}
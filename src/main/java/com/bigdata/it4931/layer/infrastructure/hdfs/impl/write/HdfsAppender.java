@@ -0,0 +1,345 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl.write;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Appends to files through streams kept open per path. Writes from any number of threads are buffered and written in
+ * group commits: once {@code flushBytes} are pending or the oldest pending write waited {@code lingerMs}, everything
+ * pending is written and made durable by one {@code hflush} or {@code hsync}, and the future of every write in it
+ * completes. Writes arriving meanwhile go into the next group. A stream is closed once idle for {@code idleCloseMs}.
+ * <p>
+ * Futures complete on the flushing thread, work chained on them should move to an executor of its own.
+ */
+@Slf4j
+public class HdfsAppender implements Closeable {
+    private final FileSystem fileSystem;
+    private final int flushBytes;
+    private final long lingerMs;
+    private final long maxBufferedBytes;
+    private final long idleCloseMs;
+    private final Sync sync;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<Path, PathAppender> appenders = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private HdfsAppender(Builder builder) {
+        this.fileSystem = builder.fileSystem;
+        this.flushBytes = Math.max(builder.flushBytes, 1);
+        this.lingerMs = Math.max(builder.lingerMs, 0);
+        this.maxBufferedBytes = Math.max(builder.maxBufferedBytes, flushBytes);
+        this.idleCloseMs = builder.idleCloseMs;
+        this.sync = builder.sync;
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(builder.threads, 1),
+                new ThreadFactoryBuilder().setNameFormat("hdfs-append-%d").setDaemon(true).build());
+        this.executor.setRemoveOnCancelPolicy(true);
+        if (idleCloseMs > 0) {
+            long period = Math.max(idleCloseMs / 2, 1000);
+            executor.scheduleWithFixedDelay(this::closeIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Queues the bytes to be appended to the file, created when missing. Blocks while {@code maxBufferedBytes} of the
+     * path are waiting to be written.
+     *
+     * @return completes when the bytes are durable, exceptionally when writing them failed
+     */
+    public CompletableFuture<Void> append(Path path, byte[] bytes) {
+        while (true) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Appender is closed"));
+            }
+            PathAppender appender = appenders.computeIfAbsent(path, PathAppender::new);
+            CompletableFuture<Void> future = appender.append(bytes);
+            if (future != null) {
+                return future;
+            }
+            // closed as idle in between, the next one opens the file again
+            appenders.remove(path, appender);
+        }
+    }
+
+    /**
+     * @return completes once everything appended to the path so far is durable
+     */
+    public CompletableFuture<Void> flush(Path path) {
+        PathAppender appender = appenders.get(path);
+        return appender == null ? CompletableFuture.completedFuture(null) : appender.flushNow();
+    }
+
+    private void closeIdle() {
+        long now = System.currentTimeMillis();
+        for (PathAppender appender : appenders.values()) {
+            if (appender.closeIfIdle(now)) {
+                appenders.remove(appender.path, appender);
+            }
+        }
+    }
+
+    /**
+     * Writes what is pending and closes every stream.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (PathAppender appender : appenders.values()) {
+            appender.close();
+        }
+        appenders.clear();
+        executor.shutdown();
+    }
+
+    public enum Sync {
+        /**
+         * Written to the memory of every datanode in the pipeline and visible to new readers.
+         */
+        HFLUSH,
+        /**
+         * Also on the disk of every datanode.
+         */
+        HSYNC
+    }
+
+    private class PathAppender {
+        private final Path path;
+        // guarded by this
+        private byte[] pending = new byte[1024];
+        private int pendingLength;
+        private List<CompletableFuture<Void>> pendingFutures = new ArrayList<>();
+        private long firstPendingAt;
+        private boolean scheduled;
+        private ScheduledFuture<?> scheduledFlush;
+        private boolean flushing;
+        private boolean closed;
+        private long lastWriteAt = System.currentTimeMillis();
+        // only touched by the flush in progress
+        private FSDataOutputStream outputStream;
+        private byte[] spare = new byte[1024];
+
+        private PathAppender(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return null when this appender was closed
+         */
+        private synchronized CompletableFuture<Void> append(byte[] bytes) {
+            while (!closed && pendingLength > 0 && pendingLength + (long) bytes.length > maxBufferedBytes) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return CompletableFuture.failedFuture(new InterruptedIOException("Interrupted waiting to append to " + path));
+                }
+            }
+            if (closed) {
+                return null;
+            }
+            if (pendingLength + bytes.length > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + bytes.length));
+            }
+            System.arraycopy(bytes, 0, pending, pendingLength, bytes.length);
+            if (pendingLength == 0) {
+                firstPendingAt = System.currentTimeMillis();
+            }
+            pendingLength += bytes.length;
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            pendingFutures.add(future);
+            schedule();
+            return future;
+        }
+
+        private synchronized CompletableFuture<Void> flushNow() {
+            if (pendingLength == 0 && !flushing) {
+                return CompletableFuture.completedFuture(null);
+            }
+            // an empty write completes with the group after the one in progress
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            pendingFutures.add(future);
+            if (pendingLength == 0) {
+                firstPendingAt = System.currentTimeMillis();
+            }
+            firstPendingAt -= lingerMs;
+            schedule();
+            return future;
+        }
+
+        /**
+         * Schedules a group commit when none is scheduled or running, the running one schedules the next itself. One
+         * scheduled for later is brought forward once the group is due.
+         */
+        private void schedule() {
+            if (flushing || pendingFutures.isEmpty()) {
+                return;
+            }
+            long delay = pendingLength >= flushBytes ? 0 : firstPendingAt + lingerMs - System.currentTimeMillis();
+            if (scheduled && (delay > 0 || !scheduledFlush.cancel(false))) {
+                // due later anyway, or already started
+                return;
+            }
+            scheduled = true;
+            scheduledFlush = executor.schedule(this::flush, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+        }
+
+        private void flush() {
+            byte[] group;
+            int groupLength;
+            List<CompletableFuture<Void>> futures;
+            synchronized (this) {
+                scheduled = false;
+                flushing = true;
+                group = pending;
+                groupLength = pendingLength;
+                futures = pendingFutures;
+                pending = spare;
+                pendingLength = 0;
+                pendingFutures = new ArrayList<>();
+                notifyAll();
+            }
+            Exception failure = null;
+            boolean written = false;
+            try {
+                if (groupLength > 0) {
+                    if (outputStream == null) {
+                        outputStream = open();
+                    }
+                    outputStream.write(group, 0, groupLength);
+                    if (sync == Sync.HSYNC) {
+                        outputStream.hsync();
+                    } else {
+                        outputStream.hflush();
+                    }
+                }
+                written = true;
+            } catch (IOException | RuntimeException e) {
+                // e.g. UnsupportedOperationException from a file system that cannot append
+                failure = e;
+                log.error("Failed to append {} byte(s) to {}", groupLength, path, e);
+                IOUtils.closeStream(outputStream);
+                outputStream = null;
+            } finally {
+                // the next group and whoever waits on this one must not hang on a write that failed
+                for (CompletableFuture<Void> future : futures) {
+                    if (written) {
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(failure != null ? failure : new IOException("Failed to append to " + path));
+                    }
+                }
+                synchronized (this) {
+                    spare = group;
+                    flushing = false;
+                    lastWriteAt = System.currentTimeMillis();
+                    schedule();
+                    notifyAll();
+                }
+            }
+        }
+
+        private FSDataOutputStream open() throws IOException {
+            try {
+                // created empty and appended to, a file system that publishes created files on close shows it right away
+                fileSystem.createNewFile(path);
+            } catch (FileAlreadyExistsException e) {
+                // created by someone else since createNewFile checked
+            }
+            try {
+                return fileSystem.append(path);
+            } catch (IOException e) {
+                // a writer that died may still hold the lease, the next group gets the file once it is recovered
+                if (fileSystem instanceof DistributedFileSystem) {
+                    ((DistributedFileSystem) fileSystem).recoverLease(path);
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * @return whether the appender was closed, it takes no more writes then
+         */
+        private synchronized boolean closeIfIdle(long now) {
+            if (scheduled || flushing || pendingLength > 0 || !pendingFutures.isEmpty() || now - lastWriteAt < idleCloseMs) {
+                return false;
+            }
+            closed = true;
+            notifyAll();
+            closeStream();
+            return true;
+        }
+
+        /**
+         * Writes what is pending, waits for it and closes the stream.
+         */
+        private synchronized void close() {
+            closed = true;
+            notifyAll();
+            firstPendingAt -= lingerMs;
+            schedule();
+            try {
+                while (scheduled || flushing) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted closing {}, the last appends may be lost", path);
+                return;
+            }
+            closeStream();
+        }
+
+        private void closeStream() {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close {}", path, e);
+                }
+                outputStream = null;
+            }
+        }
+    }
+
+    public static class Builder {
+        public FileSystem fileSystem;
+        public int flushBytes = 256 * 1024;
+        public long lingerMs = 10;
+        public long maxBufferedBytes = 8L * 1024 * 1024;
+        public long idleCloseMs = 60_000;
+        public Sync sync = Sync.HFLUSH;
+        public int threads = 2;
+
+        public Builder with(Consumer<Builder> consumer) {
+            consumer.accept(this);
+            return this;
+        }
+
+        public HdfsAppender build() {
+            return new HdfsAppender(this);
+        }
+    }
+}
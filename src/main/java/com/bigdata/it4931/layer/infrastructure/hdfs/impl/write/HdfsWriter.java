@@ -1,19 +1,42 @@
 package com.bigdata.it4931.layer.infrastructure.hdfs.impl.write;
 
-import com.bigdata.it4931.layer.infrastructure.hdfs.impl.HdfsAdapter;
+import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
 @Slf4j
 @Component
-public class HdfsWriter {
+public class HdfsWriter implements Closeable {
     private final FileSystem fileSystem;
+    private final HdfsAppender appender;
 
-    public HdfsWriter(HdfsAdapter hdfsAdapter) {
+    public HdfsWriter(IHdfsAdapter hdfsAdapter,
+                      @Value("${hadoop.hdfs.append.flush-KB:256}") int flushKb,
+                      @Value("${hadoop.hdfs.append.linger-ms:10}") long lingerMs,
+                      @Value("${hadoop.hdfs.append.max-buffered-MB:8}") long maxBufferedMb,
+                      @Value("${hadoop.hdfs.append.sync:hflush}") String sync,
+                      @Value("${hadoop.hdfs.append.idle-close-ms:60000}") long idleCloseMs,
+                      @Value("${hadoop.hdfs.append.threads:2}") int threads) {
         this.fileSystem = hdfsAdapter.getFileSystem();
+        this.appender = HdfsAppender.newBuilder()
+                .with(builder -> {
+                    builder.fileSystem = fileSystem;
+                    builder.flushBytes = flushKb * 1024;
+                    builder.lingerMs = lingerMs;
+                    builder.maxBufferedBytes = maxBufferedMb * 1024 * 1024;
+                    builder.sync = HdfsAppender.Sync.valueOf(sync.trim().toUpperCase());
+                    builder.idleCloseMs = idleCloseMs;
+                    builder.threads = threads;
+                })
+                .build();
     }
 
     public void wirteFile(String path, String data) {
@@ -25,12 +48,22 @@ public class HdfsWriter {
         }
     }
 
-    public void appendToFile(String path, String data) {
-        Path hdfsWritePath = new Path(path);
-        try (FSDataOutputStream outputStream = fileSystem.append(hdfsWritePath)) {
-            outputStream.writeBytes(data);
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-        }
+    /**
+     * Appends the data as UTF-8 through a stream kept open for the file, together with the appends of other threads.
+     *
+     * @return completes once the data is durable, see {@link HdfsAppender}
+     */
+    public CompletableFuture<Void> appendToFile(String path, String data) {
+        return appender.append(new Path(path), data.getBytes(StandardCharsets.UTF_8))
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        log.error("Failed to append to {}", path, e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() {
+        appender.close();
     }
 }
@@ -3,6 +3,8 @@ package com.bigdata.it4931.layer.infrastructure.kafka.message;
 public class KafkaMessage<T> {
     private T value;
     private String topic;
+    private int partition = -1;
+    private long offset = -1;
     private long timestamp;
 
     public KafkaMessage(T value, String topic, long timestamp) {
@@ -11,6 +13,12 @@ public class KafkaMessage<T> {
         this.timestamp = timestamp;
     }
 
+    public KafkaMessage(T value, String topic, int partition, long offset, long timestamp) {
+        this(value, topic, timestamp);
+        this.partition = partition;
+        this.offset = offset;
+    }
+
     public KafkaMessage() {
         if (value == null) {
             throw new IllegalArgumentException("value cannot be null");
@@ -28,6 +36,14 @@ public class KafkaMessage<T> {
         return topic;
     }
 
+    public int partition() {
+        return partition;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
     public long timestamp() {
         return timestamp;
     }
@@ -0,0 +1,15 @@
+package com.bigdata.it4931.layer.infrastructure.kafka.message;
+
+/**
+ * Encoding of the message values of a topic.
+ */
+public enum WireFormat {
+    /**
+     * UTF-8 JSON text.
+     */
+    JSON,
+    /**
+     * Avro binary in single-object encoding: {@code C3 01}, the 8-byte schema fingerprint, then the datum.
+     */
+    AVRO
+}
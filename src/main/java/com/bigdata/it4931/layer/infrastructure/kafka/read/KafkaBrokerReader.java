@@ -4,39 +4,103 @@ import com.bigdata.it4931.layer.infrastructure.kafka.KafkaBroker;
 import com.bigdata.it4931.layer.infrastructure.kafka.message.KafkaMessage;
 import com.bigdata.it4931.utility.kafka.KafkaUtils;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.kafka.KafkaClientMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Consumes topics on {@code numConsumers} polling threads and processes records on a separate worker pool.
+ * <p>
+ * Each polling thread keeps polling while its records are processed: records are queued per partition and a
+ * partition is processed by at most one worker at a time, in offset order, in batches of at least {@code minRecords}
+ * or whatever arrived within {@code maxWaitSeconds}. Offsets are committed asynchronously by the polling thread once
+ * their batch is processed. A partition whose queue is full is paused until its worker catches up, so a slow
+ * {@link #processing(List)} never delays the next poll past {@code max.poll.interval.ms}. In the same way every
+ * partition is paused while {@link #isSaturated()} says that whatever the records are handed over to is full, until
+ * {@link #canResume()}.
+ * <p>
+ * A batch that fails is fetched again from its first record a second later, the partition waits meanwhile. After
+ * {@value #MAX_ATTEMPTS} failed attempts it is either skipped, when {@link #skip} says so, or the reader stops without
+ * committing past it.
+ * <p>
+ * Records consumed and processed and the queue of every partition are exposed as meters in
+ * {@link Metrics#globalRegistry}, along with the client metrics of each consumer, which include the lag per partition.
+ */
 @Slf4j
-public abstract class KafkaBrokerReader extends KafkaBroker {
+public abstract class KafkaBrokerReader<V> extends KafkaBroker {
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final long RETRY_BACKOFF_MS = 1000;
+    private static final int MAX_ATTEMPTS = 5;
+    // the default of max.poll.interval.ms
+    private static final long DEFAULT_MAX_POLL_INTERVAL_MS = 300_000;
+    private static final int DEFAULT_MAX_QUEUED_RECORDS = 2000;
+
     private final ExecutorService executor;
+    private final ExecutorService workerExecutor;
     private final int numConsumers;
     private final int minRecords;
-    private final int maxWaitSeconds;
-    private Long previousTime;
+    private final long maxWaitMillis;
+    private final int maxQueuedRecords;
+    private final long revokeTimeoutMillis;
     private final AtomicBoolean running = new AtomicBoolean(false);
+    private final MeterRegistry meterRegistry = Metrics.globalRegistry;
 
     protected KafkaBrokerReader(Properties consumerProperties,
                                 Collection<String> topics,
                                 Integer numConsumers,
                                 Integer minRecords,
                                 Integer maxWaitSeconds) {
+        this(consumerProperties, topics, numConsumers, minRecords, maxWaitSeconds, null, null);
+    }
+
+    /**
+     * @param processingThreads         workers shared by all partitions, defaults to one per core but one
+     * @param maxQueuedRecordsPerPartition records waiting to be processed before a partition is paused
+     */
+    protected KafkaBrokerReader(Properties consumerProperties,
+                                Collection<String> topics,
+                                Integer numConsumers,
+                                Integer minRecords,
+                                Integer maxWaitSeconds,
+                                Integer processingThreads,
+                                Integer maxQueuedRecordsPerPartition) {
         super(consumerProperties, topics);
         this.minRecords = (minRecords != null && minRecords > 0) ? minRecords : 1;
         this.numConsumers = (numConsumers != null && numConsumers > 0) ? numConsumers : Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
-        this.maxWaitSeconds = (maxWaitSeconds != null && maxWaitSeconds > 0) ? maxWaitSeconds : 1;
+        this.maxWaitMillis = ((maxWaitSeconds != null && maxWaitSeconds > 0) ? maxWaitSeconds : 1) * 1000L;
+        this.maxQueuedRecords = (maxQueuedRecordsPerPartition != null && maxQueuedRecordsPerPartition > 0)
+                ? Math.max(maxQueuedRecordsPerPartition, this.minRecords) : Math.max(DEFAULT_MAX_QUEUED_RECORDS, this.minRecords);
+        Object maxPollInterval = consumerProperties.get(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG);
+        this.revokeTimeoutMillis = maxPollInterval != null ? Long.parseLong(maxPollInterval.toString()) : DEFAULT_MAX_POLL_INTERVAL_MS;
+        int workers = (processingThreads != null && processingThreads > 0) ? processingThreads : Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
         this.executor = Executors.newFixedThreadPool(this.numConsumers, new ThreadFactoryBuilder().setNameFormat(getClass().getSimpleName() + "-consumer-%d").build());
+        this.workerExecutor = Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder().setNameFormat(getClass().getSimpleName() + "-worker-%d").build());
 
         // Setup shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
@@ -49,37 +113,194 @@ public abstract class KafkaBrokerReader extends KafkaBroker {
         }
 
         while (running.get()) {
-            try (Consumer<String, String> consumer = KafkaUtils.initConsumer(properties, topics)) {
-                List<KafkaMessage<String>> messages = new ArrayList<>();
+            Map<TopicPartition, PartitionWorker> workers = new HashMap<>();
+            Consumer<String, V> consumer = null;
+            KafkaClientMetrics clientMetrics = null;
+            boolean held = false;
+            try {
+                RebalanceListener listener = new RebalanceListener(workers);
+                consumer = createConsumer(listener);
+                listener.consumer = consumer;
+                clientMetrics = new KafkaClientMetrics(consumer);
+                clientMetrics.bindTo(meterRegistry);
                 while (running.get()) {
-                    ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
-                    if (records.isEmpty()) {
-                        continue;
+                    ConsumerRecords<String, V> records = consumer.poll(Duration.ofMillis(POLL_TIMEOUT_MS));
+                    for (TopicPartition partition : records.partitions()) {
+                        PartitionWorker worker = workers.get(partition);
+                        if (worker == null) {
+                            continue;
+                        }
+                        List<ConsumerRecord<String, V>> partitionRecords = records.records(partition);
+                        for (ConsumerRecord<String, V> record : partitionRecords) {
+                            worker.add(new KafkaMessage<>(record.value(), record.topic(), record.partition(), record.offset(), record.timestamp()));
+                        }
+                        worker.consumed.increment(partitionRecords.size());
                     }
 
-                    for (ConsumerRecord<String, String> record : records) {
-                        messages.add(new KafkaMessage<>(record.value(), record.topic(), record.timestamp()));
-                    }
-
-                    if (messages.size() > minRecords || waitingTimeExpired()) {
-                        processing(messages);
-                        consumer.commitSync();
-                        messages.clear();
-                        previousTime = System.currentTimeMillis();
+                    long now = System.currentTimeMillis();
+                    held = holdIfSaturated(consumer, workers.values(), held);
+                    for (PartitionWorker worker : workers.values()) {
+                        worker.rewindIfFailed(consumer, now);
+                        worker.applyBackpressure(consumer, held);
+                        worker.schedule(now);
                     }
+                    commit(consumer, workers.values(), false);
                 }
             } catch (Exception e) {
                 log.error("Error while consuming messages", e);
+            } finally {
+                if (consumer != null) {
+                    release(consumer, new ArrayList<>(workers.values()), true);
+                    workers.clear();
+                    if (clientMetrics != null) {
+                        clientMetrics.close();
+                    }
+                    consumer.close();
+                }
             }
         }
         log.info("Consumer stopped at thread: {}", Thread.currentThread().getName());
     }
 
-    public abstract void processing(List<KafkaMessage<String>> messages);
+    public abstract void processing(List<KafkaMessage<V>> messages);
+
+    /**
+     * Called by a worker once a batch failed {@value #MAX_ATTEMPTS} times in a row. By default the batch is kept: the
+     * reader stops, and the records are consumed again from the last committed offset after a restart.
+     *
+     * @return whether to skip the batch, it then counts as processed
+     */
+    protected boolean skip(TopicPartition partition, List<KafkaMessage<V>> messages, Exception failure) {
+        return false;
+    }
+
+    /**
+     * @return a consumer subscribed to the topics with the given listener
+     */
+    protected Consumer<String, V> createConsumer(ConsumerRebalanceListener listener) {
+        return KafkaUtils.initConsumer(properties, topics, listener);
+    }
+
+    /**
+     * Readers whose {@link #processing(List)} only hands records over to something that persists them later return
+     * how far the partition is persisted here.
+     *
+     * @return the offset the partition may be committed up to, by default everything processed
+     */
+    protected long committableOffset(TopicPartition partition, long processedOffset) {
+        return processedOffset;
+    }
 
-    private boolean waitingTimeExpired() {
-        synchronized (KafkaBrokerReader.class) {
-            return System.currentTimeMillis() - previousTime >= maxWaitSeconds * 1000L;
+    /**
+     * Called before the offsets of partitions given up are committed, to make everything processed committable.
+     */
+    protected void flush(Collection<TopicPartition> partitions) {
+    }
+
+    /**
+     * Called when partitions are assigned, with their committed offsets.
+     *
+     * @return positions to start from for partitions whose records were persisted past the committed offset
+     */
+    protected Map<TopicPartition, Long> recoverPositions(Map<TopicPartition, Long> committed) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Readers whose {@link #processing(List)} hands records over to a bounded queue report here when it is full, all
+     * partitions are then paused until {@link #canResume()}.
+     */
+    protected boolean isSaturated() {
+        return false;
+    }
+
+    /**
+     * @return whether the partitions paused since {@link #isSaturated()} may be fetched again, typically once the queue
+     * is below a low-water mark
+     */
+    protected boolean canResume() {
+        return true;
+    }
+
+    /**
+     * @return whether all partitions are held back
+     */
+    private boolean holdIfSaturated(Consumer<String, V> consumer, Collection<PartitionWorker> workers, boolean held) {
+        if (!held && isSaturated()) {
+            log.info("Pausing {} partition(s) until the records handed over are processed", workers.size());
+            held = true;
+        } else if (held && canResume()) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (PartitionWorker worker : workers) {
+                if (!worker.paused) {
+                    partitions.add(worker.partition);
+                }
+            }
+            consumer.resume(partitions);
+            log.info("Resuming {} partition(s)", partitions.size());
+            held = false;
+        }
+        if (held) {
+            // also covers partitions assigned since
+            consumer.pause(consumer.assignment());
+        }
+        return held;
+    }
+
+    /**
+     * Stops the workers of the given partitions after their current batch and commits what they processed. Batches
+     * still running after {@code max.poll.interval.ms} are left behind, the consumer has lost its partitions by then.
+     */
+    private void release(Consumer<String, V> consumer, Collection<PartitionWorker> workers, boolean commit) {
+        for (PartitionWorker worker : workers) {
+            worker.revoked = true;
+            worker.removeMeters();
+        }
+        long deadline = System.currentTimeMillis() + revokeTimeoutMillis;
+        try {
+            for (PartitionWorker worker : workers) {
+                if (!worker.awaitIdle(deadline)) {
+                    log.warn("Timed out waiting for the batch of {} to be processed", worker.partition);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (commit && !workers.isEmpty()) {
+            try {
+                List<TopicPartition> partitions = new ArrayList<>();
+                for (PartitionWorker worker : workers) {
+                    partitions.add(worker.partition);
+                }
+                flush(partitions);
+                commit(consumer, workers, true);
+            } catch (Exception e) {
+                log.warn("Failed to commit offsets of released partitions", e);
+            }
+        }
+    }
+
+    private void commit(Consumer<String, V> consumer, Collection<PartitionWorker> workers, boolean sync) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (PartitionWorker worker : workers) {
+            long committable = committableOffset(worker.partition, worker.processedOffset);
+            if (committable > worker.committedOffset) {
+                offsets.put(worker.partition, new OffsetAndMetadata(committable));
+                worker.committedOffset = committable;
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        if (sync) {
+            consumer.commitSync(offsets);
+        } else {
+            consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception != null) {
+                    log.warn("Failed to commit offsets {}, a later commit covers them", committed, exception);
+                }
+            });
         }
     }
 
@@ -89,12 +310,238 @@ public abstract class KafkaBrokerReader extends KafkaBroker {
         for (int i = 0; i < numConsumers; i++) {
             executor.submit(this::startKafkaConsumer);
         }
-        previousTime = System.currentTimeMillis();
     }
 
     public void stop() {
         running.set(false);
         log.info("Shutting down Kafka consumer");
         executor.shutdown();
+        workerExecutor.shutdown();
+    }
+
+    private class RebalanceListener implements ConsumerRebalanceListener {
+        private final Map<TopicPartition, PartitionWorker> workers;
+        private Consumer<String, V> consumer;
+
+        private RebalanceListener(Map<TopicPartition, PartitionWorker> workers) {
+            this.workers = workers;
+        }
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            release(consumer, remove(partitions), true);
+        }
+
+        @Override
+        public void onPartitionsLost(Collection<TopicPartition> partitions) {
+            release(consumer, remove(partitions), false);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            Map<TopicPartition, Long> committed = new HashMap<>();
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : consumer.committed(new HashSet<>(partitions)).entrySet()) {
+                committed.put(entry.getKey(), entry.getValue() != null ? entry.getValue().offset() : null);
+            }
+            Map<TopicPartition, Long> positions = recoverPositions(committed);
+            for (TopicPartition partition : partitions) {
+                PartitionWorker worker = new PartitionWorker(partition);
+                Long committedOffset = committed.get(partition);
+                if (committedOffset != null) {
+                    worker.committedOffset = committedOffset;
+                }
+                Long position = positions.get(partition);
+                if (position != null && (committedOffset == null || position > committedOffset)) {
+                    log.info("Resuming {} at recovered offset {}, committed offset is {}", partition, position, committedOffset);
+                    consumer.seek(partition, position);
+                }
+                workers.put(partition, worker);
+            }
+            log.info("Assigned partitions {}", partitions);
+        }
+
+        private List<PartitionWorker> remove(Collection<TopicPartition> partitions) {
+            List<PartitionWorker> removed = new ArrayList<>();
+            for (TopicPartition partition : partitions) {
+                PartitionWorker worker = workers.remove(partition);
+                if (worker != null) {
+                    removed.add(worker);
+                }
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Records of one partition waiting to be processed. Fields without {@code volatile} belong to the polling thread.
+     */
+    private class PartitionWorker implements Runnable {
+        private final TopicPartition partition;
+        private final ConcurrentLinkedQueue<KafkaMessage<V>> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile long processedOffset = -1;
+        private volatile long lastProcessedAt = System.currentTimeMillis();
+        private volatile long failedOffset = -1;
+        private volatile boolean revoked;
+        // failed attempts of the batch starting at attemptOffset, written by the worker running
+        private volatile int attempts;
+        private volatile long attemptOffset = -1;
+        private long committedOffset = -1;
+        private long retryAt;
+        private boolean paused;
+        private final Counter consumed;
+        private final Counter processed;
+        private final Gauge queued;
+
+        private PartitionWorker(TopicPartition partition) {
+            this.partition = partition;
+            String reader = KafkaBrokerReader.this.getClass().getSimpleName();
+            String partitionTag = String.valueOf(partition.partition());
+            this.consumed = Counter.builder("kafka.reader.records.consumed")
+                    .description("Records fetched from the partition")
+                    .tags("reader", reader, "topic", partition.topic(), "partition", partitionTag)
+                    .register(meterRegistry);
+            this.processed = Counter.builder("kafka.reader.records.processed")
+                    .description("Records of the partition processed")
+                    .tags("reader", reader, "topic", partition.topic(), "partition", partitionTag)
+                    .register(meterRegistry);
+            this.queued = Gauge.builder("kafka.reader.queue.records", size, AtomicInteger::get)
+                    .description("Records of the partition fetched but not processed yet")
+                    .tags("reader", reader, "topic", partition.topic(), "partition", partitionTag)
+                    .register(meterRegistry);
+        }
+
+        private void removeMeters() {
+            meterRegistry.remove(consumed);
+            meterRegistry.remove(processed);
+            meterRegistry.remove(queued);
+        }
+
+        private void add(KafkaMessage<V> message) {
+            queue.add(message);
+            size.incrementAndGet();
+        }
+
+        private boolean isDue(long now) {
+            int queued = size.get();
+            return queued >= minRecords || (queued > 0 && now - lastProcessedAt >= maxWaitMillis);
+        }
+
+        private void schedule(long now) {
+            if (revoked || failedOffset >= 0 || now < retryAt || !isDue(now) || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                workerExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                idle();
+            }
+        }
+
+        private synchronized void idle() {
+            scheduled.set(false);
+            notifyAll();
+        }
+
+        /**
+         * @return whether no batch is running, false when the deadline passed first
+         */
+        private synchronized boolean awaitIdle(long deadline) throws InterruptedException {
+            while (scheduled.get()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        /**
+         * @param held whether all partitions are paused, this one is then left paused when it catches up
+         */
+        private void applyBackpressure(Consumer<String, V> consumer, boolean held) {
+            int queued = size.get();
+            if (!paused && queued >= maxQueuedRecords) {
+                consumer.pause(Collections.singleton(partition));
+                paused = true;
+            } else if (paused && queued <= maxQueuedRecords / 2) {
+                if (!held) {
+                    consumer.resume(Collections.singleton(partition));
+                }
+                paused = false;
+            }
+        }
+
+        /**
+         * Drops the queue and seeks back to the first record of the batch that failed so it is fetched again.
+         */
+        private void rewindIfFailed(Consumer<String, V> consumer, long now) {
+            if (failedOffset < 0 || scheduled.get()) {
+                return;
+            }
+            queue.clear();
+            size.set(0);
+            consumer.seek(partition, failedOffset);
+            failedOffset = -1;
+            retryAt = now + RETRY_BACKOFF_MS;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!revoked && isDue(System.currentTimeMillis())) {
+                    int count = Math.min(size.get(), maxQueuedRecords);
+                    List<KafkaMessage<V>> batch = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        batch.add(queue.poll());
+                    }
+                    size.addAndGet(-count);
+                    try {
+                        processing(batch);
+                        attempts = 0;
+                    } catch (Exception e) {
+                        if (!failed(batch, e)) {
+                            return;
+                        }
+                    }
+                    processedOffset = batch.get(count - 1).offset() + 1;
+                    lastProcessedAt = System.currentTimeMillis();
+                    processed.increment(count);
+                }
+            } finally {
+                idle();
+            }
+        }
+
+        /**
+         * @return whether the batch is skipped, otherwise it is fetched again or the reader stops
+         */
+        private boolean failed(List<KafkaMessage<V>> batch, Exception e) {
+            long offset = batch.get(0).offset();
+            attempts = offset == attemptOffset ? attempts + 1 : 1;
+            attemptOffset = offset;
+            if (attempts < MAX_ATTEMPTS) {
+                if (attempts == 1) {
+                    log.error("Failed to process {} record(s) of {} from offset {}, retrying", batch.size(), partition, offset, e);
+                } else {
+                    log.warn("Attempt {} to process {} from offset {} failed, retrying: {}", attempts, partition, offset, e.toString());
+                }
+                failedOffset = offset;
+                return false;
+            }
+            attempts = 0;
+            if (skip(partition, batch, e)) {
+                log.error("Skipped {} record(s) of {} from offset {} after {} failed attempts", batch.size(), partition, offset, MAX_ATTEMPTS, e);
+                return true;
+            }
+            log.error("Failed to process {} record(s) of {} from offset {} {} times, stopping the reader, the records are consumed again after a restart",
+                    batch.size(), partition, offset, MAX_ATTEMPTS, e);
+            // nothing of the partition is processed past the batch
+            revoked = true;
+            stop();
+            return false;
+        }
     }
 }
@@ -0,0 +1,121 @@
+package com.bigdata.it4931.layer.infrastructure.kafka.read;
+
+import com.bigdata.it4931.layer.infrastructure.kafka.KafkaBroker;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.SaslConfigs;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Reads the committed end of a topic without joining a consumer group.
+ */
+@Slf4j
+public class KafkaTopicTail extends KafkaBroker implements Closeable {
+    private static final String[] CONNECTION_CONFIGS = {
+            CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG,
+            CommonClientConfigs.SECURITY_PROTOCOL_CONFIG,
+            SaslConfigs.SASL_MECHANISM,
+            SaslConfigs.SASL_JAAS_CONFIG
+    };
+
+    private final Consumer<byte[], byte[]> consumer;
+    private final String topic;
+    private final List<TopicPartition> partitions = new ArrayList<>();
+
+    /**
+     * @param properties producer or consumer properties, only the connection settings are used
+     */
+    public KafkaTopicTail(Properties properties, String topic) {
+        super(readerProperties(properties), Collections.singletonList(topic));
+        this.topic = topic;
+        this.consumer = new KafkaConsumer<>(this.properties, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+        loadPartitions();
+    }
+
+    /**
+     * Reads through a consumer configured with {@code isolation.level=read_committed} elsewhere, the tail closes it.
+     */
+    public KafkaTopicTail(Consumer<byte[], byte[]> consumer, String topic) {
+        super(new Properties(), Collections.singletonList(topic));
+        this.topic = topic;
+        this.consumer = consumer;
+        loadPartitions();
+    }
+
+    private void loadPartitions() {
+        for (PartitionInfo partitionInfo : consumer.partitionsFor(topic)) {
+            partitions.add(new TopicPartition(topic, partitionInfo.partition()));
+        }
+    }
+
+    /**
+     * @return the last stable offset of every partition, records of open transactions are not included
+     */
+    public Map<Integer, Long> endOffsets() {
+        Map<Integer, Long> offsets = new HashMap<>();
+        consumer.endOffsets(partitions).forEach((partition, offset) -> offsets.put(partition.partition(), offset));
+        return offsets;
+    }
+
+    /**
+     * Passes every committed record from the given offsets up to the current end of the topic to the visitor.
+     * Partitions missing from {@code from} are read from their end, i.e. skipped.
+     */
+    public void scan(Map<Integer, Long> from, java.util.function.Consumer<ConsumerRecord<byte[], byte[]>> visitor) {
+        Map<Integer, Long> end = endOffsets();
+        List<TopicPartition> pending = new ArrayList<>();
+        for (TopicPartition partition : partitions) {
+            long start = from.getOrDefault(partition.partition(), end.get(partition.partition()));
+            if (start < end.get(partition.partition())) {
+                pending.add(partition);
+            }
+        }
+        consumer.assign(pending);
+        for (TopicPartition partition : pending) {
+            consumer.seek(partition, from.get(partition.partition()));
+        }
+        long scanned = 0;
+        while (!pending.isEmpty()) {
+            for (ConsumerRecord<byte[], byte[]> record : consumer.poll(Duration.ofMillis(500))) {
+                visitor.accept(record);
+                scanned++;
+            }
+            // control records and aborted data are skipped, so the position is what tells a partition is done
+            pending.removeIf(partition -> consumer.position(partition) >= end.get(partition.partition()));
+        }
+        consumer.assign(Collections.emptyList());
+        log.info("Scanned {} record(s) at the end of topic {}", scanned, topic);
+    }
+
+    @Override
+    public void close() {
+        consumer.close();
+    }
+
+    private static Properties readerProperties(Properties properties) {
+        Properties reader = new Properties();
+        for (String config : CONNECTION_CONFIGS) {
+            if (properties.containsKey(config)) {
+                reader.put(config, properties.get(config));
+            }
+        }
+        reader.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        reader.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        return reader;
+    }
+}
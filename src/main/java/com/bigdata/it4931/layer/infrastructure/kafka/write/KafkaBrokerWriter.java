@@ -2,29 +2,284 @@ package com.bigdata.it4931.layer.infrastructure.kafka.write;
 
 import com.bigdata.it4931.layer.infrastructure.kafka.KafkaBroker;
 import com.bigdata.it4931.utility.kafka.KafkaUtils;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.kafka.KafkaClientMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
-public class KafkaBrokerWriter extends KafkaBroker {
-    private final Producer<String, String> producer;
+/**
+ * Sends messages to every topic, with the records and bytes in flight bounded. Records sent and failed per topic, the
+ * records in flight and the producer client metrics are exposed as meters in {@link Metrics#globalRegistry}, tagged
+ * with the {@code client.id} of the producer so that every writer has meters of its own and removes only those.
+ */
+@Slf4j
+public class KafkaBrokerWriter extends KafkaBroker implements Closeable {
+    private static final int DEFAULT_MAX_IN_FLIGHT_RECORDS = 10_000;
+    private static final int DEFAULT_BUFFER_MEMORY = 32 * 1024 * 1024;
+    private static final int RECORD_OVERHEAD_BYTES = 64;
+    private static final AtomicInteger WRITER_COUNTER = new AtomicInteger();
+
+    private final Producer<String, byte[]> producer;
+    private final Semaphore inFlightRecords;
+    private final Semaphore inFlightBytes;
+    private final int maxInFlightBytes;
+    private final AtomicLong failedCount = new AtomicLong();
+    private final MeterRegistry meterRegistry = Metrics.globalRegistry;
+    private final KafkaClientMetrics clientMetrics;
+    private final Map<String, Counter> sentByTopic = new HashMap<>();
+    private final Map<String, Counter> failedByTopic = new HashMap<>();
+    private final List<Meter> meters = new ArrayList<>();
 
     public KafkaBrokerWriter(Properties properties, Collection<String> topics) {
+        this(properties, topics, 0, 0);
+    }
+
+    /**
+     * @param maxInFlightRecords records sent but not yet acknowledged before senders block, 0 for the default
+     * @param maxInFlightBytes   estimated bytes sent but not yet acknowledged before senders block, 0 for half of
+     *                           {@code buffer.memory} so the producer never blocks on a full accumulator
+     */
+    public KafkaBrokerWriter(Properties properties, Collection<String> topics, int maxInFlightRecords, int maxInFlightBytes) {
         super(properties, topics);
-        this.producer = KafkaUtils.initProducer(properties);
+        // values are always sent as bytes, strings are encoded as UTF-8 like StringSerializer does
+        this.producer = KafkaUtils.initProducer(properties, new StringSerializer(), new ByteArraySerializer());
+        this.maxInFlightBytes = maxInFlightBytes > 0 ? maxInFlightBytes : bufferMemory(properties) / 2;
+        int maxInFlight = maxInFlightRecords > 0 ? maxInFlightRecords : DEFAULT_MAX_IN_FLIGHT_RECORDS;
+        this.inFlightRecords = new Semaphore(maxInFlight);
+        this.inFlightBytes = new Semaphore(this.maxInFlightBytes);
+        this.clientMetrics = new KafkaClientMetrics(producer);
+        this.clientMetrics.bindTo(meterRegistry);
+        String clientId = clientId(producer);
+        for (String topic : topics) {
+            sentByTopic.put(topic, register(Counter.builder("kafka.writer.records")
+                    .description("Records acknowledged or failed by the brokers")
+                    .tags("client.id", clientId, "topic", topic, "result", "sent")
+                    .register(meterRegistry)));
+            failedByTopic.put(topic, register(Counter.builder("kafka.writer.records")
+                    .description("Records acknowledged or failed by the brokers")
+                    .tags("client.id", clientId, "topic", topic, "result", "failed")
+                    .register(meterRegistry)));
+        }
+        register(Gauge.builder("kafka.writer.in.flight.records", inFlightRecords, permits -> maxInFlight - permits.availablePermits())
+                .description("Records sent but not acknowledged yet")
+                .tags("client.id", clientId, "topics", String.join(",", topics))
+                .register(meterRegistry));
     }
 
     public List<Future<RecordMetadata>> write(String message) {
+        return write(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public List<Future<RecordMetadata>> write(byte[] message) {
         List<Future<RecordMetadata>> futures = new ArrayList<>();
         for (String topic : topics) {
-            futures.add(producer.send(new ProducerRecord<>(topic, message)));
+            int size = acquireUninterruptibly(message);
+            futures.add(send(topic, message, size, (metadata, exception) -> {
+                if (exception != null) {
+                    log.error("Failed to send message to topic {}", topic, exception);
+                }
+            }));
         }
         return futures;
     }
+
+    public PublishResult writeAll(Stream<String> messages) {
+        try (messages) {
+            return writeAll(messages.iterator());
+        }
+    }
+
+    public PublishResult writeAll(Iterator<String> messages) {
+        return writeAllBytes(Iterators.transform(messages, message -> message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Sends every message to every topic, keeping at most the configured number of records and bytes in flight, and
+     * waits until all of them are acknowledged or failed.
+     */
+    public PublishResult writeAllBytes(Iterator<byte[]> messages) {
+        PublishTracker tracker = new PublishTracker();
+        try {
+            while (messages.hasNext()) {
+                byte[] message = messages.next();
+                for (String topic : topics) {
+                    int size = acquire(message);
+                    tracker.onSend();
+                    send(topic, message, size, tracker);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while publishing, waiting for {} in-flight message(s)", tracker.pending.get() - 1);
+            Thread.currentThread().interrupt();
+        }
+        return tracker.await();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public void flush() {
+        producer.flush();
+    }
+
+    @Override
+    public void close() {
+        producer.close();
+        clientMetrics.close();
+        for (Meter meter : meters) {
+            meterRegistry.remove(meter);
+        }
+    }
+
+    private <T extends Meter> T register(T meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    private Future<RecordMetadata> send(String topic, byte[] message, int size, Callback callback) {
+        Counter sent = sentByTopic.get(topic);
+        Counter failed = failedByTopic.get(topic);
+        Callback releasingCallback = (metadata, exception) -> {
+            release(size);
+            if (exception != null) {
+                failedCount.incrementAndGet();
+                failed.increment();
+            } else {
+                sent.increment();
+            }
+            callback.onCompletion(metadata, exception);
+        };
+        try {
+            return producer.send(new ProducerRecord<>(topic, message), releasingCallback);
+        } catch (RuntimeException e) {
+            releasingCallback.onCompletion(null, e);
+            CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    private int acquire(byte[] message) throws InterruptedException {
+        int size = estimateSize(message);
+        inFlightRecords.acquire();
+        try {
+            inFlightBytes.acquire(size);
+        } catch (InterruptedException e) {
+            inFlightRecords.release();
+            throw e;
+        }
+        return size;
+    }
+
+    private int acquireUninterruptibly(byte[] message) {
+        int size = estimateSize(message);
+        inFlightRecords.acquireUninterruptibly();
+        inFlightBytes.acquireUninterruptibly(size);
+        return size;
+    }
+
+    private void release(int size) {
+        inFlightBytes.release(size);
+        inFlightRecords.release();
+    }
+
+    private int estimateSize(byte[] message) {
+        return (int) Math.min((long) message.length + RECORD_OVERHEAD_BYTES, maxInFlightBytes);
+    }
+
+    /**
+     * @return the client id of the producer, generated by Kafka when not configured, like its client metrics are tagged
+     */
+    private static String clientId(Producer<?, ?> producer) {
+        for (MetricName name : producer.metrics().keySet()) {
+            String clientId = name.tags().get("client-id");
+            if (clientId != null) {
+                return clientId;
+            }
+        }
+        return "kafka-writer-" + WRITER_COUNTER.incrementAndGet();
+    }
+
+    private static int bufferMemory(Properties properties) {
+        Object value = properties.get(ProducerConfig.BUFFER_MEMORY_CONFIG);
+        if (value == null) {
+            return DEFAULT_BUFFER_MEMORY;
+        }
+        long bufferMemory = Long.parseLong(value.toString());
+        return (int) Math.min(bufferMemory, Integer.MAX_VALUE);
+    }
+
+    private static class PublishTracker implements Callback {
+        private final long startTime = System.currentTimeMillis();
+        // starts at one for the publishing thread itself so the latch cannot open before the last send
+        private final AtomicLong pending = new AtomicLong(1);
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicReference<Exception> firstError = new AtomicReference<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private void onSend() {
+            pending.incrementAndGet();
+            sent.incrementAndGet();
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            if (exception == null) {
+                succeeded.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+                if (firstError.compareAndSet(null, exception)) {
+                    log.error("Failed to send message", exception);
+                }
+            }
+            complete();
+        }
+
+        private void complete() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        private PublishResult await() {
+            complete();
+            Uninterruptibles.awaitUninterruptibly(done);
+            return new PublishResult(sent.get(), succeeded.get(), failed.get(),
+                    System.currentTimeMillis() - startTime, firstError.get());
+        }
+    }
 }
@@ -0,0 +1,142 @@
+package com.bigdata.it4931.layer.infrastructure.kafka.write;
+
+import com.bigdata.it4931.layer.infrastructure.kafka.KafkaBroker;
+import com.bigdata.it4931.utility.kafka.KafkaUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes to a single topic in Kafka transactions, so consumers reading with {@code isolation.level=read_committed}
+ * see every record of a transaction or none of them.
+ */
+@Slf4j
+public class KafkaTransactionalWriter extends KafkaBroker implements Closeable {
+    private final Producer<String, byte[]> producer;
+    private final String topic;
+    private final AtomicReference<Exception> firstError = new AtomicReference<>();
+    private final Callback callback = (metadata, exception) -> {
+        if (exception != null && firstError.compareAndSet(null, exception)) {
+            log.error("Failed to send message in a transaction", exception);
+        }
+    };
+    private boolean inTransaction;
+
+    /**
+     * Registers the transactional id, which fences any older producer using the same id and aborts the transaction it
+     * left open.
+     */
+    public KafkaTransactionalWriter(Properties properties, String topic, String transactionalId) {
+        super(transactionalProperties(properties, transactionalId), Collections.singletonList(topic));
+        this.topic = topic;
+        this.producer = KafkaUtils.initProducer(this.properties, new StringSerializer(), new ByteArraySerializer());
+        initTransactions();
+    }
+
+    /**
+     * Publishes through a producer configured with a transactional id elsewhere, the writer closes it.
+     */
+    public KafkaTransactionalWriter(Producer<String, byte[]> producer, String topic) {
+        super(new Properties(), Collections.singletonList(topic));
+        this.topic = topic;
+        this.producer = producer;
+        initTransactions();
+    }
+
+    private void initTransactions() {
+        try {
+            producer.initTransactions();
+        } catch (KafkaException e) {
+            producer.close();
+            throw e;
+        }
+    }
+
+    public void send(byte[] message, Iterable<Header> headers) {
+        if (!inTransaction) {
+            producer.beginTransaction();
+            firstError.set(null);
+            inTransaction = true;
+        }
+        producer.send(new ProducerRecord<>(topic, null, (String) null, message, headers), callback);
+    }
+
+    public boolean inTransaction() {
+        return inTransaction;
+    }
+
+    /**
+     * Commits the open transaction, aborting it when any of its records failed.
+     *
+     * @throws KafkaException when a record failed or the transaction could not be committed, after which it was
+     *                        aborted when possible
+     */
+    public void commit() {
+        if (!inTransaction) {
+            return;
+        }
+        inTransaction = false;
+        try {
+            // the callbacks of every record have run once flushed
+            producer.flush();
+            Exception error = firstError.get();
+            if (error != null) {
+                throw new KafkaException("A record of the transaction failed to send", error);
+            }
+            producer.commitTransaction();
+        } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException e) {
+            // fatal, the producer can only be closed
+            throw e;
+        } catch (KafkaException e) {
+            try {
+                producer.abortTransaction();
+            } catch (KafkaException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    public void abort() {
+        if (inTransaction) {
+            inTransaction = false;
+            try {
+                producer.abortTransaction();
+            } catch (KafkaException e) {
+                log.warn("Failed to abort transaction, it is aborted when the transactional id is next used", e);
+            }
+        }
+    }
+
+    public Exception getFirstError() {
+        return firstError.get();
+    }
+
+    @Override
+    public void close() {
+        producer.close();
+    }
+
+    private static Properties transactionalProperties(Properties properties, String transactionalId) {
+        Properties transactional = new Properties();
+        transactional.putAll(properties);
+        transactional.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        transactional.put(ProducerConfig.ACKS_CONFIG, "all");
+        transactional.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, transactionalId);
+        return transactional;
+    }
+}
@@ -0,0 +1,28 @@
+package com.bigdata.it4931.layer.infrastructure.kafka.write;
+
+import lombok.Data;
+
+@Data
+public class PublishResult {
+    private final long sent;
+    private final long succeeded;
+    private final long failed;
+    private final long elapsedMillis;
+    private final Exception firstError;
+
+    public static PublishResult empty() {
+        return new PublishResult(0, 0, 0, 0, null);
+    }
+
+    public boolean hasFailures() {
+        return failed > 0;
+    }
+
+    public PublishResult merge(PublishResult other) {
+        return new PublishResult(sent + other.sent,
+                succeeded + other.succeeded,
+                failed + other.failed,
+                Math.max(elapsedMillis, other.elapsedMillis),
+                firstError != null ? firstError : other.firstError);
+    }
+}
@@ -0,0 +1,56 @@
+package com.bigdata.it4931.layer.presentation.controller;
+
+import com.bigdata.it4931.layer.application.domain.dto.JobCountDto;
+import com.bigdata.it4931.layer.application.domain.dto.JobQueryDto;
+import com.bigdata.it4931.layer.application.service.serving.IJobQueryService;
+import com.bigdata.it4931.layer.application.service.serving.query.JobRowStream;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queries over the Parquet files of the batch layer, filtered by the parameters of {@link JobQueryDto}, for example
+ * {@code /api/jobs/count?groupBy=role&country=India&from=2023-01-01&to=2023-01-31}. A filter given several times
+ * matches any of its values.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobQueryController {
+    private final IJobQueryService jobQueryService;
+
+    public JobQueryController(IJobQueryService jobQueryService) {
+        this.jobQueryService = jobQueryService;
+    }
+
+    /**
+     * Streams the matching jobs as JSON lines while the files are scanned.
+     */
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> query(JobQueryDto query,
+                                                       @RequestParam(required = false) List<String> fields,
+                                                       @RequestParam(defaultValue = "1000") int limit) throws IOException {
+        JobRowStream rows = jobQueryService.query(query, fields, limit);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(rows::writeTo);
+    }
+
+    @GetMapping("/count")
+    public JobCountDto count(JobQueryDto query,
+                             @RequestParam(required = false) String groupBy,
+                             @RequestParam(defaultValue = "100") int top) throws IOException {
+        return jobQueryService.count(query, groupBy, top);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+}
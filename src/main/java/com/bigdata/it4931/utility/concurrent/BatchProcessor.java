@@ -3,71 +3,235 @@ package com.bigdata.it4931.utility.concurrent;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.Closeable;
-import java.util.AbstractMap;
-import java.util.LinkedList;
+import java.util.AbstractList;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
+/**
+ * Queues payloads and hands them to {@code applyFn} in batches on {@code corePoolSize} threads.
+ * <p>
+ * Payloads go through a preallocated ring, so {@link #put(Object)} does not allocate beyond its callback and only
+ * takes a lock to wake a sleeping consumer. A consumer flushes when it holds {@code batchSize} payloads or when the
+ * first of them waited {@code maxLingerMs}, whichever comes first, and hands {@code applyFn} a list it reuses for
+ * every batch: {@code applyFn} must not keep the list or its entries after it returns. With
+ * {@code targetFlushLatencyMs} set the batch size follows the observed {@code applyFn} latency, between
+ * {@code minBatchSize} and {@code maxBatchSize}.
+ * <p>
+ * With {@code maxQueuedRecords} or {@code maxQueuedBytes} set the processor holds a bounded amount of memory: payloads
+ * count from {@link #put(Object)} until their batch is applied, and {@code put} blocks while either limit is reached.
+ * Producers that would rather stop early can watch {@link #isFull()} and wait for {@link #isBelowLowWaterMark()}.
+ * <p>
+ * When the consumers are interrupted or fail before {@link #close()}, the processor closes itself: the payloads left
+ * queued and every later {@code put} fail with an {@link IllegalStateException} instead of waiting for room that never
+ * comes.
+ */
 @Slf4j
 public class BatchProcessor<K, V> implements Closeable {
+    private static final int DEFAULT_RING_CAPACITY = 1 << 16;
 
     private final AtomicBoolean isDisposed = new AtomicBoolean(false);
     private final ExecutorService executorService;
-    private final BlockingQueue<Map.Entry<K, AsyncCallback<V>>> queue;
-    private final Semaphore semaphore;
+    private final BatchRing<K, V> ring;
     private final int corePoolSize;
-    private final int batchSize;
     private final boolean isMustFullBatch;
+    private final long lingerNanos;
+    private final long targetLatencyNanos;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private volatile int batchSize;
     private final Consumer<List<Map.Entry<K, AsyncCallback<V>>>> applyFn;
+    private final FlushListener flushListener;
+    private final int maxQueuedRecords;
+    private final long maxQueuedBytes;
+    private final double lowWaterMark;
+    private final ToLongFunction<K> weigher;
+    private final AtomicLong queuedRecords = new AtomicLong();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    // sleepers announce themselves before their last check, so the other side only locks when someone is waiting
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+    private final CountDownLatch consumersDone;
+    // the consumers left before close, nothing applies what is queued anymore
+    private volatile boolean abandoned;
 
     private BatchProcessor(Builder<K, V> builder, Consumer<List<Map.Entry<K, AsyncCallback<V>>>> applyFn) {
         this.executorService = builder.executorService;
-        this.corePoolSize = builder.corePoolSize;
-        this.queue = builder.queue;
-        this.batchSize = builder.batchSize;
+        this.corePoolSize = Math.max(builder.corePoolSize, 1);
         this.isMustFullBatch = builder.isMustFullBatch;
-
-        this.semaphore = new Semaphore(this.corePoolSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(builder.maxLingerMs, 0));
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(builder.targetFlushLatencyMs, 0));
+        this.batchSize = Math.max(builder.batchSize, 1);
+        this.minBatchSize = Math.max(Math.min(builder.minBatchSize, batchSize), 1);
+        this.maxBatchSize = builder.maxBatchSize > 0 ? Math.max(builder.maxBatchSize, batchSize)
+                : targetLatencyNanos > 0 ? batchSize * 4 : batchSize;
+        this.maxQueuedRecords = builder.maxQueuedRecords;
+        this.maxQueuedBytes = builder.maxQueuedBytes;
+        this.lowWaterMark = builder.lowWaterMark;
+        this.weigher = builder.weigher;
+        this.ring = new BatchRing<>(builder.ringCapacity > 0 ? builder.ringCapacity
+                : maxQueuedRecords > 0 ? maxQueuedRecords : DEFAULT_RING_CAPACITY);
         this.applyFn = applyFn;
+        this.flushListener = builder.flushListener;
 
+        this.consumersDone = new CountDownLatch(corePoolSize);
         for (int i = 0; i < corePoolSize; i++) {
             CompletableFuture.runAsync(this::processBatch, executorService);
         }
     }
 
     private void processBatch() {
-        while (!isDisposed.get()) {
-            List<Map.Entry<K, AsyncCallback<V>>> batch = new LinkedList<>();
+        Batch<K, V> batch = new Batch<>(maxBatchSize);
+        try {
+            while (fill(batch)) {
+                flush(batch);
+            }
+        } catch (InterruptedException e) {
+            flush(batch);
+            Thread.currentThread().interrupt();
+        } catch (Error e) {
+            // applyFn failures are handled per batch, an error would end the consumer without a trace
+            log.error("Batch processor consumer failed", e);
+            throw e;
+        } finally {
+            consumersDone.countDown();
+            if (consumersDone.getCount() == 0 && isDisposed.compareAndSet(false, true)) {
+                log.warn("Batch processor consumers stopped before close, failing the queued payloads");
+                abandoned = true;
+                signal(notEmpty);
+                signal(notFull);
+                failQueued();
+            }
+        }
+    }
+
+    /**
+     * Completes the payloads left in the ring exceptionally, once no consumer takes them anymore.
+     */
+    private void failQueued() {
+        IllegalStateException closed = new IllegalStateException("Batch processor is closed");
+        BatchRing.Slot<K, V> slot = new BatchRing.Slot<>();
+        while (!ring.isEmpty()) {
+            if (!ring.poll(slot)) {
+                // a producer claimed a slot but has not published it yet
+                Thread.yield();
+                continue;
+            }
+            unreserve(1, weigh(slot.getKey()));
+            slot.getValue().completeExceptionally(closed);
+            slot.clear();
+        }
+    }
+
+    /**
+     * Takes payloads until the batch is full, the linger deadline passed or the processor is closed and drained.
+     *
+     * @return false when there is nothing left to apply
+     */
+    private boolean fill(Batch<K, V> batch) throws InterruptedException {
+        int limit = batchSize;
+        long deadline = 0;
+        while (true) {
+            int before = batch.size;
+            while (batch.size < limit && ring.poll(batch.slots[batch.size])) {
+                batch.size++;
+            }
+            if (batch.size > before) {
+                signalProducers();
+                if (before == 0) {
+                    deadline = System.nanoTime() + lingerNanos;
+                }
+            }
+            if (batch.size >= limit) {
+                return true;
+            }
+            if (isDisposed.get()) {
+                if (batch.size > 0) {
+                    return true;
+                }
+                if (ring.isEmpty()) {
+                    return false;
+                }
+                // a producer claimed a slot but has not published it yet
+                Thread.yield();
+                continue;
+            }
+            long timeout = 0;
+            if (batch.size > 0 && !isMustFullBatch) {
+                timeout = deadline - System.nanoTime();
+                if (timeout <= 0) {
+                    return true;
+                }
+            }
+            awaitPayload(timeout);
+        }
+    }
+
+    private void awaitPayload(long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            waitingConsumers.incrementAndGet();
             try {
-                if (isMustFullBatch) {
-                    waitForFullBatch(batch);
-                } else {
-                    int drained = queue.drainTo(batch, batchSize);
-                    if (drained == 0) {
-                        semaphore.acquire();
-                        continue;
+                if (ring.isEmpty() && !isDisposed.get()) {
+                    if (timeoutNanos > 0) {
+                        notEmpty.awaitNanos(timeoutNanos);
+                    } else {
+                        notEmpty.await();
                     }
                 }
-                if (!batch.isEmpty()) {
-                    applyFn.accept(batch);
-                }
-            } catch (Exception e) {
-                handleBatchException(batch, e);
             } finally {
-                completeBatch(batch);
+                waitingConsumers.decrementAndGet();
             }
+        } finally {
+            lock.unlock();
         }
     }
 
-    private void waitForFullBatch(List<Map.Entry<K, AsyncCallback<V>>> batch) throws InterruptedException {
-        synchronized (queue) {
-            while (queue.size() < batchSize && !isDisposed.get()) {
-                Threads.sleep(500);
-            }
-            queue.drainTo(batch, batchSize);
+    private void flush(Batch<K, V> batch) {
+        if (batch.size == 0) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            applyFn.accept(batch);
+        } catch (Exception e) {
+            handleBatchException(batch, e);
+        } finally {
+            completeBatch(batch);
+            long elapsedNanos = System.nanoTime() - startTime;
+            adaptBatchSize(batch.size, elapsedNanos);
+            flushListener.onFlush(batch.size, elapsedNanos);
+            release(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Shrinks the batch towards the size that would have been applied in {@code targetFlushLatencyMs}, and grows full
+     * batches that took less than half of it.
+     */
+    private void adaptBatchSize(int size, long elapsedNanos) {
+        if (targetLatencyNanos <= 0) {
+            return;
+        }
+        int current = batchSize;
+        if (elapsedNanos > targetLatencyNanos) {
+            int scaled = (int) (size * (double) targetLatencyNanos / elapsedNanos);
+            batchSize = Math.max(minBatchSize, Math.max(current / 2, Math.min(scaled, current - 1)));
+        } else if (size >= current && elapsedNanos < targetLatencyNanos / 2) {
+            batchSize = Math.min(maxBatchSize, current + Math.max(1, current / 4));
         }
     }
 
@@ -83,39 +247,250 @@ public class BatchProcessor<K, V> implements Closeable {
         }
     }
 
+    private void release(List<Map.Entry<K, AsyncCallback<V>>> batch) {
+        long bytes = 0;
+        for (Map.Entry<K, AsyncCallback<V>> entry : batch) {
+            bytes += weigh(entry.getKey());
+        }
+        unreserve(batch.size(), bytes);
+    }
+
+    private void unreserve(int records, long bytes) {
+        queuedRecords.addAndGet(-records);
+        queuedBytes.addAndGet(-bytes);
+        signalProducers();
+    }
+
     public static <K, V> Builder<K, V> newBuilder() {
         return new Builder<>();
     }
 
+    /**
+     * Queues a payload, waiting while the processor is full. Once the processor is closed the returned callback fails
+     * right away.
+     */
     public AsyncCallback<V> put(K payload) {
         AsyncCallback<V> callback = new AsyncCallback<>();
-        queue.add(new AbstractMap.SimpleImmutableEntry<>(payload, callback));
-        semaphore.release();
+        long bytes = weigh(payload);
+        boolean reserved = false;
+        while (!isDisposed.get() && !(reserved = tryReserve(bytes))) {
+            awaitSpace(this::isFull);
+        }
+        boolean offered = false;
+        while (reserved && !isDisposed.get() && !(offered = ring.offer(payload, callback))) {
+            awaitSpace(ring::isFull);
+        }
+        if (!offered) {
+            if (reserved) {
+                unreserve(1, bytes);
+            }
+            callback.completeExceptionally(new IllegalStateException("Batch processor is closed"));
+            return callback;
+        }
+        if (abandoned) {
+            // published after the consumers failed what was queued
+            failQueued();
+        } else if (waitingConsumers.get() > 0) {
+            signal(notEmpty);
+        }
         return callback;
     }
 
+    private boolean tryReserve(long bytes) {
+        if (maxQueuedRecords > 0) {
+            long records;
+            do {
+                records = queuedRecords.get();
+                if (records >= maxQueuedRecords) {
+                    return false;
+                }
+            } while (!queuedRecords.compareAndSet(records, records + 1));
+        } else {
+            queuedRecords.incrementAndGet();
+        }
+        if (maxQueuedBytes > 0) {
+            long queued;
+            do {
+                queued = queuedBytes.get();
+                if (queued >= maxQueuedBytes) {
+                    queuedRecords.decrementAndGet();
+                    signalProducers();
+                    return false;
+                }
+            } while (!queuedBytes.compareAndSet(queued, queued + bytes));
+        }
+        return true;
+    }
+
+    private void awaitSpace(BooleanSupplier isFull) {
+        lock.lock();
+        try {
+            waitingProducers.incrementAndGet();
+            try {
+                if (isFull.getAsBoolean() && !isDisposed.get()) {
+                    notFull.awaitUninterruptibly();
+                }
+            } finally {
+                waitingProducers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalProducers() {
+        if (waitingProducers.get() > 0) {
+            signal(notFull);
+        }
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether the queued payloads reached a limit, {@link #put(Object)} blocks until they are below it again
+     */
+    public boolean isFull() {
+        return (maxQueuedRecords > 0 && queuedRecords.get() >= maxQueuedRecords)
+                || (maxQueuedBytes > 0 && queuedBytes.get() >= maxQueuedBytes);
+    }
+
+    /**
+     * @return whether the queued payloads are below {@code lowWaterMark} of both limits
+     */
+    public boolean isBelowLowWaterMark() {
+        return (maxQueuedRecords <= 0 || queuedRecords.get() <= maxQueuedRecords * lowWaterMark)
+                && (maxQueuedBytes <= 0 || queuedBytes.get() <= maxQueuedBytes * lowWaterMark);
+    }
+
+    public long getQueuedRecords() {
+        return queuedRecords.get();
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * @return the number of payloads a consumer currently waits for before flushing
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    private long weigh(K payload) {
+        return maxQueuedBytes > 0 ? weigher.applyAsLong(payload) : 0;
+    }
+
+    /**
+     * Stops accepting payloads and returns once the consumers applied everything queued before.
+     */
     @Override
     public void close() {
-        while (!queue.isEmpty()) {
-            processAll();
-            Threads.sleep(500);
+        if (!isDisposed.compareAndSet(false, true)) {
+            return;
         }
-        isDisposed.set(true);
+        signal(notEmpty);
+        signal(notFull);
+        try {
+            consumersDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // a put that raced with close may have published after the consumers left
+        processAll();
         executorService.shutdown();
     }
 
+    /**
+     * Applies everything queued so far on the calling thread.
+     */
     public void processAll() {
-        List<Map.Entry<K, AsyncCallback<V>>> batch = new LinkedList<>();
-        queue.drainTo(batch, queue.size());
-        applyFn.accept(batch);
+        Batch<K, V> batch = new Batch<>(maxBatchSize);
+        while (!ring.isEmpty()) {
+            while (batch.size < batch.slots.length && ring.poll(batch.slots[batch.size])) {
+                batch.size++;
+            }
+            if (batch.size == 0) {
+                Thread.yield();
+                continue;
+            }
+            signalProducers();
+            flush(batch);
+        }
+    }
+
+    /**
+     * Told about every batch applied, on the thread that applied it.
+     */
+    public interface FlushListener {
+        void onFlush(int size, long elapsedNanos);
+    }
+
+    /**
+     * The reusable list a consumer hands to {@code applyFn}.
+     */
+    private static final class Batch<K, V> extends AbstractList<Map.Entry<K, AsyncCallback<V>>> implements RandomAccess {
+        private final BatchRing.Slot<K, V>[] slots;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        private Batch(int capacity) {
+            this.slots = (BatchRing.Slot<K, V>[]) new BatchRing.Slot<?, ?>[capacity];
+            for (int i = 0; i < capacity; i++) {
+                slots[i] = new BatchRing.Slot<>();
+            }
+        }
+
+        @Override
+        public Map.Entry<K, AsyncCallback<V>> get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return slots[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            for (int i = 0; i < size; i++) {
+                slots[i].clear();
+            }
+            size = 0;
+        }
     }
 
     public static class Builder<K, V> {
         public ExecutorService executorService = Executors.newCachedThreadPool();
         public int corePoolSize = 1;
-        public BlockingQueue<Map.Entry<K, AsyncCallback<V>>> queue = new LinkedBlockingQueue<>();
+        // 0 to size the ring after maxQueuedRecords, or 65536 slots without it; put blocks while the ring is full
+        public int ringCapacity = 0;
         public int batchSize = 100;
+        // waits for batchSize payloads however long it takes, instead of maxLingerMs
         public boolean isMustFullBatch = false;
+        // how long the first payload of a batch waits for more, 0 to flush whatever is there
+        public long maxLingerMs = 0;
+        // 0 for a fixed batchSize, otherwise it adapts between minBatchSize and maxBatchSize (0 for 4 * batchSize)
+        public long targetFlushLatencyMs = 0;
+        public int minBatchSize = 1;
+        public int maxBatchSize = 0;
+        // 0 for no limit, payloads count until their batch is applied
+        public int maxQueuedRecords = 0;
+        public long maxQueuedBytes = 0;
+        public ToLongFunction<K> weigher = payload -> 0;
+        public double lowWaterMark = 0.5;
+        public FlushListener flushListener = (size, elapsedNanos) -> {
+        };
 
         public Builder<K, V> with(Consumer<Builder<K, V>> consumer) {
             consumer.accept(this);
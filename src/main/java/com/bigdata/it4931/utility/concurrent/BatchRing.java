@@ -0,0 +1,139 @@
+package com.bigdata.it4931.utility.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, multi-consumer ring of payload/callback pairs with preallocated slots.
+ * <p>
+ * Every slot carries a sequence number that tells whose turn it is: a producer may fill slot {@code i} of lap
+ * {@code n} when its sequence is {@code n * capacity + i}, a consumer may take it once the producer published
+ * {@code n * capacity + i + 1}. Producers and consumers only contend on their own cursor, and a slot is handed over by
+ * a single volatile write, so neither side takes a lock.
+ */
+final class BatchRing<K, V> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final Object[] payloads;
+    private final Object[] callbacks;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    BatchRing(int minCapacity) {
+        int capacity = 1;
+        while (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.payloads = new Object[capacity];
+        this.callbacks = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false when the ring is full
+     */
+    boolean offer(K payload, AsyncCallback<V> callback) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    payloads[index] = payload;
+                    callbacks[index] = callback;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Moves the oldest published pair into {@code slot}.
+     *
+     * @return false when nothing is published yet
+     */
+    @SuppressWarnings("unchecked")
+    boolean poll(Slot<K, V> slot) {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    slot.key = (K) payloads[index];
+                    slot.callback = (AsyncCallback<V>) callbacks[index];
+                    payloads[index] = null;
+                    callbacks[index] = null;
+                    sequences.set(index, position + capacity);
+                    return true;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * @return claimed slots, including ones whose producer has not published yet
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    boolean isFull() {
+        return tail.get() - head.get() >= capacity;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * A reusable batch entry, owned by one consumer.
+     */
+    static final class Slot<K, V> implements Map.Entry<K, AsyncCallback<V>> {
+        private K key;
+        private AsyncCallback<V> callback;
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public AsyncCallback<V> getValue() {
+            return callback;
+        }
+
+        @Override
+        public AsyncCallback<V> setValue(AsyncCallback<V> value) {
+            throw new UnsupportedOperationException();
+        }
+
+        void clear() {
+            key = null;
+            callback = null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.bigdata.it4931.utility.csv;
+
+import com.opencsv.CSVParser;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads CSV records from a byte stream that starts on a record boundary and keeps track of the byte offset of every
+ * record, which {@code CSVReader} cannot do because of its character buffering.
+ */
+@Slf4j
+public class CsvRecordReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream inputStream;
+    private final CSVParser parser = new CSVParser();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private byte[] record = new byte[4096];
+    private int bufferLength;
+    private int bufferPosition;
+    private long position;
+    private long recordStart;
+
+    public CsvRecordReader(InputStream inputStream, long startOffset) {
+        this.inputStream = inputStream;
+        this.position = startOffset;
+        this.recordStart = startOffset;
+    }
+
+    /**
+     * @return the next parsed record, or {@code null} at the end of the stream
+     */
+    public String[] readNext() throws IOException {
+        while (true) {
+            int length = nextRecord();
+            if (length < 0) {
+                return null;
+            }
+            try {
+                return parser.parseLine(decode(length));
+            } catch (IOException e) {
+                log.warn("Skipping malformed CSV record at byte {}: {}", recordStart, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the byte offset where the record last returned by {@link #readNext()} starts
+     */
+    public long recordStart() {
+        return recordStart;
+    }
+
+    /**
+     * @return the byte offset right after the record last returned by {@link #readNext()}, including its line break
+     */
+    public long position() {
+        return position;
+    }
+
+    private int nextRecord() throws IOException {
+        int state = CsvStateMachine.INITIAL;
+        int length = 0;
+        recordStart = position;
+        while (true) {
+            if (bufferPosition == bufferLength && !fill()) {
+                return length > 0 ? length : -1;
+            }
+            byte b = buffer[bufferPosition++];
+            position++;
+            state = CsvStateMachine.step(state, b);
+            if (CsvStateMachine.isBoundary(state)) {
+                // take the '\n' of a "\r\n" terminator now so that position() is where the next record starts
+                if (b == '\r' && (bufferPosition < bufferLength || fill()) && buffer[bufferPosition] == '\n') {
+                    bufferPosition++;
+                    position++;
+                }
+                return length;
+            }
+            if (length == record.length) {
+                record = Arrays.copyOf(record, length * 2);
+            }
+            record[length++] = b;
+        }
+    }
+
+    private String decode(int length) {
+        String line = new String(record, 0, length, StandardCharsets.UTF_8);
+        // CSVReader rejoins the physical lines of a quoted multi-line field with '\n'
+        if (line.indexOf('\r') >= 0) {
+            line = line.replace("\r\n", "\n").replace('\r', '\n');
+        }
+        return line;
+    }
+
+    private boolean fill() throws IOException {
+        bufferLength = inputStream.read(buffer, 0, buffer.length);
+        bufferPosition = 0;
+        if (bufferLength <= 0) {
+            bufferLength = 0;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
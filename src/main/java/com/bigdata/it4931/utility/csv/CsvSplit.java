@@ -0,0 +1,18 @@
+package com.bigdata.it4931.utility.csv;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.apache.hadoop.fs.Path;
+
+@Data
+@AllArgsConstructor
+public class CsvSplit {
+    private final Path path;
+    private final int index;
+    private final long start;
+    private final long end;
+
+    public long length() {
+        return end - start;
+    }
+}
@@ -0,0 +1,207 @@
+package com.bigdata.it4931.utility.csv;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Cuts a CSV file into block-aligned byte ranges whose edges sit exactly on record boundaries, even when a quoted
+ * field spans several lines.
+ * <p>
+ * The quote state at an arbitrary offset depends on everything before it, so the first pass computes, in parallel,
+ * how every range maps each possible start state to an end state. Chaining those maps gives the exact state at the
+ * start of every range, from which the first real record boundary is found with a short forward scan.
+ */
+@Slf4j
+public class CsvSplitter {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long MIN_SPLIT_SIZE = 8L * 1024 * 1024;
+    private static final long DEFAULT_BLOCK_SIZE = 128L * 1024 * 1024;
+
+    private final FileSystem fileSystem;
+    private final ExecutorService executorService;
+
+    public CsvSplitter(FileSystem fileSystem, ExecutorService executorService) {
+        this.fileSystem = fileSystem;
+        this.executorService = executorService;
+    }
+
+    public List<CsvSplit> split(Path path, int parallelism) throws IOException {
+        FileStatus status = fileSystem.getFileStatus(path);
+        return split(path, 0, status.getLen(), status.getBlockSize(), parallelism);
+    }
+
+    /**
+     * Splits {@code [from, to)} of the file. {@code from} must be a record boundary.
+     */
+    public List<CsvSplit> split(Path path, long from, long to, long blockSize, int parallelism) throws IOException {
+        long splitSize = splitSize(blockSize, to - from, parallelism);
+        int count = (int) Math.max(1, (to - from + splitSize - 1) / splitSize);
+        List<CsvSplit> splits = new ArrayList<>();
+        if (count == 1) {
+            splits.add(new CsvSplit(path, 0, from, to));
+            return splits;
+        }
+
+        List<CompletableFuture<int[]>> transitionFutures = new ArrayList<>();
+        for (int i = 0; i < count - 1; i++) {
+            long start = from + i * splitSize;
+            long end = Math.min(start + splitSize, to);
+            transitionFutures.add(supply(() -> transitions(path, start, end)));
+        }
+        int[] startStates = new int[count];
+        startStates[0] = CsvStateMachine.INITIAL;
+        for (int i = 1; i < count; i++) {
+            startStates[i] = join(transitionFutures.get(i - 1))[startStates[i - 1]];
+        }
+
+        List<CompletableFuture<Long>> boundaryFutures = new ArrayList<>();
+        boundaryFutures.add(CompletableFuture.completedFuture(from));
+        for (int i = 1; i < count; i++) {
+            long start = from + i * splitSize;
+            int state = startStates[i];
+            boundaryFutures.add(supply(() -> findBoundary(path, start, to, state)));
+        }
+
+        long previous = from;
+        for (int i = 1; i <= count; i++) {
+            long boundary = i < count ? join(boundaryFutures.get(i)) : to;
+            if (boundary > previous) {
+                splits.add(new CsvSplit(path, splits.size(), previous, boundary));
+                previous = boundary;
+            }
+        }
+        log.info("Split {} [{}, {}) into {} range(s) of ~{} bytes", path, from, to, splits.size(), splitSize);
+        return splits;
+    }
+
+    /**
+     * @return the offset right after the last complete record in {@code [from, to)}, {@code from} when there is none.
+     * {@code from} must be a record boundary. A record ending in a bare {@code '\r'} at {@code to} counts as incomplete
+     * since a {@code '\n'} may still follow.
+     */
+    public long lastRecordEnd(Path path, long from, long to) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int state = CsvStateMachine.INITIAL;
+        long position = from;
+        long lastEnd = from;
+        boolean afterCarriageReturn = false;
+        try (FSDataInputStream inputStream = fileSystem.open(path)) {
+            inputStream.seek(from);
+            int read;
+            while (position < to && (read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, to - position))) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    position++;
+                    if (afterCarriageReturn) {
+                        afterCarriageReturn = false;
+                        lastEnd = b == '\n' ? position : position - 1;
+                        if (b == '\n') {
+                            continue;
+                        }
+                    }
+                    state = CsvStateMachine.step(state, b);
+                    if (CsvStateMachine.isBoundary(state)) {
+                        if (b == '\r') {
+                            afterCarriageReturn = true;
+                        } else {
+                            lastEnd = position;
+                        }
+                    }
+                }
+            }
+        }
+        return lastEnd;
+    }
+
+    private int[] transitions(Path path, long start, long end) throws IOException {
+        int[] states = new int[CsvStateMachine.STATES];
+        for (int s = 0; s < states.length; s++) {
+            states[s] = s;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (FSDataInputStream inputStream = fileSystem.open(path)) {
+            inputStream.seek(start);
+            long remaining = end - start;
+            while (remaining > 0) {
+                int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                CsvStateMachine.advanceAll(states, buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return states;
+    }
+
+    private long findBoundary(Path path, long start, long limit, int state) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long position = start;
+        boolean afterCarriageReturn = false;
+        try (FSDataInputStream inputStream = fileSystem.open(path)) {
+            inputStream.seek(start);
+            int read;
+            while (position < limit && (read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, limit - position))) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (afterCarriageReturn) {
+                        return b == '\n' ? position + 1 : position;
+                    }
+                    position++;
+                    state = CsvStateMachine.step(state, b);
+                    if (CsvStateMachine.isBoundary(state)) {
+                        if (b != '\r') {
+                            return position;
+                        }
+                        afterCarriageReturn = true;
+                    }
+                }
+            }
+        }
+        return Math.min(position, limit);
+    }
+
+    private static long splitSize(long blockSize, long length, int parallelism) {
+        long size = blockSize > 0 ? blockSize : DEFAULT_BLOCK_SIZE;
+        while (size > MIN_SPLIT_SIZE && length / size < parallelism) {
+            size /= 2;
+        }
+        return size;
+    }
+
+    private <T> CompletableFuture<T> supply(IOSupplier<T> supplier) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return supplier.get();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executorService);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    private interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+}
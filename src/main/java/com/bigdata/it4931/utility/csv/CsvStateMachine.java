@@ -0,0 +1,115 @@
+package com.bigdata.it4931.utility.csv;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Byte-level model of how opencsv's default {@code CSVReader}/{@code CSVParser} (quote {@code "}, escape {@code \},
+ * separator {@code ,}) consumes quotes, so record boundaries can be found without parsing field values.
+ * <p>
+ * A state packs three things: inside quotes, inside a field and a pending one-byte lookahead after an escape or a
+ * quote. {@link #step(int, byte)} returns the next state with {@link #BOUNDARY} set when the byte ended a record.
+ */
+@UtilityClass
+public class CsvStateMachine {
+    public static final int INITIAL = 0;
+    public static final int STATES = 12;
+    public static final int BOUNDARY = 1 << 4;
+    public static final int STATE_MASK = BOUNDARY - 1;
+
+    private static final int IN_QUOTES = 1;
+    private static final int IN_FIELD = 1 << 1;
+    private static final int PENDING_ESCAPE = 1 << 2;
+    private static final int PENDING_QUOTE = 2 << 2;
+
+    private static final int OTHER = 0;
+    private static final int QUOTE = 1;
+    private static final int ESCAPE = 2;
+    private static final int SEPARATOR = 3;
+    private static final int NEW_LINE = 4;
+
+    private static final byte[] BYTE_CLASS = new byte[256];
+    private static final int[][] TRANSITIONS = new int[STATES][5];
+
+    static {
+        BYTE_CLASS['"'] = QUOTE;
+        BYTE_CLASS['\\'] = ESCAPE;
+        BYTE_CLASS[','] = SEPARATOR;
+        BYTE_CLASS['\n'] = NEW_LINE;
+        BYTE_CLASS['\r'] = NEW_LINE;
+        for (int state = 0; state < STATES; state++) {
+            for (int byteClass = 0; byteClass < 5; byteClass++) {
+                TRANSITIONS[state][byteClass] = transition(state, byteClass);
+            }
+        }
+    }
+
+    public static int step(int state, byte b) {
+        return TRANSITIONS[state & STATE_MASK][BYTE_CLASS[b & 0xFF]];
+    }
+
+    public static boolean isNewLine(byte b) {
+        return BYTE_CLASS[b & 0xFF] == NEW_LINE;
+    }
+
+    public static boolean isBoundary(int state) {
+        return (state & BOUNDARY) != 0;
+    }
+
+    /**
+     * Runs every possible start state over {@code length} bytes of {@code buffer} at once, updating {@code states}
+     * in place so that {@code states[s]} ends up as the state reached from start state {@code s}.
+     */
+    public static void advanceAll(int[] states, byte[] buffer, int offset, int length) {
+        int previousClass = -1;
+        for (int i = offset; i < offset + length; i++) {
+            int byteClass = BYTE_CLASS[buffer[i] & 0xFF];
+            // a run of plain bytes is idempotent after the first one
+            if (byteClass == OTHER && previousClass == OTHER) {
+                continue;
+            }
+            previousClass = byteClass;
+            for (int s = 0; s < states.length; s++) {
+                states[s] = TRANSITIONS[states[s] & STATE_MASK][byteClass] & STATE_MASK;
+            }
+        }
+    }
+
+    private static int transition(int state, int byteClass) {
+        boolean inQuotes = (state & IN_QUOTES) != 0;
+        boolean inField = (state & IN_FIELD) != 0;
+        int pending = state & (PENDING_ESCAPE | PENDING_QUOTE);
+
+        if (pending == PENDING_ESCAPE) {
+            if (byteClass == QUOTE || byteClass == ESCAPE) {
+                return pack(inQuotes, inField, 0);
+            }
+            // not escapable: the escape character is dropped and the byte is handled normally
+            return transition(pack(inQuotes, inField, 0), byteClass);
+        }
+        if (pending == PENDING_QUOTE) {
+            if (byteClass == QUOTE) {
+                // "" is an escaped quote
+                return pack(inQuotes, !inField, 0);
+            }
+            return transition(pack(!inQuotes, !inField, 0), byteClass);
+        }
+
+        switch (byteClass) {
+            case ESCAPE:
+                return (inQuotes || inField) ? pack(inQuotes, inField, PENDING_ESCAPE) : state;
+            case QUOTE:
+                return (inQuotes || inField) ? pack(inQuotes, inField, PENDING_QUOTE) : pack(!inQuotes, !inField, 0);
+            case SEPARATOR:
+                return pack(inQuotes, inQuotes, 0);
+            case NEW_LINE:
+                // a line break inside quotes continues the record on the next line with a fresh field state
+                return inQuotes ? pack(true, false, 0) : (INITIAL | BOUNDARY);
+            default:
+                return pack(inQuotes, true, 0);
+        }
+    }
+
+    private static int pack(boolean inQuotes, boolean inField, int pending) {
+        return (inQuotes ? IN_QUOTES : 0) | (inField ? IN_FIELD : 0) | pending;
+    }
+}
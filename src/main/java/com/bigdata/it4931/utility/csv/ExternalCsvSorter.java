@@ -0,0 +1,329 @@
+package com.bigdata.it4931.utility.csv;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.opencsv.CSVWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sorts a CSV file that does not fit on the heap: the input is cut into memory-bounded runs that are sorted on
+ * several threads and spilled to temporary files, which are then k-way merged into the output. The sort is stable
+ * and keys are parsed as dates, rows whose key cannot be parsed go last.
+ */
+@Slf4j
+public class ExternalCsvSorter {
+    private static final int ROW_OVERHEAD_BYTES = 48;
+    private static final int FIELD_OVERHEAD_BYTES = 40;
+
+    private final Configuration configuration;
+    private final int keyColumn;
+    private final DateTimeFormatter keyFormatter;
+    private final long runBytes;
+    private final int threads;
+    private final int mergeFanIn;
+    private final Path spillDirectory;
+    private final AtomicLong unparseableKeys = new AtomicLong();
+
+    private ExternalCsvSorter(Builder builder) {
+        this.configuration = builder.configuration;
+        this.keyColumn = builder.keyColumn;
+        this.keyFormatter = DateTimeFormatter.ofPattern(builder.keyPattern);
+        this.runBytes = builder.runBytes;
+        this.threads = Math.max(builder.threads, 1);
+        this.mergeFanIn = Math.max(builder.mergeFanIn, 2);
+        this.spillDirectory = new Path(builder.spillDirectory, "sort-" + UUID.randomUUID());
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public void sort(Path input, Path output) throws IOException {
+        long startTime = System.currentTimeMillis();
+        FileSystem spillFileSystem = spillDirectory.getFileSystem(configuration);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("csv-sort-%d").build());
+        try {
+            FileSystem inputFileSystem = input.getFileSystem(configuration);
+            String[] header;
+            List<Path> runs;
+            try (CsvRecordReader csvReader = new CsvRecordReader(inputFileSystem.open(input), 0)) {
+                header = csvReader.readNext();
+                if (header == null) {
+                    log.info("CSV file is empty or header is missing");
+                    return;
+                }
+                runs = createRuns(csvReader, spillFileSystem, executorService);
+            }
+            log.info("Created {} sorted run(s) of {} in {} ms", runs.size(), input, System.currentTimeMillis() - startTime);
+
+            while (runs.size() > mergeFanIn) {
+                runs = mergePass(runs, spillFileSystem, executorService);
+            }
+            try (CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(output.getFileSystem(configuration).create(output, true), StandardCharsets.UTF_8))) {
+                csvWriter.writeNext(header);
+                merge(runs, spillFileSystem, (key, row) -> csvWriter.writeNext(row));
+            }
+            if (unparseableKeys.get() > 0) {
+                log.warn("{} row(s) had a sort key that is not a date matching the pattern, they were written last", unparseableKeys.get());
+            }
+            log.info("Sorted {} into {} in {} ms", input, output, System.currentTimeMillis() - startTime);
+        } finally {
+            executorService.shutdown();
+            spillFileSystem.delete(spillDirectory, true);
+        }
+    }
+
+    private List<Path> createRuns(CsvRecordReader csvReader,
+                                  FileSystem spillFileSystem,
+                                  ExecutorService executorService) throws IOException {
+        // every run being sorted holds a permit, so at most threads + 1 runs are on the heap at once
+        Semaphore permits = new Semaphore(threads);
+        List<CompletableFuture<Path>> runs = new ArrayList<>();
+        List<SortEntry> buffer = new ArrayList<>();
+        long bufferBytes = 0;
+        String[] row;
+        while ((row = csvReader.readNext()) != null) {
+            buffer.add(new SortEntry(sortKey(row), row));
+            bufferBytes += estimateSize(row);
+            if (bufferBytes >= runBytes) {
+                runs.add(submitRun(buffer, runs.size(), permits, spillFileSystem, executorService));
+                buffer = new ArrayList<>();
+                bufferBytes = 0;
+            }
+        }
+        if (!buffer.isEmpty()) {
+            runs.add(submitRun(buffer, runs.size(), permits, spillFileSystem, executorService));
+        }
+        return joinAll(runs);
+    }
+
+    private CompletableFuture<Path> submitRun(List<SortEntry> entries,
+                                              int index,
+                                              Semaphore permits,
+                                              FileSystem spillFileSystem,
+                                              ExecutorService executorService) {
+        permits.acquireUninterruptibly();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                entries.sort(Comparator.comparingLong(entry -> entry.key));
+                Path run = new Path(spillDirectory, "run-0-" + index);
+                try (RunWriter runWriter = new RunWriter(spillFileSystem, run)) {
+                    for (SortEntry entry : entries) {
+                        runWriter.write(entry.key, entry.row);
+                    }
+                }
+                return run;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                permits.release();
+            }
+        }, executorService);
+    }
+
+    private List<Path> mergePass(List<Path> runs, FileSystem spillFileSystem, ExecutorService executorService) throws IOException {
+        List<CompletableFuture<Path>> merged = new ArrayList<>();
+        for (int from = 0; from < runs.size(); from += mergeFanIn) {
+            List<Path> group = runs.subList(from, Math.min(from + mergeFanIn, runs.size()));
+            Path target = new Path(spillDirectory, "run-" + UUID.randomUUID());
+            merged.add(CompletableFuture.supplyAsync(() -> {
+                try (RunWriter runWriter = new RunWriter(spillFileSystem, target)) {
+                    merge(group, spillFileSystem, runWriter::write);
+                    for (Path run : group) {
+                        spillFileSystem.delete(run, false);
+                    }
+                    return target;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executorService));
+        }
+        log.info("Merged {} run(s) into {}", runs.size(), merged.size());
+        return joinAll(merged);
+    }
+
+    private void merge(List<Path> runs, FileSystem spillFileSystem, RowSink sink) throws IOException {
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(Math.max(runs.size(), 1),
+                Comparator.<RunReader>comparingLong(reader -> reader.key).thenComparingInt(reader -> reader.index));
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = new RunReader(spillFileSystem, runs.get(i), i);
+                readers.add(reader);
+                if (reader.next()) {
+                    heap.add(reader);
+                }
+            }
+            while (!heap.isEmpty()) {
+                RunReader reader = heap.poll();
+                sink.accept(reader.key, reader.row);
+                if (reader.next()) {
+                    heap.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private long sortKey(String[] row) {
+        if (keyColumn >= row.length) {
+            unparseableKeys.incrementAndGet();
+            return Long.MAX_VALUE;
+        }
+        try {
+            TemporalAccessor parsed = keyFormatter.parseBest(row[keyColumn].trim(), LocalDateTime::from, LocalDate::from);
+            if (parsed instanceof LocalDateTime) {
+                return ((LocalDateTime) parsed).toInstant(ZoneOffset.UTC).toEpochMilli();
+            }
+            return ((LocalDate) parsed).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            unparseableKeys.incrementAndGet();
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static long estimateSize(String[] row) {
+        long size = ROW_OVERHEAD_BYTES;
+        for (String field : row) {
+            size += FIELD_OVERHEAD_BYTES + 2L * field.length();
+        }
+        return size;
+    }
+
+    private static <T> List<T> joinAll(List<CompletableFuture<T>> futures) throws IOException {
+        List<T> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private interface RowSink {
+        void accept(long key, String[] row) throws IOException;
+    }
+
+    private static class SortEntry {
+        private final long key;
+        private final String[] row;
+
+        private SortEntry(long key, String[] row) {
+            this.key = key;
+            this.row = row;
+        }
+    }
+
+    private static class RunWriter implements Closeable {
+        private final DataOutputStream outputStream;
+
+        private RunWriter(FileSystem fileSystem, Path path) throws IOException {
+            this.outputStream = new DataOutputStream(new BufferedOutputStream(fileSystem.create(path, true), 256 * 1024));
+        }
+
+        private void write(long key, String[] row) throws IOException {
+            outputStream.writeLong(key);
+            outputStream.writeInt(row.length);
+            for (String field : row) {
+                byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                outputStream.writeInt(bytes.length);
+                outputStream.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+        }
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream inputStream;
+        private final int index;
+        private long key;
+        private String[] row;
+
+        private RunReader(FileSystem fileSystem, Path path, int index) throws IOException {
+            this.inputStream = new DataInputStream(new BufferedInputStream(fileSystem.open(path), 256 * 1024));
+            this.index = index;
+        }
+
+        private boolean next() throws IOException {
+            try {
+                key = inputStream.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            row = new String[inputStream.readInt()];
+            for (int i = 0; i < row.length; i++) {
+                byte[] bytes = new byte[inputStream.readInt()];
+                inputStream.readFully(bytes);
+                row[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+
+    public static class Builder {
+        public Configuration configuration = new Configuration();
+        public int keyColumn = 10;
+        public String keyPattern = "yyyy-MM-dd";
+        public long runBytes = 64L * 1024 * 1024;
+        public int threads = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+        public int mergeFanIn = 64;
+        public String spillDirectory = "file://" + System.getProperty("java.io.tmpdir");
+
+        public Builder with(Consumer<Builder> consumer) {
+            consumer.accept(this);
+            return this;
+        }
+
+        public ExternalCsvSorter build() {
+            return new ExternalCsvSorter(this);
+        }
+    }
+}
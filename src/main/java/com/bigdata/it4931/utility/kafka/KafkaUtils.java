@@ -2,9 +2,11 @@ package com.bigdata.it4931.utility.kafka;
 
 import lombok.experimental.UtilityClass;
 import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.serialization.Serializer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -25,7 +27,17 @@ public class KafkaUtils {
         return consumer;
     }
 
+    public static <K, V> Consumer<K, V> initConsumer(Properties props, Collection<String> topics, ConsumerRebalanceListener listener) {
+        Consumer<K, V> consumer = new KafkaConsumer<>(props);
+        consumer.subscribe(topics, listener);
+        return consumer;
+    }
+
     public static <K, V> Producer<K, V> initProducer(Properties props) {
         return new KafkaProducer<>(props);
     }
+
+    public static <K, V> Producer<K, V> initProducer(Properties props, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        return new KafkaProducer<>(props, keySerializer, valueSerializer);
+    }
 }
@@ -0,0 +1,29 @@
+package com.bigdata.it4931.perf;
+
+import com.bigdata.it4931.config.hdfs.HdfsConfiguration;
+import com.bigdata.it4931.config.kafka.KafkaConfiguration;
+import com.bigdata.it4931.layer.application.service.batch.BatchConsumer;
+import com.bigdata.it4931.layer.application.service.batch.HdfsParquetService;
+import com.bigdata.it4931.layer.application.service.serving.impl.CsvProcessingService;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * The part of the application the harness drives: CSV ingest, the batch-layer consumer and the Parquet writer, without
+ * the speed layer, the web server or any scheduling. {@link PipelinePerfHarness} registers the storage adapter and the
+ * meter registry.
+ */
+@Configuration
+@EnableConfigurationProperties
+@Import({
+        PropertyPlaceholderAutoConfiguration.class,
+        KafkaConfiguration.class,
+        HdfsConfiguration.class,
+        CsvProcessingService.class,
+        BatchConsumer.class,
+        HdfsParquetService.class
+})
+public class PerfPipelineConfiguration {
+}
@@ -0,0 +1,73 @@
+package com.bigdata.it4931.perf;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of one {@link PipelinePerfHarness} run, written as JSON so that runs can be compared across changes.
+ * Throughputs are in records per second, durations in milliseconds and sizes in bytes.
+ */
+@Data
+public class PerfReport {
+    private String startedAt;
+    private List<String> arguments = new ArrayList<>();
+    private String javaVersion;
+    private int availableProcessors;
+
+    private String storage;
+    private int partitions;
+    private String wireFormat;
+    private int schemaVersion;
+    private boolean checkpointed;
+
+    private long records;
+    private long csvBytes;
+    private long recordsWritten;
+    private boolean complete;
+
+    /**
+     * Until the CSV file was read and every row acknowledged by Kafka.
+     */
+    private long ingestMillis;
+    /**
+     * Until the last record was written to a Parquet file, from the start of the ingest.
+     */
+    private long writeMillis;
+    /**
+     * Closing and publishing the files still open after the last record was written.
+     */
+    private long publishMillis;
+    private double ingestThroughput;
+    private double throughput;
+    /**
+     * Median of the per-second rates, without the first and the last second.
+     */
+    private double sustainedThroughput;
+    private List<Long> throughputTimeline = new ArrayList<>();
+
+    /**
+     * From the Kafka timestamp of a record until it is written to a Parquet file.
+     */
+    private Map<String, Double> latencyMillis = new LinkedHashMap<>();
+
+    private long filesPublished;
+    private long bytesPublished;
+    private long writerBatches;
+    private double meanWriterBatchSize;
+
+    /**
+     * Heap in use after the in-process Kafka and storage started and a GC, what the stand-ins themselves keep.
+     */
+    private long baselineHeapBytes;
+    /**
+     * Most heap in use during the run, sampled every few milliseconds, the stand-ins included.
+     */
+    private long peakHeapBytes;
+    private long maxHeapBytes;
+    private long gcCount;
+    private long gcMillis;
+}
@@ -0,0 +1,79 @@
+package com.bigdata.it4931.perf;
+
+import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Stand-in for the HDFS of the docker-compose stack: a {@link MiniDFSCluster} in this JVM, or a directory of the local
+ * file system.
+ */
+@Slf4j
+public class PerfStorage implements IHdfsAdapter, Closeable {
+    private final Configuration configuration;
+    private final String nameNode;
+    private final FileSystem fileSystem;
+    private final MiniDFSCluster cluster;
+    private final File directory;
+
+    private PerfStorage(Configuration configuration, String nameNode, MiniDFSCluster cluster, File directory) throws IOException {
+        this.configuration = configuration;
+        this.nameNode = nameNode;
+        this.fileSystem = FileSystem.get(URI.create(nameNode), configuration);
+        this.cluster = cluster;
+        this.directory = directory;
+    }
+
+    public static PerfStorage local(File directory) throws IOException {
+        Configuration configuration = new Configuration();
+        configuration.set(FileSystem.FS_DEFAULT_NAME_KEY, FileSystem.DEFAULT_FS);
+        return new PerfStorage(configuration, directory.toURI().toString().replaceAll("/$", ""), null, directory);
+    }
+
+    public static PerfStorage miniDfs(File directory, int dataNodes) throws IOException {
+        Configuration configuration = new Configuration();
+        MiniDFSCluster cluster = new MiniDFSCluster.Builder(configuration, directory)
+                .numDataNodes(dataNodes)
+                .build();
+        cluster.waitActive();
+        String nameNode = cluster.getURI().toString();
+        configuration.set(FileSystem.FS_DEFAULT_NAME_KEY, nameNode);
+        log.info("Started MiniDFSCluster at {} with {} datanode(s)", nameNode, dataNodes);
+        return new PerfStorage(configuration, nameNode, cluster, directory);
+    }
+
+    public boolean isMiniDfs() {
+        return cluster != null;
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    @Override
+    public String getNameNode() {
+        return nameNode;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (cluster != null) {
+            cluster.shutdown(true);
+        }
+        FileUtil.fullyDelete(directory);
+    }
+}
@@ -0,0 +1,354 @@
+package com.bigdata.it4931.perf;
+
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataCsvMapper;
+import com.bigdata.it4931.layer.application.service.batch.BatchConsumer;
+import com.bigdata.it4931.layer.application.service.batch.HdfsParquetService;
+import com.bigdata.it4931.layer.application.service.serving.generator.JobDataGenerator;
+import com.bigdata.it4931.layer.application.service.serving.impl.CsvProcessingService;
+import com.bigdata.it4931.utility.concurrent.Threads;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.opencsv.CSVWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.Path;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the batch layer end to end without the docker-compose stack: an in-process Kafka broker and a MiniDFSCluster,
+ * or a local directory, stand in for the cluster. A generated CSV file goes through {@link CsvProcessingService},
+ * Kafka and {@link BatchConsumer} into {@link HdfsParquetService}, and the throughput, the end-to-end latency and the
+ * heap of the run are written as a {@link PerfReport}.
+ * <p>
+ * Options, as {@code --name=value}:
+ * <ul>
+ *     <li>{@code perf.records}: rows of the generated CSV file, 200000 by default</li>
+ *     <li>{@code perf.seed}: seed of the {@link JobDataGenerator}, 42 by default</li>
+ *     <li>{@code perf.partitions}: partitions of the topic, 4 by default</li>
+ *     <li>{@code perf.storage}: {@code minidfs} or {@code local}, minidfs by default</li>
+ *     <li>{@code perf.datanodes}: datanodes of the MiniDFSCluster, 2 by default like the docker-compose stack</li>
+ *     <li>{@code perf.idle-timeout-s}: how long to wait without a record being written before giving up, 60 by
+ *     default</li>
+ *     <li>{@code perf.report}: file of the report, {@code target/perf/pipeline-<time>.json} by default</li>
+ * </ul>
+ * Every other option overrides a property of {@code config/application.properties}, e.g.
+ * {@code --hadoop.hdfs.schema.version=1} or {@code --kafka.topic.format.bigdata=avro}.
+ */
+@Slf4j
+public class PipelinePerfHarness {
+    // where CsvProcessingService#process reads the dataset from
+    private static final String DATASET_PATH = "/bigdata/job_descriptions.csv";
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.95, 0.99, 0.999};
+    private static final long POLL_MS = 100;
+    private static final long HEAP_SAMPLE_MS = 20;
+
+    public static void main(String[] args) throws Exception {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        long records = Long.parseLong(option(options, "perf.records", "200000"));
+        long seed = Long.parseLong(option(options, "perf.seed", "42"));
+        int partitions = Integer.parseInt(option(options, "perf.partitions", "4"));
+        String storageType = option(options, "perf.storage", "minidfs");
+        int dataNodes = Integer.parseInt(option(options, "perf.datanodes", "2"));
+        long idleTimeoutMs = TimeUnit.SECONDS.toMillis(Long.parseLong(option(options, "perf.idle-timeout-s", "60")));
+        File reportFile = new File(option(options, "perf.report",
+                "target/perf/pipeline-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json"));
+
+        PerfReport report = new PerfReport();
+        report.setStartedAt(Instant.now().toString());
+        report.setArguments(Arrays.asList(args));
+        report.setJavaVersion(System.getProperty("java.version"));
+        report.setAvailableProcessors(Runtime.getRuntime().availableProcessors());
+        report.setRecords(records);
+        report.setPartitions(partitions);
+
+        File workDirectory = Files.createTempDirectory("pipeline-perf").toFile();
+        try (EmbeddedKafka kafka = new EmbeddedKafka();
+             PerfStorage storage = "local".equalsIgnoreCase(storageType)
+                     ? PerfStorage.local(workDirectory)
+                     : PerfStorage.miniDfs(workDirectory, dataNodes)) {
+            report.setStorage(storage.isMiniDfs() ? "minidfs (" + dataNodes + " datanodes)" : "local");
+            report.setCsvBytes(writeDataset(storage, records, seed));
+
+            MeterRegistry meterRegistry = meterRegistry();
+            // the Kafka reader and writer register their meters globally
+            Metrics.addRegistry(meterRegistry);
+            try (ConfigurableApplicationContext context = start(args, kafka, storage, meterRegistry)) {
+                Environment environment = context.getEnvironment();
+                String topic = environment.getRequiredProperty("kafka.producer.topic");
+                if (!topic.equals(environment.getRequiredProperty("kafka.consumer.topic"))) {
+                    throw new IllegalArgumentException("kafka.producer.topic and kafka.consumer.topic differ");
+                }
+                kafka.createTopic(topic, partitions);
+                report.setWireFormat(environment.getProperty("kafka.topic.format." + topic, "json"));
+                report.setSchemaVersion(environment.getProperty("hadoop.hdfs.schema.version", Integer.class, 1));
+                report.setCheckpointed(environment.getProperty("csv.ingest.checkpoint.enabled", Boolean.class, true));
+
+                run(context, meterRegistry, records, idleTimeoutMs, report);
+            } finally {
+                Metrics.removeRegistry(meterRegistry);
+            }
+        }
+
+        reportFile.getAbsoluteFile().getParentFile().mkdirs();
+        Constants.OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+        log.info("Wrote {}/{} record(s) at {} records/s, p99 latency {} ms, report in {}", report.getRecordsWritten(),
+                records, Math.round(report.getSustainedThroughput()), report.getLatencyMillis().get("p99"), reportFile);
+        // the ingest pool of CsvProcessingService is never shut down
+        System.exit(report.isComplete() ? 0 : 1);
+    }
+
+    private static void run(ConfigurableApplicationContext context, MeterRegistry meterRegistry, long records,
+                            long idleTimeoutMs, PerfReport report) {
+        CsvProcessingService csvProcessingService = context.getBean(CsvProcessingService.class);
+        BatchConsumer batchConsumer = context.getBean(BatchConsumer.class);
+        HdfsParquetService hdfsParquetService = context.getBean(HdfsParquetService.class);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        report.setBaselineHeapBytes(memory.getHeapMemoryUsage().getUsed());
+        report.setMaxHeapBytes(memory.getHeapMemoryUsage().getMax());
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        AtomicLong peakHeap = new AtomicLong();
+        ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("perf-heap-sampler").setDaemon(true).build());
+        heapSampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, HEAP_SAMPLE_MS, TimeUnit.MILLISECONDS);
+
+        long startTime = System.nanoTime();
+        batchConsumer.start();
+        // the ingest blocks, so the progress is followed from another thread
+        Thread ingest = new Thread(csvProcessingService::process, "perf-ingest");
+        ingest.start();
+
+        List<Long> timeline = new ArrayList<>();
+        long written = 0;
+        long lastProgressAt = System.nanoTime();
+        long writtenAt = startTime;
+        long nextSecond = startTime + TimeUnit.SECONDS.toNanos(1);
+        long writtenAtSecond = 0;
+        long ingestMillis = -1;
+        while (written < records) {
+            Threads.sleep(POLL_MS);
+            long now = System.nanoTime();
+            long current = written(meterRegistry);
+            if (current > written) {
+                written = current;
+                writtenAt = now;
+                lastProgressAt = now;
+            }
+            while (now >= nextSecond) {
+                timeline.add(written - writtenAtSecond);
+                writtenAtSecond = written;
+                nextSecond += TimeUnit.SECONDS.toNanos(1);
+            }
+            if (ingestMillis < 0 && !ingest.isAlive()) {
+                ingestMillis = TimeUnit.NANOSECONDS.toMillis(now - startTime);
+            }
+            if (!ingest.isAlive() && TimeUnit.NANOSECONDS.toMillis(now - lastProgressAt) > idleTimeoutMs) {
+                log.warn("No record written for {} ms, giving up at {}/{}", idleTimeoutMs, written, records);
+                break;
+            }
+        }
+        long publishStart = System.nanoTime();
+        hdfsParquetService.flush();
+        report.setPublishMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - publishStart));
+        batchConsumer.stop();
+        try {
+            ingest.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (ingestMillis < 0) {
+            ingestMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        }
+        heapSampler.shutdown();
+
+        long writeMillis = Math.max(TimeUnit.NANOSECONDS.toMillis(writtenAt - startTime), 1);
+        report.setRecordsWritten(written);
+        report.setComplete(written >= records);
+        report.setIngestMillis(ingestMillis);
+        report.setWriteMillis(writeMillis);
+        report.setIngestThroughput(records * 1000.0 / Math.max(ingestMillis, 1));
+        report.setThroughput(written * 1000.0 / writeMillis);
+        report.setThroughputTimeline(timeline);
+        report.setSustainedThroughput(sustained(timeline));
+        report.setLatencyMillis(latency(meterRegistry.get("parquet.record.latency").timer()));
+
+        DistributionSummary fileSizes = meterRegistry.get("parquet.file.size").summary();
+        report.setFilesPublished(fileSizes.count());
+        report.setBytesPublished(Math.round(fileSizes.totalAmount()));
+        DistributionSummary batchSizes = meterRegistry.get("parquet.writer.batch.size").summary();
+        report.setWriterBatches(batchSizes.count());
+        report.setMeanWriterBatchSize(batchSizes.mean());
+
+        report.setPeakHeapBytes(peakHeap.get());
+        report.setGcCount(gcCount() - gcCount);
+        report.setGcMillis(gcMillis() - gcMillis);
+    }
+
+    private static ConfigurableApplicationContext start(String[] args, EmbeddedKafka kafka, PerfStorage storage,
+                                                        MeterRegistry meterRegistry) {
+        Map<String, Object> standIns = new HashMap<>();
+        standIns.put("kafka.producer.bootstrap-servers", kafka.getBootstrapServers());
+        standIns.put("kafka.consumer.bootstrap-servers", kafka.getBootstrapServers());
+        // read by HdfsConfiguration, the stand-in storage brings its own configuration
+        standIns.put("hadoop.hdfs.hdfs-site-conf", "config/hdfs-site.xml");
+        standIns.put("hadoop.hdfs.core-site-conf", "config/core-site.xml");
+        return new SpringApplicationBuilder(PerfPipelineConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .initializers(context -> {
+                    context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("perfStandIns", standIns));
+                    context.getBeanFactory().registerSingleton("hdfsAdapter", storage);
+                    context.getBeanFactory().registerSingleton("meterRegistry", meterRegistry);
+                })
+                .run(args);
+    }
+
+    /**
+     * @return a registry keeping the latency percentiles of the whole run instead of a sliding window
+     */
+    private static MeterRegistry meterRegistry() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        meterRegistry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!"parquet.record.latency".equals(id.getName())) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentiles(PERCENTILES)
+                        .expiry(Duration.ofDays(1))
+                        .bufferLength(1)
+                        .build()
+                        .merge(config);
+            }
+        });
+        return meterRegistry;
+    }
+
+    /**
+     * @return size of the written file
+     */
+    private static long writeDataset(PerfStorage storage, long records, long seed) throws Exception {
+        long startTime = System.currentTimeMillis();
+        Path path = new Path(storage.getNameNode() + DATASET_PATH);
+        JobDataGenerator generator = JobDataGenerator.newBuilder().with(builder -> builder.seed = seed).build();
+        try (CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(
+                new BufferedOutputStream(storage.getFileSystem().create(path, true), 1024 * 1024), StandardCharsets.UTF_8))) {
+            csvWriter.writeNext(JobDataCsvMapper.HEADER);
+            for (long i = 0; i < records; i++) {
+                csvWriter.writeNext(JobDataCsvMapper.toRecord(generator.next()));
+            }
+        }
+        long length = storage.getFileSystem().getFileStatus(path).getLen();
+        log.info("Generated {} row(s), {} MB in {} ms", records, length >> 20, System.currentTimeMillis() - startTime);
+        return length;
+    }
+
+    private static long written(MeterRegistry meterRegistry) {
+        long written = 0;
+        for (Counter counter : meterRegistry.find("parquet.records.written").counters()) {
+            written += (long) counter.count();
+        }
+        return written;
+    }
+
+    private static Map<String, Double> latency(Timer timer) {
+        Map<String, Double> latency = new LinkedHashMap<>();
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            latency.put(percentileName(value.percentile()), value.value(TimeUnit.MILLISECONDS));
+        }
+        latency.put("mean", timer.mean(TimeUnit.MILLISECONDS));
+        latency.put("max", timer.max(TimeUnit.MILLISECONDS));
+        return latency;
+    }
+
+    private static String percentileName(double percentile) {
+        // 0.5 -> p50, 0.999 -> p99.9
+        return "p" + BigDecimal.valueOf(percentile).movePointRight(2).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * @return the median of the seconds between the first and the last one writing, the consumer joining its group and
+     * the last partial second are left out
+     */
+    private static double sustained(List<Long> timeline) {
+        int first = 0;
+        while (first < timeline.size() && timeline.get(first) == 0) {
+            first++;
+        }
+        int last = timeline.size();
+        while (last > first && timeline.get(last - 1) == 0) {
+            last--;
+        }
+        if (last - first < 3) {
+            return first == last ? 0 : Collections.max(timeline.subList(first, last));
+        }
+        List<Long> steady = new ArrayList<>(timeline.subList(first + 1, last - 1));
+        Collections.sort(steady);
+        return steady.get(steady.size() / 2);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(collector.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(collector.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+
+    private static String option(SimpleCommandLinePropertySource options, String name, String defaultValue) {
+        String value = options.getProperty(name);
+        return value == null ? defaultValue : value;
+    }
+}
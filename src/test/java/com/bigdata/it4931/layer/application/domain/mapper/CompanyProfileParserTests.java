@@ -0,0 +1,78 @@
+package com.bigdata.it4931.layer.application.domain.mapper;
+
+import com.bigdata.it4931.layer.application.domain.dto.CompanyProfileDto;
+import com.bigdata.it4931.utility.csv.CsvRecordReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileInputStream;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CompanyProfileParserTests {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "{\"Sector\":\"Diversified\",\"Industry\":\"Diversified Financials\",\"City\":\"Sunny Isles Beach\",\"State\":\"Florida\",\"Zip\":\"33160\",\"Website\":\"www.ielp.com\",\"Ticker\":\"IEP\",\"CEO\":\"David Willetts\"}",
+            "{\"Sector\":\"Retailing\",\"CEO\":\"Carl \"Jack\" Icahn\"}",
+            "{\"City\":\"a\\\\b\",\"Zip\":12345,\"Ticker\":true,\"State\":null}",
+            "{\"City\":\"x\\u0041y\",\"Website\":\"Hello: World\"}",
+            "{\"Sector\":\"say \\\"hi\\\"\"}",
+            "{\"Zip\":01}",
+            "{\"Zip\":1.}",
+            "{\"sector\":\"lower case\"}",
+            "{\"Unknown\":\"x\"}",
+            "{\"Sector\":\"a\",}",
+            "{\"Sector\":\"tab\there\"}",
+            "{\"Sector\":{}}",
+            "{\"Sector\":\"x\"} trailing",
+            " {\"Sector\" : \"spaced\"}",
+            "{}",
+            "null",
+            "nullx",
+            "[]",
+            "{\"Sector"
+    })
+    void parseMatchesJackson(String text) {
+        assertEquals(parseWithJackson(text), parse(text), text);
+    }
+
+    @Test
+    void parseMatchesJacksonOnDataset() throws Exception {
+        String datasetPath = System.getProperty("dataset.path");
+        assumeTrue(datasetPath != null, "set -Ddataset.path to a local job_descriptions.csv");
+
+        long rows = 0;
+        try (CsvRecordReader csvReader = new CsvRecordReader(new FileInputStream(datasetPath), 0)) {
+            csvReader.readNext();
+            String[] record;
+            while ((record = csvReader.readNext()) != null) {
+                if (record.length < JobDataCsvMapper.COLUMN_COUNT || record[22].isEmpty()) {
+                    continue;
+                }
+                assertEquals(parseWithJackson(record[22]), parse(record[22]), "row " + rows);
+                rows++;
+            }
+        }
+    }
+
+    private static Object parse(String text) {
+        try {
+            return Objects.requireNonNullElse(CompanyProfileParser.parse(text), "null");
+        } catch (Exception e) {
+            return "error";
+        }
+    }
+
+    private static Object parseWithJackson(String text) {
+        try {
+            CompanyProfileDto companyProfileDto = CompanyProfileParser.parseWithJackson(text);
+            return Objects.requireNonNullElse(companyProfileDto, "null");
+        } catch (Exception e) {
+            return "error";
+        }
+    }
+}
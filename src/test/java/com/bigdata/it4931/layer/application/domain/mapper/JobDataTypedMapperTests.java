@@ -0,0 +1,76 @@
+package com.bigdata.it4931.layer.application.domain.mapper;
+
+import com.bigdata.it4931.config.avro.AvroSchemas;
+import org.apache.avro.generic.GenericData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.LocalDate;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class JobDataTypedMapperTests {
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "$59K-$99K, 59000, 99000",
+            "$56K - $116K, 56000, 116000",
+            "'$1,200-$1,500', 1200, 1500",
+            "80000, 80000, 80000",
+            "n/a, , ",
+            "$99K-$59K, , ",
+            "$9999999K-$9999999K, , "
+    })
+    void parsesSalaryRange(String salaryRange, Integer min, Integer max) {
+        GenericData.Record typedRecord = new JobDataTypedMapper().toTyped(record("salaryRange", salaryRange));
+        assertEquals(min, typedRecord.get("salaryMin"));
+        assertEquals(max, typedRecord.get("salaryMax"));
+        assertEquals(min == null ? salaryRange : null, typedRecord.get("salaryRange"));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "5 to 15 Years, 5, 15",
+            "0 to 12 Years, 0, 12",
+            "3 Years, 3, 3",
+            "Fresher, , ",
+            "15 to 5 Years, , ",
+            "1 to 2 to 3 Years, , "
+    })
+    void parsesExperience(String experience, Integer min, Integer max) {
+        GenericData.Record typedRecord = new JobDataTypedMapper().toTyped(record("experience", experience));
+        assertEquals(min, typedRecord.get("experienceMinYears"));
+        assertEquals(max, typedRecord.get("experienceMaxYears"));
+    }
+
+    @Test
+    void parsesScalarsAndCountsFailures() {
+        JobDataTypedMapper typedMapper = new JobDataTypedMapper();
+        GenericData.Record jobDataRecord = record("latitude", "-15.3");
+        jobDataRecord.put("longitude", "181");
+        jobDataRecord.put("companySize", "26,801");
+        jobDataRecord.put("jobPostingDate", "2022-04-24");
+        GenericData.Record typedRecord = typedMapper.toTyped(jobDataRecord);
+
+        assertEquals(-15.3, typedRecord.get("latitudeDegrees"));
+        assertNull(typedRecord.get("longitudeDegrees"));
+        assertEquals("181", typedRecord.get("longitude"));
+        assertNull(typedRecord.get("latitude"));
+        assertEquals(26801, typedRecord.get("employeeCount"));
+        assertEquals((int) LocalDate.of(2022, 4, 24).toEpochDay(), typedRecord.get("postingDate"));
+        assertEquals("1", typedRecord.get("jobId"));
+        assertEquals(Collections.singletonMap("longitude", 1L), typedMapper.getParseFailures());
+        assertSame(typedRecord, typedMapper.upgrade(typedRecord));
+    }
+
+    private static GenericData.Record record(String field, String value) {
+        GenericData.Record jobDataRecord = new GenericData.Record(AvroSchemas.JOB_DATA);
+        jobDataRecord.put("jobId", "1");
+        jobDataRecord.put(field, value);
+        return jobDataRecord;
+    }
+}
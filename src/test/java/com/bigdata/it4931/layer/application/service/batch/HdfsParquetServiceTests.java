@@ -0,0 +1,57 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.service.serving.generator.JobDataGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HdfsParquetServiceTests {
+    private static final int ROWS = 3000;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void batchSpreadOverMorePartitionsThanWritersOpensOneFilePerPartition() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("hadoop.hdfs.writer.max-open", "32");
+        // a single batch holding every record and the flush marker
+        properties.put("hadoop.hdfs.writer.batch.size", String.valueOf(ROWS + 1));
+        properties.put("hadoop.hdfs.writer.batch.max-size", String.valueOf(ROWS + 1));
+        properties.put("hadoop.hdfs.writer.batch.linger-ms", "60000");
+        properties.put("hadoop.hdfs.writer.batch.target-latency-ms", "0");
+        HdfsParquetService service = new HdfsParquetService(HdfsTestSupport.localAdapter(directory), HdfsTestSupport.configuration(properties), new SimpleMeterRegistry());
+
+        JobDataGenerator generator = JobDataGenerator.newBuilder().build();
+        List<JobDataDto> jobs = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            jobs.add(generator.next());
+        }
+        service.save(jobs);
+        service.flush();
+
+        List<java.nio.file.Path> files;
+        try (Stream<java.nio.file.Path> paths = Files.walk(new File(directory, "lake").toPath())) {
+            files = paths.filter(path -> ParquetCommitProtocol.isPublished(new Path(path.toUri()))).collect(Collectors.toList());
+        }
+        Set<java.nio.file.Path> partitions = files.stream().map(java.nio.file.Path::getParent).collect(Collectors.toSet());
+        // posting dates spread over two years, far more partitions than open writers
+        assertTrue(partitions.size() > 32 * 10, "partitions " + partitions.size());
+        assertEquals(partitions.size(), files.size());
+    }
+}
@@ -0,0 +1,84 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import com.bigdata.it4931.config.hdfs.HdfsConfiguration;
+import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The batch layer on the local file system, with the folder {@code lake} below the given directory.
+ */
+final class HdfsTestSupport {
+    private HdfsTestSupport() {
+    }
+
+    static IHdfsAdapter localAdapter(File directory) throws IOException {
+        Configuration configuration = new Configuration();
+        return localAdapter(directory, FileSystem.getLocal(configuration));
+    }
+
+    static IHdfsAdapter localAdapter(File directory, FileSystem fileSystem) {
+        String nameNode = new Path(directory.toURI()).toString();
+        return new IHdfsAdapter() {
+            @Override
+            public Configuration getConfiguration() {
+                return fileSystem.getConf();
+            }
+
+            @Override
+            public FileSystem getFileSystem() {
+                return fileSystem;
+            }
+
+            @Override
+            public String getNameNode() {
+                return nameNode;
+            }
+        };
+    }
+
+    /**
+     * Binds the defaults of the {@link Value} annotations, overridden by {@code properties}, as Spring would.
+     */
+    static HdfsConfiguration configuration(Map<String, String> properties) {
+        Map<String, String> values = new HashMap<>(properties);
+        values.putIfAbsent("hadoop.hdfs.folder", "lake");
+        values.putIfAbsent("hadoop.hdfs.file.max-size.MB", "16");
+        HdfsConfiguration configuration = new HdfsConfiguration();
+        try {
+            for (Field field : HdfsConfiguration.class.getDeclaredFields()) {
+                Value annotation = field.getAnnotation(Value.class);
+                if (annotation == null) {
+                    continue;
+                }
+                String placeholder = annotation.value().substring(2, annotation.value().length() - 1);
+                int separator = placeholder.indexOf(':');
+                String key = separator < 0 ? placeholder : placeholder.substring(0, separator);
+                String value = values.getOrDefault(key, separator < 0 ? null : placeholder.substring(separator + 1));
+                field.setAccessible(true);
+                if (field.getType() == int.class) {
+                    field.setInt(configuration, Integer.parseInt(value));
+                } else if (field.getType() == long.class) {
+                    field.setLong(configuration, Long.parseLong(value));
+                } else if (field.getType() == boolean.class) {
+                    field.setBoolean(configuration, Boolean.parseBoolean(value));
+                } else if (field.getType() == double.class) {
+                    field.setDouble(configuration, Double.parseDouble(value));
+                } else {
+                    field.set(configuration, value);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return configuration;
+    }
+}
@@ -0,0 +1,169 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParquetCommitProtocolTests {
+    private static final TopicPartition P0 = new TopicPartition("jobs", 0);
+    private static final TopicPartition P1 = new TopicPartition("jobs", 1);
+    private static final MessageType SCHEMA = MessageTypeParser.parseMessageType("message job { required int32 id; }");
+
+    @TempDir
+    File directory;
+
+    private FileSystem fileSystem;
+    private Path root;
+    private ParquetCommitProtocol protocol;
+
+    @BeforeEach
+    void createProtocol() throws IOException {
+        fileSystem = FileSystem.getLocal(new Configuration());
+        root = new Path(new Path(directory.toURI()), "lake");
+        protocol = new ParquetCommitProtocol(fileSystem, root, "test", TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Test
+    void pendingFilesHoldBackTheCommittedOffset() throws IOException {
+        ParquetCommitProtocol.PendingFile first = begin("first", P0, 0, 5);
+        ParquetCommitProtocol.PendingFile second = begin("second", P0, 5, 10);
+        assertEquals(0, protocol.committedOffset(P0));
+        assertEquals(-1, protocol.committedOffset(P1));
+
+        protocol.commit(second);
+        assertEquals(0, protocol.committedOffset(P0));
+        protocol.commit(first);
+        assertEquals(10, protocol.committedOffset(P0));
+        assertTrue(fileSystem.exists(second.getTarget()));
+    }
+
+    @Test
+    void aFailedFileHoldsBackTheCommittedOffsetForGood() throws IOException {
+        ParquetCommitProtocol.PendingFile first = begin("first", P0, 0, 5);
+        ParquetCommitProtocol.PendingFile second = begin("second", P0, 5, 10);
+        fileSystem.delete(first.getTemporary(), false);
+
+        // the rename fails without the temporary file
+        assertThrows(IOException.class, () -> protocol.commit(first));
+        protocol.commit(second);
+        protocol.skip(P0, 10);
+        assertEquals(0, protocol.committedOffset(P0));
+    }
+
+    @Test
+    void aLostRecordPinsItsPartition() {
+        protocol.skip(P0, 0);
+        protocol.skip(P0, 1);
+        protocol.lose(P0, 2);
+        protocol.skip(P0, 3);
+        protocol.skip(P1, 0);
+
+        assertEquals(2, protocol.committedOffset(P0));
+        assertEquals(1, protocol.committedOffset(P1));
+        protocol.lose(P0, 3);
+        assertEquals(2, protocol.committedOffset(P0));
+    }
+
+    @Test
+    void recoveryStopsAtAGap() throws IOException {
+        publish("a", range(P0, 0, 10, 10));
+        publish("b", range(P0, 12, 20, 8));
+        publish("c", range(P1, 5, 8, 3));
+
+        Map<TopicPartition, Long> positions = protocol.recover(Map.of(P0, 0L, P1, 0L));
+
+        assertEquals(Map.of(P0, 10L), positions);
+        assertEquals(10, protocol.committedOffset(P0));
+    }
+
+    @Test
+    void recoveryCrossesSparseRangesWhoseCountsFillTheirSpan() throws IOException {
+        publish("a", range(P0, 0, 10, 10));
+        // the records of [10, 20) went to two files, every other one each
+        publish("b", range(P0, 10, 19, 5));
+        publish("c", range(P0, 11, 20, 5));
+        publish("d", range(P0, 20, 25, 5));
+        // one record of [30, 40) is missing
+        publish("e", range(P0, 30, 40, 4));
+        publish("f", range(P0, 31, 39, 5));
+
+        assertEquals(Map.of(P0, 25L), protocol.recover(Map.of(P0, 0L)));
+    }
+
+    @Test
+    void recoveryStartsFromTheCommittedOffset() throws IOException {
+        publish("a", range(P0, 0, 10, 10));
+        publish("b", range(P0, 10, 20, 10));
+
+        assertEquals(Map.of(), protocol.recover(Map.of(P0, 20L)));
+        assertEquals(Map.of(P0, 20L), protocol.recover(Map.of(P0, 5L)));
+    }
+
+    @Test
+    void recoveryLeavesOutTheInputsOfAPublishedMerge() throws IOException {
+        // four records of [0, 12) are missing, counting the merged files twice would seem to fill the span
+        Path first = publish("a", range(P0, 0, 12, 3));
+        Path second = publish("b", range(P0, 1, 11, 3));
+        Path merged = publish("merged", range(P0, 0, 12, 6));
+        Path work = new Path(root, CompactionJournal.COMPACTION + "/other/1");
+        new CompactionJournal(merged.toString(), Arrays.asList(first.toString(), second.toString())).write(fileSystem, work);
+
+        assertEquals(Map.of(), protocol.recover(Map.of(P0, 0L)));
+
+        fileSystem.delete(work, true);
+        assertEquals(Map.of(P0, 12L), protocol.recover(Map.of(P0, 0L)));
+    }
+
+    private ParquetCommitProtocol.PendingFile begin(String name, TopicPartition partition, long from, long to) throws IOException {
+        ParquetCommitProtocol.PendingFile file = protocol.begin(new Path(root, "posting_date=2023-01-01/" + name + ".parquet"));
+        for (long offset = from; offset < to; offset++) {
+            file.add(partition, offset);
+        }
+        fileSystem.mkdirs(file.getTemporary().getParent());
+        try (FSDataOutputStream outputStream = fileSystem.create(file.getTemporary())) {
+            outputStream.write(1);
+        }
+        return file;
+    }
+
+    /**
+     * Writes a published file whose footer holds the ranges.
+     */
+    private Path publish(String name, KafkaOffsetRanges.Range... ranges) throws IOException {
+        Path path = new Path(root, "posting_date=2023-01-01/" + name + ".parquet");
+        try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(path)
+                .withConf(fileSystem.getConf())
+                .withType(SCHEMA)
+                .withExtraMetaData(KafkaOffsetRanges.toMetadata(List.of(ranges)))
+                .build()) {
+            writer.write(new SimpleGroupFactory(SCHEMA).newGroup().append("id", 1));
+        }
+        return fileSystem.makeQualified(path);
+    }
+
+    private static KafkaOffsetRanges.Range range(TopicPartition partition, long from, long to, long count) {
+        return new KafkaOffsetRanges.Range(partition.topic(), partition.partition(), from, to, count);
+    }
+}
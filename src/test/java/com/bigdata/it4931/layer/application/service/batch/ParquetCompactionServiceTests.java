@@ -0,0 +1,192 @@
+package com.bigdata.it4931.layer.application.service.batch;
+
+import com.bigdata.it4931.config.hdfs.HdfsConfiguration;
+import com.bigdata.it4931.layer.application.domain.dto.JobDataDto;
+import com.bigdata.it4931.layer.application.service.serving.generator.JobDataGenerator;
+import com.bigdata.it4931.layer.infrastructure.hdfs.IHdfsAdapter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParquetCompactionServiceTests {
+    private static final int ROUNDS = 3;
+    private static final int ROWS_PER_ROUND = 200;
+    private static final int PARTITIONS = 2;
+
+    @TempDir
+    File directory;
+
+    private FileSystem fileSystem;
+    private Path root;
+    private HdfsConfiguration hdfsConfiguration;
+    private HdfsParquetService hdfsParquetService;
+
+    @BeforeEach
+    void writeSmallFiles() throws IOException {
+        fileSystem = FileSystem.getLocal(new Configuration());
+        root = new Path(new Path(directory.toURI()), "lake");
+        hdfsConfiguration = HdfsTestSupport.configuration(Map.of(
+                "hadoop.hdfs.compaction.enabled", "true",
+                "hadoop.hdfs.compaction.min-age-ms", "0",
+                "hadoop.hdfs.compaction.min-files", "2"));
+        hdfsParquetService = new HdfsParquetService(HdfsTestSupport.localAdapter(directory, fileSystem), hdfsConfiguration, new SimpleMeterRegistry());
+        JobDataGenerator generator = JobDataGenerator.newBuilder().build();
+        // every flush publishes one more file per partition
+        for (int round = 0; round < ROUNDS; round++) {
+            List<JobDataDto> jobs = new ArrayList<>();
+            for (int i = 0; i < ROWS_PER_ROUND; i++) {
+                JobDataDto jobData = generator.next();
+                jobData.setJobPostingDate("2023-01-0" + (1 + i % PARTITIONS));
+                jobs.add(jobData);
+            }
+            hdfsParquetService.save(jobs);
+            hdfsParquetService.flush();
+        }
+        assertEquals(ROUNDS * PARTITIONS, published().size());
+    }
+
+    @Test
+    void restartPublishesAMergeThatCrashedBeforeItsRename() throws IOException {
+        List<Path> inputs = published();
+        compactor(new FailingFileSystem(fileSystem, true, false)).compact();
+        // the merges are journaled but not published, readers keep the inputs
+        assertEquals(inputs, published());
+        assertTrue(CompactionJournal.replacedFiles(fileSystem, root).isEmpty());
+
+        compactor(fileSystem);
+        assertEquals(PARTITIONS, published().size());
+        assertEquals(ROUNDS * ROWS_PER_ROUND, visibleRows());
+        assertFalse(fileSystem.exists(workRoot()) && fileSystem.listStatus(workRoot()).length > 0);
+    }
+
+    @Test
+    void readersLeaveOutInputsOfAPublishedMerge() throws IOException {
+        List<Path> inputs = published();
+        compactor(new FailingFileSystem(fileSystem, false, true)).compact();
+        // merged files and their inputs are both in place
+        assertEquals(inputs.size() + PARTITIONS, published().size());
+        assertEquals(Set.copyOf(inputs), CompactionJournal.replacedFiles(fileSystem, root));
+        assertEquals(ROUNDS * ROWS_PER_ROUND, visibleRows());
+
+        compactor(fileSystem);
+        assertEquals(PARTITIONS, published().size());
+        assertTrue(CompactionJournal.replacedFiles(fileSystem, root).isEmpty());
+        assertEquals(ROUNDS * ROWS_PER_ROUND, visibleRows());
+    }
+
+    @Test
+    void keepsTheInputsWhenTheMergedFileIsMissing() throws IOException {
+        List<Path> inputs = published();
+        compactor(new FailingFileSystem(fileSystem, true, false)).compact();
+        RemoteIterator<LocatedFileStatus> iterator = fileSystem.listFiles(workRoot(), true);
+        while (iterator.hasNext()) {
+            Path path = iterator.next().getPath();
+            if (path.getName().endsWith(".parquet")) {
+                fileSystem.delete(path, false);
+            }
+        }
+
+        compactor(fileSystem);
+        assertEquals(inputs, published());
+        assertEquals(ROUNDS * ROWS_PER_ROUND, visibleRows());
+    }
+
+    @Test
+    void recoveryLeavesTheMergesOfOtherInstancesAlone() throws IOException {
+        Path otherWork = new Path(new Path(new Path(root, CompactionJournal.COMPACTION), "other-instance"), "1-1");
+        fileSystem.create(new Path(otherWork, "1-1-compacted.parquet")).close();
+
+        compactor(fileSystem);
+        assertTrue(fileSystem.exists(otherWork));
+    }
+
+    private ParquetCompactionService compactor(FileSystem fileSystem) {
+        IHdfsAdapter adapter = HdfsTestSupport.localAdapter(directory, fileSystem);
+        return new ParquetCompactionService(adapter, hdfsConfiguration, hdfsParquetService);
+    }
+
+    private Path workRoot() {
+        return new Path(new Path(root, CompactionJournal.COMPACTION), hdfsParquetService.getInstanceId());
+    }
+
+    private List<Path> published() throws IOException {
+        List<Path> files = new ArrayList<>();
+        RemoteIterator<LocatedFileStatus> iterator = fileSystem.listFiles(root, true);
+        while (iterator.hasNext()) {
+            Path path = iterator.next().getPath();
+            if (ParquetCommitProtocol.isPublished(path)) {
+                files.add(path);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * @return the rows of the published files that are not replaced by a merge, what a query reads
+     */
+    private long visibleRows() throws IOException {
+        Set<Path> replaced = CompactionJournal.replacedFiles(fileSystem, root);
+        long rows = 0;
+        for (Path path : published()) {
+            if (!replaced.contains(path)) {
+                FileStatus status = fileSystem.getFileStatus(path);
+                try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(status, fileSystem.getConf()))) {
+                    rows += reader.getRecordCount();
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Stops a merge as a crash would, before its merged file is renamed into place or before its inputs are deleted.
+     */
+    private static class FailingFileSystem extends FilterFileSystem {
+        private final boolean failRename;
+        private final boolean failInputDelete;
+
+        FailingFileSystem(FileSystem fileSystem, boolean failRename, boolean failInputDelete) {
+            super(fileSystem);
+            this.failRename = failRename;
+            this.failInputDelete = failInputDelete;
+        }
+
+        @Override
+        public boolean rename(Path source, Path target) throws IOException {
+            if (failRename && target.getName().endsWith("-compacted.parquet")) {
+                throw new IOException("Crashed before renaming " + source);
+            }
+            return super.rename(source, target);
+        }
+
+        @Override
+        public boolean delete(Path path, boolean recursive) throws IOException {
+            if (failInputDelete && ParquetCommitProtocol.isPublished(path)) {
+                throw new IOException("Crashed before deleting " + path);
+            }
+            return super.delete(path, recursive);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.bigdata.it4931.layer.application.service.serving.ingest;
+
+import com.bigdata.it4931.config.Constants;
+import com.bigdata.it4931.layer.application.domain.mapper.JobDataCsvMapper;
+import com.bigdata.it4931.layer.infrastructure.kafka.read.KafkaTopicTail;
+import com.bigdata.it4931.layer.infrastructure.kafka.write.KafkaTransactionalWriter;
+import com.bigdata.it4931.layer.infrastructure.kafka.write.PublishResult;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointedCsvIngesterTests {
+    private static final String TOPIC = "jobs";
+    private static final int ROWS = 20;
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    private final Topic topic = new Topic();
+
+    @TempDir
+    File directory;
+
+    @AfterEach
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void keepsTheLastTransactionWhenItsCommitWasNotAcknowledged() throws IOException {
+        Path path = csv();
+        // transactions of 7, 7 and 6 rows, the third one commits but the acknowledgement is lost
+        topic.crashOnCommit = 3;
+        topic.crashAfterCommit = true;
+        assertNotNull(ingester().ingest(path, "jobs").getFirstError());
+        assertEquals(ROWS, topic.log.size());
+
+        PublishResult result = ingester().ingest(path, "jobs");
+        assertNull(result.getFirstError());
+        assertEquals(0, result.getSent());
+        assertPublishedOnce();
+    }
+
+    @Test
+    void republishesATransactionThatWasNotCommitted() throws IOException {
+        Path path = csv();
+        topic.crashOnCommit = 2;
+        assertNotNull(ingester().ingest(path, "jobs").getFirstError());
+        assertEquals(7, topic.log.size());
+
+        PublishResult result = ingester().ingest(path, "jobs");
+        assertNull(result.getFirstError());
+        assertEquals(ROWS - 7, result.getSent());
+        assertPublishedOnce();
+    }
+
+    @Test
+    void completedCheckpointCreatesNoProducer() throws IOException {
+        Path path = csv();
+        assertEquals(ROWS, ingester().ingest(path, "jobs").getSucceeded());
+        assertEquals(1, topic.writers);
+
+        assertEquals(0, ingester().ingest(path, "jobs").getSent());
+        assertEquals(1, topic.writers);
+        assertPublishedOnce();
+    }
+
+    private CheckpointedCsvIngester ingester() {
+        return CheckpointedCsvIngester.newBuilder()
+                .with(builder -> {
+                    try {
+                        builder.fileSystem = FileSystem.getLocal(new Configuration()).getRaw();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    builder.checkpointStore = new IngestCheckpointStore(new Configuration(), new Path(new File(directory, "checkpoints").toURI()));
+                    builder.topic = TOPIC;
+                    builder.executorService = executorService;
+                    builder.transactionMaxRows = 7;
+                    builder.transactionMaxMillis = Long.MAX_VALUE;
+                    builder.writerFactory = topic::writer;
+                    builder.topicTailFactory = () -> new KafkaTopicTail(topic.new TailConsumer(), TOPIC);
+                })
+                .build();
+    }
+
+    /**
+     * A header, {@link #ROWS} jobs and a short row, which puts the end of the file past the last record published.
+     */
+    private Path csv() throws IOException {
+        StringBuilder csv = new StringBuilder(String.join(",", JobDataCsvMapper.HEADER)).append('\n');
+        for (int i = 0; i < ROWS; i++) {
+            List<String> columns = new ArrayList<>();
+            columns.add("job-" + i);
+            for (int column = 1; column < JobDataCsvMapper.COLUMN_COUNT; column++) {
+                columns.add("value " + column);
+            }
+            csv.append(String.join(",", columns)).append('\n');
+        }
+        csv.append("short,row\n");
+        File file = new File(directory, "jobs.csv");
+        Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+        return new Path(file.toURI());
+    }
+
+    private void assertPublishedOnce() throws IOException {
+        List<String> jobIds = new ArrayList<>();
+        for (ProducerRecord<String, byte[]> record : topic.log) {
+            jobIds.add(Constants.OBJECT_MAPPER.readTree(record.value()).get("jobId").asText());
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            expected.add("job-" + i);
+        }
+        assertEquals(expected, jobIds);
+        IngestCheckpoint checkpoint = new IngestCheckpointStore(new Configuration(), new Path(new File(directory, "checkpoints").toURI()))
+                .load("jobs")
+                .orElseThrow();
+        assertTrue(checkpoint.isCompleted());
+        assertEquals(ROWS, checkpoint.getRanges().get(0).getRows());
+    }
+
+    /**
+     * A single partition topic holding the records of committed transactions only.
+     */
+    private static class Topic {
+        final List<ProducerRecord<String, byte[]>> log = Collections.synchronizedList(new ArrayList<>());
+        int writers;
+        int commits;
+        /**
+         * The commit that fails, counting from 1, 0 for none.
+         */
+        int crashOnCommit;
+        /**
+         * Whether the failing commit reaches the topic before failing.
+         */
+        boolean crashAfterCommit;
+
+        KafkaTransactionalWriter writer(String transactionalId) {
+            writers++;
+            MockProducer<String, byte[]> producer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer()) {
+                private int published;
+
+                @Override
+                public void commitTransaction() {
+                    boolean crash = ++commits == crashOnCommit;
+                    if (crash && !crashAfterCommit) {
+                        throw new KafkaException("Broker unavailable");
+                    }
+                    super.commitTransaction();
+                    List<ProducerRecord<String, byte[]>> history = history();
+                    log.addAll(history.subList(published, history.size()));
+                    published = history.size();
+                    if (crash) {
+                        throw new KafkaException("Connection lost before the commit was acknowledged");
+                    }
+                }
+
+                @Override
+                public void abortTransaction() {
+                    // a transaction already committed stays committed
+                    if (transactionInFlight()) {
+                        super.abortTransaction();
+                    }
+                }
+            };
+            return new KafkaTransactionalWriter(producer, TOPIC);
+        }
+
+        class TailConsumer extends MockConsumer<byte[], byte[]> {
+            private final TopicPartition partition = new TopicPartition(TOPIC, 0);
+
+            TailConsumer() {
+                super(OffsetResetStrategy.EARLIEST);
+                updatePartitions(TOPIC, List.of(new PartitionInfo(TOPIC, 0, null, null, null)));
+            }
+
+            @Override
+            public synchronized Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions) {
+                return Map.of(partition, (long) log.size());
+            }
+
+            @Override
+            public synchronized ConsumerRecords<byte[], byte[]> poll(Duration timeout) {
+                Map<TopicPartition, List<ConsumerRecord<byte[], byte[]>>> records = new HashMap<>();
+                for (TopicPartition assigned : assignment()) {
+                    List<ConsumerRecord<byte[], byte[]>> polled = new ArrayList<>();
+                    long offset = position(assigned);
+                    for (; offset < log.size(); offset++) {
+                        ProducerRecord<String, byte[]> record = log.get((int) offset);
+                        polled.add(new ConsumerRecord<>(TOPIC, 0, offset, 0L, TimestampType.CREATE_TIME, 0, record.value().length,
+                                null, record.value(), new RecordHeaders(record.headers().toArray()), Optional.empty()));
+                    }
+                    seek(assigned, offset);
+                    records.put(assigned, polled);
+                }
+                return new ConsumerRecords<>(records);
+            }
+        }
+    }
+}
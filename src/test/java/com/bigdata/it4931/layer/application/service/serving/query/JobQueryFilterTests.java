@@ -0,0 +1,127 @@
+package com.bigdata.it4931.layer.application.service.serving.query;
+
+import com.bigdata.it4931.layer.application.domain.dto.JobQueryDto;
+import org.apache.avro.Schema;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.io.api.Binary;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobQueryFilterTests {
+
+    @Test
+    void matchesEverythingWithoutFilters() {
+        JobQueryFilter filter = new JobQueryFilter(query(List.of(" ", ""), null, null));
+
+        assertTrue(filter.isEmpty());
+        assertSame(FilterCompat.NOOP, filter.filter(true));
+        assertSame(FilterCompat.NOOP, filter.filter(false));
+        assertTrue(filter.acceptsDirectory("posting_date=2023-01-01"));
+        assertTrue(filter.acceptsDirectory("posting_date=__HIVE_DEFAULT_PARTITION__"));
+        assertTrue(filter.acceptsDirectory("posting_country=India"));
+    }
+
+    @Test
+    void rejectsARangeEndingBeforeItStarts() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new JobQueryFilter(query(null, LocalDate.of(2023, 2, 1), LocalDate.of(2023, 1, 31))));
+    }
+
+    @Test
+    void prunesDirectoriesOutsideTheDatesAndCountries() {
+        JobQueryFilter filter = new JobQueryFilter(query(List.of("India", "Côte d'Ivoire"),
+                LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31)));
+
+        assertFalse(filter.acceptsDirectory("posting_date=2022-12-31"));
+        assertTrue(filter.acceptsDirectory("posting_date=2023-01-01"));
+        assertTrue(filter.acceptsDirectory("posting_date=2023-01-31"));
+        assertFalse(filter.acceptsDirectory("posting_date=2023-02-01"));
+        // plain date directories of older layouts
+        assertTrue(filter.acceptsDirectory("2023-01-15"));
+        assertFalse(filter.acceptsDirectory("2023-03-15"));
+        assertFalse(filter.acceptsDirectory("posting_date=__HIVE_DEFAULT_PARTITION__"));
+        assertTrue(filter.acceptsDirectory("unknown"));
+
+        assertTrue(filter.acceptsDirectory("posting_country=India"));
+        assertTrue(filter.acceptsDirectory("posting_country=Côte d%27Ivoire"));
+        assertFalse(filter.acceptsDirectory("posting_country=Côte d'Ivoire"));
+        assertFalse(filter.acceptsDirectory("posting_country=Japan"));
+    }
+
+    @Test
+    void pushesDownTheFiltersOfEitherSchema() {
+        JobQueryDto query = query(List.of("India", "Japan"), LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31));
+        query.setRole(List.of("Data Engineer"));
+        JobQueryFilter filter = new JobQueryFilter(query);
+        Operators.BinaryColumn country = FilterApi.binaryColumn("country");
+        FilterPredicate countries = FilterApi.or(FilterApi.eq(country, Binary.fromString("India")),
+                FilterApi.eq(country, Binary.fromString("Japan")));
+        FilterPredicate role = FilterApi.eq(FilterApi.binaryColumn("role"), Binary.fromString("Data Engineer"));
+
+        Operators.IntColumn postingDate = FilterApi.intColumn("postingDate");
+        assertEquals(and(countries, role,
+                        FilterApi.gtEq(postingDate, (int) LocalDate.of(2023, 1, 1).toEpochDay()),
+                        FilterApi.ltEq(postingDate, (int) LocalDate.of(2023, 1, 31).toEpochDay())),
+                predicate(filter.filter(true)));
+
+        Operators.BinaryColumn jobPostingDate = FilterApi.binaryColumn("jobPostingDate");
+        assertEquals(and(countries, role,
+                        FilterApi.gtEq(jobPostingDate, Binary.fromString("2023-01-01")),
+                        FilterApi.lt(jobPostingDate, Binary.fromString("2023-02-01"))),
+                predicate(filter.filter(false)));
+    }
+
+    @Test
+    void readsTheFilteredColumnsFromEitherSchema() {
+        JobQueryDto query = query(null, LocalDate.of(2023, 1, 1), null);
+        query.setCompany(List.of("Acme"));
+        JobQueryFilter filter = new JobQueryFilter(query);
+        List<String> fields = List.of("jobId", "salaryMin", "salaryMax", "experienceMinYears", "unknown");
+
+        assertEquals(List.of("jobId", "salaryMin", "salaryMax", "experienceMinYears", "companyName", "postingDate"),
+                names(filter.projection(true, fields)));
+        assertEquals(List.of("jobId", "salaryRange", "experience", "companyName", "jobPostingDate"),
+                names(filter.projection(false, fields)));
+    }
+
+    private static JobQueryDto query(List<String> countries, LocalDate from, LocalDate to) {
+        JobQueryDto query = new JobQueryDto();
+        query.setCountry(countries);
+        query.setFrom(from);
+        query.setTo(to);
+        return query;
+    }
+
+    private static FilterPredicate predicate(FilterCompat.Filter filter) {
+        return assertInstanceOf(FilterCompat.FilterPredicateCompat.class, filter).getFilterPredicate();
+    }
+
+    private static FilterPredicate and(FilterPredicate... predicates) {
+        FilterPredicate predicate = predicates[0];
+        for (int i = 1; i < predicates.length; i++) {
+            predicate = FilterApi.and(predicate, predicates[i]);
+        }
+        return predicate;
+    }
+
+    private static List<String> names(Schema schema) {
+        List<String> names = new ArrayList<>();
+        for (Schema.Field field : schema.getFields()) {
+            names.add(field.name());
+        }
+        return names;
+    }
+}
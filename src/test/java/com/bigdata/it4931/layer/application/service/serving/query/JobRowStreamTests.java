@@ -0,0 +1,114 @@
+package com.bigdata.it4931.layer.application.service.serving.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobRowStreamTests {
+
+    @Test
+    void writesRowsUntilTheLimit() throws Exception {
+        List<Boolean> wanted = new CopyOnWriteArrayList<>();
+        JobRowStream rows = new JobRowStream(1, 3, stream -> CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 5; i++) {
+                wanted.add(stream.emit(row(i)));
+            }
+            stream.finish(null);
+        }));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        rows.writeTo(outputStream);
+
+        assertEquals("0\n1\n2\n", outputStream.toString(StandardCharsets.UTF_8));
+        assertEquals(List.of(true, true, false, false, false), wanted);
+        assertTrue(rows.isCancelled());
+    }
+
+    @Test
+    void failsTheResponseWhenTheProducerFails() {
+        JobRowStream rows = new JobRowStream(1, 10, stream -> {
+            stream.emit(row(0));
+            stream.finish(new IllegalStateException("scan failed"));
+        });
+
+        IOException e = assertThrows(IOException.class, () -> rows.writeTo(new ByteArrayOutputStream()));
+        assertEquals("scan failed", e.getCause().getMessage());
+    }
+
+    @Test
+    void stopsTheProducerWhenTheClientIsGone() throws Exception {
+        CompletableFuture<Integer> emitted = new CompletableFuture<>();
+        JobRowStream rows = new JobRowStream(1, 1000, stream -> CompletableFuture.runAsync(() -> {
+            int count = 0;
+            while (stream.emit(row(count))) {
+                count++;
+            }
+            emitted.complete(count);
+            stream.finish(null);
+        }));
+
+        assertThrows(IOException.class, () -> rows.writeTo(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        }));
+
+        assertTrue(emitted.get(10, TimeUnit.SECONDS) < 1000);
+        assertFalse(rows.emit(row(0)));
+    }
+
+    @Test
+    void letsThePoolRunOtherTasksWhileTheClientIsSlow() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            JobRowStream rows = new JobRowStream(1, 10, stream -> pool.execute(() -> {
+                for (int i = 0; i < 10; i++) {
+                    stream.emit(row(i));
+                }
+                stream.finish(null);
+            }));
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+                private boolean waited;
+
+                @Override
+                public synchronized void write(int b) {
+                    if (!waited) {
+                        waited = true;
+                        try {
+                            // the only worker is blocked on the full queue by now
+                            Thread.sleep(100);
+                            pool.submit(() -> "other query").get(10, TimeUnit.SECONDS);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                    super.write(b);
+                }
+            };
+
+            rows.writeTo(outputStream);
+
+            assertEquals(20, outputStream.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static byte[] row(int i) {
+        return String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+    }
+}
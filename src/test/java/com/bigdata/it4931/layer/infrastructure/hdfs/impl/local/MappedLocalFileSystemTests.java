@@ -0,0 +1,80 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl.local;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedLocalFileSystemTests {
+    @TempDir
+    File directory;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1000, MappedFileInputStream.MIN_MAPPED_SIZE + 1000})
+    void readsSmallAndMappedFiles(int size) throws IOException {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        Path path = new Path(directory.toURI().toString(), "data.bin");
+        MappedLocalFileSystem fileSystem = fileSystem();
+        try (FSDataOutputStream outputStream = fileSystem.create(path)) {
+            outputStream.write(bytes);
+        }
+
+        FSDataInputStream inputStream = fileSystem.open(path);
+        byte[] head = new byte[100];
+        inputStream.readFully(head);
+        assertArrayEquals(slice(bytes, 0, 100), head);
+        ByteBuffer tail = ByteBuffer.allocate(200);
+        assertEquals(200, inputStream.read(size - 200L, tail));
+        assertArrayEquals(slice(bytes, size - 200, 200), tail.array());
+        assertEquals(-1, inputStream.read(size, ByteBuffer.allocate(1)));
+        inputStream.close();
+
+        assertThrows(IOException.class, () -> inputStream.read(0, ByteBuffer.allocate(1)));
+    }
+
+    @Test
+    void failsToPublishOverAFileCreatedWhileWriting() throws IOException {
+        Path path = new Path(directory.toURI().toString(), "part-0.parquet");
+        MappedLocalFileSystem fileSystem = fileSystem();
+        FSDataOutputStream outputStream = fileSystem.create(path, false);
+        outputStream.write("mine".getBytes(StandardCharsets.UTF_8));
+        Files.writeString(new File(directory, "part-0.parquet").toPath(), "theirs");
+
+        assertThrows(FileAlreadyExistsException.class, outputStream::close);
+        assertEquals("theirs", Files.readString(new File(directory, "part-0.parquet").toPath()));
+        String[] names = directory.list();
+        assertEquals(1, names.length);
+        assertFalse(names[0].endsWith(".tmp"));
+    }
+
+    private static MappedLocalFileSystem fileSystem() throws IOException {
+        MappedLocalFileSystem fileSystem = new MappedLocalFileSystem();
+        fileSystem.initialize(URI.create("file:///"), new Configuration());
+        return fileSystem;
+    }
+
+    private static byte[] slice(byte[] bytes, int offset, int length) {
+        byte[] slice = new byte[length];
+        System.arraycopy(bytes, offset, slice, 0, length);
+        return slice;
+    }
+}
@@ -0,0 +1,130 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl.read;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PositionedReadable;
+import org.apache.hadoop.fs.Seekable;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PositionalReaderTests {
+    private static final int FILE_LENGTH = 64 * 1024;
+
+    private final byte[] data = data();
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @Test
+    void mergesAdjacentAndCloseRangesIntoOneRead() throws Exception {
+        List<FileRange> ranges = List.of(
+                FileRange.createFileRange(100, 50),
+                FileRange.createFileRange(0, 100),
+                FileRange.createFileRange(1000, 10),
+                FileRange.createFileRange(FILE_LENGTH - 20, 20));
+        try (PositionalReader reader = reader()) {
+            reader.readVectored(ranges, ByteBuffer::allocate);
+            for (FileRange range : ranges) {
+                assertRange(range);
+            }
+        }
+        // the first three are within the minimum seek of each other, the last one is not
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    void rejectsOverlappingRanges() throws Exception {
+        List<FileRange> ranges = List.of(FileRange.createFileRange(0, 100), FileRange.createFileRange(50, 100));
+        try (PositionalReader reader = reader()) {
+            assertThrows(IllegalArgumentException.class, () -> reader.readVectored(ranges, ByteBuffer::allocate));
+        }
+        assertEquals(0, reads.get());
+    }
+
+    @Test
+    void rejectsARangePastTheEndOfTheFile() throws Exception {
+        List<FileRange> ranges = List.of(FileRange.createFileRange(0, 100), FileRange.createFileRange(FILE_LENGTH - 10, 20));
+        try (PositionalReader reader = reader()) {
+            assertThrows(EOFException.class, () -> reader.readVectored(ranges, ByteBuffer::allocate));
+        }
+        assertEquals(0, reads.get());
+    }
+
+    private void assertRange(FileRange range) throws Exception {
+        ByteBuffer buffer = range.getData().get(10, TimeUnit.SECONDS);
+        assertEquals(range.getLength(), buffer.remaining());
+        for (int i = 0; i < range.getLength(); i++) {
+            assertEquals(data[(int) range.getOffset() + i], buffer.get(buffer.position() + i));
+        }
+    }
+
+    private PositionalReader reader() {
+        // a stream without a vectored read of its own, so the reader merges the ranges itself
+        FSDataInputStream inputStream = new FSDataInputStream(new ByteArraySource());
+        return new PositionalReader(inputStream, new Path("memory:///data"), data.length, Runnable::run);
+    }
+
+    private static byte[] data() {
+        byte[] data = new byte[FILE_LENGTH];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private class ByteArraySource extends InputStream implements Seekable, PositionedReadable {
+        private long position;
+
+        @Override
+        public int read() {
+            return position < data.length ? data[(int) position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) {
+            reads.incrementAndGet();
+            if (position >= data.length) {
+                return -1;
+            }
+            int read = (int) Math.min(length, data.length - position);
+            System.arraycopy(data, (int) position, buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public void readFully(long position, byte[] buffer, int offset, int length) throws IOException {
+            if (read(position, buffer, offset, length) < length) {
+                throw new EOFException();
+            }
+        }
+
+        @Override
+        public void readFully(long position, byte[] buffer) throws IOException {
+            readFully(position, buffer, 0, buffer.length);
+        }
+
+        @Override
+        public void seek(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public long getPos() {
+            return position;
+        }
+
+        @Override
+        public boolean seekToNewSource(long targetPosition) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.bigdata.it4931.layer.infrastructure.hdfs.impl.write;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.util.Progressable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HdfsAppenderTests {
+    @TempDir
+    File directory;
+
+    @Test
+    void appendsGroupsToTheFile() throws Exception {
+        RawLocalFileSystem fileSystem = fileSystem(new RawLocalFileSystem());
+        Path path = new Path(directory.toURI().toString(), "jobs.log");
+        try (HdfsAppender appender = appender(fileSystem)) {
+            CompletableFuture<Void> first = appender.append(path, "a\n".getBytes(StandardCharsets.UTF_8));
+            CompletableFuture<Void> second = appender.append(path, "b\n".getBytes(StandardCharsets.UTF_8));
+            CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+        }
+        assertEquals("a\nb\n", Files.readString(new File(directory, "jobs.log").toPath()));
+    }
+
+    @Test
+    void flushesAGroupReachingFlushBytesWithoutWaitingForTheLinger() throws Exception {
+        RawLocalFileSystem fileSystem = fileSystem(new RawLocalFileSystem());
+        Path path = new Path(directory.toURI().toString(), "jobs.log");
+        try (HdfsAppender appender = HdfsAppender.newBuilder()
+                .with(builder -> {
+                    builder.fileSystem = fileSystem;
+                    builder.flushBytes = 4;
+                    builder.lingerMs = TimeUnit.MINUTES.toMillis(10);
+                })
+                .build()) {
+            CompletableFuture<Void> first = appender.append(path, "a\n".getBytes(StandardCharsets.UTF_8));
+            assertThrows(TimeoutException.class, () -> first.get(200, TimeUnit.MILLISECONDS));
+
+            CompletableFuture<Void> second = appender.append(path, "b\n".getBytes(StandardCharsets.UTF_8));
+            CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+            assertEquals("a\nb\n", Files.readString(new File(directory, "jobs.log").toPath()));
+        }
+    }
+
+    @Test
+    void failsTheGroupAndKeepsGoingWhenTheFileSystemCannotAppend() throws Exception {
+        RawLocalFileSystem fileSystem = fileSystem(new RawLocalFileSystem() {
+            @Override
+            public FSDataOutputStream append(Path f, int bufferSize, Progressable progress) {
+                throw new UnsupportedOperationException("Append is not supported");
+            }
+        });
+        Path path = new Path(directory.toURI().toString(), "jobs.log");
+        try (HdfsAppender appender = appender(fileSystem)) {
+            CompletableFuture<Void> first = appender.append(path, "a\n".getBytes(StandardCharsets.UTF_8));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(UnsupportedOperationException.class, e.getCause());
+
+            // the failed group does not leave the appender flushing forever
+            CompletableFuture<Void> second = appender.append(path, "b\n".getBytes(StandardCharsets.UTF_8));
+            e = assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(UnsupportedOperationException.class, e.getCause());
+            appender.flush(path).get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static RawLocalFileSystem fileSystem(RawLocalFileSystem fileSystem) throws IOException {
+        fileSystem.initialize(URI.create("file:///"), new Configuration());
+        return fileSystem;
+    }
+
+    private static HdfsAppender appender(RawLocalFileSystem fileSystem) {
+        return HdfsAppender.newBuilder()
+                .with(builder -> {
+                    builder.fileSystem = fileSystem;
+                    builder.lingerMs = 1;
+                })
+                .build();
+    }
+}
@@ -0,0 +1,288 @@
+package com.bigdata.it4931.layer.infrastructure.kafka.read;
+
+import com.bigdata.it4931.layer.infrastructure.kafka.message.KafkaMessage;
+import com.bigdata.it4931.utility.concurrent.Threads;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KafkaBrokerReaderTests {
+    private static final String TOPIC = "jobs";
+    private static final TopicPartition P0 = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition P1 = new TopicPartition(TOPIC, 1);
+
+    // what was committed, readable once the consumer is closed
+    private final Map<TopicPartition, Long> commits = new ConcurrentHashMap<>();
+    private final MockConsumer<String, String> consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST) {
+        @Override
+        public synchronized void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+            super.commitSync(offsets);
+            offsets.forEach((partition, offset) -> commits.put(partition, offset.offset()));
+        }
+
+        @Override
+        public synchronized void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+            super.commitAsync(offsets, callback);
+            offsets.forEach((partition, offset) -> commits.put(partition, offset.offset()));
+        }
+
+        @Override
+        public ConsumerRecords<String, String> poll(Duration timeout) {
+            ConsumerRecords<String, String> records = super.poll(timeout);
+            if (records.isEmpty()) {
+                // the mock returns at once, this keeps the polling thread from spinning
+                Threads.sleep(5);
+            }
+            return records;
+        }
+    };
+    private TestReader reader;
+
+    @AfterEach
+    void stop() {
+        if (reader != null) {
+            reader.stop();
+        }
+    }
+
+    @Test
+    void processesEachPartitionInOrderOnOneWorkerAtATime() {
+        reader = start(10, 100);
+        for (int offset = 0; offset < 500; offset++) {
+            consumer.addRecord(record(P0, offset));
+            consumer.addRecord(record(P1, offset));
+        }
+
+        await(() -> committed(P0) == 500 && committed(P1) == 500);
+        assertEquals(offsets(500), reader.processedOffsets(P0));
+        assertEquals(offsets(500), reader.processedOffsets(P1));
+        assertFalse(reader.overlapped);
+    }
+
+    @Test
+    void pausesEveryPartitionWhileSaturated() {
+        reader = start(1, 100);
+        reader.saturated = true;
+        await(() -> consumer.paused().containsAll(List.of(P0, P1)));
+
+        consumer.addRecord(record(P0, 0));
+        consumer.addRecord(record(P1, 0));
+        Threads.sleep(200);
+        assertTrue(reader.processed.isEmpty());
+
+        reader.saturated = false;
+        await(() -> consumer.paused().isEmpty());
+        await(() -> committed(P0) == 1 && committed(P1) == 1);
+    }
+
+    @Test
+    void pausesAPartitionWhoseQueueIsFull() {
+        reader = start(1, 4);
+        reader.blocked = true;
+        for (int offset = 0; offset < 8; offset++) {
+            consumer.addRecord(record(P0, offset));
+        }
+        await(() -> consumer.paused().contains(P0));
+        assertFalse(consumer.paused().contains(P1));
+
+        reader.blocked = false;
+        await(() -> consumer.paused().isEmpty());
+        await(() -> committed(P0) == 8);
+        assertEquals(offsets(8), reader.processedOffsets(P0));
+    }
+
+    @Test
+    void rewindsToTheFailedBatchAndProcessesItAgain() {
+        reader = start(1, 100);
+        reader.failAt.put(3L, 1);
+        for (int offset = 0; offset < 6; offset++) {
+            consumer.addRecord(record(P0, offset));
+        }
+        await(() -> reader.failures == 1 && consumer.position(P0) == reader.failedFrom);
+        // the mock hands out records once, the broker would fetch them again
+        for (long offset = reader.failedFrom; offset < 6; offset++) {
+            consumer.addRecord(record(P0, offset));
+        }
+
+        await(() -> committed(P0) == 6);
+        assertEquals(offsets(6), reader.processedOffsets(P0));
+    }
+
+    @Test
+    void skipsABatchThatKeepsFailingWhenTheReaderSaysSo() {
+        reader = start(1, 100);
+        reader.failAt.put(0L, Integer.MAX_VALUE);
+        reader.skipFailed = true;
+        consumer.addRecord(record(P0, 0));
+        for (int attempt = 1; attempt < 5; attempt++) {
+            int failures = attempt;
+            await(() -> reader.failures == failures && consumer.position(P0) == 0);
+            consumer.addRecord(record(P0, 0));
+        }
+        await(() -> !reader.skipped.isEmpty());
+        consumer.addRecord(record(P0, 1));
+
+        await(() -> committed(P0) == 2);
+        assertEquals(5, reader.failures);
+        assertEquals(List.of(0L), reader.skipped);
+        assertEquals(List.of(1L), reader.processedOffsets(P0));
+    }
+
+    @Test
+    void stopsWithoutCommittingABatchThatKeepsFailing() {
+        reader = start(1, 100);
+        reader.failAt.put(1L, Integer.MAX_VALUE);
+        consumer.addRecord(record(P0, 0));
+        await(() -> committed(P0) == 1);
+        consumer.addRecord(record(P0, 1));
+        for (int attempt = 1; attempt < 5; attempt++) {
+            int failures = attempt;
+            await(() -> reader.failures == failures && consumer.position(P0) == 1);
+            consumer.addRecord(record(P0, 1));
+        }
+        consumer.addRecord(record(P0, 2));
+
+        await(consumer::closed);
+        assertEquals(5, reader.failures);
+        assertEquals(1, committed(P0));
+        assertEquals(List.of(0L), reader.processedOffsets(P0));
+    }
+
+    private TestReader start(int minRecords, int maxQueuedRecords) {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, 10_000);
+        TestReader testReader = new TestReader(properties, minRecords, maxQueuedRecords);
+        consumer.updateBeginningOffsets(Map.of(P0, 0L, P1, 0L));
+        consumer.schedulePollTask(() -> consumer.rebalance(List.of(P0, P1)));
+        testReader.start();
+        await(() -> consumer.assignment().size() == 2);
+        return testReader;
+    }
+
+    private long committed(TopicPartition partition) {
+        return commits.getOrDefault(partition, -1L);
+    }
+
+    private static ConsumerRecord<String, String> record(TopicPartition partition, long offset) {
+        return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, null, "value-" + offset);
+    }
+
+    private static List<Long> offsets(int count) {
+        List<Long> offsets = new ArrayList<>();
+        for (long offset = 0; offset < count; offset++) {
+            offsets.add(offset);
+        }
+        return offsets;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Threads.sleep(10);
+        }
+    }
+
+    private class TestReader extends KafkaBrokerReader<String> {
+        private final List<KafkaMessage<String>> processed = new CopyOnWriteArrayList<>();
+        private final Set<Integer> running = ConcurrentHashMap.newKeySet();
+        private final Map<Long, Integer> failAt = new ConcurrentHashMap<>();
+        private final List<Long> skipped = new CopyOnWriteArrayList<>();
+        private volatile boolean saturated;
+        private volatile boolean blocked;
+        private volatile boolean skipFailed;
+        private volatile boolean overlapped;
+        private volatile int failures;
+        private volatile long failedFrom = -1;
+
+        private TestReader(Properties properties, int minRecords, int maxQueuedRecords) {
+            super(properties, Collections.singletonList(TOPIC), 1, minRecords, 1, 4, maxQueuedRecords);
+        }
+
+        @Override
+        public void processing(List<KafkaMessage<String>> messages) {
+            int partition = messages.get(0).partition();
+            if (!running.add(partition)) {
+                overlapped = true;
+            }
+            try {
+                while (blocked) {
+                    Threads.sleep(10);
+                }
+                for (KafkaMessage<String> message : messages) {
+                    Integer failuresLeft = failAt.get(message.offset());
+                    if (failuresLeft != null && failuresLeft > 0) {
+                        failAt.put(message.offset(), failuresLeft - 1);
+                        failedFrom = messages.get(0).offset();
+                        failures++;
+                        throw new IllegalStateException("failed at " + message.offset());
+                    }
+                }
+                Threads.sleep(1);
+                processed.addAll(messages);
+            } finally {
+                running.remove(partition);
+            }
+        }
+
+        @Override
+        protected boolean skip(TopicPartition partition, List<KafkaMessage<String>> messages, Exception failure) {
+            if (skipFailed) {
+                for (KafkaMessage<String> message : messages) {
+                    skipped.add(message.offset());
+                }
+            }
+            return skipFailed;
+        }
+
+        @Override
+        protected boolean isSaturated() {
+            return saturated;
+        }
+
+        @Override
+        protected boolean canResume() {
+            return !saturated;
+        }
+
+        @Override
+        protected Consumer<String, String> createConsumer(ConsumerRebalanceListener listener) {
+            consumer.subscribe(Collections.singletonList(TOPIC), listener);
+            return consumer;
+        }
+
+        private List<Long> processedOffsets(TopicPartition partition) {
+            List<Long> offsets = new ArrayList<>();
+            for (KafkaMessage<String> message : processed) {
+                if (message.partition() == partition.partition()) {
+                    offsets.add(message.offset());
+                }
+            }
+            return offsets;
+        }
+    }
+}
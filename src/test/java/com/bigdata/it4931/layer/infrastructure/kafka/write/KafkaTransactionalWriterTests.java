@@ -0,0 +1,46 @@
+package com.bigdata.it4931.layer.infrastructure.kafka.write;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KafkaTransactionalWriterTests {
+
+    @Test
+    void abortsTheTransactionWhenARecordFailed() {
+        MockProducer<String, byte[]> producer = new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+        try (KafkaTransactionalWriter writer = new KafkaTransactionalWriter(producer, "jobs")) {
+            writer.send(new byte[]{1}, Collections.emptyList());
+            writer.send(new byte[]{2}, Collections.emptyList());
+            RecordTooLargeException failure = new RecordTooLargeException("too large");
+            producer.errorNext(failure);
+
+            KafkaException e = assertThrows(KafkaException.class, writer::commit);
+            assertSame(failure, e.getCause());
+            assertTrue(producer.transactionAborted());
+            assertFalse(producer.transactionCommitted());
+            assertTrue(producer.history().isEmpty());
+        }
+    }
+
+    @Test
+    void commitsWhenEveryRecordWasSent() {
+        MockProducer<String, byte[]> producer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+        try (KafkaTransactionalWriter writer = new KafkaTransactionalWriter(producer, "jobs")) {
+            writer.send(new byte[]{1}, Collections.emptyList());
+            writer.commit();
+            assertTrue(producer.transactionCommitted());
+            assertFalse(writer.inTransaction());
+        }
+    }
+}
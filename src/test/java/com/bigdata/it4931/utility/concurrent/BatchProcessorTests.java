@@ -0,0 +1,43 @@
+package com.bigdata.it4931.utility.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchProcessorTests {
+
+    @Test
+    void failsBlockedPutsWhenTheConsumersAreInterrupted() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        List<Integer> applied = new CopyOnWriteArrayList<>();
+        BatchProcessor<Integer, Object> processor = BatchProcessor.<Integer, Object>newBuilder()
+                .with(builder -> {
+                    builder.executorService = executorService;
+                    builder.batchSize = 10;
+                    builder.isMustFullBatch = true;
+                    builder.maxQueuedRecords = 2;
+                })
+                .build(batch -> batch.forEach(entry -> applied.add(entry.getKey())));
+        processor.put(1);
+        processor.put(2);
+        // the consumer holds both and waits for a full batch, so the processor is full
+        CompletableFuture<AsyncCallback<Object>> blocked = CompletableFuture.supplyAsync(() -> processor.put(3));
+        Thread.sleep(100);
+
+        executorService.shutdownNow();
+
+        AsyncCallback<Object> callback = blocked.get(10, TimeUnit.SECONDS);
+        assertThrows(IllegalStateException.class, callback::get);
+        assertThrows(IllegalStateException.class, processor.put(4)::get);
+        assertEquals(List.of(1, 2), applied);
+        assertEquals(0, processor.getQueuedRecords());
+    }
+}
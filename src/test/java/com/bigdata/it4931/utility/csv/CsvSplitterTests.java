@@ -0,0 +1,112 @@
+package com.bigdata.it4931.utility.csv;
+
+import com.opencsv.CSVReader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvSplitterTests {
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @TempDir
+    File directory;
+
+    @AfterEach
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void splitsOnRecordBoundariesWhenQuotedFieldsSpanLines() throws IOException {
+        File file = new File(directory, "jobs.csv");
+        Files.write(file.toPath(), csv(2000, new Random(11)).getBytes(StandardCharsets.UTF_8));
+        FileSystem fileSystem = FileSystem.getLocal(new Configuration()).getRaw();
+        Path path = new Path(file.toURI());
+
+        // small blocks put split points inside quoted line breaks, escaped quotes and CRLFs
+        List<CsvSplit> splits = new CsvSplitter(fileSystem, executorService).split(path, 0, file.length(), 4096, 4);
+        assertTrue(splits.size() > 10, "splits " + splits.size());
+        List<String[]> records = new ArrayList<>();
+        long previousEnd = 0;
+        for (CsvSplit split : splits) {
+            assertEquals(previousEnd, split.getStart());
+            previousEnd = split.getEnd();
+            try (FSDataInputStream inputStream = fileSystem.open(path)) {
+                inputStream.seek(split.getStart());
+                try (CsvRecordReader csvReader = new CsvRecordReader(com.google.common.io.ByteStreams.limit(inputStream, split.length()), split.getStart())) {
+                    String[] record;
+                    while ((record = csvReader.readNext()) != null) {
+                        records.add(record);
+                    }
+                }
+            }
+        }
+        assertEquals(file.length(), previousEnd);
+
+        List<String[]> expected;
+        try (CSVReader csvReader = new CSVReader(new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            expected = csvReader.readAll();
+        } catch (com.opencsv.exceptions.CsvException e) {
+            throw new IOException(e);
+        }
+        assertEquals(expected.size(), records.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), records.get(i), "record " + i);
+        }
+    }
+
+    @Test
+    void lastRecordEndStopsBeforeAnOpenQuote() throws IOException {
+        File file = new File(directory, "partial.csv");
+        String complete = "a,b\n\"c\nd\",e\r\n";
+        Files.write(file.toPath(), (complete + "\"f,g\nh").getBytes(StandardCharsets.UTF_8));
+        FileSystem fileSystem = FileSystem.getLocal(new Configuration()).getRaw();
+        CsvSplitter splitter = new CsvSplitter(fileSystem, executorService);
+        Path path = new Path(file.toURI());
+
+        assertEquals(complete.length(), splitter.lastRecordEnd(path, 0, file.length()));
+        // the '\n' of the CRLF may still be on its way
+        assertEquals(4, splitter.lastRecordEnd(path, 0, complete.length() - 1));
+    }
+
+    private static String csv(int rows, Random random) {
+        StringBuilder sb = new StringBuilder("id,text,note\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(',');
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.append("\"line one\nline two, with comma\"");
+                    break;
+                case 1:
+                    sb.append("\"he said \"\"hi\"\"\"");
+                    break;
+                case 2:
+                    sb.append("\"path C:\\\\temp\"");
+                    break;
+                default:
+                    sb.append("plain ").append(random.nextInt(1000));
+            }
+            sb.append(',').append("x".repeat(random.nextInt(40))).append(random.nextBoolean() ? "\r\n" : "\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.bigdata.it4931.utility.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CsvStateMachineTests {
+
+    @Test
+    void endsRecordsOnlyOutsideQuotes() {
+        assertEquals(List.of(4, 27), boundaries("a,b\n\"x\ny\",\"he said \"\"hi\"\"\"\n"));
+        assertEquals(List.of(10), boundaries("\"a\\\"\nb\",c\n"));
+        assertEquals(List.of(4, 5), boundaries("a,b\r\n"));
+    }
+
+    @Test
+    void advanceAllMatchesSteppingFromEveryState() {
+        Random random = new Random(3);
+        byte[] alphabet = "ab,\"\\\n\r".getBytes(StandardCharsets.US_ASCII);
+        for (int run = 0; run < 200; run++) {
+            byte[] bytes = new byte[random.nextInt(64)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            int[] states = new int[CsvStateMachine.STATES];
+            for (int s = 0; s < states.length; s++) {
+                states[s] = s;
+            }
+            CsvStateMachine.advanceAll(states, bytes, 0, bytes.length);
+            for (int s = 0; s < states.length; s++) {
+                int state = s;
+                for (byte b : bytes) {
+                    state = CsvStateMachine.step(state, b);
+                }
+                assertEquals(state & CsvStateMachine.STATE_MASK, states[s], "start state " + s + " over " + new String(bytes, StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    /**
+     * @return offsets right after the bytes that ended a record
+     */
+    private static List<Integer> boundaries(String csv) {
+        List<Integer> boundaries = new ArrayList<>();
+        int state = CsvStateMachine.INITIAL;
+        byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            state = CsvStateMachine.step(state, bytes[i]);
+            if (CsvStateMachine.isBoundary(state)) {
+                boundaries.add(i + 1);
+            }
+        }
+        return boundaries;
+    }
+}
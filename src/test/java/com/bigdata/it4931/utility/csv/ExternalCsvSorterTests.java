@@ -0,0 +1,138 @@
+package com.bigdata.it4931.utility.csv;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExternalCsvSorterTests {
+    @TempDir
+    File directory;
+
+    @Test
+    void mergesManySpilledRunsLikeAnInMemorySort() throws IOException {
+        List<String[]> rows = rows(3000, new Random(7));
+        File input = new File(directory, "jobs.csv");
+        write(input, rows);
+        File spill = new File(directory, "spill");
+        File output = new File(directory, "sorted.csv");
+
+        // runs of a few dozen rows and a fan-in of 3 take several merge passes
+        ExternalCsvSorter.newBuilder()
+                .with(builder -> {
+                    builder.keyColumn = 1;
+                    builder.runBytes = 8 * 1024;
+                    builder.threads = 2;
+                    builder.mergeFanIn = 3;
+                    builder.spillDirectory = spill.toURI().toString();
+                })
+                .build()
+                .sort(new Path(input.toURI()), new Path(output.toURI()));
+
+        List<String[]> expected = new ArrayList<>(rows.subList(1, rows.size()));
+        // stable, so rows with the same day and the unparseable ones keep their order
+        expected.sort(Comparator.comparingLong(ExternalCsvSorterTests::key));
+        expected.add(0, rows.get(0));
+        List<String[]> sorted = read(output);
+        assertEquals(expected.size(), sorted.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), sorted.get(i), "row " + i);
+        }
+        assertEquals(Long.MAX_VALUE, key(sorted.get(sorted.size() - 1)));
+        assertEquals(0, spill.exists() ? spill.list((dir, name) -> name.startsWith("sort-")).length : 0);
+    }
+
+    @Test
+    void writesOnlyTheHeaderOfAFileWithoutRows() throws IOException {
+        File input = new File(directory, "empty.csv");
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[]{"Job Id", "Job Posting Date"});
+        write(input, rows);
+        File output = new File(directory, "sorted.csv");
+
+        ExternalCsvSorter.newBuilder()
+                .with(builder -> {
+                    builder.keyColumn = 1;
+                    builder.spillDirectory = directory.toURI().toString();
+                })
+                .build()
+                .sort(new Path(input.toURI()), new Path(output.toURI()));
+
+        List<String[]> sorted = read(output);
+        assertEquals(1, sorted.size());
+        assertArrayEquals(rows.get(0), sorted.get(0));
+    }
+
+    private static List<String[]> rows(int count, Random random) {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[]{"Job Id", "Job Posting Date", "Job Description"});
+        LocalDate start = LocalDate.of(2022, 1, 1);
+        for (int i = 0; i < count; i++) {
+            String date;
+            switch (random.nextInt(20)) {
+                case 0:
+                    date = "not a date";
+                    break;
+                case 1:
+                    date = "";
+                    break;
+                default:
+                    // few distinct days, so stability shows
+                    date = start.plusDays(random.nextInt(60)).toString();
+            }
+            String description = random.nextInt(5) == 0
+                    ? "Builds \"pipelines\",\nreviews code\nand on-call " + i
+                    : "Description " + i;
+            if (random.nextInt(50) == 0) {
+                // too short to hold the key
+                rows.add(new String[]{"job-" + i});
+            } else {
+                rows.add(new String[]{"job-" + i, date, description});
+            }
+        }
+        return rows;
+    }
+
+    private static long key(String[] row) {
+        if (row.length < 2) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return LocalDate.parse(row[1].trim()).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static void write(File file, List<String[]> rows) throws IOException {
+        try (CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            csvWriter.writeAll(rows);
+        }
+    }
+
+    private static List<String[]> read(File file) throws IOException {
+        try (CSVReader csvReader = new CSVReader(new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            return csvReader.readAll();
+        } catch (CsvException e) {
+            throw new IOException(e);
+        }
+    }
+}